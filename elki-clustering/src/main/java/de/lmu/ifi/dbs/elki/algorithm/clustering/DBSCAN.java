@@ -39,6 +39,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -54,6 +55,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
@@ -96,6 +98,11 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
    */
   protected int minpts;
 
+  /**
+   * Precompute all neighborhoods with a self-join, if an index supports this.
+   */
+  protected boolean selfJoin;
+
   /**
    * Holds a list of clusters found.
    */
@@ -124,9 +131,22 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
    * @param minpts Minpts parameter
    */
   public DBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    this(distanceFunction, epsilon, minpts, false);
+  }
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param selfJoin Precompute all neighborhoods with an index self-join
+   */
+  public DBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts, boolean selfJoin) {
     super(distanceFunction);
     this.epsilon = epsilon;
     this.minpts = minpts;
+    this.selfJoin = selfJoin;
   }
 
   /**
@@ -140,7 +160,11 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
       return result;
     }
 
-    RangeQuery<O> rangeQuery = QueryUtil.getRangeQuery(relation, getDistanceFunction());
+    // Every object is queried once with the same radius. A self-join is faster,
+    // but keeps all neighborhoods in memory, so only use it if requested.
+    RangeQuery<O> rangeQuery = selfJoin ? //
+        QueryUtil.getRangeQuery(relation, getDistanceFunction(), epsilon, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE) : //
+        QueryUtil.getRangeQuery(relation, getDistanceFunction());
     resultList = new ArrayList<>();
     noise = DBIDUtil.newHashSet();
     runDBSCAN(relation, rangeQuery);
@@ -298,6 +322,11 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
      */
     public static final OptionID MINPTS_ID = new OptionID("dbscan.minpts", "Threshold for minimum number of points in the epsilon-neighborhood of a point. The suggested value is '2 * dim - 1'.");
 
+    /**
+     * Flag to precompute all neighborhoods with an index self-join.
+     */
+    public static final OptionID SELF_JOIN_ID = new OptionID("dbscan.selfjoin", "Precompute all epsilon-neighborhoods with a self-join of the index, if supported. This is faster, but keeps all neighborhoods in memory.");
+
     /**
      * Holds the epsilon radius threshold.
      */
@@ -308,6 +337,11 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
      */
     protected int minpts;
 
+    /**
+     * Precompute all neighborhoods with a self-join.
+     */
+    protected boolean selfJoin;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -325,11 +359,16 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
           LOG.warning("DBSCAN with minPts <= 2 is equivalent to single-link clustering at a single height. Consider using larger values of minPts.");
         }
       }
+
+      Flag selfJoinF = new Flag(SELF_JOIN_ID);
+      if(config.grab(selfJoinF)) {
+        selfJoin = selfJoinF.isTrue();
+      }
     }
 
     @Override
     protected DBSCAN<O> makeInstance() {
-      return new DBSCAN<>(distanceFunction, epsilon, minpts);
+      return new DBSCAN<>(distanceFunction, epsilon, minpts, selfJoin);
     }
   }
 }
@@ -209,5 +209,25 @@ public interface SparseNumberVector extends NumberVector, SparseFeatureVector<Nu
      * @return a new NumberVector of N for the given values
      */
     V newNumberVector(Int2DoubleOpenHashMap values, int maxdim);
+
+    /**
+     * Returns a new NumberVector of N for the given sorted values.
+     *
+     * This avoids the intermediate map, when the dimensions are already known
+     * in ascending order (e.g., when parsing). The arrays are copied.
+     *
+     * @param indexes Dimensions, sorted ascending, without duplicates
+     * @param values Values of the dimensions
+     * @param size Number of entries to use
+     * @param maxdim Maximum dimensionality.
+     * @return a new NumberVector of N for the given values
+     */
+    default V newNumberVector(int[] indexes, double[] values, int size, int maxdim) {
+      Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap(size);
+      for(int i = 0; i < size; i++) {
+        map.put(indexes[i], values[i]);
+      }
+      return newNumberVector(map, maxdim);
+    }
   }
 }
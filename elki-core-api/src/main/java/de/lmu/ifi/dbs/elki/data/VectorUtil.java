@@ -227,6 +227,122 @@ public final class VectorUtil {
             angleDense(v1, v2);
   }
 
+  /**
+   * Compute the absolute cosine of the angle, given the scalar product and the
+   * squared lengths of both vectors.
+   *
+   * This yields the same values as {@link #cosAngle}, and is meant to be used
+   * with precomputed (cached) vector lengths.
+   *
+   * @param cross Scalar product
+   * @param l1 Squared length of the first vector
+   * @param l2 Squared length of the second vector
+   * @return Angle
+   */
+  public static double cosAngle(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Compute the scalar product (inner product) of two vectors.
+   *
+   * Sparse vectors are supported; missing dimensions are treated as zero.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Scalar product
+   */
+  public static double dot(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof SparseNumberVector) {
+      return v2 instanceof SparseNumberVector ? //
+          dotSparse((SparseNumberVector) v1, (SparseNumberVector) v2) : //
+          dotSparseDense((SparseNumberVector) v1, v2);
+    }
+    if(v2 instanceof SparseNumberVector) {
+      return dotSparseDense((SparseNumberVector) v2, v1);
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = (dim1 <= dim2) ? dim1 : dim2;
+    double cross = 0.;
+    for(int k = 0; k < mindim; k++) {
+      cross += v1.doubleValue(k) * v2.doubleValue(k);
+    }
+    return cross;
+  }
+
+  /**
+   * Compute the scalar product of two sparse vectors.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Scalar product
+   */
+  private static double dotSparse(SparseNumberVector v1, SparseNumberVector v2) {
+    double cross = 0.;
+    int i1 = v1.iter(), i2 = v2.iter();
+    while(v1.iterValid(i1) && v2.iterValid(i2)) {
+      final int d1 = v1.iterDim(i1), d2 = v2.iterDim(i2);
+      if(d1 < d2) {
+        i1 = v1.iterAdvance(i1);
+      }
+      else if(d2 < d1) {
+        i2 = v2.iterAdvance(i2);
+      }
+      else { // d1 == d2
+        cross += v1.iterDoubleValue(i1) * v2.iterDoubleValue(i2);
+        i1 = v1.iterAdvance(i1);
+        i2 = v2.iterAdvance(i2);
+      }
+    }
+    return cross;
+  }
+
+  /**
+   * Compute the scalar product of a sparse and a dense vector.
+   *
+   * @param v1 Sparse first vector
+   * @param v2 Dense second vector
+   * @return Scalar product
+   */
+  private static double dotSparseDense(SparseNumberVector v1, NumberVector v2) {
+    final int dim2 = v2.getDimensionality();
+    double cross = 0.;
+    for(int i1 = v1.iter(); v1.iterValid(i1); i1 = v1.iterAdvance(i1)) {
+      final int d1 = v1.iterDim(i1);
+      if(d1 >= dim2) {
+        break;
+      }
+      cross += v1.iterDoubleValue(i1) * v2.doubleValue(d1);
+    }
+    return cross;
+  }
+
+  /**
+   * Compute the squared Euclidean length of a vector.
+   *
+   * @param v Vector
+   * @return Squared length
+   */
+  public static double squaredLength(NumberVector v) {
+    double agg = 0.;
+    if(v instanceof SparseNumberVector) {
+      final SparseNumberVector sv = (SparseNumberVector) v;
+      for(int i = sv.iter(); sv.iterValid(i); i = sv.iterAdvance(i)) {
+        final double val = sv.iterDoubleValue(i);
+        agg += val * val;
+      }
+      return agg;
+    }
+    for(int d = 0, dim = v.getDimensionality(); d < dim; d++) {
+      final double val = v.doubleValue(d);
+      agg += val * val;
+    }
+    return agg;
+  }
+
   // TODO: add more precise but slower O(n^2) angle computation according to:
   // Computing the Angle between Vectors, P. Schatte
   // Journal of Computing, Volume 63, Number 1 (1999)
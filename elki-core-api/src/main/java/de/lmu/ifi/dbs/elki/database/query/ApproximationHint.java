@@ -0,0 +1,122 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query;
+
+/**
+ * Optimizer hint: approximate answers are acceptable, trading recall for
+ * latency.
+ * <p>
+ * Two knobs are supported:
+ * <ul>
+ * <li>{@code epsilon}: tree searches may prune a node when its minimum
+ * distance, multiplied by {@code 1 + epsilon}, exceeds the current k-distance.
+ * Every returned neighbor is then within {@code 1 + epsilon} of the true k
+ * nearest neighbor distance.</li>
+ * <li>{@code budget}: the maximum number of candidate objects to refine (i.e.
+ * compute the exact distance for). Tree searches stop visiting further leaves,
+ * candidate-based indexes (e.g. LSH, space-filling curves) consider fewer
+ * candidates.</li>
+ * </ul>
+ * Indexes that do not support a knob ignore it. If
+ * {@link DatabaseQuery#HINT_EXACT} is given, too, it takes precedence.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ApproximationHint {
+  /**
+   * Relative error bound.
+   */
+  private final double epsilon;
+
+  /**
+   * Work budget, {@code Integer.MAX_VALUE} for unlimited.
+   */
+  private final int budget;
+
+  /**
+   * Constructor.
+   *
+   * @param epsilon Relative error bound, 0 for none
+   * @param budget Maximum number of candidates to refine, 0 for unlimited
+   */
+  public ApproximationHint(double epsilon, int budget) {
+    super();
+    if(!(epsilon >= 0.)) {
+      throw new IllegalArgumentException("Epsilon must be non-negative.");
+    }
+    this.epsilon = epsilon;
+    this.budget = budget > 0 ? budget : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Find the approximation hint in a list of hints.
+   *
+   * @param hints Hints
+   * @return Approximation hint, or {@code null} if none was given, or exact
+   *         answers were requested.
+   */
+  public static ApproximationHint find(Object... hints) {
+    ApproximationHint found = null;
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+      if(hint instanceof ApproximationHint) {
+        found = (ApproximationHint) hint;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Get the relative error bound.
+   *
+   * @return Epsilon
+   */
+  public double getEpsilon() {
+    return epsilon;
+  }
+
+  /**
+   * Get the factor to multiply minimum distances with for pruning.
+   *
+   * @return {@code 1 + epsilon}
+   */
+  public double getPruningFactor() {
+    return 1. + epsilon;
+  }
+
+  /**
+   * Get the work budget.
+   *
+   * @return Maximum number of candidates to refine,
+   *         {@code Integer.MAX_VALUE} if unlimited.
+   */
+  public int getBudget() {
+    return budget;
+  }
+
+  @Override
+  public String toString() {
+    return "ApproximationHint[epsilon=" + epsilon + ", budget=" + (budget < Integer.MAX_VALUE ? budget : "unlimited") + "]";
+  }
+}
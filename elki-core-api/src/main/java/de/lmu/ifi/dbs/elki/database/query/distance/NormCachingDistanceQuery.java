@@ -0,0 +1,141 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NormCachingDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+
+/**
+ * Distance query that caches a per-object norm for each DBID of the relation.
+ *
+ * The norms are computed lazily on first access, and kept in a
+ * {@link WritableDoubleDataStore}. Concurrent use is benign: at worst, a norm
+ * is computed twice, and the same value is stored.
+ *
+ * Norms are only cached for static relations, i.e., relations over a
+ * {@link DBIDRange}. Dynamic relations (e.g., of a
+ * {@link de.lmu.ifi.dbs.elki.database.UpdatableDatabase}) may insert, delete,
+ * and replace objects after the query was created, so for these the norms
+ * are computed on every access.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses NormCachingDistanceFunction
+ *
+ * @param <V> Vector type to use
+ */
+public class NormCachingDistanceQuery<V extends SpatialComparable> extends SpatialPrimitiveDistanceQuery<V> {
+  /**
+   * Typed reference to the norm caching function (usually the same as the
+   * distance function!)
+   */
+  final protected NormCachingDistanceFunction<? super V> normFunction;
+
+  /**
+   * Cached norms, NaN when not yet computed.
+   */
+  private WritableDoubleDataStore norms;
+
+  /**
+   * Flag whether the relation is static, and the norms can be cached.
+   */
+  private final boolean cache;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Representation to use
+   * @param distanceFunction Distance function to use
+   * @param normFunction Norm caching function (usually the same as the
+   *        distance function!)
+   */
+  public NormCachingDistanceQuery(Relation<? extends V> relation, SpatialPrimitiveDistanceFunction<? super V> distanceFunction, NormCachingDistanceFunction<? super V> normFunction) {
+    super(relation, distanceFunction);
+    this.normFunction = normFunction;
+    this.cache = relation.getDBIDs() instanceof DBIDRange;
+  }
+
+  @Override
+  public double distance(DBIDRef id1, DBIDRef id2) {
+    final V o1 = relation.get(id1), o2 = relation.get(id2);
+    return normFunction.distance(o1, o2, norm(id1, o1), norm(id2, o2));
+  }
+
+  @Override
+  public double distance(V o1, DBIDRef id2) {
+    final V o2 = relation.get(id2);
+    return normFunction.distance(o1, o2, normFunction.cachedNorm(o1), norm(id2, o2));
+  }
+
+  @Override
+  public double distance(DBIDRef id1, V o2) {
+    final V o1 = relation.get(id1);
+    return normFunction.distance(o1, o2, norm(id1, o1), normFunction.cachedNorm(o2));
+  }
+
+  /**
+   * Get the (cached) norm of an object in the relation.
+   *
+   * @param id Object id
+   * @return Norm
+   */
+  public double norm(DBIDRef id) {
+    return norm(id, relation.get(id));
+  }
+
+  /**
+   * Get the (cached) norm of an object in the relation.
+   *
+   * @param id Object id
+   * @param o Object, must be the object stored for id.
+   * @return Norm
+   */
+  public double norm(DBIDRef id, V o) {
+    if(!cache) {
+      return normFunction.cachedNorm(o);
+    }
+    if(norms == null) {
+      norms = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, Double.NaN);
+    }
+    double n = norms.doubleValue(id);
+    if(n != n) { // NaN: not yet computed
+      norms.putDouble(id, n = normFunction.cachedNorm(o));
+    }
+    return n;
+  }
+
+  /**
+   * Get the norm caching function.
+   *
+   * @return Norm function
+   */
+  public NormCachingDistanceFunction<? super V> getNormFunction() {
+    return normFunction;
+  }
+}
@@ -59,17 +59,17 @@ public class PrimitiveDistanceQuery<O> implements DistanceQuery<O> {
   }
 
   @Override
-  public final double distance(DBIDRef id1, DBIDRef id2) {
+  public double distance(DBIDRef id1, DBIDRef id2) {
     return distance(relation.get(id1), relation.get(id2));
   }
 
   @Override
-  public final double distance(O o1, DBIDRef id2) {
+  public double distance(O o1, DBIDRef id2) {
     return distance(o1, relation.get(id2));
   }
 
   @Override
-  public final double distance(DBIDRef id1, O o2) {
+  public double distance(DBIDRef id1, O o2) {
     return distance(relation.get(id1), o2);
   }
 
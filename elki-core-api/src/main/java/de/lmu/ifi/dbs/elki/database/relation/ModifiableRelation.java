@@ -20,7 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.database.relation;
 
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 
 /**
  * Relations that allow modification.
@@ -48,4 +54,31 @@ public interface ModifiableRelation<O> extends Relation<O> {
    * @param id ID to delete
    */
   void delete(DBIDRef id);
+
+  /**
+   * Set (or insert) the representations of multiple objects.
+   * 
+   * Implementations should store all values before notifying their indexes,
+   * such that indexes can process the objects in bulk.
+   * 
+   * @param ids Object IDs
+   * @param vals Values, in the same order as the IDs
+   */
+  default void insertAll(ArrayDBIDs ids, List<? extends O> vals) {
+    assert (ids.size() == vals.size());
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insert(iter, vals.get(iter.getOffset()));
+    }
+  }
+
+  /**
+   * Delete the values of multiple objects.
+   * 
+   * @param ids IDs to delete
+   */
+  default void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
 }
@@ -20,7 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.datasource;
 
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
 
 /**
  * DatabaseConnection is used to load data into a database.
@@ -42,6 +44,18 @@ public interface DatabaseConnection {
    * 
    * @return a database object bundle
    */
-  // TODO: streaming load?
   MultipleObjectsBundle loadData();
+
+  /**
+   * Returns the initial data for a database as a stream.
+   * <p>
+   * Connections that can parse and filter their input incrementally should
+   * override this, so that the data does not need to be held in memory at
+   * once. By default, the data is loaded as a bundle, and then streamed.
+   *
+   * @return a stream of the database objects
+   */
+  default BundleStreamSource loadStream() {
+    return new StreamFromBundle(loadData(), true);
+  }
 }
\ No newline at end of file
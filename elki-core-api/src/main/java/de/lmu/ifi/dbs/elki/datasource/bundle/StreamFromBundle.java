@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.datasource.bundle;
 
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 
 /**
@@ -27,6 +29,11 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
  * 
  * To use this, invoke {@link MultipleObjectsBundle#asStream()}.
  * 
+ * When the bundle is only an intermediate result, the stream can release each
+ * object from the bundle once it has been passed on. When the stream is
+ * collected into a new bundle, the old objects can then be garbage collected
+ * early, and only one copy of the data needs to be kept in memory.
+ * 
  * @author Erich Schubert
  * @since 0.4.0
  */
@@ -41,14 +48,32 @@ public class StreamFromBundle implements BundleStreamSource {
    */
   int onum = -2;
 
+  /**
+   * Release objects from the bundle after they have been streamed.
+   */
+  boolean release;
+
   /**
    * Constructor.
    * 
    * @param bundle Existing object bundle
    */
   public StreamFromBundle(MultipleObjectsBundle bundle) {
+    this(bundle, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param bundle Existing object bundle
+   * @param release Release objects from the bundle after streaming them. The
+   *        bundle must not be used afterwards, and its columns must support
+   *        {@link List#set}.
+   */
+  public StreamFromBundle(MultipleObjectsBundle bundle, boolean release) {
     super();
     this.bundle = bundle;
+    this.release = release;
   }
 
   @Override
@@ -73,6 +98,11 @@ public class StreamFromBundle implements BundleStreamSource {
 
   @Override
   public Event nextEvent() {
+    if(release && onum >= 0 && onum < bundle.dataLength()) {
+      for(int i = 0; i < bundle.metaLength(); i++) {
+        bundle.getColumn(i).set(onum, null);
+      }
+    }
     onum += 1;
     if(onum < 0) {
       return Event.META_CHANGED;
@@ -0,0 +1,55 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+/**
+ * Distance functions that can be computed faster when a per-object term (such
+ * as the squared vector length) is precomputed and cached.
+ *
+ * For example, cosine distance needs the lengths of both vectors, but these do
+ * not depend on the other object. When the norms are cached, only one scalar
+ * product remains to be computed per distance.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public interface NormCachingDistanceFunction<O> extends PrimitiveDistanceFunction<O> {
+  /**
+   * Compute the per-object term to cache, e.g. the squared length.
+   *
+   * @param o Object
+   * @return Value to cache
+   */
+  double cachedNorm(O o);
+
+  /**
+   * Compute the distance, given the cached per-object terms.
+   *
+   * @param o1 First object
+   * @param o2 Second object
+   * @param norm1 Cached term of the first object
+   * @param norm2 Cached term of the second object
+   * @return Distance
+   */
+  double distance(O o1, O o2, double norm1, double norm2);
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index;
+
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+
+/**
+ * Index with support for similarity self-joins, i.e. answering the same query
+ * for <em>every</em> indexed object at once. Tree indexes can share the work
+ * of neighboring query objects, which is much cheaper than issuing one query
+ * per object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.excludeSubtypes
+ *
+ * @param <O> Object type
+ */
+public interface JoinIndex<O> extends Index {
+  /**
+   * Compute the k nearest neighbors of every indexed object.
+   *
+   * This function MAY return null, when the given distance is not supported!
+   *
+   * @param distanceQuery Distance query
+   * @param k Number of neighbors
+   * @return kNN lists of all objects, or {@code null}
+   */
+  WritableDataStore<KNNList> kNNSelfJoin(DistanceQuery<O> distanceQuery, int k);
+
+  /**
+   * Compute the neighbors within the given radius of every indexed object
+   * (epsilon join). The neighbor lists are sorted by distance.
+   *
+   * This function MAY return null, when the given distance is not supported!
+   *
+   * @param distanceQuery Distance query
+   * @param range Query radius
+   * @return Neighbor lists of all objects, or {@code null}
+   */
+  WritableDataStore<DoubleDBIDList> rangeSelfJoin(DistanceQuery<O> distanceQuery, double range);
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Index that can be written to a snapshot after construction, and restored
+ * from a snapshot instead of being rebuilt.
+ *
+ * A snapshot stores DBIDs as integers, so it can only be restored onto a
+ * relation with the same DBIDs (the caller ensures this). Implementations
+ * should store their own configuration, and refuse to restore a snapshot
+ * taken with a different configuration.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface SnapshotIndex extends Index {
+  /**
+   * Write the index structure, after {@link #initialize()}.
+   *
+   * @param out Output
+   * @throws IOException on write errors
+   */
+  void writeSnapshot(ObjectOutput out) throws IOException;
+
+  /**
+   * Restore the index structure, instead of calling {@link #initialize()}.
+   *
+   * If this returns {@code false}, the index must be in the same state as if
+   * this method had not been called, so that it can be initialized normally.
+   *
+   * @param in Input
+   * @return {@code false} if the snapshot is not compatible with this index
+   * @throws IOException on read errors
+   */
+  boolean restoreSnapshot(ObjectInput in) throws IOException;
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Flyweight vector, reading {@code double} values from a {@link ByteBuffer}.
+ *
+ * The values are not copied, but read from the buffer on access. This allows
+ * using memory-mapped files as vector storage, where the operating system page
+ * cache holds the actual data (and can share it across processes).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ByteBufferDoubleVector implements NumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final ByteBufferDoubleVector.Factory FACTORY = new ByteBufferDoubleVector.Factory();
+
+  /**
+   * Serializer using varint encoding, compatible with
+   * {@link DoubleVector#VARIABLE_SERIALIZER}.
+   */
+  public static final ByteBufferSerializer<ByteBufferDoubleVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Data buffer.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Offset of the first value in the buffer.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Data buffer (not copied)
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public ByteBufferDoubleVector(ByteBuffer buffer, int offset, int dim) {
+    super();
+    this.buffer = buffer;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return buffer.getDouble(offset + (dimension << 3));
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) doubleValue(dimension);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] ret = new double[dim];
+    for(int i = 0, p = offset; i < dim; i++, p += ByteArrayUtil.SIZE_DOUBLE) {
+      ret[i] = buffer.getDouble(p);
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(doubleValue(i));
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Copy values into a new heap buffer.
+   *
+   * @param array Input array
+   * @param adapter Array adapter
+   * @param <A> Array type
+   * @return New vector
+   */
+  private static <A> ByteBufferDoubleVector copy(A array, NumberArrayAdapter<?, ? super A> adapter) {
+    final int dim = adapter.size(array);
+    ByteBuffer buf = ByteBuffer.allocate(dim * ByteArrayUtil.SIZE_DOUBLE);
+    for(int i = 0; i < dim; i++) {
+      buf.putDouble(adapter.getDouble(array, i));
+    }
+    return new ByteBufferDoubleVector(buf, 0, dim);
+  }
+
+  /**
+   * Factory for byte buffer vectors.
+   *
+   * New vectors (e.g. cluster means) are stored in heap buffers.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has ByteBufferDoubleVector
+   */
+  public static class Factory implements NumberVector.Factory<ByteBufferDoubleVector> {
+    @Override
+    public <A> ByteBufferDoubleVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      final int dim = adapter.size(array);
+      ByteBuffer buf = ByteBuffer.allocate(dim * ByteArrayUtil.SIZE_DOUBLE);
+      for(int i = 0; i < dim; i++) {
+        buf.putDouble(adapter.get(array, i).doubleValue());
+      }
+      return new ByteBufferDoubleVector(buf, 0, dim);
+    }
+
+    @Override
+    public <A> ByteBufferDoubleVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return copy(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<ByteBufferDoubleVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super ByteBufferDoubleVector> getRestrictionClass() {
+      return ByteBufferDoubleVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected ByteBufferDoubleVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class for variable dimensionality by using VarInt encoding.
+   * The format is the same as {@link DoubleVector.VariableSerializer}.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses ByteBufferDoubleVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<ByteBufferDoubleVector> {
+    @Override
+    public ByteBufferDoubleVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " doubles";
+      ByteBuffer buf = ByteBuffer.allocate(dimensionality * ByteArrayUtil.SIZE_DOUBLE);
+      for(int i = 0; i < dimensionality; i++) {
+        buf.putDouble(buffer.getDouble());
+      }
+      return new ByteBufferDoubleVector(buf, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, ByteBufferDoubleVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(ByteBufferDoubleVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_DOUBLE * vec.dim;
+    }
+  }
+}
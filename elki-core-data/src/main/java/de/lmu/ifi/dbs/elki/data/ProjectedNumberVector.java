@@ -0,0 +1,229 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Zero-copy view of a subspace of another vector.
+ *
+ * The values are not copied, but read from the parent vector through a
+ * dimension index map. Views of views are collapsed, so there is at most one
+ * level of indirection. Distance functions may detect two views using the same
+ * dimension map, and then access the parent vectors directly.
+ * <p>
+ * Each view is a small object of its own. Code that accesses the same objects
+ * many times should create the views once, rather than projecting on every
+ * access.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses NumberVector
+ */
+public class ProjectedNumberVector implements NumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final ProjectedNumberVector.Factory FACTORY = new ProjectedNumberVector.Factory();
+
+  /**
+   * Parent vector.
+   */
+  private final NumberVector inner;
+
+  /**
+   * Dimensions of the parent vector, may be shared by many views.
+   */
+  private final int[] dims;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Parent vector (must not be a projected vector itself)
+   * @param dims Dimension map, not copied
+   */
+  private ProjectedNumberVector(NumberVector inner, int[] dims) {
+    super();
+    this.inner = inner;
+    this.dims = dims;
+  }
+
+  /**
+   * Get a view of a subspace of a vector.
+   *
+   * Note: the dimension array is not copied, and should be shared across all
+   * views of the same subspace, and must not be modified. If the vector is a
+   * view itself, a new collapsed dimension map is allocated on every call; use
+   * {@link #collapse} once and project the parent vectors instead to share the
+   * map.
+   *
+   * @param vec Vector
+   * @param dims Dimensions to use
+   * @return Projected vector
+   */
+  public static ProjectedNumberVector project(NumberVector vec, int[] dims) {
+    if(vec instanceof ProjectedNumberVector) {
+      // Collapse views of views into a single dimension map.
+      ProjectedNumberVector pvec = (ProjectedNumberVector) vec;
+      return new ProjectedNumberVector(pvec.inner, collapse(pvec.dims, dims));
+    }
+    return new ProjectedNumberVector(vec, dims);
+  }
+
+  /**
+   * Collapse the dimension maps of a view of a view.
+   *
+   * @param parent Dimension map of the parent view
+   * @param dims Dimensions of the parent view to use
+   * @return Dimensions of the parent vector
+   */
+  public static int[] collapse(int[] parent, int[] dims) {
+    int[] cdims = new int[dims.length];
+    for(int i = 0; i < dims.length; i++) {
+      cdims[i] = parent[dims[i]];
+    }
+    return cdims;
+  }
+
+  /**
+   * Get the parent vector.
+   *
+   * @return Parent vector
+   */
+  public NumberVector getInner() {
+    return inner;
+  }
+
+  /**
+   * Get the dimension map (do not modify!)
+   *
+   * @return Dimensions of the parent vector
+   */
+  public int[] getDimensions() {
+    return dims;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dims.length;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return inner.doubleValue(dims[dimension]);
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    return inner.floatValue(dims[dimension]);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return inner.longValue(dims[dimension]);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] ret = new double[dims.length];
+    for(int i = 0; i < dims.length; i++) {
+      ret[i] = inner.doubleValue(dims[i]);
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dims.length; i++) {
+      featureLine.append(inner.doubleValue(dims[i]));
+      if(i + 1 < dims.length) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for projected vectors.
+   *
+   * New vectors (e.g. cluster means) are stored in a {@link DoubleVector},
+   * exposed using the identity map.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has ProjectedNumberVector
+   */
+  public static class Factory implements NumberVector.Factory<ProjectedNumberVector> {
+    @Override
+    public <A> ProjectedNumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return wrap(DoubleVector.FACTORY.newFeatureVector(array, adapter));
+    }
+
+    @Override
+    public <A> ProjectedNumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return wrap(DoubleVector.FACTORY.newNumberVector(array, adapter));
+    }
+
+    /**
+     * Wrap a vector using the identity map.
+     *
+     * @param vec Vector to wrap
+     * @return View
+     */
+    private static ProjectedNumberVector wrap(DoubleVector vec) {
+      final int dim = vec.getDimensionality();
+      int[] dims = new int[dim];
+      for(int i = 0; i < dim; i++) {
+        dims[i] = i;
+      }
+      return new ProjectedNumberVector(vec, dims);
+    }
+
+    @Override
+    public ByteBufferSerializer<ProjectedNumberVector> getDefaultSerializer() {
+      return null; // Views are not serialized.
+    }
+
+    @Override
+    public Class<? super ProjectedNumberVector> getRestrictionClass() {
+      return ProjectedNumberVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected ProjectedNumberVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+}
@@ -320,6 +320,15 @@ public class SparseByteVector implements SparseNumberVector {
       return new SparseByteVector(values, maxdim);
     }
 
+    @Override
+    public SparseByteVector newNumberVector(int[] indexes, double[] values, int size, int maxdim) {
+      byte[] vals = new byte[size];
+      for(int i = 0; i < size; i++) {
+        vals[i] = (byte) values[i];
+      }
+      return new SparseByteVector(Arrays.copyOf(indexes, size), vals, maxdim);
+    }
+
     @Override
     public ByteBufferSerializer<SparseByteVector> getDefaultSerializer() {
       return VARIABLE_SERIALIZER;
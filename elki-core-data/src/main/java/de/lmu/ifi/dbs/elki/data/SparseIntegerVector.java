@@ -319,6 +319,15 @@ public class SparseIntegerVector implements SparseNumberVector {
       return new SparseIntegerVector(values, maxdim);
     }
 
+    @Override
+    public SparseIntegerVector newNumberVector(int[] indexes, double[] values, int size, int maxdim) {
+      int[] vals = new int[size];
+      for(int i = 0; i < size; i++) {
+        vals[i] = (int) values[i];
+      }
+      return new SparseIntegerVector(Arrays.copyOf(indexes, size), vals, maxdim);
+    }
+
     @Override
     public ByteBufferSerializer<SparseIntegerVector> getDefaultSerializer() {
       return VARIABLE_SERIALIZER;
@@ -319,6 +319,15 @@ public class SparseShortVector implements SparseNumberVector {
       return new SparseShortVector(values, maxdim);
     }
 
+    @Override
+    public SparseShortVector newNumberVector(int[] indexes, double[] values, int size, int maxdim) {
+      short[] vals = new short[size];
+      for(int i = 0; i < size; i++) {
+        vals[i] = (short) values[i];
+      }
+      return new SparseShortVector(Arrays.copyOf(indexes, size), vals, maxdim);
+    }
+
     @Override
     public ByteBufferSerializer<SparseShortVector> getDefaultSerializer() {
       return VARIABLE_SERIALIZER;
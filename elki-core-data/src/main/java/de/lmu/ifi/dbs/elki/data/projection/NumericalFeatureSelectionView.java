@@ -0,0 +1,189 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data.projection;
+
+import java.util.BitSet;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.ProjectedNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+
+/**
+ * Projection of number vectors to a subspace, without copying the data.
+ *
+ * In contrast to {@link NumericalFeatureSelection}, this produces
+ * {@link ProjectedNumberVector} views that share the storage of the original
+ * vectors, and all views share a single dimension map.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ProjectedNumberVector
+ *
+ * @param <V> Vector type
+ */
+public class NumericalFeatureSelectionView<V extends NumberVector> implements Projection<V, ProjectedNumberVector> {
+  /**
+   * Minimum dimensionality required for projection.
+   */
+  private int mindim;
+
+  /**
+   * Subspace.
+   */
+  private int[] dims;
+
+  /**
+   * Collapsed dimension map for the last parent view map seen.
+   */
+  private Collapsed last;
+
+  /**
+   * Constructor.
+   *
+   * @param dims Dimensions
+   */
+  public NumericalFeatureSelectionView(int[] dims) {
+    super();
+    this.dims = dims;
+
+    int mind = 0;
+    for(int i : dims) {
+      mind = (i > mind) ? i : mind;
+    }
+    this.mindim = mind + 1;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param bits Bitset
+   */
+  public NumericalFeatureSelectionView(BitSet bits) {
+    super();
+    final int card = bits.cardinality();
+    this.dims = new int[card];
+    int mind = 0;
+    for(int i = bits.nextSetBit(0), j = 0; i >= 0; i = bits.nextSetBit(i + 1), j++) {
+      dims[j] = i;
+      mind = (i > mind) ? i : mind;
+    }
+    this.mindim = mind + 1;
+  }
+
+  @Override
+  public void initialize(SimpleTypeInformation<V> in) {
+    final VectorFieldTypeInformation<V> vin = (VectorFieldTypeInformation<V>) in;
+    if(vin.getDimensionality() < mindim) {
+      throw new AbortException("Data does not have enough dimensions for this projection!");
+    }
+  }
+
+  @Override
+  public ProjectedNumberVector project(V data) {
+    if(data instanceof ProjectedNumberVector) {
+      // Collapse the maps only once, so that all views share the same map.
+      final ProjectedNumberVector pvec = (ProjectedNumberVector) data;
+      final int[] parent = pvec.getDimensions();
+      Collapsed c = last;
+      if(c == null || c.parent != parent) {
+        last = c = new Collapsed(parent, ProjectedNumberVector.collapse(parent, dims));
+      }
+      return ProjectedNumberVector.project(pvec.getInner(), c.dims);
+    }
+    return ProjectedNumberVector.project(data, dims);
+  }
+
+  @Override
+  public SimpleTypeInformation<ProjectedNumberVector> getOutputDataTypeInformation() {
+    return new VectorFieldTypeInformation<>(ProjectedNumberVector.FACTORY, dims.length);
+  }
+
+  @Override
+  public TypeInformation getInputDataTypeInformation() {
+    return VectorTypeInformation.typeRequest(NumberVector.class, mindim, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Collapsed dimension map of a view of a view.
+   *
+   * @author Erich Schubert
+   */
+  private static final class Collapsed {
+    /**
+     * Dimension map of the parent view.
+     */
+    final int[] parent;
+
+    /**
+     * Collapsed dimension map.
+     */
+    final int[] dims;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Dimension map of the parent view
+     * @param dims Collapsed dimension map
+     */
+    Collapsed(int[] parent, int[] dims) {
+      this.parent = parent;
+      this.dims = dims;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Dimensions to select.
+     */
+    int[] dims;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntListParameter selectedAttributesP = new IntListParameter(FeatureSelection.Parameterizer.SELECTED_ATTRIBUTES_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT_LIST);
+      if(config.grab(selectedAttributesP)) {
+        dims = selectedAttributesP.getValue();
+      }
+    }
+
+    @Override
+    protected NumericalFeatureSelectionView<V> makeInstance() {
+      return new NumericalFeatureSelectionView<>(dims);
+    }
+  }
+}
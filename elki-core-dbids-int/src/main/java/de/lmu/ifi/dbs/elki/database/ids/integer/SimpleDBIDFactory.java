@@ -88,6 +88,11 @@ public class SimpleDBIDFactory extends AbstractIntegerDBIDFactory {
     return alloc;
   }
 
+  @Override
+  public synchronized DBIDRange tryGenerateStaticDBIDRange(int begin, int size) {
+    return begin >= rangestart ? generateStaticDBIDRange(begin, size) : null;
+  }
+
   @Override
   public void deallocateDBIDRange(DBIDRange range) {
     // ignore.
@@ -91,6 +91,22 @@ final public class TrivialDBIDFactory extends AbstractIntegerDBIDFactory {
     return alloc;
   }
 
+  @Override
+  public DBIDRange tryGenerateStaticDBIDRange(int begin, int size) {
+    if(begin > Integer.MAX_VALUE - size) {
+      throw new AbortException("DBID range allocation error - too many objects allocated!");
+    }
+    final int end = begin + size;
+    int v;
+    do {
+      if((v = next.get()) > begin) {
+        return null; // Already in use.
+      }
+    }
+    while(!next.compareAndSet(v, end));
+    return new IntegerDBIDRange(begin, size);
+  }
+
   @Override
   public void deallocateDBIDRange(DBIDRange range) {
     // ignore.
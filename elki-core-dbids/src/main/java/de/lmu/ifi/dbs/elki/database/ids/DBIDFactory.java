@@ -106,6 +106,16 @@ public interface DBIDFactory {
    */
   DBIDRange generateStaticDBIDRange(int begin, int size);
 
+  /**
+   * Generate a static DBID range at a given position, but only if none of
+   * these DBIDs has been allocated yet.
+   *
+   * @param begin Range begin
+   * @param size Requested size
+   * @return DBID range, or {@code null} if the range is already in use
+   */
+  DBIDRange tryGenerateStaticDBIDRange(int begin, int size);
+
   /**
    * Deallocate a static DBID range.
    *
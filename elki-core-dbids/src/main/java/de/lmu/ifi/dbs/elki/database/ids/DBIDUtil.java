@@ -196,6 +196,18 @@ public final class DBIDUtil {
     return DBIDFactory.FACTORY.generateStaticDBIDRange(size);
   }
 
+  /**
+   * Generate a static DBID range, at a given position (e.g., to restore the
+   * DBIDs of a previous run), unless some of these DBIDs are already in use.
+   *
+   * @param begin Range begin
+   * @param size Requested size
+   * @return DBID range, or {@code null} if the range is already in use
+   */
+  public static DBIDRange tryGenerateStaticDBIDRange(int begin, int size) {
+    return DBIDFactory.FACTORY.tryGenerateStaticDBIDRange(begin, size);
+  }
+
   /**
    * Deallocate a static DBID range.
    *
@@ -24,6 +24,8 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.query.distance.NormCachingDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -47,7 +49,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
  */
 @Priority(Priority.IMPORTANT)
 @Alias({ "arccos" })
-public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFunction<NumberVector>, NumberVectorDistanceFunction<NumberVector> {
+public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFunction<NumberVector>, NumberVectorDistanceFunction<NumberVector>, NormCachingDistanceFunction<NumberVector> {
   /**
    * Static instance
    */
@@ -79,12 +81,28 @@ public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFuncti
     return (d > 0) ? d : 0;
   }
 
+  @Override
+  public double cachedNorm(NumberVector v) {
+    return VectorUtil.squaredLength(v);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double norm1, double norm2) {
+    double d = Math.acos(VectorUtil.cosAngle(VectorUtil.dot(v1, v2), norm1, norm2));
+    return (d > 0) ? d : 0;
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = Math.acos(VectorUtil.minCosAngle(mbr1, mbr2));
     return (d > 0) ? d : 0;
   }
 
+  @Override
+  public <T extends NumberVector> NormCachingDistanceQuery<T> instantiate(Relation<T> relation) {
+    return new NormCachingDistanceQuery<>(relation, this, this);
+  }
+
   @Override
   public String toString() {
     return "ArcCosineDistance";
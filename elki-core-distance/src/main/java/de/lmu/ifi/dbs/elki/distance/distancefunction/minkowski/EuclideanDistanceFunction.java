@@ -112,6 +112,11 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    // Views of the same subspace: skip the indirection of the views.
+    final double pd = SquaredEuclideanDistanceFunction.projectedDistance(v1, v2);
+    if(pd == pd) {
+      return FastMath.sqrt(pd);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
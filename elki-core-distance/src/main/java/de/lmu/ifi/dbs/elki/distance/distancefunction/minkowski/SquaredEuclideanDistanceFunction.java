@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.ProjectedNumberVector;
 import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
@@ -74,6 +75,33 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     return agg;
   }
 
+  /**
+   * Compute the squared distance of two views sharing the same dimension map,
+   * directly on the parent vectors.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared distance, or NaN if the vectors are not
+   *         {@link ProjectedNumberVector} views sharing the same dimension map.
+   */
+  static double projectedDistance(NumberVector v1, NumberVector v2) {
+    if(!(v1 instanceof ProjectedNumberVector) || !(v2 instanceof ProjectedNumberVector)) {
+      return Double.NaN;
+    }
+    final ProjectedNumberVector p1 = (ProjectedNumberVector) v1, p2 = (ProjectedNumberVector) v2;
+    final int[] dims = p1.getDimensions();
+    if(dims != p2.getDimensions()) {
+      return Double.NaN;
+    }
+    final NumberVector i1 = p1.getInner(), i2 = p2.getInner();
+    double agg = 0.;
+    for(int d : dims) {
+      final double delta = i1.doubleValue(d) - i2.doubleValue(d);
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
   private final double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -131,6 +159,11 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    // Views of the same subspace: skip the indirection of the views.
+    final double pd = projectedDistance(v1, v2);
+    if(pd == pd) {
+      return pd;
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -0,0 +1,96 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.ProjectedNumberVector;
+import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelectionView;
+
+/**
+ * Unit test for Euclidean distances on zero-copy subspace views.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ProjectedEuclideanDistanceFunctionTest {
+  /**
+   * Some test vectors.
+   */
+  static final DoubleVector[] TESTS = { //
+      DoubleVector.wrap(new double[] { 0., 1., 2., 3., 4., 5. }), //
+      DoubleVector.wrap(new double[] { 0., .1, .2, .3, .4, .5 }), //
+      DoubleVector.wrap(new double[] { -5., -4., -3., -2., -1., 0. }), //
+      DoubleVector.wrap(new double[] { 0., 2., 4., 5., 3., 1. }), //
+  };
+
+  @Test
+  public void testProjected() {
+    final int[] dims = { 5, 1, 3 };
+    EuclideanDistanceFunction f = EuclideanDistanceFunction.STATIC;
+    SquaredEuclideanDistanceFunction sf = SquaredEuclideanDistanceFunction.STATIC;
+    for(int i = 0; i < TESTS.length; i++) {
+      NumberVector pi = ProjectedNumberVector.project(TESTS[i], dims);
+      NumberVector ci = DoubleVector.wrap(pi.toArray());
+      for(int j = 0; j < TESTS.length; j++) {
+        NumberVector pj = ProjectedNumberVector.project(TESTS[j], dims);
+        NumberVector cj = DoubleVector.wrap(pj.toArray());
+        assertEquals("Distance does not agree.", f.distance(ci, cj), f.distance(pi, pj), 0.);
+        assertEquals("Distance does not agree.", sf.distance(ci, cj), sf.distance(pi, pj), 0.);
+        // Mixed views and vectors use the generic code path:
+        assertEquals("Distance does not agree.", f.distance(ci, cj), f.distance(ci, pj), 0.);
+      }
+    }
+  }
+
+  @Test
+  public void testNestedProjection() {
+    ProjectedNumberVector p = ProjectedNumberVector.project(TESTS[3], new int[] { 5, 1, 3, 2 });
+    ProjectedNumberVector p2 = ProjectedNumberVector.project(p, new int[] { 2, 0 });
+    assertEquals("Views of views are not collapsed.", TESTS[3], p2.getInner());
+    assertEquals(2, p2.getDimensionality());
+    assertEquals(5., p2.doubleValue(0), 0.);
+    assertEquals(1., p2.doubleValue(1), 0.);
+  }
+
+  @Test
+  public void testSharedNestedProjection() {
+    final int[] dims = { 5, 1, 3, 2 };
+    NumericalFeatureSelectionView<NumberVector> proj = new NumericalFeatureSelectionView<>(new int[] { 2, 0, 1 });
+    EuclideanDistanceFunction f = EuclideanDistanceFunction.STATIC;
+    ProjectedNumberVector first = proj.project(ProjectedNumberVector.project(TESTS[0], dims));
+    for(int i = 0; i < TESTS.length; i++) {
+      ProjectedNumberVector pi = proj.project(ProjectedNumberVector.project(TESTS[i], dims));
+      assertSame("Views of views do not share the collapsed map.", first.getDimensions(), pi.getDimensions());
+      NumberVector ci = DoubleVector.wrap(pi.toArray());
+      for(int j = 0; j < TESTS.length; j++) {
+        ProjectedNumberVector pj = proj.project(ProjectedNumberVector.project(TESTS[j], dims));
+        NumberVector cj = DoubleVector.wrap(pj.toArray());
+        assertEquals("Distance does not agree.", f.distance(ci, cj), f.distance(pi, pj), 0.);
+      }
+    }
+  }
+}
@@ -331,7 +331,7 @@ public class LUDecomposition implements java.io.Serializable {
     // Build permuted identity matrix efficiently:
     double[][] b = new double[piv.length][m];
     for(int i = 0; i < piv.length; i++) {
-      b[piv[i]][i] = 1.;
+      b[i][piv[i]] = 1.;
     }
     return solveInplace(b);
   }
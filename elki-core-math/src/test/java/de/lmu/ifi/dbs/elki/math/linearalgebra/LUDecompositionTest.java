@@ -157,6 +157,16 @@ public final class LUDecompositionTest {
     assertTrue("Not solved.", almostEquals(unitMatrix(3), times(p, o3), 1e-14));
   }
 
+  @Test
+  public void testInverse() {
+    // Pivoting with a cyclic permutation:
+    double[][] p = { { 1., 2., 3. }, { 4., 5., 6. }, { 7., 8., 10. } };
+    double[][] inv = new LUDecomposition(p).inverse();
+    assertTrue("Not an inverse.", almostEquals(unitMatrix(3), times(p, inv), 1e-13));
+    assertTrue("Not an inverse.", almostEquals(unitMatrix(3), times(inv, p), 1e-13));
+    assertTrue("Not an inverse.", almostEquals(unitMatrix(7), times(inverse(transposeTimes(M, M)), transposeTimes(M, M)), 1e-12));
+  }
+
   @Test
   public void testWikipediaQR() {
     double[][] M = { //
@@ -24,11 +24,15 @@ import static de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorterTes
 import static de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorterTest.shuffle;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Random;
 
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorterTest.V;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 
 /**
  * Class to unit test the Hilbert curve based spatial sorter.
@@ -61,4 +65,27 @@ public class HilbertSpatialSorterTest {
     HilbertSpatialSorter.STATIC.sort(x);
     assertSameOrder("Hilbert order incorrect", vs, x);
   }
+
+  @Test
+  public void testParallel() {
+    Random rnd = new Random(0L);
+    ArrayList<V> x = new ArrayList<>();
+    for(int i = 0; i < 100000; i++) {
+      x.add(new V(rnd.nextDouble(), rnd.nextDouble(), rnd.nextInt(10)));
+    }
+    // Serial reference: stable sort by Hilbert number.
+    final double[] mm = SpatialSorter.computeMinMax(x);
+    ArrayList<V> vs = new ArrayList<>(x);
+    final int[] buf = new int[3];
+    final IdentityHashMap<V, long[]> keys = new IdentityHashMap<>();
+    for(V v : vs) {
+      for(int d = 0; d < 3; d++) {
+        buf[d] = (int) (Integer.MAX_VALUE * ((v.getMin(d) - mm[d << 1]) / (mm[(d << 1) + 1] - mm[d << 1])));
+      }
+      keys.put(v, HilbertSpatialSorter.coordinatesToHilbert(buf, Integer.SIZE - 1, 1));
+    }
+    Collections.sort(vs, Comparator.comparing(keys::get, BitsUtil::compare));
+    HilbertSpatialSorter.STATIC.sort(x);
+    assertSameOrder("Parallel Hilbert order differs", vs, x);
+  }
 }
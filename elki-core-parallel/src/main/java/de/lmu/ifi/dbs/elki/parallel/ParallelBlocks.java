@@ -0,0 +1,183 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Run independent blocks of work on the {@link ParallelCore}, with results
+ * collected in block order.
+ *
+ * Work is only split if it covers at least {@link #THRESHOLD} objects, as for
+ * less the overhead of the thread pool outweighs the gain. Because the results
+ * are kept in block order, the result does not depend on whether the blocks
+ * were run in parallel or one after another.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ */
+public final class ParallelBlocks {
+  /**
+   * Minimum number of objects to process in parallel.
+   */
+  public static final int THRESHOLD = 1 << 16;
+
+  /**
+   * Core used for parallel processing.
+   */
+  private static volatile ParallelCore core = ParallelCore.getCore();
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private ParallelBlocks() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Replace the core used for parallel processing, e.g. to test the parallel
+   * code paths on a single processor.
+   *
+   * @param newcore New core, {@code null} for the default core
+   * @return Previous core
+   */
+  public static ParallelCore setCore(ParallelCore newcore) {
+    ParallelCore prev = core;
+    core = newcore != null ? newcore : ParallelCore.getCore();
+    return prev;
+  }
+
+  /**
+   * Number of blocks worth running in parallel for the given amount of work.
+   *
+   * @param size Number of objects to process
+   * @return Number of parallel blocks, 1 if the work should not be split
+   */
+  public static int getParallelism(long size) {
+    return size < THRESHOLD ? 1 : Math.max(1, core.getParallelism());
+  }
+
+  /**
+   * Run blocks of work, in parallel if the amount of work is large enough.
+   *
+   * @param size Number of objects processed by all blocks together
+   * @param nblocks Number of blocks
+   * @param block Block of work, given the block number
+   * @param <T> Result type
+   * @return Results of the blocks, in block order
+   */
+  public static <T> List<T> run(long size, int nblocks, IntFunction<T> block) {
+    List<T> ret = new ArrayList<>(nblocks);
+    final ParallelCore core = ParallelBlocks.core;
+    if(nblocks < 2 || size < THRESHOLD || core.getParallelism() < 2) {
+      for(int b = 0; b < nblocks; b++) {
+        ret.add(block.apply(b));
+      }
+      return ret;
+    }
+    core.connect();
+    try {
+      List<Future<T>> parts = new ArrayList<>(nblocks);
+      for(int b = 0; b < nblocks; b++) {
+        final int bnum = b;
+        parts.add(core.submit(() -> block.apply(bnum)));
+      }
+      for(Future<T> part : parts) {
+        ret.add(part.get());
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Parallel processing was interrupted.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Parallel processing failed.", e.getCause());
+    }
+    finally {
+      core.disconnect();
+    }
+    return ret;
+  }
+
+  /**
+   * Run blocks of work that each produce a list, and concatenate the lists in
+   * block order.
+   *
+   * @param size Number of objects processed by all blocks together
+   * @param nblocks Number of blocks
+   * @param block Block of work, given the block number
+   * @param <T> Element type
+   * @return Concatenated results of the blocks
+   */
+  public static <T> List<T> runConcat(long size, int nblocks, IntFunction<List<T>> block) {
+    List<List<T>> parts = run(size, nblocks, block);
+    if(parts.size() == 1) {
+      return parts.get(0);
+    }
+    int total = 0;
+    for(List<T> part : parts) {
+      total += part.size();
+    }
+    List<T> ret = new ArrayList<>(total);
+    for(List<T> part : parts) {
+      ret.addAll(part);
+    }
+    return ret;
+  }
+
+  /**
+   * Run independent tasks of varying cost, such as the leaves of a similarity
+   * join, and sum up the counts they return. Neighboring tasks often have
+   * similar costs, so tasks are assigned to the blocks interleaved.
+   *
+   * @param size Number of objects processed by all tasks together
+   * @param ntasks Number of tasks
+   * @param task Task, given the task number
+   * @return Sum of the task results
+   */
+  public static long sumInterleaved(long size, int ntasks, IntToLongFunction task) {
+    final int p = getParallelism(size);
+    final int nblocks = p > 1 ? Math.min(ntasks, p << 2) : 1;
+    long sum = 0;
+    for(Long part : run(size, nblocks, b -> {
+      long s = 0;
+      for(int i = b; i < ntasks; i += nblocks) {
+        s += task.applyAsLong(i);
+      }
+      return s;
+    })) {
+      sum += part;
+    }
+    return sum;
+  }
+}
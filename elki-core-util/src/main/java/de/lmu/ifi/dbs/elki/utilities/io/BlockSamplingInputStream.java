@@ -0,0 +1,273 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Input stream that passes on only a random sample of blocks of lines.
+ *
+ * The input is divided into blocks of a fixed number of bytes, and each block
+ * is included with the given probability. A line belongs to the block in
+ * which it starts, so every line is either passed on completely or not at
+ * all. Blocks that are not sampled are skipped using
+ * {@link InputStream#skip}, i.e. they are not read at all from seekable
+ * files, and never tokenized or parsed.
+ *
+ * Note that this is a cluster sample: the lines of a block are sampled
+ * together. For sorted files, use a small block size.
+ *
+ * The first line is always passed on, as it may contain column headers.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BlockSamplingInputStream extends InputStream {
+  /**
+   * Read buffer size.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Input stream.
+   */
+  private final InputStream in;
+
+  /**
+   * Block size in bytes.
+   */
+  private final long blocksize;
+
+  /**
+   * Sampling probability.
+   */
+  private final double prob;
+
+  /**
+   * Random generator.
+   */
+  private final Random random;
+
+  /**
+   * Read buffer.
+   */
+  private final byte[] buf = new byte[BUFFER_SIZE];
+
+  /**
+   * Position and length of the buffer.
+   */
+  private int bpos = 0, blen = 0;
+
+  /**
+   * Position in the input stream.
+   */
+  private long pos = 0;
+
+  /**
+   * Flag whether the current position is at the beginning of a line.
+   */
+  private boolean linestart = true;
+
+  /**
+   * Next block to consider.
+   */
+  private long block = 0;
+
+  /**
+   * Pass on data until a line starts at or after this position, or -1.
+   */
+  private long emitend = 1;
+
+  /**
+   * Constructor.
+   *
+   * @param in Input stream
+   * @param blocksize Block size, in bytes
+   * @param prob Sampling probability of each block
+   * @param random Random generator
+   */
+  public BlockSamplingInputStream(InputStream in, long blocksize, double prob, Random random) {
+    super();
+    if(blocksize <= 0) {
+      throw new IllegalArgumentException("Block size must be positive.");
+    }
+    this.in = in;
+    this.blocksize = blocksize;
+    this.prob = prob;
+    this.random = random;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xFF);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    while(emitend < 0) {
+      if(!nextBlock()) {
+        return -1;
+      }
+    }
+    if(bpos == blen && !fill()) {
+      return -1;
+    }
+    int n = 0;
+    while(n < len && bpos < blen) {
+      final byte c = buf[bpos++];
+      b[off + n++] = c;
+      ++pos;
+      if(c == '\n' && pos >= emitend) {
+        emitend = -1;
+        linestart = true;
+        break;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Advance to the next sampled block.
+   *
+   * @return {@code false} at the end of the input
+   * @throws IOException on IO errors
+   */
+  private boolean nextBlock() throws IOException {
+    if(!(prob > 0.)) {
+      return false;
+    }
+    while(true) {
+      final long start = block * blocksize, end = start + blocksize;
+      ++block;
+      // Always draw, so the selection only depends on the seed.
+      if(random.nextDouble() >= prob || end <= pos) {
+        continue;
+      }
+      if(pos < start) {
+        // Check whether the block begins with a new line.
+        if(!skipTo(start - 1)) {
+          return false;
+        }
+        final int c = readByte();
+        if(c < 0) {
+          return false;
+        }
+        linestart = c == '\n';
+      }
+      if(!linestart) {
+        // Skip the remainder of a line of the previous block.
+        int c;
+        while((c = readByte()) >= 0 && c != '\n') {
+          // Skip
+        }
+        if(c < 0) {
+          return false;
+        }
+        linestart = true;
+      }
+      if(pos < end) {
+        emitend = end;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Read a single byte.
+   *
+   * @return Byte, or -1
+   * @throws IOException on IO errors
+   */
+  private int readByte() throws IOException {
+    if(bpos == blen && !fill()) {
+      return -1;
+    }
+    ++pos;
+    return buf[bpos++] & 0xFF;
+  }
+
+  /**
+   * Skip to the given position.
+   *
+   * @param target Target position
+   * @return {@code false} at the end of the input
+   * @throws IOException on IO errors
+   */
+  private boolean skipTo(long target) throws IOException {
+    long n = target - pos;
+    final int avail = blen - bpos;
+    if(n <= avail) {
+      bpos += n;
+      pos += n;
+      return true;
+    }
+    pos += avail;
+    n -= avail;
+    bpos = blen = 0;
+    while(n > 0) {
+      final long s = in.skip(n);
+      if(s > 0) {
+        pos += s;
+        n -= s;
+        continue;
+      }
+      // Skipping not supported, or end of stream:
+      if(!fill()) {
+        return false;
+      }
+      final int take = (int) Math.min(n, blen);
+      bpos = take;
+      pos += take;
+      n -= take;
+    }
+    return true;
+  }
+
+  /**
+   * Refill the buffer.
+   *
+   * @return {@code false} at the end of the input
+   * @throws IOException on IO errors
+   */
+  private boolean fill() throws IOException {
+    bpos = blen = 0;
+    int r;
+    while((r = in.read(buf, 0, buf.length)) == 0) {
+      // Retry
+    }
+    if(r < 0) {
+      return false;
+    }
+    blen = r;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
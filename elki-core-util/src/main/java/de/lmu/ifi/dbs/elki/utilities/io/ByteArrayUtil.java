@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.utilities.io;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -837,37 +838,49 @@ public final class ByteArrayUtil {
   /**
    * Unmap a byte buffer.
    *
+   * The buffer must not be used afterwards.
+   *
    * @param map Byte buffer to unmap.
+   * @return {@code true} if the buffer was unmapped
    */
-  public static void unmapByteBuffer(final MappedByteBuffer map) {
+  public static boolean unmapByteBuffer(final MappedByteBuffer map) {
     if(map == null) {
-      return;
+      return true;
     }
     map.force();
     // This is an ugly hack, but all that Java currently offers.
     // See also: http://bugs.sun.com/view_bug.do?bug_id=4724038
-    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+    return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
       @Override
-      public Object run() {
+      public Boolean run() {
+        try {
+          // Java 9 and later
+          Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+          Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+          Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+          theUnsafe.setAccessible(true);
+          invokeCleaner.invoke(theUnsafe.get(null), map);
+          return Boolean.TRUE;
+        }
+        catch(Exception e) {
+          // Fall through to the Java 8 way.
+        }
         try {
           Method getCleanerMethod = map.getClass().getMethod("cleaner", new Class[0]);
-          if(getCleanerMethod == null) {
-            return null;
-          }
-
           getCleanerMethod.setAccessible(true);
           Object cleaner = getCleanerMethod.invoke(map, new Object[0]);
-          Method cleanMethod = cleaner.getClass().getMethod("clean");
-          if(cleanMethod == null) {
-            return null;
+          if(cleaner == null) {
+            return Boolean.TRUE; // Nothing mapped.
           }
+          Method cleanMethod = cleaner.getClass().getMethod("clean");
           cleanMethod.invoke(cleaner);
+          return Boolean.TRUE;
         }
         catch(Exception e) {
           LoggingUtil.exception(e);
         }
-        return null;
+        return Boolean.FALSE;
       }
-    });
+    }).booleanValue();
   }
 }
@@ -143,7 +143,7 @@ public final class FileUtil {
     }
     // Mark is supported.
     in.mark(16);
-    boolean isgzip = (in.read() == 31 && in.read() == -117);
+    boolean isgzip = (in.read() == 0x1f && in.read() == 0x8b);
     in.reset(); // Rewind
     if(isgzip) {
       in = new GZIPInputStream(in);
@@ -20,7 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.utilities.io;
 
-import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import java.math.BigInteger;
 
 /**
  * Helper functionality for parsing.
@@ -127,6 +127,26 @@ public final class ParseUtil {
   /** Length of pattern */
   private static final int INFINITY_LENGTH = INFINITY_PATTERN.length >> 1;
 
+  /**
+   * Powers of ten that are exactly representable as double.
+   */
+  private static final double[] EXACT_POW10 = { //
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, //
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  /**
+   * Range of decimal exponents, outside of which every 64 bit mantissa yields
+   * zero or infinity.
+   */
+  private static final int MIN_POW10 = -342, MAX_POW10 = 308;
+
+  /**
+   * 128 bit approximations of the powers of five in the decimal exponent
+   * range, normalized to have the highest bit set. High and low words are
+   * interleaved.
+   */
+  private static final long[] POW5_128 = computePow5Table();
+
   /**
    * Parse a double from a character sequence.
    *
@@ -240,7 +260,7 @@ public final class ParseUtil {
       throw TRAILING_CHARACTERS;
     }
 
-    return BitsUtil.lpow10(isNegative ? -decimal : decimal, exp);
+    return toDouble(isNegative, decimal, exp);
   }
 
   /**
@@ -371,7 +391,133 @@ public final class ParseUtil {
       throw TRAILING_CHARACTERS;
     }
 
-    return BitsUtil.lpow10(isNegative ? -decimal : decimal, exp);
+    return toDouble(isNegative, decimal, exp);
+  }
+
+  /**
+   * Compose a double value from a decimal mantissa and exponent, with correct
+   * rounding.
+   *
+   * Small values use the exact fast path of Clinger; all others the algorithm
+   * of Eisel and Lemire, which only needs a 128 bit product:
+   * <p>
+   * D. Lemire<br>
+   * Number parsing at a gigabyte per second<br>
+   * Software: Practice and Experience 51(8)
+   * </p>
+   * <p>
+   * N. Mushtak, D. Lemire<br>
+   * Fast number parsing without fallback<br>
+   * Software: Practice and Experience 53(6)
+   * </p>
+   *
+   * @param isNegative Sign
+   * @param decimal Decimal mantissa, non-negative
+   * @param exp Decimal exponent
+   * @return Double value
+   */
+  private static double toDouble(boolean isNegative, long decimal, int exp) {
+    if(decimal == 0) {
+      return isNegative ? -0. : 0.;
+    }
+    if(decimal <= (1L << 53) && exp >= -22 && exp <= 22) {
+      final double d = exp < 0 ? decimal / EXACT_POW10[-exp] : decimal * EXACT_POW10[exp];
+      return isNegative ? -d : d;
+    }
+    if(exp < MIN_POW10) {
+      return isNegative ? -0. : 0.;
+    }
+    if(exp > MAX_POW10) {
+      return isNegative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    // Normalize the mantissa, and multiply with the power of five.
+    final int lz = Long.numberOfLeadingZeros(decimal);
+    final long w = decimal << lz;
+    final int idx = (exp - MIN_POW10) << 1;
+    long lo = w * POW5_128[idx];
+    long hi = unsignedMultiplyHigh(w, POW5_128[idx]);
+    if((hi & 0x1FFL) == 0x1FFL) { // Low bits may be affected by the carry.
+      final long carry = unsignedMultiplyHigh(w, POW5_128[idx + 1]);
+      lo += carry;
+      hi += Long.compareUnsigned(carry, lo) > 0 ? 1 : 0;
+    }
+    final int upperbit = (int) (hi >>> 63);
+    long mantissa = hi >>> (upperbit + 9);
+    // floor(log2(10) * exp) + 63, plus the double exponent bias.
+    int power2 = (((152170 + 65536) * exp) >> 16) + 63 + upperbit - lz + 1023;
+    final long sign = isNegative ? 0x8000000000000000L : 0L;
+    if(power2 <= 0) { // Subnormal numbers
+      if(-power2 + 1 >= 64) {
+        return isNegative ? -0. : 0.;
+      }
+      mantissa >>>= -power2 + 1;
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      power2 = mantissa < (1L << 52) ? 0 : 1;
+      return Double.longBitsToDouble(sign | mantissa | ((long) power2 << 52));
+    }
+    // Exactly halfway between two doubles: round to even.
+    if(Long.compareUnsigned(lo, 1) <= 0 && exp >= -4 && exp <= 23 && (mantissa & 3) == 1 //
+        && (mantissa << (upperbit + 9)) == hi) {
+      mantissa &= ~1L;
+    }
+    mantissa += mantissa & 1;
+    mantissa >>>= 1;
+    if(mantissa >= (2L << 52)) {
+      mantissa = 1L << 52;
+      power2++;
+    }
+    if(power2 >= 0x7FF) {
+      return isNegative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    return Double.longBitsToDouble(sign | (mantissa & ~(1L << 52)) | ((long) power2 << 52));
+  }
+
+  /**
+   * High word of the unsigned 128 bit product of two longs.
+   *
+   * @param a First factor
+   * @param b Second factor
+   * @return High 64 bits of the product
+   */
+  private static long unsignedMultiplyHigh(long a, long b) {
+    final long a0 = a & 0xFFFFFFFFL, a1 = a >>> 32;
+    final long b0 = b & 0xFFFFFFFFL, b1 = b >>> 32;
+    final long p01 = a0 * b1, p10 = a1 * b0;
+    final long mid = ((a0 * b0) >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+    return a1 * b1 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+  }
+
+  /**
+   * Compute the table of 128 bit powers of five.
+   *
+   * Positive powers are truncated, negative powers (reciprocals) are rounded
+   * up, as required by the Eisel-Lemire algorithm.
+   *
+   * @return Table
+   */
+  private static long[] computePow5Table() {
+    final BigInteger five = BigInteger.valueOf(5), mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+    long[] table = new long[(MAX_POW10 - MIN_POW10 + 1) << 1];
+    for(int q = MIN_POW10, i = 0; q <= MAX_POW10; q++, i += 2) {
+      BigInteger c;
+      if(q >= 0) {
+        c = five.pow(q);
+        final int shift = c.bitLength() - 128;
+        c = shift > 0 ? c.shiftRight(shift) : c.shiftLeft(-shift);
+      }
+      else {
+        final BigInteger p5 = five.pow(-q);
+        final int z = p5.bitLength();
+        c = BigInteger.ONE.shiftLeft(q >= -27 ? z + 127 : 2 * z + 128).divide(p5).add(BigInteger.ONE);
+        if(c.bitLength() > 128) {
+          c = c.shiftRight(c.bitLength() - 128);
+        }
+      }
+      table[i] = c.shiftRight(64).longValue();
+      table[i + 1] = c.and(mask).longValue();
+    }
+    return table;
   }
 
   /**
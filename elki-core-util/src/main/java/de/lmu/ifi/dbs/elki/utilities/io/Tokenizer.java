@@ -29,6 +29,10 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.Iter;
 /**
  * String tokenizer.
  *
+ * Common separators (whitespace, comma, semicolon, tab, and the default
+ * separator of the CSV parsers) are recognized by a hand-written scanner,
+ * other patterns use regular expressions.
+ *
  * @author Erich Schubert
  * @since 0.6.0
  */
@@ -57,15 +61,67 @@ public class Tokenizer implements Iter {
   public Tokenizer(Pattern colSep, String quoteChars) {
     super();
     assert (colSep != null) : "Column separator may not be null.";
-    this.matcher = colSep.matcher("");
     this.quoteChars = quoteChars != null ? quoteChars.toCharArray() : new char[0];
+    char c = 0;
+    switch(colSep.flags() == 0 ? colSep.pattern() : ""){
+    case DEFAULT_SEPARATOR:
+      this.sepmode = SEP_DEFAULT;
+      break;
+    case "\\s+":
+      this.sepmode = SEP_WHITESPACE_RUN;
+      break;
+    case "\\s":
+      this.sepmode = SEP_WHITESPACE;
+      break;
+    case "\\t":
+    case "\t":
+      c = '\t';
+      this.sepmode = SEP_CHAR;
+      break;
+    case ",":
+    case ";":
+    case " ":
+      c = colSep.pattern().charAt(0);
+      this.sepmode = SEP_CHAR;
+      break;
+    default:
+      this.sepmode = SEP_REGEX;
+      this.matcher = colSep.matcher("");
+    }
+    this.sepchar = c;
   }
 
   /**
-   * Regular expression match helper.
+   * Default separator of the CSV parsers.
+   */
+  private static final String DEFAULT_SEPARATOR = "\\s*[,;\\s]\\s*";
+
+  /**
+   * Separator modes: regular expression, default separator, whitespace runs,
+   * single whitespace, single character.
+   */
+  private static final int SEP_REGEX = 0, SEP_DEFAULT = 1, SEP_WHITESPACE_RUN = 2, SEP_WHITESPACE = 3, SEP_CHAR = 4;
+
+  /**
+   * Separator mode.
+   */
+  private final int sepmode;
+
+  /**
+   * Separator character, for {@link #SEP_CHAR}.
+   */
+  private final char sepchar;
+
+  /**
+   * Regular expression match helper, for {@link #SEP_REGEX}.
    */
   private Matcher matcher;
 
+  /**
+   * Start and end of the last separator found, and next search position.
+   */
+  private int mstart, mend, spos;
+
   /**
    * Data currently processed.
    */
@@ -96,7 +152,10 @@ public class Tokenizer implements Iter {
   public void initialize(CharSequence input, int begin, int end) {
     this.input = input;
     this.send = end;
-    this.matcher.reset(input).region(begin, end);
+    if(matcher != null) {
+      this.matcher.reset(input).region(begin, end);
+    }
+    this.spos = begin;
     this.index = begin;
     advance();
   }
@@ -109,14 +168,14 @@ public class Tokenizer implements Iter {
   @Override
   public Tokenizer advance() {
     char inquote = isQuote(index);
-    while(matcher.find()) {
+    while(findSeparator()) {
       // Quoted code path vs. regular code path
       if(inquote != 0) {
         // Matching closing quote found?
-        if(matcher.start() > index + 1 && input.charAt(matcher.start() - 1) == inquote) {
+        if(mstart > index + 1 && input.charAt(mstart - 1) == inquote) {
           this.start = index + 1;
-          this.end = matcher.start() - 1;
-          this.index = matcher.end();
+          this.end = mstart - 1;
+          this.index = mend;
           this.quoted = true;
           return this;
         }
@@ -124,8 +183,8 @@ public class Tokenizer implements Iter {
       }
       else {
         this.start = index;
-        this.end = matcher.start();
-        this.index = matcher.end();
+        this.end = mstart;
+        this.index = mend;
         this.quoted = false;
         return this;
       }
@@ -149,6 +208,85 @@ public class Tokenizer implements Iter {
     return this;
   }
 
+  /**
+   * Find the next separator, and store its position in {@link #mstart} and
+   * {@link #mend}.
+   *
+   * @return {@code false} if no further separator was found.
+   */
+  private boolean findSeparator() {
+    if(sepmode == SEP_REGEX) {
+      if(!matcher.find()) {
+        return false;
+      }
+      mstart = matcher.start();
+      mend = matcher.end();
+      return true;
+    }
+    final CharSequence input = this.input;
+    final int send = this.send;
+    for(int p = spos; p < send; p++) {
+      final char c = input.charAt(p);
+      switch(sepmode){
+      case SEP_CHAR:
+        if(c != sepchar) {
+          continue;
+        }
+        mend = p + 1;
+        break;
+      case SEP_WHITESPACE:
+        if(!isWhitespace(c)) {
+          continue;
+        }
+        mend = p + 1;
+        break;
+      case SEP_WHITESPACE_RUN:
+        if(!isWhitespace(c)) {
+          continue;
+        }
+        mend = skipWhitespace(p + 1);
+        break;
+      default: // SEP_DEFAULT: whitespace, and at most one comma or semicolon.
+        if(c != ',' && c != ';' && !isWhitespace(c)) {
+          continue;
+        }
+        int q = skipWhitespace(p);
+        if(q < send && (input.charAt(q) == ',' || input.charAt(q) == ';')) {
+          q = skipWhitespace(q + 1);
+        }
+        mend = q;
+      }
+      mstart = p;
+      spos = mend;
+      return true;
+    }
+    spos = send;
+    return false;
+  }
+
+  /**
+   * Skip whitespace.
+   *
+   * @param p Starting position
+   * @return Position of the first non-whitespace character, or the end.
+   */
+  private int skipWhitespace(int p) {
+    while(p < send && isWhitespace(input.charAt(p))) {
+      ++p;
+    }
+    return p;
+  }
+
+  /**
+   * Test for whitespace, as matched by {@code \s} in regular expressions.
+   *
+   * @param c Character
+   * @return {@code true} for whitespace
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+  }
+
   /**
    * Get the current part as substring
    *
@@ -279,6 +417,8 @@ public class Tokenizer implements Iter {
    */
   public void cleanup() {
     input = null;
-    matcher.reset("");
+    if(matcher != null) {
+      matcher.reset("");
+    }
   }
 }
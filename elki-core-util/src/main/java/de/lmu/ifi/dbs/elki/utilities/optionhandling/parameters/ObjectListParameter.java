@@ -47,6 +47,11 @@ public class ObjectListParameter<C> extends ClassListParameter<C> {
    */
   private List<C> instances = null;
 
+  /**
+   * Flag whether (some of) the values were given as instances, not as classes.
+   */
+  private boolean givenInstance = false;
+
   /**
    * Constructor with optional flag.
    * 
@@ -87,6 +92,7 @@ public class ObjectListParameter<C> extends ClassListParameter<C> {
         // does the given objects class fit?
         if(restrictionClass.isInstance(o)) {
           inst.add((C) o);
+          givenInstance = true;
           classes.add((Class<? extends C>) o.getClass());
         }
         else if(o instanceof Class) {
@@ -109,6 +115,7 @@ public class ObjectListParameter<C> extends ClassListParameter<C> {
     try {
       C inst = restrictionClass.cast(obj);
       this.instances = Arrays.asList(inst);
+      givenInstance = true;
       return super.parseValue(inst.getClass());
     }
     catch(ClassCastException e) {
@@ -117,6 +124,16 @@ public class ObjectListParameter<C> extends ClassListParameter<C> {
     return super.parseValue(obj);
   }
 
+  /**
+   * Test whether some of the values were given as object instances, rather
+   * than as classes that can be instantiated again.
+   * 
+   * @return {@code true} if an instance was given
+   */
+  public boolean isGivenInstance() {
+    return givenInstance;
+  }
+
   @Override
   public List<C> instantiateClasses(Parameterization config) {
     if(instances == null) {
@@ -42,6 +42,11 @@ public class ObjectParameter<C> extends ClassParameter<C> {
    */
   private C instance;
 
+  /**
+   * Flag whether the value was given as an instance, not as a class.
+   */
+  private boolean givenInstance = false;
+
   /**
    * Constructs a class parameter with the given optionID, restriction class,
    * and default value.
@@ -116,10 +121,21 @@ public class ObjectParameter<C> extends ClassParameter<C> {
     // This is a bit hackish. But when given an appropriate instance, keep it.
     if(restrictionClass.isInstance(obj)) {
       instance = (C) obj;
+      givenInstance = true;
     }
     super.setValue(obj);
   }
 
+  /**
+   * Test whether the value was given as an object instance, rather than as a
+   * class that can be instantiated again.
+   * 
+   * @return {@code true} if an instance was given
+   */
+  public boolean isGivenInstance() {
+    return givenInstance;
+  }
+
   /**
    * Returns a string representation of the parameter's type.
    * 
@@ -0,0 +1,123 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for block-level sampling of line-based input.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BlockSamplingInputStreamTest {
+  @Test
+  public void testCompleteLines() throws IOException {
+    byte[] data = makeData(1000);
+    String[] sample = sample(data, 100, 0.3, 1L).split("\n");
+    assertEquals("First line not kept.", "header", sample[0]);
+    assertTrue("Sample too small.", sample.length > 150);
+    assertTrue("Sample too large.", sample.length < 450);
+    int prev = -1;
+    for(int i = 1; i < sample.length; i++) {
+      String[] parts = sample[i].split(" ");
+      int id = Integer.parseInt(parts[0]);
+      assertTrue("Lines not in order.", id > prev);
+      assertEquals("Incomplete line.", makeLine(id), sample[i]);
+      prev = id;
+    }
+  }
+
+  @Test
+  public void testReproducible() throws IOException {
+    byte[] data = makeData(1000);
+    assertEquals("Sample not reproducible.", sample(data, 64, 0.5, 2L), sample(data, 64, 0.5, 2L));
+  }
+
+  @Test
+  public void testExtremes() throws IOException {
+    byte[] data = makeData(1000);
+    assertArrayEquals("Full sample differs.", data, sample(data, 100, 1., 0L).getBytes(StandardCharsets.UTF_8));
+    assertEquals("Empty sample differs.", "header\n", sample(data, 100, 0., 0L));
+    // Blocks shorter than a line:
+    assertArrayEquals("Full sample differs.", data, sample(data, 3, 1., 0L).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Sample from a byte array.
+   *
+   * @param data Data
+   * @param blocksize Block size
+   * @param prob Probability
+   * @param seed Random seed
+   * @return Sampled data
+   * @throws IOException never
+   */
+  private static String sample(byte[] data, int blocksize, double prob, long seed) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new BlockSamplingInputStream(new ByteArrayInputStream(data), blocksize, prob, new Random(seed))) {
+      byte[] buf = new byte[17];
+      for(int r; (r = in.read(buf)) >= 0;) {
+        out.write(buf, 0, r);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Generate test data, with lines of varying length.
+   *
+   * @param n Number of lines
+   * @return Data
+   */
+  private static byte[] makeData(int n) {
+    StringBuilder buf = new StringBuilder().append("header\n");
+    for(int i = 0; i < n; i++) {
+      buf.append(makeLine(i)).append('\n');
+    }
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Generate a test line.
+   *
+   * @param i Line number
+   * @return Line
+   */
+  private static String makeLine(int i) {
+    StringBuilder buf = new StringBuilder().append(i);
+    for(int j = 0; j < i % 7; j++) {
+      buf.append(' ').append(i * j);
+    }
+    return buf.toString();
+  }
+}
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.utilities.io;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 /**
@@ -85,6 +87,26 @@ public class ParseUtilTest {
     assertEquals(1, ParseUtil.parseDouble("+1"), 0.);
   }
 
+  @Test
+  public void testExactRounding() {
+    // Hard cases: halfway points, subnormals, and the largest values.
+    String[] hard = { "9007199254740993", "9007199254740995", "1e23", "8.988465674311579e307", //
+        "1.7976931348623157e308", "1.7976931348623158e308", "4.9e-324", "2.4703282292062328e-324", //
+        "2.4703282292062327e-324", "2.2250738585072011e-308", "0.1", "1e-400", "-0" };
+    for(String s : hard) {
+      assertExact(s);
+    }
+    Random r = new Random(0L);
+    for(int i = 0; i < 100000; i++) {
+      assertExact(Double.toString(Double.longBitsToDouble(r.nextLong() >>> 1)).replace("Infinity", "1").replace("NaN", "1"));
+      assertExact((r.nextLong() >>> 1 + r.nextInt(63)) + "e" + (r.nextInt(700) - 350));
+    }
+  }
+
+  private static void assertExact(String s) {
+    assertEquals("Not exact: " + s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(ParseUtil.parseDouble(s)));
+  }
+
   @Test
   public void testBytes() {
     assertEquals(0., parseBytes("0"), 0.);
@@ -88,6 +88,25 @@ public class TokenizerTest {
     tokenizerTest(expect);
   }
 
+  @Test
+  public void testSeparators() {
+    final String input = "1,2 ;3\t4  5,,6 , 7;\t8 9 ";
+    String[] patterns = { "\\s*[,;\\s]\\s*", "\\s+", "\\s", ",", ";", "\t", " " };
+    for(String pattern : patterns) {
+      // Flags disable the hand-written scanner, and force regular expressions.
+      Tokenizer fast = new Tokenizer(Pattern.compile(pattern), "\"'");
+      Tokenizer regex = new Tokenizer(Pattern.compile(pattern, Pattern.MULTILINE), "\"'");
+      fast.initialize(input, 0, input.length());
+      regex.initialize(input, 0, input.length());
+      for(; regex.valid(); regex.advance(), fast.advance()) {
+        assertTrue("Tokenizer stopped early for " + pattern, fast.valid());
+        assertEquals("Token differs for " + pattern, regex.getSubstring(), fast.getSubstring());
+        assertEquals("Quoting differs for " + pattern, regex.isQuoted(), fast.isQuoted());
+      }
+      assertFalse("Spurious data for " + pattern, fast.valid());
+    }
+  }
+
   private void tokenizerTest(Object[] expect) {
     for(int i = 0; i < expect.length; i++, t.advance()) {
       assertTrue("Tokenizer stopped early.", t.valid());
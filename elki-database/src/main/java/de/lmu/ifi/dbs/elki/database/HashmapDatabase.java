@@ -131,28 +131,45 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
       return DBIDUtil.EMPTYDBIDS;
     }
     // insert into db
-    ArrayModifiableDBIDs newids = DBIDUtil.newArray(objpackages.dataLength());
+    final int len = objpackages.dataLength();
+    ArrayModifiableDBIDs newids = DBIDUtil.newArray(len);
     Relation<?>[] targets = alignColumns(objpackages);
+    for(int i = 0; i < targets.length; i++) {
+      if(!(targets[i] instanceof ModifiableRelation)) {
+        throw new AbortException("Non-modifiable relations have been added to the database.");
+      }
+    }
 
+    // Allocate all ids first, so indexes can be updated in bulk.
+    ArrayModifiableDBIDs generated = DBIDUtil.newArray();
     DBIDVar var = DBIDUtil.newVar();
-    for(int j = 0; j < objpackages.dataLength(); j++) {
-      // insert object
-      if(!objpackages.assignDBID(j, var)) {
+    for(int j = 0; j < len; j++) {
+      final boolean assigned = objpackages.assignDBID(j, var);
+      if(!assigned) {
         var.set(DBIDUtil.generateSingleDBID());
       }
-      if(ids.contains(var)) {
-        throw new AbortException("Duplicate DBID conflict.");
-      }
-      ids.add(var);
-      for(int i = 0; i < targets.length; i++) {
-        if(!(targets[i] instanceof ModifiableRelation)) {
-          throw new AbortException("Non-modifiable relations have been added to the database.");
+      if(!ids.add(var)) {
+        ids.removeDBIDs(newids);
+        // Release the DBIDs generated for this batch.
+        for(DBIDIter iter = generated.iter(); iter.valid(); iter.advance()) {
+          DBIDFactory.FACTORY.deallocateSingleDBID(iter);
         }
-        @SuppressWarnings("unchecked")
-        final ModifiableRelation<Object> relation = (ModifiableRelation<Object>) targets[i];
-        relation.insert(var, objpackages.data(j, i));
+        throw new AbortException("Duplicate DBID conflict.");
       }
       newids.add(var);
+      if(!assigned) {
+        generated.add(var);
+      }
+    }
+    // Insert column-wise.
+    for(int i = 0; i < targets.length; i++) {
+      ArrayList<Object> column = new ArrayList<>(len);
+      for(int j = 0; j < len; j++) {
+        column.add(objpackages.data(j, i));
+      }
+      @SuppressWarnings("unchecked")
+      final ModifiableRelation<Object> relation = (ModifiableRelation<Object>) targets[i];
+      relation.insertAll(newids, column);
     }
 
     // fire insertion event
@@ -219,9 +236,8 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
   }
 
   /**
-   * Removes the objects from the database (by calling
-   * {@link #doDelete(DBIDRef)} for each object) and indexes and fires a
-   * deletion event.
+   * Removes the objects from the database and indexes, and fires a deletion
+   * event. Relations and their indexes are updated in bulk.
    *
    * {@inheritDoc}
    */
@@ -237,8 +253,19 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
       bundle.appendColumn(relation.getDataTypeInformation(), data);
     }
     // remove from db
+    this.ids.removeDBIDs(ids);
+    for(Relation<?> relation : relations) {
+      // ID has already been removed, and this would loop...
+      if(relation == idrep) {
+        continue;
+      }
+      if(!(relation instanceof ModifiableRelation)) {
+        throw new AbortException("Non-modifiable relations have been added to the database.");
+      }
+      ((ModifiableRelation<?>) relation).deleteAll(ids);
+    }
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      doDelete(iter);
+      DBIDFactory.FACTORY.deallocateSingleDBID(iter);
     }
     // fire deletion event
     eventManager.fireObjectsRemoved(ids);
@@ -309,7 +336,7 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
     /**
      * Indexes to add.
      */
-    private Collection<IndexFactory<?, ?>> indexFactories;
+    protected Collection<IndexFactory<?, ?>> indexFactories;
 
     @Override
     protected void makeOptions(Parameterization config) {
@@ -22,13 +22,16 @@ package de.lmu.ifi.dbs.elki.database;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.NormCachingDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanNormCachingDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanEuclideanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanNormCachingDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveSimilarityRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanSimilarityRangeQuery;
@@ -229,6 +232,10 @@ public final class QueryUtil {
   @SuppressWarnings("unchecked")
   public static <O> KNNQuery<O> getLinearScanKNNQuery(DistanceQuery<O> distanceQuery) {
     // Slight optimizations of linear scans
+    if(distanceQuery instanceof NormCachingDistanceQuery) {
+      final NormCachingDistanceQuery<NumberVector> ndq = (NormCachingDistanceQuery<NumberVector>) distanceQuery;
+      return (KNNQuery<O>) new LinearScanNormCachingDistanceKNNQuery<>(ndq);
+    }
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
       if(EuclideanDistanceFunction.STATIC.equals(pdq.getDistanceFunction())) {
@@ -250,6 +257,10 @@ public final class QueryUtil {
   @SuppressWarnings("unchecked")
   public static <O> RangeQuery<O> getLinearScanRangeQuery(DistanceQuery<O> distanceQuery) {
     // Slight optimizations of linear scans
+    if(distanceQuery instanceof NormCachingDistanceQuery) {
+      final NormCachingDistanceQuery<NumberVector> ndq = (NormCachingDistanceQuery<NumberVector>) distanceQuery;
+      return (RangeQuery<O>) new LinearScanNormCachingDistanceRangeQuery<>(ndq);
+    }
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
       if(EuclideanDistanceFunction.STATIC.equals(pdq.getDistanceFunction())) {
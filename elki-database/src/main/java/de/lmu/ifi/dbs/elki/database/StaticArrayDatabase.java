@@ -21,13 +21,16 @@
 package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
+import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
@@ -35,13 +38,17 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.SnapshotDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedVectorColumn;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +87,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Fingerprint of the index configuration, to detect stale index snapshots.
+   */
+  private long indexConfig;
+
   /**
    * Constructor.
    *
@@ -87,8 +99,21 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, 0L);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param indexConfig Fingerprint of the index configuration, used with a
+   *        {@link SnapshotDatabaseConnection}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, long indexConfig) {
     super();
     this.databaseConnection = databaseConnection;
+    this.indexConfig = indexConfig;
     this.ids = null;
     this.idrep = null;
 
@@ -116,6 +141,8 @@ public class StaticArrayDatabase extends AbstractDatabase {
         LOG.debugFine("Loading data from database connection.");
       }
       MultipleObjectsBundle bundle = databaseConnection.loadData();
+      // Index snapshots, if supported by the connection.
+      final SnapshotDatabaseConnection snapshot = databaseConnection instanceof SnapshotDatabaseConnection ? (SnapshotDatabaseConnection) databaseConnection : null;
       // Run at most once.
       databaseConnection = null;
 
@@ -145,16 +172,29 @@ public class StaticArrayDatabase extends AbstractDatabase {
         SimpleTypeInformation<?> meta = bundle.meta(i);
         @SuppressWarnings("unchecked")
         SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        final List<?> column = bundle.getColumn(i);
+        DataStore<Object> store;
+        if(column instanceof MappedVectorColumn && ids instanceof DBIDRange) {
+          // Use memory-mapped vectors directly, without copying.
+          @SuppressWarnings("unchecked")
+          DataStore<Object> mapped = (DataStore<Object>) (DataStore<?>) ((MappedVectorColumn) column).asDataStore((DBIDRange) ids);
+          store = mapped;
+        }
+        else {
+          WritableDataStore<Object> wstore = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            wstore.put(it, bundle.data(it.getOffset(), i));
+          }
+          store = wstore;
         }
         Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
+        int j = 0;
         for(IndexFactory<?, ?> factory : indexFactories) {
+          ++j;
           if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
@@ -162,7 +202,14 @@ public class StaticArrayDatabase extends AbstractDatabase {
             final Relation<Object> orep = (Relation<Object>) relation;
             final Index index = ofact.instantiate(orep);
             Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
-            index.initialize();
+            final String key = i + "-" + j;
+            if(snapshot == null || !(index instanceof SnapshotIndex) //
+                || !snapshot.restoreIndex((SnapshotIndex) index, key, indexConfig)) {
+              index.initialize();
+              if(snapshot != null && index instanceof SnapshotIndex) {
+                snapshot.writeIndex((SnapshotIndex) index, key, indexConfig);
+              }
+            }
             if(duration != null) {
               LOG.statistics(duration.end());
             }
@@ -199,6 +246,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Fingerprint of the index configuration.
+     */
+    private long indexConfig;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -208,15 +260,17 @@ public class StaticArrayDatabase extends AbstractDatabase {
         databaseConnection = dbcP.instantiateClass(config);
       }
       // Get indexes.
+      TrackParameters track = new TrackParameters(config);
       final ObjectListParameter<IndexFactory<?, ?>> indexFactoryP = new ObjectListParameter<>(INDEX_ID, IndexFactory.class, true);
-      if(config.grab(indexFactoryP)) {
-        indexFactories = indexFactoryP.instantiateClasses(config);
+      if(track.grab(indexFactoryP)) {
+        indexFactories = indexFactoryP.instantiateClasses(track);
+        indexConfig = SnapshotDatabaseConnection.fingerprint(track);
       }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, indexConfig);
     }
   }
 }
@@ -0,0 +1,349 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.LongParameter;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+
+/**
+ * Database that consumes a {@link BundleStreamSource} in micro-batches, and
+ * only retains a sliding window of the most recent objects.
+ * <p>
+ * Every micro-batch is inserted at once, and objects that fall out of the
+ * window (either by count, or by age) are deleted at once afterwards. Both
+ * changes are propagated through the usual {@link DatabaseEventManager}, so
+ * any {@link de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener} sees
+ * exactly one insertion and at most one removal event per micro-batch, and
+ * dynamic indexes (such as the kNN preprocessors used by incremental
+ * algorithms) receive their updates in bulk.
+ * <p>
+ * Additional data can be appended at any time using
+ * {@link #ingest(BundleStreamSource)}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses BundleStreamSource
+ */
+@Description("Database processing a data stream in micro-batches, retaining a sliding window.")
+public class StreamingDatabase extends HashmapDatabase {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(StreamingDatabase.class);
+
+  /**
+   * Number of objects per micro-batch.
+   */
+  private int batchsize;
+
+  /**
+   * Maximum number of objects in the window, 0 for unlimited.
+   */
+  private int windowsize;
+
+  /**
+   * Maximum age of objects in the window (in milliseconds), 0 for unlimited.
+   */
+  private long windowtime;
+
+  /**
+   * Objects in the window, in arrival order.
+   */
+  private ArrayDeque<DBID> window = new ArrayDeque<>();
+
+  /**
+   * Arrival times, aligned with {@link #window}.
+   */
+  private LongArrayFIFOQueue arrival = new LongArrayFIFOQueue();
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param batchsize Number of objects per micro-batch
+   * @param windowsize Maximum number of objects retained, 0 for unlimited
+   * @param windowtime Maximum age of objects retained (ms), 0 for unlimited
+   */
+  public StreamingDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, int batchsize, int windowsize, long windowtime) {
+    super(databaseConnection, indexFactories);
+    this.batchsize = batchsize > 0 ? batchsize : Integer.MAX_VALUE;
+    this.windowsize = windowsize;
+    this.windowtime = windowtime;
+  }
+
+  /**
+   * Initialize the database by streaming the initial data from the database
+   * connection. Only the current micro-batch and the window are kept in
+   * memory, unless the connection or one of its filters needs to materialize
+   * the data.
+   */
+  @Override
+  public void initialize() {
+    if(databaseConnection != null) {
+      ingest(databaseConnection.loadStream());
+      // Run at most once.
+      databaseConnection = null;
+    }
+  }
+
+  /**
+   * Consume a data stream, in micro-batches.
+   *
+   * @param source Data stream
+   * @return Number of objects read from the stream
+   */
+  public int ingest(BundleStreamSource source) {
+    BundleMeta meta = null;
+    List<List<Object>> columns = null;
+    ArrayModifiableDBIDs ids = null;
+    DBIDVar var = DBIDUtil.newVar();
+    int total = 0, pending = 0;
+    while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case END_OF_STREAM:
+        if(pending > 0) {
+          processBatch(meta, columns, ids);
+        }
+        return total;
+      case META_CHANGED:
+        // Flush the objects of the previous layout first.
+        if(pending > 0) {
+          processBatch(meta, columns, ids);
+          pending = 0;
+        }
+        meta = source.getMeta();
+        columns = new ArrayList<>(meta.size());
+        for(int i = 0; i < meta.size(); i++) {
+          columns.add(new ArrayList<>());
+        }
+        ids = source.hasDBIDs() ? DBIDUtil.newArray() : null;
+        continue;
+      case NEXT_OBJECT:
+        for(int i = 0; i < columns.size(); i++) {
+          columns.get(i).add(source.data(i));
+        }
+        if(ids != null) {
+          if(source.assignDBID(var)) {
+            ids.add(var);
+          }
+          else {
+            LOG.warning("Not every object had an DBID - discarding DBIDs.");
+            ids = null;
+          }
+        }
+        ++total;
+        if(++pending >= batchsize) {
+          processBatch(meta, columns, ids);
+          pending = 0;
+          columns = new ArrayList<>(meta.size());
+          for(int i = 0; i < meta.size(); i++) {
+            columns.add(new ArrayList<>());
+          }
+          ids = ids != null ? DBIDUtil.newArray() : null;
+        }
+        continue;
+      default:
+        LOG.warning("Unknown event: " + ev);
+        continue;
+      }
+    }
+  }
+
+  /**
+   * Insert a single micro-batch, then expire old objects.
+   *
+   * @param meta Bundle meta
+   * @param columns Data columns
+   * @param ids Object ids, may be {@code null}
+   */
+  private void processBatch(BundleMeta meta, List<List<Object>> columns, ArrayModifiableDBIDs ids) {
+    MultipleObjectsBundle batch = new MultipleObjectsBundle();
+    for(int i = 0; i < meta.size(); i++) {
+      batch.appendColumn(meta.get(i), columns.get(i));
+    }
+    if(ids != null) {
+      batch.setDBIDs(ids);
+    }
+    DBIDs newids = insert(batch);
+    final long now = currentTime();
+    for(DBIDIter it = newids.iter(); it.valid(); it.advance()) {
+      window.addLast(DBIDUtil.deref(it));
+      arrival.enqueue(now);
+    }
+    expire(now);
+  }
+
+  /**
+   * Remove all objects that are no longer in the window.
+   *
+   * @param now Current time
+   */
+  protected void expire(long now) {
+    // The first relation is always the DBID view of the current contents.
+    final DBIDs present = relations.get(0).getDBIDs();
+    ArrayModifiableDBIDs expired = DBIDUtil.newArray();
+    while(!window.isEmpty()) {
+      if(!(windowsize > 0 && window.size() > windowsize) //
+          && !(windowtime > 0 && now - arrival.firstLong() > windowtime)) {
+        break;
+      }
+      DBID id = window.removeFirst();
+      arrival.dequeueLong();
+      // Skip objects that were deleted manually.
+      if(present.contains(id)) {
+        expired.add(id);
+      }
+    }
+    if(!expired.isEmpty()) {
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Expiring " + expired.size() + " objects from the window.");
+      }
+      delete(expired);
+    }
+  }
+
+  /**
+   * Expire objects based on the current time only, e.g. when the stream is
+   * idle but a time-based window is used.
+   */
+  public void expire() {
+    expire(currentTime());
+  }
+
+  /**
+   * Get the objects currently in the window, in arrival order.
+   *
+   * @return Object ids
+   */
+  public ArrayDBIDs getWindowDBIDs() {
+    final DBIDs present = relations.get(0).getDBIDs();
+    ArrayModifiableDBIDs ret = DBIDUtil.newArray(window.size());
+    for(DBID id : window) {
+      if(present.contains(id)) {
+        ret.add(id);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Current time, used for time-based windows.
+   *
+   * @return Time in milliseconds
+   */
+  protected long currentTime() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends HashmapDatabase.Parameterizer {
+    /**
+     * Number of objects per micro-batch.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("streamdb.batchsize", "Number of objects to insert at once.");
+
+    /**
+     * Maximum number of objects in the window.
+     */
+    public static final OptionID WINDOWSIZE_ID = new OptionID("streamdb.window.size", "Maximum number of objects to retain, 0 for unlimited.");
+
+    /**
+     * Maximum age of objects in the window.
+     */
+    public static final OptionID WINDOWTIME_ID = new OptionID("streamdb.window.time", "Maximum age of objects to retain (in milliseconds), 0 for unlimited.");
+
+    /**
+     * Number of objects per micro-batch.
+     */
+    protected int batchsize;
+
+    /**
+     * Maximum number of objects in the window.
+     */
+    protected int windowsize;
+
+    /**
+     * Maximum age of objects in the window.
+     */
+    protected long windowtime;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchP)) {
+        batchsize = batchP.intValue();
+      }
+      IntParameter sizeP = new IntParameter(WINDOWSIZE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(sizeP)) {
+        windowsize = sizeP.intValue();
+      }
+      LongParameter timeP = new LongParameter(WINDOWTIME_ID, 0L);
+      if(config.grab(timeP)) {
+        windowtime = timeP.getValue();
+      }
+    }
+
+    @Override
+    protected StreamingDatabase makeInstance() {
+      return new StreamingDatabase(databaseConnection, indexFactories, batchsize, windowsize, windowtime);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -35,6 +36,7 @@ import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import net.jafama.FastMath;
 
 /**
  * Instance of this query for a particular database.
@@ -50,6 +52,11 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @apiviz.uses SquaredEuclideanDistanceFunction
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Tolerance factor for pruning, to account for rounding errors.
+   */
+  private static final double PRUNING_SLACK = 1 + 1e-10;
+
   /**
    * Constructor.
    *
@@ -124,13 +131,26 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     final Relation<? extends O> relation = getRelation();
     final int size = objs.size();
+    // Precompute the vector lengths of the query objects, for pruning with the
+    // reverse triangle inequality: (|q| - |c|)^2 <= |q - c|^2
+    final double[] norms = new double[size];
+    for(int index = 0; index < size; index++) {
+      norms[index] = FastMath.sqrt(VectorUtil.squaredLength(objs.get(index)));
+    }
     // Linear scan style KNN.
     for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
       O candidate = relation.get(iter);
+      final double cnorm = FastMath.sqrt(VectorUtil.squaredLength(candidate));
       for(int index = 0; index < size; index++) {
         final KNNHeap heap = heaps.get(index);
+        final double kdist = heap.getKNNDistance();
+        final double lb = norms[index] - cnorm;
+        // Slightly conservative, to not lose ties due to rounding.
+        if(lb * lb > kdist * PRUNING_SLACK) {
+          continue;
+        }
         final double dist = squared.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
+        if(dist <= kdist) {
           heap.insert(dist, iter);
         }
       }
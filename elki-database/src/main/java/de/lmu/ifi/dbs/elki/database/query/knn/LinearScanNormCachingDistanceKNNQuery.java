@@ -0,0 +1,138 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.NormCachingDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NormCachingDistanceFunction;
+
+/**
+ * Linear scan kNN query for distance functions with cached norms.
+ *
+ * The norm of the query object is computed only once, the norms of the
+ * database objects are taken from the cache of the distance query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses NormCachingDistanceQuery
+ *
+ * @param <O> Object type
+ */
+public class LinearScanNormCachingDistanceKNNQuery<O extends SpatialComparable> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Distance query with norm cache.
+   */
+  private NormCachingDistanceQuery<O> normQuery;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance function to use
+   */
+  public LinearScanNormCachingDistanceKNNQuery(NormCachingDistanceQuery<O> distanceQuery) {
+    super(distanceQuery);
+    this.normQuery = distanceQuery;
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    final O obj = getRelation().get(id);
+    return linearScan(getRelation().iterDBIDs(), obj, normQuery.norm(id, obj), DBIDUtil.newHeap(k)).toKNNList();
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    return linearScan(getRelation().iterDBIDs(), obj, normQuery.getNormFunction().cachedNorm(obj), DBIDUtil.newHeap(k)).toKNNList();
+  }
+
+  /**
+   * Main loop of the linear scan.
+   *
+   * @param iter ID iterator
+   * @param obj Query object
+   * @param norm Norm of the query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private KNNHeap linearScan(DBIDIter iter, final O obj, final double norm, KNNHeap heap) {
+    final Relation<? extends O> relation = getRelation();
+    final NormCachingDistanceQuery<O> nq = this.normQuery;
+    final NormCachingDistanceFunction<? super O> nf = nq.getNormFunction();
+    double max = Double.POSITIVE_INFINITY;
+    while(iter.valid()) {
+      final O other = relation.get(iter);
+      final double dist = nf.distance(obj, other, norm, nq.norm(iter, other));
+      if(dist <= max) {
+        max = heap.insert(dist, iter);
+      }
+      iter.advance();
+    }
+    return heap;
+  }
+
+  @Override
+  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    final Relation<? extends O> relation = getRelation();
+    final NormCachingDistanceQuery<O> nq = this.normQuery;
+    final NormCachingDistanceFunction<? super O> nf = nq.getNormFunction();
+    final int size = ids.size();
+    final List<KNNHeap> heaps = new ArrayList<>(size);
+    final List<O> objs = new ArrayList<>(size);
+    final double[] norms = new double[size];
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      heaps.add(DBIDUtil.newHeap(k));
+      final O obj = relation.get(iter);
+      objs.add(obj);
+      norms[i] = nq.norm(iter, obj);
+    }
+    // Linear scan style KNN.
+    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      final O candidate = relation.get(iter);
+      final double cnorm = nq.norm(iter, candidate);
+      for(int index = 0; index < size; index++) {
+        final KNNHeap heap = heaps.get(index);
+        final double dist = nf.distance(objs.get(index), candidate, norms[index], cnorm);
+        if(dist <= heap.getKNNDistance()) {
+          heap.insert(dist, iter);
+        }
+      }
+    }
+
+    List<KNNList> result = new ArrayList<>(size);
+    for(KNNHeap heap : heaps) {
+      result.add(heap.toKNNList());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.NormCachingDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NormCachingDistanceFunction;
+
+/**
+ * Linear scan range query for distance functions with cached norms.
+ *
+ * The norm of the query object is computed only once, the norms of the
+ * database objects are taken from the cache of the distance query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses NormCachingDistanceQuery
+ *
+ * @param <O> Database object type
+ */
+public class LinearScanNormCachingDistanceRangeQuery<O extends SpatialComparable> extends AbstractDistanceRangeQuery<O> implements LinearScanQuery {
+  /**
+   * Distance query with norm cache.
+   */
+  private NormCachingDistanceQuery<O> normQuery;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance function to use
+   */
+  public LinearScanNormCachingDistanceRangeQuery(NormCachingDistanceQuery<O> distanceQuery) {
+    super(distanceQuery);
+    this.normQuery = distanceQuery;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
+    getRangeForDBID(id, range, result);
+    result.sort();
+    return result;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList neighbors) {
+    final O obj = getRelation().get(id);
+    linearScan(getRelation().iterDBIDs(), obj, normQuery.norm(id, obj), range, neighbors);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList neighbors) {
+    linearScan(getRelation().iterDBIDs(), obj, normQuery.getNormFunction().cachedNorm(obj), range, neighbors);
+  }
+
+  /**
+   * Main loop for linear scan,
+   *
+   * @param iter Iterator
+   * @param obj Query object
+   * @param norm Norm of the query object
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private void linearScan(DBIDIter iter, O obj, double norm, double range, ModifiableDoubleDBIDList result) {
+    final Relation<? extends O> relation = getRelation();
+    final NormCachingDistanceQuery<O> nq = this.normQuery;
+    final NormCachingDistanceFunction<? super O> nf = nq.getNormFunction();
+    while(iter.valid()) {
+      final O other = relation.get(iter);
+      final double distance = nf.distance(obj, other, norm, nq.norm(iter, other));
+      if(distance <= range) {
+        result.add(distance, iter);
+      }
+      iter.advance();
+    }
+  }
+}
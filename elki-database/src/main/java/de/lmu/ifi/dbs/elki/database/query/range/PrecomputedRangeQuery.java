@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+
+/**
+ * Range query answered from precomputed neighbor lists, e.g. the result of an
+ * index similarity self-join.
+ *
+ * Queries with a radius larger than the precomputed radius, and queries for
+ * objects not in the database, are passed on to a fallback query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Database object type
+ */
+public class PrecomputedRangeQuery<O> implements RangeQuery<O> {
+  /**
+   * Precomputed neighbor lists, sorted by distance.
+   */
+  protected final DataStore<? extends DoubleDBIDList> neighbors;
+
+  /**
+   * Radius of the precomputed neighbor lists.
+   */
+  protected final double range;
+
+  /**
+   * Fallback query.
+   */
+  protected final RangeQuery<O> inner;
+
+  /**
+   * Constructor.
+   *
+   * @param neighbors Precomputed neighbor lists, sorted by distance
+   * @param range Radius of the precomputed lists
+   * @param inner Fallback query
+   */
+  public PrecomputedRangeQuery(DataStore<? extends DoubleDBIDList> neighbors, double range, RangeQuery<O> inner) {
+    super();
+    this.neighbors = neighbors;
+    this.range = range;
+    this.inner = inner;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    if(range > this.range) {
+      return inner.getRangeForDBID(id, range);
+    }
+    ModifiableDoubleDBIDList ret = DBIDUtil.newDistanceDBIDList();
+    getRangeForDBID(id, range, ret);
+    return ret;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
+    DoubleDBIDList list = range <= this.range ? neighbors.get(id) : null;
+    if(list == null) {
+      inner.getRangeForDBID(id, range, result);
+      return;
+    }
+    // Lists are sorted, so we only need a prefix.
+    for(DoubleDBIDListIter it = list.iter(); it.valid() && it.doubleValue() <= range; it.advance()) {
+      result.add(it.doubleValue(), it);
+    }
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForObject(O obj, double range) {
+    return inner.getRangeForObject(obj, range);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+    inner.getRangeForObject(obj, range, result);
+  }
+}
@@ -20,10 +20,15 @@
  */
 package de.lmu.ifi.dbs.elki.database.relation;
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.PrecomputedRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
@@ -33,6 +38,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.DBIDSimilarityFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
 import de.lmu.ifi.dbs.elki.index.DistanceIndex;
+import de.lmu.ifi.dbs.elki.index.JoinIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RKNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
@@ -144,6 +150,20 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     if(distanceQuery == null) {
       throw new AbortException("Range query requested for 'null' distance!");
     }
+    // Heavy bulk use with a known radius: answer all queries with one
+    // self-join. This materializes all neighborhoods, so it is opt-in only.
+    final double joinRange = getSelfJoinRange(hints);
+    if(joinRange == joinRange) { // Not NaN
+      for(It<JoinIndex<O>> it = getHierarchy().iterChildrenReverse(this).filter(JoinIndex.class); it.valid(); it.advance()) {
+        DataStore<DoubleDBIDList> joined = it.get().rangeSelfJoin(distanceQuery, joinRange);
+        if(getLogger().isDebuggingFinest()) {
+          getLogger().debugFinest((joined != null ? "Using" : "Not using") + " index for range self-join: " + it.get());
+        }
+        if(joined != null) {
+          return new PrecomputedRangeQuery<>(joined, joinRange, getRangeQuery(distanceQuery, removeBulkHint(hints)));
+        }
+      }
+    }
     for(It<RangeIndex<O>> it = getHierarchy().iterChildrenReverse(this).filter(RangeIndex.class); it.valid(); it.advance()) {
       RangeQuery<O> q = it.get().getRangeQuery(distanceQuery, hints);
       if(getLogger().isDebuggingFinest()) {
@@ -175,6 +195,48 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     return QueryUtil.getLinearScanRangeQuery(distanceQuery);
   }
 
+  /**
+   * Get the query radius, if the hints request a precomputed self-join: both
+   * {@link DatabaseQuery#HINT_BULK} and {@link DatabaseQuery#HINT_HEAVY_USE},
+   * and a fixed radius.
+   *
+   * @param hints Query hints
+   * @return Radius, or NaN
+   */
+  private static double getSelfJoinRange(Object... hints) {
+    boolean bulk = false, heavy = false;
+    double range = Double.NaN;
+    for(Object hint : hints) {
+      if(hint == DatabaseQuery.HINT_BULK) {
+        bulk = true;
+      }
+      else if(hint == DatabaseQuery.HINT_HEAVY_USE) {
+        heavy = true;
+      }
+      else if(hint instanceof Double) {
+        range = (Double) hint;
+      }
+    }
+    return bulk && heavy ? range : Double.NaN;
+  }
+
+  /**
+   * Remove the bulk hint from a list of hints.
+   *
+   * @param hints Query hints
+   * @return Hints without {@link DatabaseQuery#HINT_BULK}
+   */
+  private static Object[] removeBulkHint(Object... hints) {
+    Object[] ret = new Object[hints.length];
+    int n = 0;
+    for(Object hint : hints) {
+      if(hint != DatabaseQuery.HINT_BULK) {
+        ret[n++] = hint;
+      }
+    }
+    return Arrays.copyOf(ret, n);
+  }
+
   @Override
   public RangeQuery<O> getSimilarityRangeQuery(SimilarityQuery<O> simQuery, Object... hints) {
     if(simQuery == null) {
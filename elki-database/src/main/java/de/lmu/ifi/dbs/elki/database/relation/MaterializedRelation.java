@@ -20,11 +20,15 @@
  */
 package de.lmu.ifi.dbs.elki.database.relation;
 
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -181,6 +185,54 @@ public class MaterializedRelation<O> extends AbstractRelation<O> implements Modi
     ((WritableDataStore<O>) content).delete(id);
   }
 
+  /**
+   * Insert the values of multiple objects, then notify the indexes once.
+   *
+   * @param ids IDs to insert
+   * @param vals Values, in the same order
+   */
+  @Override
+  public void insertAll(ArrayDBIDs ids, List<? extends O> vals) {
+    assert (ids.size() == vals.size());
+    if(!(content instanceof WritableDataStore)) {
+      throw new AbortException("Data is stored in a non-writable data store. Modifications are not possible.");
+    }
+    final WritableDataStore<O> store = (WritableDataStore<O>) content;
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      assert (this.ids.contains(iter)) : "Object not yet in DBIDs.";
+      store.put(iter, vals.get(iter.getOffset()));
+    }
+    for(It<Index> it = this.getHierarchy().iterDescendants(this).filter(Index.class); it.valid(); it.advance()) {
+      if(!(it.get() instanceof DynamicIndex)) {
+        throw new AbortException("A non-dynamic index was added to this database. Modifications are not allowed, unless this index is removed.");
+      }
+      ((DynamicIndex) it.get()).insertAll(ids);
+    }
+  }
+
+  /**
+   * Delete the values of multiple objects, notifying the indexes once.
+   *
+   * @param ids IDs to delete
+   */
+  @Override
+  public void deleteAll(DBIDs ids) {
+    if(!(content instanceof WritableDataStore)) {
+      throw new AbortException("Data is stored in a non-writable data store. Modifications are not possible.");
+    }
+    for(It<Index> it = this.getHierarchy().iterDescendants(this).filter(Index.class); it.valid(); it.advance()) {
+      if(!(it.get() instanceof DynamicIndex)) {
+        throw new AbortException("A non-dynamic index was added to this database. Modifications are not allowed, unless this index is removed.");
+      }
+      ((DynamicIndex) it.get()).deleteAll(ids);
+    }
+    final WritableDataStore<O> store = (WritableDataStore<O>) content;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      assert (!this.ids.contains(iter)) : "Object still in DBIDs.";
+      store.delete(iter);
+    }
+  }
+
   @Override
   public StaticDBIDs getDBIDs() {
     return ids;
@@ -24,12 +24,14 @@ import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -37,6 +39,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
@@ -116,7 +119,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    *
    * @apiviz.has LocalitySensitiveHashFunction
    */
-  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V>, DynamicIndex {
     /**
      * Hash functions to use.
      */
@@ -167,28 +170,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
       int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
       for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
-        }
+        addToTables(iter, relation.get(iter), buf, expect);
         LOG.incrementProcessed(progress);
       }
       LOG.ensureCompleted(progress);
@@ -208,6 +190,99 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       }
     }
 
+    /**
+     * Add an object to all hash tables.
+     *
+     * @param id Object id
+     * @param obj Object
+     * @param buf Projection buffer
+     * @param expect Expected bucket size
+     */
+    private void addToTables(DBIDRef id, V obj, double[] buf, int expect) {
+      for(int i = 0, numhash = hashtables.size(); i < numhash; i++) {
+        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
+        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
+        // Get the initial (unbounded) hash code:
+        int hash = hashfunc.hashObject(obj, buf);
+        // Reduce to hash table size
+        int bucket = hash % numberOfBuckets;
+        DBIDs cur = table.get(bucket);
+        if(cur == null) {
+          table.put(bucket, DBIDUtil.deref(id));
+        }
+        else if(cur.size() > 1) {
+          ((ModifiableDBIDs) cur).add(id);
+        }
+        else {
+          ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
+          newbuck.addDBIDs(cur);
+          newbuck.add(id);
+          table.put(bucket, newbuck);
+        }
+      }
+    }
+
+    /**
+     * Remove an object from all hash tables.
+     *
+     * @param id Object id
+     * @param obj Object
+     * @param buf Projection buffer
+     * @return {@code true} if the object was found
+     */
+    private boolean removeFromTables(DBIDRef id, V obj, double[] buf) {
+      boolean found = false;
+      for(int i = 0, numhash = hashtables.size(); i < numhash; i++) {
+        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
+        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
+        int bucket = hashfunc.hashObject(obj, buf) % numberOfBuckets;
+        DBIDs cur = table.get(bucket);
+        if(cur == null) {
+          continue;
+        }
+        if(cur.size() > 1) {
+          found |= ((ModifiableDBIDs) cur).remove(id);
+          if(cur.isEmpty()) {
+            table.remove(bucket);
+          }
+        }
+        else if(cur.contains(id)) {
+          table.remove(bucket);
+          found = true;
+        }
+      }
+      return found;
+    }
+
+    @Override
+    public void insert(DBIDRef id) {
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      addToTables(id, relation.get(id), buf, 2);
+    }
+
+    @Override
+    public void insertAll(DBIDs ids) {
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        addToTables(iter, relation.get(iter), buf, expect);
+      }
+    }
+
+    @Override
+    public boolean delete(DBIDRef id) {
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      return removeFromTables(id, relation.get(id), buf);
+    }
+
+    @Override
+    public void deleteAll(DBIDs ids) {
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        removeFromTables(iter, relation.get(iter), buf);
+      }
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -224,7 +299,8 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(!family.isCompatible(df)) {
         return null;
       }
-      return new LSHKNNQuery(distanceQuery);
+      ApproximationHint approx = ApproximationHint.find(hints);
+      return new LSHKNNQuery(distanceQuery, approx != null ? approx.getBudget() : Integer.MAX_VALUE);
     }
 
     @Override
@@ -248,10 +324,22 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      * @return Candidates
      */
     protected DBIDs getCandidates(V obj) {
+      return getCandidates(obj, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the candidates: points which have at least one hash bucket in common.
+     * Once the budget is reached, no further hash tables are probed.
+     * 
+     * @param obj Query object
+     * @param budget Candidate budget
+     * @return Candidates
+     */
+    protected DBIDs getCandidates(V obj, int budget) {
       ModifiableDBIDs candidates = null;
       final int numhash = hashtables.size();
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      for(int i = 0; i < numhash; i++) {
+      for(int i = 0; i < numhash && (candidates == null || candidates.size() < budget); i++) {
         final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
         final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
         // Get the initial (unbounded) hash code:
@@ -277,18 +365,25 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      * @apiviz.exclude
      */
     protected class LSHKNNQuery extends AbstractKNNQuery {
+      /**
+       * Candidate budget.
+       */
+      private final int budget;
+
       /**
        * Constructor.
        *
        * @param distanceQuery
+       * @param budget Candidate budget (approximate search)
        */
-      public LSHKNNQuery(DistanceQuery<V> distanceQuery) {
+      public LSHKNNQuery(DistanceQuery<V> distanceQuery, int budget) {
         super(distanceQuery);
+        this.budget = budget;
       }
 
       @Override
       public KNNList getKNNForObject(V obj, int k) {
-        DBIDs candidates = getCandidates(obj);
+        DBIDs candidates = getCandidates(obj, budget);
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
         for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
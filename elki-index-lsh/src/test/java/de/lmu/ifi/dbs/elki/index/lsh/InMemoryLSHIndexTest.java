@@ -0,0 +1,55 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the in-memory LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InMemoryLSHIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test dynamic updates of {@link InMemoryLSHIndex}.
+   *
+   * The bins are wider than the data set, so all objects share one bucket
+   * with overwhelming probability, and the results must be exact.
+   */
+  @Test
+  public void testLSHDynamic() {
+    ListParameterization lshparams = new ListParameterization();
+    lshparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+    lshparams.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    lshparams.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 3);
+    lshparams.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    lshparams.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, 1e6);
+    lshparams.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 2);
+    testDynamicEuclidean(lshparams, InMemoryLSHIndex.Instance.LSHKNNQuery.class, InMemoryLSHIndex.Instance.LSHRangeQuery.class);
+  }
+}
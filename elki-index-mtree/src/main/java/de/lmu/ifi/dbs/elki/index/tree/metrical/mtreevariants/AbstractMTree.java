@@ -20,26 +20,42 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.BreadthFirstEnumeration;
 import de.lmu.ifi.dbs.elki.index.tree.IndexTreePath;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.MetricalIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.Assignments;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.DistanceEntry;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPageSerializer;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
 /**
  * Abstract super class for all M-Tree variants.
  * 
@@ -88,6 +104,127 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     return settings.distanceFunction;
   }
 
+  /**
+   * Initialize the tree. When the page file already existed, the tree is
+   * reopened, and only the root entry is restored.
+   */
+  @Override
+  public void initialize() {
+    super.initialize();
+    if(initialized) {
+      E rootEntry = getRootEntry();
+      getRoot().adjustEntry(rootEntry, rootEntry.getRoutingObjectID(), rootEntry.getParentDistance(), this);
+    }
+  }
+
+  /**
+   * @return a new {@link MTreeHeader}
+   */
+  @Override
+  protected TreeIndexHeader createHeader() {
+    return new MTreeHeader(getPageSize(), dirCapacity, leafCapacity, dirMinimum, leafMinimum, getTreeType());
+  }
+
+  /**
+   * Determine the capacity of a node with the binary layout of
+   * {@link AbstractMTreeNode#writeExternal}, including the header of the page:
+   * the header of {@link ByteBufferPageSerializer} if the page file stores the
+   * binary layout directly, otherwise the header written by a persistent page
+   * file. Nodes are written with up to this many entries before they are
+   * split, i.e., the capacity includes the overflow.
+   *
+   * @param leaf Leaf node
+   * @param entryDataSize Size of the additional data of each entry
+   * @return Capacity
+   */
+  protected int pageCapacity(boolean leaf, int entryDataSize) {
+    final int base = AbstractMTreeNode.bufferSize(0, leaf, entryDataSize);
+    final int perEntry = AbstractMTreeNode.bufferSize(1, leaf, entryDataSize) - base;
+    if(getFile().usesBinaryLayout()) {
+      return (getPageSize() - ByteBufferPageSerializer.HEADER_SIZE - base) / perEntry;
+    }
+    int cap = (getPageSize() - base) / perEntry;
+    try {
+      for(; cap > 0; cap--) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        final int size = AbstractMTreeNode.bufferSize(cap, leaf, entryDataSize);
+        oos.writeInt(1); // Filled page marker
+        oos.writeInt(0); // Page id
+        oos.writeBoolean(leaf);
+        oos.writeInt(0); // Number of entries
+        oos.writeInt(size);
+        oos.write(new byte[size]);
+        oos.flush();
+        if(baos.size() <= getPageSize()) {
+          break;
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error determining page sizes.", e);
+    }
+    return cap;
+  }
+
+  /**
+   * Code of the tree type and its settings, stored in the {@link MTreeHeader}
+   * of persistent trees. The distance function is included with its string
+   * representation, which includes the parameters of most distance functions.
+   * Subclasses with additional settings that change the contents of the nodes
+   * should extend this.
+   *
+   * @return Tree type code
+   */
+  protected int getTreeType() {
+    final DistanceFunction<? super O> df = getDistanceFunction();
+    return (getClass().getName().hashCode() * 31 + df.getClass().getName().hashCode()) * 31 + df.toString().hashCode();
+  }
+
+  /**
+   * The objects indexed by this tree, of which a checksum is stored in the
+   * {@link MTreeHeader} of persistent trees.
+   *
+   * @return Indexed relation, {@code null} if unknown
+   */
+  protected Relation<?> getIndexedRelation() {
+    return null;
+  }
+
+  /**
+   * Reopen the tree from a persistent page file, if it was built with the
+   * same page size, tree type, and for the same data.
+   */
+  @Override
+  public void initializeFromFile(TreeIndexHeader header, PageFile<N> file) {
+    if(header.getLargestPageID() == 0) {
+      return; // Empty tree, build anew.
+    }
+    if(header.getPageSize() != file.getPageSize()) {
+      throw new AbortException("The persistent M-tree has a page size of " + header.getPageSize() + ", not " + file.getPageSize() + ".");
+    }
+    if(!(header instanceof MTreeHeader) || ((MTreeHeader) header).getTreeType() != getTreeType()) {
+      throw new AbortException("The persistent M-tree was built with a different tree type, distance function or settings.");
+    }
+    if(!((MTreeHeader) header).matchesIndexedData(getIndexedRelation())) {
+      throw new AbortException("The persistent M-tree was built for different data.");
+    }
+    super.initializeFromFile(header, file);
+  }
+
+  /**
+   * Write all modified nodes and the header to the page file, including the
+   * objects indexed.
+   */
+  @Override
+  public void flush() {
+    TreeIndexHeader header = getHeader();
+    if(header instanceof MTreeHeader) {
+      ((MTreeHeader) header).setIndexedData(getIndexedRelation());
+    }
+    super.flush();
+  }
+
   /**
    * Returns a string representation of this M-Tree by performing a breadth
    * first enumeration on the tree and adding the string representation of the
@@ -102,35 +239,35 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     int objects = 0;
     int levels = 0;
 
-    N node = getRoot();
-
-    while(!node.isLeaf()) {
-      if(node.getNumEntries() > 0) {
+    StringBuilder result = new StringBuilder(1000);
+    // Not yet initialized, e.g. when logged before the first insertion.
+    N node = initialized ? getRoot() : null;
+    if(node != null) {
+      while(!node.isLeaf() && node.getNumEntries() > 0) {
         E entry = node.getEntry(0);
         node = getNode(entry);
         levels++;
       }
-    }
 
-    StringBuilder result = new StringBuilder(1000);
-    BreadthFirstEnumeration<N, E> enumeration = new BreadthFirstEnumeration<>(this, getRootPath());
-    while(enumeration.hasNext()) {
-      IndexTreePath<E> path = enumeration.next();
-      E entry = path.getEntry();
-      if(entry instanceof LeafEntry) {
-        objects++;
-        result.append("\n    ").append(entry.toString());
-      }
-      else {
-        node = getNode(entry);
-        result.append("\n\n").append(node).append(", numEntries = ").append(node.getNumEntries()) //
-            .append('\n').append(entry.toString());
-
-        if(node.isLeaf()) {
-          leafNodes++;
+      BreadthFirstEnumeration<N, E> enumeration = new BreadthFirstEnumeration<>(this, getRootPath());
+      while(enumeration.hasNext()) {
+        IndexTreePath<E> path = enumeration.next();
+        E entry = path.getEntry();
+        if(entry instanceof LeafEntry) {
+          objects++;
+          result.append("\n    ").append(entry.toString());
         }
         else {
-          dirNodes++;
+          node = getNode(entry);
+          result.append("\n\n").append(node).append(", numEntries = ").append(node.getNumEntries()) //
+              .append('\n').append(entry.toString());
+
+          if(node.isLeaf()) {
+            leafNodes++;
+          }
+          else {
+            dirNodes++;
+          }
         }
       }
     }
@@ -152,7 +289,6 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
    * @param withPreInsert if this flag is true, the preInsert method will be
    *        called before inserting the object
    */
-  // todo: implement a bulk load for M-Tree and remove this method
   public void insert(E entry, boolean withPreInsert) {
     final Logging log = getLogger();
     if(log.isDebugging()) {
@@ -195,14 +331,390 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
   /**
    * Bulk insert.
    * 
+   * After the regular insertion of the first entry of a group, all following
+   * entries that are covered by the same leaf are appended to this leaf without
+   * another descent, as long as this cannot cause an overflow. Callers should
+   * order the entries such that nearby objects are adjacent.
+   * 
+   * If the tree is empty and a bulk loading strategy is configured, the tree
+   * is bulk loaded instead, see {@link #bulkLoad}.
+   * 
    * @param entries Entries to insert
    */
   public void insertAll(List<E> entries) {
-    if(!initialized && !entries.isEmpty()) {
+    if(entries.isEmpty()) {
+      return;
+    }
+    if(canBulkLoad()) {
       initialize(entries.get(0));
+      bulkLoad(entries);
+      return;
     }
-    for(E entry : entries) {
-      insert(entry, false);
+    if(!initialized) {
+      initialize(entries.get(0));
+    }
+    insertBatch(entries);
+    if(EXTRA_INTEGRITY_CHECKS) {
+      getRoot().integrityCheck(this, getRootEntry());
+    }
+  }
+
+  /**
+   * Insert a batch of entries into an initialized tree, appending entries that
+   * are covered by the same leaf, see {@link #insertAll}.
+   * 
+   * @param entries Entries to insert
+   */
+  protected void insertBatch(List<E> entries) {
+    final Logging log = getLogger();
+    for(int i = 0, size = entries.size(); i < size;) {
+      E first = entries.get(i++);
+      IndexTreePath<E> subtree = settings.insertStrategy.choosePath(this, first);
+      E parentEntry = subtree.getEntry();
+      final DBID routingObjectID = parentEntry.getRoutingObjectID();
+      first.setParentDistance(distance(routingObjectID, first.getRoutingObjectID()));
+      N leaf = getNode(parentEntry);
+      leaf.addLeafEntry(first);
+      writeNode(leaf);
+      // Only append to this leaf if the first insertion does not split it,
+      // as this would invalidate the path.
+      final boolean room = leaf.getNumEntries() < leafCapacity - 1;
+      adjustTree(subtree);
+      if(!room) {
+        continue;
+      }
+      // Entries within the covering radius do not require adjusting the tree.
+      final double radius = routingObjectID != null ? leaf.coveringRadiusFromEntries(routingObjectID, this) : Double.POSITIVE_INFINITY;
+      int appended = 0;
+      while(i < size && leaf.getNumEntries() < leafCapacity - 1) {
+        E next = entries.get(i);
+        final double d = distance(routingObjectID, next.getRoutingObjectID());
+        if(routingObjectID != null && !(d <= radius)) {
+          break;
+        }
+        next.setParentDistance(d);
+        leaf.addLeafEntry(next);
+        ++appended;
+        ++i;
+      }
+      if(appended > 0) {
+        writeNode(leaf);
+        if(log.isDebuggingFine()) {
+          log.debugFine("appended " + appended + " entries to " + subtree);
+        }
+      }
+    }
+  }
+
+  /**
+   * Test whether the tree is empty and a bulk loading strategy is configured.
+   * 
+   * @return {@code true} if {@link #insertAll} will bulk load
+   */
+  public boolean canBulkLoad() {
+    return settings.bulkSplit != null && !initialized;
+  }
+
+  /**
+   * Bulk load an initialized, empty tree.
+   * 
+   * The tree is built bottom-up using the bulk split strategy: the entries of
+   * each level are partitioned into nodes, and the directory entries of these
+   * nodes form the next level, until all entries fit into the root. All leaves
+   * are at the same depth, the parent distances are set by the partitioning,
+   * and the covering radii are computed from the parent distances and covering
+   * radii of the children.
+   * 
+   * @param entries Leaf entries to load
+   */
+  protected void bulkLoad(List<E> entries) {
+    final Logging log = getLogger();
+    List<E> level = entries;
+    boolean leaf = true;
+    int height = 1;
+    while(level.size() >= (leaf ? leafCapacity : dirCapacity)) {
+      List<List<E>> groups = settings.bulkSplit.partition(this, level, (leaf ? leafCapacity : dirCapacity) - 1);
+      List<E> next = new ArrayList<>(groups.size());
+      for(List<E> group : groups) {
+        N node = leaf ? createNewLeafNode() : createNewDirectoryNode();
+        for(E e : group) {
+          if(leaf) {
+            node.addLeafEntry(e);
+          }
+          else {
+            node.addDirectoryEntry(e);
+          }
+        }
+        writeNode(node);
+        // The parent distance is set when partitioning the next level.
+        next.add(createNewDirectoryEntry(node, group.get(0).getRoutingObjectID(), Double.NaN));
+      }
+      if(log.isDebugging()) {
+        log.debugFine("Bulk load level " + height + ": " + level.size() + " entries in " + groups.size() + " nodes.");
+      }
+      level = next;
+      leaf = false;
+      ++height;
+    }
+    // Fill the root, which does not have a routing object.
+    N root = leaf ? createNewLeafNode() : createNewDirectoryNode();
+    root.setPageID(getRootID());
+    for(E e : level) {
+      e.setParentDistance(Double.NaN);
+      if(leaf) {
+        root.addLeafEntry(e);
+      }
+      else {
+        root.addDirectoryEntry(e);
+      }
+    }
+    writeNode(root);
+    E rootEntry = getRootEntry();
+    root.adjustEntry(rootEntry, rootEntry.getRoutingObjectID(), rootEntry.getParentDistance(), this);
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(this.getClass().getName() + ".bulkload.height", height));
+    }
+    if(EXTRA_INTEGRITY_CHECKS) {
+      getRoot().integrityCheck(this, getRootEntry());
+    }
+  }
+
+  /**
+   * Delete a batch of objects from the tree.
+   * 
+   * Each leaf is modified only once, and the tree is condensed lazily in a
+   * single pass afterwards: empty nodes (and nodes below the minimum fill, if
+   * any) are dissolved and their entries are reinserted using
+   * {@link #insertAll}, covering radii are only recomputed for the modified
+   * nodes, and nodes whose routing object was removed from their subtree
+   * promote a new routing object.
+   * 
+   * @param ids Objects to delete
+   * @return Number of leaf entries removed
+   */
+  protected int deleteLeafEntries(DBIDs ids) {
+    if(ids.isEmpty() || !initialized) {
+      return 0;
+    }
+    // Find the leaves, and remember all pages on the paths.
+    Int2ObjectOpenHashMap<long[]> masks = new Int2ObjectOpenHashMap<>();
+    IntOpenHashSet touched = new IntOpenHashSet();
+    HashSetModifiableDBIDs deleted = DBIDUtil.newHashSet(ids.size());
+    List<E> deletedEntries = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      IndexTreePath<E> path = findPathToObject(getRootPath(), iter, Double.NaN, true);
+      if(path == null) {
+        path = findPathToObject(getRootPath(), iter, Double.NaN, false);
+        if(path == null) {
+          continue;
+        }
+      }
+      IndexTreePath<E> leafPath = path.getParentPath();
+      N leaf = getNode(leafPath.getEntry());
+      long[] mask = masks.get(leaf.getPageID());
+      if(mask == null) {
+        masks.put(leaf.getPageID(), mask = BitsUtil.zero(leaf.getCapacity()));
+      }
+      if(BitsUtil.get(mask, path.getIndex())) {
+        continue; // Duplicate.
+      }
+      BitsUtil.setI(mask, path.getIndex());
+      deleted.add(iter);
+      deletedEntries.add(path.getEntry());
+      for(IndexTreePath<E> p = leafPath; p != null; p = p.getParentPath()) {
+        if(!touched.add(getPageID(p.getEntry()))) {
+          break; // Ancestors were already added.
+        }
+      }
+    }
+    for(Int2ObjectMap.Entry<long[]> ent : masks.int2ObjectEntrySet()) {
+      N leaf = getNode(ent.getIntKey());
+      leaf.removeMask(ent.getValue());
+      writeNode(leaf);
+    }
+
+    // Condense the tree in one pass, collecting the orphaned leaf entries.
+    List<E> reinsert = new ArrayList<>();
+    N root = getRoot();
+    if(!root.isLeaf()) {
+      condenseTouched(root, null, touched, deleted, reinsert);
+      shrinkRoot();
+    }
+    if(getLogger().isDebugging()) {
+      getLogger().debugFine("Deleted " + deletedEntries.size() + " entries, reinserting " + reinsert.size());
+    }
+    insertAll(reinsert);
+    for(E entry : deletedEntries) {
+      postDelete(entry);
+    }
+    if(EXTRA_INTEGRITY_CHECKS) {
+      getRoot().integrityCheck(this, getRootEntry());
+    }
+    return deletedEntries.size();
+  }
+
+  /**
+   * Find the path to the leaf entry of an object.
+   * 
+   * @param subtree Subtree to search
+   * @param id Object to find
+   * @param dist Distance of the object to the routing object of the subtree
+   * @param prune Use the covering radii for pruning
+   * @return Path, or {@code null}
+   */
+  private IndexTreePath<E> findPathToObject(IndexTreePath<E> subtree, DBIDRef id, double dist, boolean prune) {
+    N node = getNode(subtree.getEntry());
+    if(node.isLeaf()) {
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        if(DBIDUtil.equal(node.getEntry(i).getRoutingObjectID(), id)) {
+          return new IndexTreePath<>(subtree, node.getEntry(i), i);
+        }
+      }
+      return null;
+    }
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      E entry = node.getEntry(i);
+      double d = Double.NaN;
+      if(prune) {
+        final double r = entry.getCoveringRadius();
+        if(subtree.getEntry().getRoutingObjectID() != null && Math.abs(dist - entry.getParentDistance()) > r) {
+          continue;
+        }
+        d = distance(entry.getRoutingObjectID(), id);
+        if(d > r) {
+          continue;
+        }
+      }
+      IndexTreePath<E> path = findPathToObject(new IndexTreePath<>(subtree, entry, i), id, d, prune);
+      if(path != null) {
+        return path;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Condense the modified parts of a subtree after a batch deletion.
+   * 
+   * @param node Directory node
+   * @param routingObjectID Routing object of the node, {@code null} for root
+   * @param touched Page IDs of the modified nodes
+   * @param deleted Deleted objects
+   * @param reinsert Output list of leaf entries to reinsert
+   */
+  private void condenseTouched(N node, DBID routingObjectID, IntOpenHashSet touched, DBIDs deleted, List<E> reinsert) {
+    long[] remove = null;
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      final E entry = node.getEntry(i);
+      if(!touched.contains(getPageID(entry))) {
+        continue;
+      }
+      N child = getNode(entry);
+      if(!child.isLeaf()) {
+        condenseTouched(child, entry.getRoutingObjectID(), touched, deleted, reinsert);
+      }
+      if(child.getNumEntries() < (child.isLeaf() ? Math.max(1, leafMinimum) : Math.max(1, dirMinimum))) {
+        remove = (remove != null) ? remove : BitsUtil.zero(node.getCapacity());
+        BitsUtil.setI(remove, i);
+        collectLeafEntries(child, reinsert);
+        continue;
+      }
+      if(containsRoutingObject(child, entry.getRoutingObjectID())) {
+        child.adjustEntry(entry, entry.getRoutingObjectID(), entry.getParentDistance(), this);
+        continue;
+      }
+      // The routing object was deleted or moved: promote the child entry
+      // closest to the old routing object.
+      int best = 0;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int j = 0; j < child.getNumEntries(); j++) {
+        final double d = child.getEntry(j).getParentDistance();
+        if(d < bestd) {
+          bestd = d;
+          best = j;
+        }
+      }
+      final DBID newRoutingObjectID = child.getEntry(best).getRoutingObjectID();
+      for(int j = 0; j < child.getNumEntries(); j++) {
+        E e = child.getEntry(j);
+        e.setParentDistance(distance(newRoutingObjectID, e.getRoutingObjectID()));
+      }
+      writeNode(child);
+      // Placeholder if our own routing object was deleted; the parent will
+      // recompute the distance when promoting a new routing object.
+      final double parentDistance = routingObjectID == null ? entry.getParentDistance() : //
+          deleted.contains(routingObjectID) ? Double.NaN : distance(routingObjectID, newRoutingObjectID);
+      child.adjustEntry(entry, newRoutingObjectID, parentDistance, this);
+    }
+    if(remove != null) {
+      node.removeMask(remove);
+    }
+    writeNode(node);
+  }
+
+  /**
+   * Test whether a node has an entry with the given routing object.
+   * 
+   * @param node Node
+   * @param routingObjectID Routing object
+   * @return {@code true} if contained
+   */
+  private boolean containsRoutingObject(N node, DBIDRef routingObjectID) {
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      if(DBIDUtil.equal(node.getEntry(i).getRoutingObjectID(), routingObjectID)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Collect all leaf entries of a subtree, and delete its nodes.
+   * 
+   * @param node Subtree root
+   * @param result Output list
+   */
+  private void collectLeafEntries(N node, List<E> result) {
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      if(node.isLeaf()) {
+        result.add(node.getEntry(i));
+      }
+      else {
+        collectLeafEntries(getNode(node.getEntry(i)), result);
+      }
+    }
+    deleteNode(node);
+  }
+
+  /**
+   * Shrink the tree while the root is a directory node with at most one child.
+   */
+  private void shrinkRoot() {
+    N root = getRoot();
+    while(!root.isLeaf() && root.getNumEntries() <= 1) {
+      if(root.getNumEntries() == 0) {
+        N newRoot = createNewLeafNode();
+        newRoot.setPageID(getRootID());
+        writeNode(newRoot);
+        return;
+      }
+      N child = getNode(root.getEntry(0));
+      final N newRoot = child.isLeaf() ? createNewLeafNode() : createNewDirectoryNode();
+      newRoot.setPageID(getRootID());
+      for(int i = 0; i < child.getNumEntries(); i++) {
+        E e = child.getEntry(i);
+        // Entries in the root do not have a parent distance.
+        e.setParentDistance(Double.NaN);
+        if(child.isLeaf()) {
+          newRoot.addLeafEntry(e);
+        }
+        else {
+          newRoot.addDirectoryEntry(e);
+        }
+      }
+      deleteNode(child);
+      writeNode(newRoot);
+      root = newRoot;
     }
   }
 
@@ -408,20 +920,12 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     }
 
     root.setPageID(getRootID());
-    // FIXME: doesn't the root by definition not have a routing object?
-    // D parentDistance1 = distance(getRootEntry().getRoutingObjectID(),
-    // firstRoutingObjectID);
-    // D parentDistance2 = distance(getRootEntry().getRoutingObjectID(),
-    // secondRoutingObjectID);
-    E oldRootEntry = createNewDirectoryEntry(oldRoot, firstRoutingObjectID, 0.);
-    E newRootEntry = createNewDirectoryEntry(newNode, secondRoutingObjectID, 0.);
+    // The root does not have a routing object, hence no parent distances.
+    E oldRootEntry = createNewDirectoryEntry(oldRoot, firstRoutingObjectID, Double.NaN);
+    E newRootEntry = createNewDirectoryEntry(newNode, secondRoutingObjectID, Double.NaN);
     root.addDirectoryEntry(oldRootEntry);
     root.addDirectoryEntry(newRootEntry);
 
-    // logger.warning("new root: " + getRootEntry().toString() + " childs: " +
-    // oldRootEntry.toString() + "," + newRootEntry.toString() + " dists: " +
-    // parentDistance1 + ", " + parentDistance2);
-
     writeNode(root);
     writeNode(oldRoot);
     writeNode(newNode);
@@ -520,6 +1024,17 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
       }
     }
 
+    /**
+     * Count a number of distance computations, e.g. of a parallel join.
+     *
+     * @param n Number of distance computations
+     */
+    public void countDistanceCalculations(long n) {
+      if(distanceCalcs != null) {
+        distanceCalcs.increment(n);
+      }
+    }
+
     /**
      * Count a knn query invocation.
      */
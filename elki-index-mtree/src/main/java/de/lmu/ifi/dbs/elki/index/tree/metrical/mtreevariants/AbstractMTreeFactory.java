@@ -25,6 +25,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk.MTreeBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.insert.MTreeInsert;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.insert.MinimumEnlargementInsert;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.MLBDistSplit;
@@ -109,6 +110,15 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
      */
     public static final OptionID INSERT_STRATEGY_ID = new OptionID("mtree.insert", "Insertion strategy to use for constructing the M-tree.");
 
+    /**
+     * Parameter to specify the bulk loading strategy. If not set, the tree is
+     * built by repeated insertion.
+     * <p>
+     * Key: {@code -mtree.bulkstrategy}
+     * </p>
+     */
+    public static final OptionID BULK_SPLIT_ID = new OptionID("mtree.bulkstrategy", "Bulk loading strategy to use for constructing the M-tree. If not set, objects are inserted one at a time.");
+
     /**
      * Tree settings.
      */
@@ -130,6 +140,10 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
       if (config.grab(insertStrategyP)) {
         settings.insertStrategy = insertStrategyP.instantiateClass(config);
       }
+      ObjectParameter<MTreeBulkSplit<O, N, E>> bulkSplitP = new ObjectParameter<>(BULK_SPLIT_ID, MTreeBulkSplit.class, true);
+      if (config.grab(bulkSplitP)) {
+        settings.bulkSplit = bulkSplitP.instantiateClass(config);
+      }
     }
 
     abstract protected S makeSettings();
@@ -20,16 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
+import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.Entry;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.InconsistentDataException;
 
 /**
  * Abstract super class for nodes in M-Tree variants.
  * 
+ * Nodes are stored in a compact binary layout, both in memory-mapped page files
+ * (see {@link ByteBufferPage}) and when externalized: the routing object ids
+ * and parent distances of all entries, for directory nodes followed by the
+ * child page ids and covering radii, and finally the additional data of the
+ * entries of the M-tree variant.
+ * 
  * @author Elke Achtert
  * @since 0.2
  * 
@@ -40,7 +54,7 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.InconsistentDataException;
  * @param <N> the type of AbstractMTreeNode used in the M-Tree
  * @param <E> the type of MetricalEntry used in the M-Tree
  */
-public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>, E extends MTreeEntry> extends AbstractNode<E> {
+public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>, E extends MTreeEntry> extends AbstractNode<E> implements ByteBufferPage {
   /**
    * Empty constructor for Externalizable interface.
    */
@@ -60,6 +74,181 @@ public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>,
     super(capacity, isLeaf, eclass);
   }
 
+  /**
+   * Size of the binary layout of {@link #writeToBuffer}.
+   *
+   * @return Size in bytes
+   */
+  protected int bufferSize() {
+    int size = bufferSize(numEntries, isLeaf, 0);
+    for(int i = 0; i < numEntries; i++) {
+      size += entryDataSize(getEntry(i));
+    }
+    return size;
+  }
+
+  /**
+   * Size of the binary layout of {@link #writeToBuffer}, for entries with
+   * additional data of a fixed size.
+   *
+   * @param numEntries Number of entries
+   * @param isLeaf Leaf node
+   * @param entryDataSize Size of the additional data of each entry
+   * @return Size in bytes
+   */
+  protected static int bufferSize(int numEntries, boolean isLeaf, int entryDataSize) {
+    return 13 + numEntries * ((isLeaf ? 12 : 24) + entryDataSize);
+  }
+
+  /**
+   * Size of the additional data of an entry in the binary layout.
+   *
+   * @param entry Entry
+   * @return Size in bytes
+   */
+  protected int entryDataSize(E entry) {
+    return 0;
+  }
+
+  /**
+   * Write the additional data of an entry of the M-tree variant.
+   *
+   * @param buffer Buffer to write to
+   * @param entry Entry
+   */
+  protected void writeEntryData(ByteBuffer buffer, E entry) {
+    // No additional data by default.
+  }
+
+  /**
+   * Create a leaf entry read from the binary layout, and read its additional
+   * data.
+   *
+   * @param buffer Buffer, positioned at the additional data
+   * @param id Object id
+   * @param parentDistance Parent distance
+   * @return New entry
+   */
+  protected abstract E readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance);
+
+  /**
+   * Create a directory entry read from the binary layout, and read its
+   * additional data.
+   *
+   * @param buffer Buffer, positioned at the additional data
+   * @param id Routing object id
+   * @param parentDistance Parent distance
+   * @param pageID Page id of the child node
+   * @param coveringRadius Covering radius
+   * @return New entry
+   */
+  protected abstract E readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius);
+
+  @Override
+  public boolean hasBinaryLayout() {
+    return true;
+  }
+
+  @Override
+  public int getBinaryLayoutSize() {
+    return bufferSize();
+  }
+
+  /**
+   * Write this node in a compact binary layout: the object ids (and, for
+   * directory nodes, the child page ids) of all entries first, followed by the
+   * distances, and the additional data of each entry.
+   *
+   * @param buffer Buffer to write to
+   */
+  @Override
+  public void writeToBuffer(ByteBuffer buffer) {
+    buffer.putInt(getPageID()).put((byte) (isLeaf ? 1 : 0)).putInt(entries.length).putInt(numEntries);
+    for(int i = 0; i < numEntries; i++) {
+      buffer.putInt(DBIDUtil.asInteger(getEntry(i).getRoutingObjectID()));
+    }
+    for(int i = 0; i < numEntries; i++) {
+      buffer.putDouble(getEntry(i).getParentDistance());
+    }
+    if(!isLeaf) {
+      for(int i = 0; i < numEntries; i++) {
+        buffer.putInt(((DirectoryEntry) entries[i]).getPageID());
+      }
+      for(int i = 0; i < numEntries; i++) {
+        buffer.putDouble(getEntry(i).getCoveringRadius());
+      }
+    }
+    for(int i = 0; i < numEntries; i++) {
+      writeEntryData(buffer, getEntry(i));
+    }
+  }
+
+  @Override
+  public void readFromBuffer(ByteBuffer buffer) {
+    setPageID(buffer.getInt());
+    isLeaf = buffer.get() != 0;
+    entries = new Entry[buffer.getInt()];
+    numEntries = buffer.getInt();
+    final int[] ids = new int[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      ids[i] = buffer.getInt();
+    }
+    final double[] pdist = new double[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      pdist[i] = buffer.getDouble();
+    }
+    if(isLeaf) {
+      for(int i = 0; i < numEntries; i++) {
+        entries[i] = readLeafEntry(buffer, DBIDUtil.importInteger(ids[i]), pdist[i]);
+      }
+      return;
+    }
+    final int[] pages = new int[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      pages[i] = buffer.getInt();
+    }
+    final double[] radii = new double[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      radii[i] = buffer.getDouble();
+    }
+    for(int i = 0; i < numEntries; i++) {
+      entries[i] = readDirectoryEntry(buffer, DBIDUtil.importInteger(ids[i]), pdist[i], pages[i], radii[i]);
+    }
+  }
+
+  /**
+   * Writes the id of this node, the numEntries and the entries, in the binary
+   * layout of {@link #writeToBuffer}.
+   *
+   * @param out the stream to write the object to
+   * @throws IOException Errors may be thrown
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    final ByteBuffer buffer = ByteBuffer.allocate(bufferSize());
+    writeToBuffer(buffer);
+    out.writeInt(buffer.capacity());
+    out.write(buffer.array());
+  }
+
+  /**
+   * Reads the id of this node, the numEntries and the entries, in the binary
+   * layout of {@link #readFromBuffer}.
+   *
+   * @param in the stream to read data from in order to restore the object
+   * @throws IOException if I/O errors occur
+   * @throws ClassNotFoundException If the class for an object being restored
+   *         cannot be found.
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    final byte[] buf = new byte[in.readInt()];
+    in.readFully(buf);
+    readFromBuffer(ByteBuffer.wrap(buf));
+  }
+
   /**
    * Adjusts the parameters of the entry representing this node (e.g. after
    * insertion of new objects). Subclasses may need to overwrite this method.
@@ -0,0 +1,182 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+
+/**
+ * Header of a persistent M-tree. In addition to the {@link TreeIndexHeader},
+ * it stores a code of the tree type and its settings, and the number of
+ * indexed objects and a checksum of their ids and contents, so that a tree is
+ * only reopened for the same configuration and data it was built for.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MTreeHeader extends TreeIndexHeader {
+  /**
+   * The size of this header in bytes, which is 16 bytes (for
+   * {@link #treeType}, {@link #size} and {@link #checksum}).
+   */
+  private static final int SIZE = 16;
+
+  /**
+   * Prime of the 64 bit FNV hash, used for the checksum.
+   */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Offset basis of the 64 bit FNV hash, used for the checksum.
+   */
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+  /**
+   * Code of the tree type and its settings.
+   */
+  private int treeType;
+
+  /**
+   * Number of indexed objects, -1 if unknown.
+   */
+  private int size = -1;
+
+  /**
+   * Checksum of the indexed objects.
+   */
+  private long checksum;
+
+  /**
+   * Empty constructor for serialization.
+   */
+  public MTreeHeader() {
+    super();
+  }
+
+  /**
+   * Creates a new header with the specified parameters.
+   *
+   * @param pageSize the size of a page in bytes
+   * @param dirCapacity the maximum number of entries in a directory node
+   * @param leafCapacity the maximum number of entries in a leaf node
+   * @param dirMinimum the minimum number of entries in a directory node
+   * @param leafMinimum the minimum number of entries in a leaf node
+   * @param treeType Code of the tree type and its settings
+   */
+  public MTreeHeader(int pageSize, int dirCapacity, int leafCapacity, int dirMinimum, int leafMinimum, int treeType) {
+    super(pageSize, dirCapacity, leafCapacity, dirMinimum, leafMinimum);
+    this.treeType = treeType;
+  }
+
+  @Override
+  public void readHeader(RandomAccessFile file) throws IOException {
+    super.readHeader(file);
+    this.treeType = file.readInt();
+    this.size = file.readInt();
+    this.checksum = file.readLong();
+  }
+
+  @Override
+  public void writeHeader(RandomAccessFile file) throws IOException {
+    super.writeHeader(file);
+    file.writeInt(this.treeType);
+    file.writeInt(this.size);
+    file.writeLong(this.checksum);
+  }
+
+  /**
+   * Get the code of the tree type and its settings.
+   *
+   * @return Tree type code
+   */
+  public int getTreeType() {
+    return treeType;
+  }
+
+  /**
+   * Set the objects indexed by the tree.
+   *
+   * @param relation Indexed relation, may be {@code null} if unknown
+   */
+  public void setIndexedData(Relation<?> relation) {
+    size = relation != null ? relation.size() : -1;
+    checksum = relation != null ? checksum(relation) : 0L;
+  }
+
+  /**
+   * Test whether the tree was built for the given objects, by comparing the
+   * number of objects and the checksum of their ids and contents.
+   *
+   * @param relation Indexed relation, may be {@code null} if unknown
+   * @return {@code true} if the objects match
+   */
+  public boolean matchesIndexedData(Relation<?> relation) {
+    if(relation == null) {
+      return size < 0;
+    }
+    return relation.size() == size && checksum(relation) == checksum;
+  }
+
+  /**
+   * Checksum of the object ids and the objects of a relation. Vectors are
+   * hashed by their values, all other objects by their hash code, which should
+   * therefore depend on the contents only.
+   *
+   * @param relation Relation
+   * @return Checksum
+   */
+  public static long checksum(Relation<?> relation) {
+    long h = FNV_OFFSET;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      h = (h ^ DBIDUtil.asInteger(iter)) * FNV_PRIME;
+      final Object o = relation.get(iter);
+      if(o instanceof SparseNumberVector) {
+        final SparseNumberVector v = (SparseNumberVector) o;
+        for(int it = v.iter(); v.iterValid(it); it = v.iterAdvance(it)) {
+          h = (h ^ v.iterDim(it)) * FNV_PRIME;
+          h = (h ^ Double.doubleToLongBits(v.iterDoubleValue(it))) * FNV_PRIME;
+        }
+      }
+      else if(o instanceof NumberVector) {
+        final NumberVector v = (NumberVector) o;
+        for(int d = 0, dim = v.getDimensionality(); d < dim; d++) {
+          h = (h ^ Double.doubleToLongBits(v.doubleValue(d))) * FNV_PRIME;
+        }
+      }
+      else {
+        h = (h ^ (o != null ? o.hashCode() : 0)) * FNV_PRIME;
+      }
+    }
+    return h;
+  }
+
+  @Override
+  public int size() {
+    return super.size() + SIZE;
+  }
+}
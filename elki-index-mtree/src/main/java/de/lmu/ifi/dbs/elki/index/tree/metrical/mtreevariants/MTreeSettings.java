@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk.MTreeBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.insert.MTreeInsert;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.MTreeSplit;
 
@@ -49,4 +50,9 @@ public class MTreeSettings<O, N extends AbstractMTreeNode<O, N, E>, E extends MT
    * Insertion strategy.
    */
   protected MTreeInsert<O, N, E> insertStrategy;
+
+  /**
+   * Bulk loading strategy, may be {@code null}.
+   */
+  protected MTreeBulkSplit<O, N, E> bulkSplit;
 }
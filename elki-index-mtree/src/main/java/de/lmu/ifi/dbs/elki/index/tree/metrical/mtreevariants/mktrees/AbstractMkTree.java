@@ -21,8 +21,10 @@
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -37,6 +39,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeSettings;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeJoin;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeQueryUtil;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 
@@ -77,6 +80,32 @@ public abstract class AbstractMkTree<O, N extends AbstractMTreeNode<O, N, E>, E
     this.knnq = MTreeQueryUtil.getKNNQuery(this, distanceQuery);
   }
 
+  @Override
+  protected int getTreeType() {
+    final int code = super.getTreeType();
+    return settings instanceof MkTreeSettings ? code * 31 + ((MkTreeSettings<?, ?, ?>) settings).kmax : code;
+  }
+
+  /**
+   * Insert the entries one at a time: the nodes of the Mk-tree variants update
+   * the kNN distances of their directory entries along every insertion path,
+   * which appending entries to a leaf would skip.
+   *
+   * This bypasses {@link #insert(MTreeEntry, boolean)}, which some variants
+   * reject for single objects.
+   */
+  @Override
+  protected void insertBatch(List<E> entries) {
+    for(E entry : entries) {
+      super.insert(entry, false);
+    }
+  }
+
+  @Override
+  protected Relation<?> getIndexedRelation() {
+    return distanceQuery.getRelation();
+  }
+
   @Override
   public double distance(DBIDRef id1, DBIDRef id2) {
     if(id1 == null || id2 == null) {
@@ -118,4 +147,23 @@ public abstract class AbstractMkTree<O, N extends AbstractMTreeNode<O, N, E>, E
     }
     return res;
   }
+
+  /**
+   * Compute the k nearest neighbors of all objects in the tree at once, using
+   * a parallel self-join of the tree. This is used after bulk loading, when all
+   * objects are in the tree.
+   * 
+   * @param ids the ids of the query objects, must be contained in the tree
+   * @param kmax Maximum k value
+   * @return kNN lists
+   */
+  protected final Map<DBID, KNNList> selfJoinNN(DBIDs ids, int kmax) {
+    WritableDataStore<KNNList> knns = new MTreeJoin<>(this, distanceQuery).kNNJoin(ids, kmax);
+    Map<DBID, KNNList> res = new HashMap<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      res.put(DBIDUtil.deref(iter), knns.get(iter));
+    }
+    knns.destroy();
+    return res;
+  }
 }
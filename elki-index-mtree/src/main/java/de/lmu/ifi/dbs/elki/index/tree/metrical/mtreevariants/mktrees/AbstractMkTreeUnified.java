@@ -66,7 +66,7 @@ public abstract class AbstractMkTreeUnified<O, N extends AbstractMTreeNode<O, N,
    */
   @Override
   protected TreeIndexHeader createHeader() {
-    return new MkTreeHeader(getPageSize(), dirCapacity, leafCapacity, settings.kmax);
+    return new MkTreeHeader(getPageSize(), dirCapacity, leafCapacity, dirMinimum, leafMinimum, getTreeType(), settings.kmax);
   }
 
   @Override
@@ -74,21 +74,17 @@ public abstract class AbstractMkTreeUnified<O, N extends AbstractMTreeNode<O, N,
     if (entries.isEmpty()) {
       return;
     }
-    if (!initialized) {
-      initialize(entries.get(0));
-    }
-
+    final boolean bulk = canBulkLoad();
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert sequentially
     for (E entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
     }
+    // insert, or bulk load into an empty tree
+    super.insertAll(entries);
 
     // do batch nn
-    Map<DBID, KNNList> knnLists = batchNN(getRoot(), ids, settings.kmax);
+    Map<DBID, KNNList> knnLists = bulk ? selfJoinNN(ids, settings.kmax) : batchNN(getRoot(), ids, settings.kmax);
 
     // adjust the knn distances
     kNNdistanceAdjustment(getRootEntry(), knnLists);
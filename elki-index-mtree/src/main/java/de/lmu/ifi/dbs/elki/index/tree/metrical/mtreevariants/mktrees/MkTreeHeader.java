@@ -23,7 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
-import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeHeader;
 
 /**
  * Encapsulates the header information for subclasses of
@@ -33,13 +33,13 @@ import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
  * @author Elke Achtert
  * @since 0.2
  */
-public class MkTreeHeader extends TreeIndexHeader {
+public class MkTreeHeader extends MTreeHeader {
 
     /**
      * The size of this header in Bytes,
      * which is 4 Bytes (for {@link #k_max}).
      */
-    private static int SIZE = 4;
+    private static final int SIZE = 4;
 
     /**
      * The maximum number k of reverse kNN queries to be supported.
@@ -59,17 +59,20 @@ public class MkTreeHeader extends TreeIndexHeader {
      * @param pageSize     the size of a page in bytes
      * @param dirCapacity  the capacity of a directory node
      * @param leafCapacity the capacity of a leaf node
+     * @param dirMinimum   the minimum number of entries in a directory node
+     * @param leafMinimum  the minimum number of entries in a leaf node
+     * @param treeType     code of the tree type and its settings
      * @param k_max        the parameter k
      */
-    public MkTreeHeader(int pageSize, int dirCapacity, int leafCapacity, int k_max) {
-        super(pageSize, dirCapacity, leafCapacity, 0, 0);
+    public MkTreeHeader(int pageSize, int dirCapacity, int leafCapacity, int dirMinimum, int leafMinimum, int treeType, int k_max) {
+        super(pageSize, dirCapacity, leafCapacity, dirMinimum, leafMinimum, treeType);
         this.k_max = k_max;
     }
 
     /**
      * Initializes this header from the specified file.
-     * Calls {@link de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader#readHeader(java.io.RandomAccessFile)
-     * TreeIndexHeader#readHeader(file)} and reads additionally the integer value of
+     * Calls {@link MTreeHeader#readHeader(java.io.RandomAccessFile)
+     * MTreeHeader#readHeader(file)} and reads additionally the integer value of
      * {@link #k_max}
      * from the file.
      */
@@ -81,7 +84,7 @@ public class MkTreeHeader extends TreeIndexHeader {
 
     /**
      * Writes this header to the specified file.
-     * Calls {@link de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader#writeHeader(java.io.RandomAccessFile)}
+     * Calls {@link MTreeHeader#writeHeader(java.io.RandomAccessFile)}
      * and writes additionally the integer value of
      * {@link #k_max}
      * to the file.
@@ -102,7 +105,7 @@ public class MkTreeHeader extends TreeIndexHeader {
     }
 
     /**
-     * Returns {@link de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader#size()}
+     * Returns {@link MTreeHeader#size()}
      * plus the value of {@link #SIZE}).
      */
     @Override
@@ -76,6 +76,11 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
     super(relation, pageFile, settings);
   }
 
+  @Override
+  protected int getTreeType() {
+    return (super.getTreeType() * 31 + settings.p) * 2 + (settings.log ? 1 : 0);
+  }
+
   /**
    * @throws UnsupportedOperationException since this operation is not supported
    */
@@ -107,21 +112,17 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
       LOG.debugFine("insert " + entries + "\n");
     }
 
-    if(!initialized) {
-      initialize(entries.get(0));
-    }
-
+    final boolean bulk = canBulkLoad();
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert
     for(MkAppEntry entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
     }
+    // insert, or bulk load into an empty tree
+    super.insertAll(entries);
 
     // do batch nn
-    Map<DBID, KNNList> knnLists = batchNN(getRoot(), ids, settings.kmax + 1);
+    Map<DBID, KNNList> knnLists = bulk ? selfJoinNN(ids, settings.kmax + 1) : batchNN(getRoot(), ids, settings.kmax + 1);
 
     // adjust the knn distances
     adjustApproximatedKNNDistances(getRootEntry(), knnLists);
@@ -187,6 +188,7 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
         }
       }
     }
+    result.sort();
     return result;
   }
 
@@ -204,17 +206,12 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
    */
   @Override
   protected void initializeCapacities(MkAppEntry exampleLeaf) {
-    int distanceSize = ByteArrayUtil.SIZE_DOUBLE; // exampleLeaf.getParentDistance().externalizableSize();
-
-    // overhead = index(4), numEntries(4), id(4), isLeaf(0.125)
-    double overhead = 12.125;
-    if(getPageSize() - overhead < 0) {
-      throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
-    }
+    // Order, and p + 1 coefficients of the approximation
+    final int approxSize = ByteArrayUtil.SIZE_INT + (settings.p + 1) * ByteArrayUtil.SIZE_DOUBLE;
 
-    // dirCapacity = (file.getPageSize() - overhead) / (nodeID + objectID +
-    // coveringRadius + parentDistance + approx) + 1
-    dirCapacity = (int) (getPageSize() - overhead) / (4 + 4 + distanceSize + distanceSize + (settings.p + 1) * 4 + 2) + 1;
+    // Directory entries: nodeID, objectID, coveringRadius, parentDistance,
+    // approx
+    dirCapacity = pageCapacity(false, approxSize);
 
     if(dirCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -224,10 +221,8 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
       LOG.warning("Page size is choosen too small! Maximum number of entries " + "in a directory node = " + (dirCapacity - 1));
     }
 
-    // leafCapacity = (file.getPageSize() - overhead) / (objectID +
-    // parentDistance +
-    // approx) + 1
-    leafCapacity = (int) (getPageSize() - overhead) / (4 + distanceSize + (settings.p + 1) * 4 + 2) + 1;
+    // Leaf entries: objectID, parentDistance, approx
+    leafCapacity = pageCapacity(true, approxSize);
 
     if(leafCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -286,6 +281,7 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
         adjustApproximatedKNNDistances(dirEntry, knnLists);
       }
     }
+    writeNode(node);
 
     // PolynomialApproximation approx1 = node.knnDistanceApproximation();
     ArrayModifiableDBIDs ids = DBIDUtil.newArray();
@@ -80,6 +80,9 @@ public class MkAppTreeIndex<O> extends MkAppTree<O>implements RangeIndex<O>, KNN
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      return; // Reopened from a persistent page file.
+    }
     List<MkAppEntry> objs = new ArrayList<>(relation.size());
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       DBID id = DBIDUtil.deref(iter);
@@ -87,6 +90,7 @@ public class MkAppTreeIndex<O> extends MkAppTree<O>implements RangeIndex<O>, KNN
       objs.add(createNewLeafEntry(id, object, Double.NaN));
     }
     insertAll(objs);
+    flush();
   }
 
   @Override
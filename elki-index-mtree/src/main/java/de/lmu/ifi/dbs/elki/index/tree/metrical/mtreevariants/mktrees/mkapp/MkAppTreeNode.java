@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkapp;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
@@ -39,7 +40,7 @@ import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
  * 
  * @param <O> object type
  */
-class MkAppTreeNode<O> extends AbstractMTreeNode<O, MkAppTreeNode<O>, MkAppEntry> {
+public class MkAppTreeNode<O> extends AbstractMTreeNode<O, MkAppTreeNode<O>, MkAppEntry> {
   private static final long serialVersionUID = 2;
 
   /**
@@ -126,4 +127,52 @@ class MkAppTreeNode<O> extends AbstractMTreeNode<O, MkAppTreeNode<O>, MkAppEntry
 
     }
   }
-}
\ No newline at end of file
+
+  @Override
+  protected int entryDataSize(MkAppEntry entry) {
+    final PolynomialApproximation approximation = entry.getKnnDistanceApproximation();
+    return 4 + (approximation != null ? approximation.getPolynomialOrder() << 3 : 0);
+  }
+
+  @Override
+  protected void writeEntryData(ByteBuffer buffer, MkAppEntry entry) {
+    final PolynomialApproximation approximation = entry.getKnnDistanceApproximation();
+    if(approximation == null) {
+      buffer.putInt(-1);
+      return;
+    }
+    final int order = approximation.getPolynomialOrder();
+    buffer.putInt(order);
+    for(int p = 0; p < order; p++) {
+      buffer.putDouble(approximation.getB(p));
+    }
+  }
+
+  /**
+   * Read the approximation of the k-nearest neighbor distances of an entry.
+   *
+   * @param buffer Buffer
+   * @return Approximation, may be {@code null}
+   */
+  private static PolynomialApproximation readApproximation(ByteBuffer buffer) {
+    final int len = buffer.getInt();
+    if(len < 0) {
+      return null;
+    }
+    double[] b = new double[len];
+    for(int i = 0; i < len; i++) {
+      b[i] = buffer.getDouble();
+    }
+    return new PolynomialApproximation(b);
+  }
+
+  @Override
+  protected MkAppEntry readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance) {
+    return new MkAppLeafEntry(id, parentDistance, readApproximation(buffer));
+  }
+
+  @Override
+  protected MkAppEntry readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius) {
+    return new MkAppDirectoryEntry(id, parentDistance, pageID, coveringRadius, readApproximation(buffer));
+  }
+}
@@ -40,8 +40,6 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeSearchCa
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
-import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
 import net.jafama.FastMath;
 
@@ -111,21 +109,17 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
       LOG.debugFine("insert " + entries + "\n");
     }
 
-    if(!initialized) {
-      initialize(entries.get(0));
-    }
-
+    final boolean bulk = canBulkLoad();
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert
     for(MkCoPEntry entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
     }
+    // insert, or bulk load into an empty tree
+    super.insertAll(entries);
 
     // perform nearest neighbor queries
-    Map<DBID, KNNList> knnLists = batchNN(getRoot(), ids, settings.kmax);
+    Map<DBID, KNNList> knnLists = bulk ? selfJoinNN(ids, settings.kmax) : batchNN(getRoot(), ids, settings.kmax);
 
     // adjust the knn distances
     adjustApproximatedKNNDistances(getRootEntry(), knnLists);
@@ -194,17 +188,9 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
    */
   @Override
   protected void initializeCapacities(MkCoPEntry exampleLeaf) {
-    int distanceSize = ByteArrayUtil.SIZE_DOUBLE; // exampleLeaf.getParentDistance().externalizableSize();
-
-    // overhead = index(4), numEntries(4), id(4), isLeaf(0.125)
-    double overhead = 12.125;
-    if(getPageSize() - overhead < 0) {
-      throw new AbortException("Node size of " + getPageSize() + " Bytes is chosen too small!");
-    }
-
-    // dirCapacity = (file.getPageSize() - overhead) / (nodeID + objectID +
-    // coveringRadius + parentDistance + consApprox) + 1
-    dirCapacity = (int) (getPageSize() - overhead) / (4 + 4 + distanceSize + distanceSize + 10) + 1;
+    // Directory entries: nodeID, objectID, coveringRadius, parentDistance,
+    // consApprox (k_0, m, t)
+    dirCapacity = pageCapacity(false, 20);
 
     if(dirCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -214,10 +200,8 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
       LOG.warning("Page size is choosen too small! Maximum number of entries " + "in a directory node = " + (dirCapacity - 1));
     }
 
-    // leafCapacity = (file.getPageSize() - overhead) / (objectID +
-    // parentDistance +
-    // consApprox + progrApprox) + 1
-    leafCapacity = (int) (getPageSize() - overhead) / (4 + distanceSize + 2 * 10) + 1;
+    // Leaf entries: objectID, parentDistance, consApprox, progrApprox
+    leafCapacity = pageCapacity(true, 40);
 
     if(leafCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -264,7 +248,7 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
           double minDist = entry.getCoveringRadius() > distance ? 0. : distance - entry.getCoveringRadius();
           double approximatedKnnDist_cons = entry.approximateConservativeKnnDistance(k);
 
-          if(minDist <= approximatedKnnDist_cons) {
+          if(minDist - approximatedKnnDist_cons <= 1E-10) {
             pq.add(new MTreeSearchCandidate(minDist, getPageID(entry), entry.getRoutingObjectID(), Double.NaN));
           }
         }
@@ -312,6 +296,7 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
         adjustApproximatedKNNDistances(dirEntry, knnLists);
       }
     }
+    writeNode(node);
 
     ApproximationLine approx = node.conservativeKnnDistanceApproximation(settings.kmax);
     entry.setConservativeKnnDistanceApproximation(approx);
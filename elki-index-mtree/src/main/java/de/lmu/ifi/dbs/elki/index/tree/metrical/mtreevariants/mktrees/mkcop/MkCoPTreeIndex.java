@@ -82,6 +82,9 @@ public class MkCoPTreeIndex<O> extends MkCoPTree<O>implements RangeIndex<O>, KNN
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      return; // Reopened from a persistent page file.
+    }
     List<MkCoPEntry> objs = new ArrayList<>(relation.size());
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       DBID id = DBIDUtil.deref(iter); // FIXME: expensive
@@ -89,6 +92,7 @@ public class MkCoPTreeIndex<O> extends MkCoPTree<O>implements RangeIndex<O>, KNN
       objs.add(createNewLeafEntry(id, object, Double.NaN));
     }
     insertAll(objs);
+    flush();
   }
 
   @Override
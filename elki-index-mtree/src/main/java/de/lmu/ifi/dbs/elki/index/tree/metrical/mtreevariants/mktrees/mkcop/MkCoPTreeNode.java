@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkcop;
 
+import java.nio.ByteBuffer;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
@@ -35,7 +37,7 @@ import net.jafama.FastMath;
  * 
  * @param <O> object type
  */
-class MkCoPTreeNode<O> extends AbstractMTreeNode<O, MkCoPTreeNode<O>, MkCoPEntry> {
+public class MkCoPTreeNode<O> extends AbstractMTreeNode<O, MkCoPTreeNode<O>, MkCoPEntry> {
   /**
    * Serial version UID
    */
@@ -160,4 +162,55 @@ class MkCoPTreeNode<O> extends AbstractMTreeNode<O, MkCoPTreeNode<O>, MkCoPEntry
       throw new RuntimeException("Wrong conservative approximation in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + soll + ",\n ist: " + ist);
     }
   }
+
+  @Override
+  protected int entryDataSize(MkCoPEntry entry) {
+    // k_0, m and t of one or two approximation lines
+    return entry instanceof MkCoPLeafEntry ? 40 : 20;
+  }
+
+  @Override
+  protected void writeEntryData(ByteBuffer buffer, MkCoPEntry entry) {
+    writeApproximation(buffer, entry.getConservativeKnnDistanceApproximation());
+    if(entry instanceof MkCoPLeafEntry) {
+      writeApproximation(buffer, ((MkCoPLeafEntry) entry).getProgressiveKnnDistanceApproximation());
+    }
+  }
+
+  /**
+   * Write an approximation line.
+   *
+   * @param buffer Buffer
+   * @param approx Approximation line, may be {@code null}
+   */
+  private static void writeApproximation(ByteBuffer buffer, ApproximationLine approx) {
+    if(approx == null) {
+      buffer.putInt(-1).putDouble(Double.NaN).putDouble(Double.NaN);
+      return;
+    }
+    buffer.putInt(approx.getK_0()).putDouble(approx.getM()).putDouble(approx.getT());
+  }
+
+  /**
+   * Read an approximation line.
+   *
+   * @param buffer Buffer
+   * @return Approximation line, may be {@code null}
+   */
+  private static ApproximationLine readApproximation(ByteBuffer buffer) {
+    final int k_0 = buffer.getInt();
+    final double m = buffer.getDouble(), t = buffer.getDouble();
+    return k_0 >= 0 ? new ApproximationLine(k_0, m, t) : null;
+  }
+
+  @Override
+  protected MkCoPEntry readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance) {
+    ApproximationLine conservative = readApproximation(buffer);
+    return new MkCoPLeafEntry(id, parentDistance, conservative, readApproximation(buffer));
+  }
+
+  @Override
+  protected MkCoPEntry readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius) {
+    return new MkCoPDirectoryEntry(id, parentDistance, pageID, coveringRadius, readApproximation(buffer));
+  }
 }
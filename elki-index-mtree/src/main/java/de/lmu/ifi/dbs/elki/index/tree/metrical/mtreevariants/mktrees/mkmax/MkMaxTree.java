@@ -151,6 +151,7 @@ public abstract class MkMaxTree<O> extends AbstractMkTreeUnified<O, MkMaxTreeNod
         knnDist_node = Math.max(knnDist_node, dirEntry.getKnnDistance());
       }
     }
+    writeNode(node);
     entry.setKnnDistance(knnDist_node);
   }
 
@@ -254,6 +255,7 @@ public abstract class MkMaxTree<O> extends AbstractMkTreeUnified<O, MkMaxTreeNod
         knnDist_node = Math.max(knnDist_node, dirEntry.getKnnDistance());
       }
     }
+    writeNode(node);
     if (LOG.isDebugging()) {
       LOG.debugFine(nodeEntry + "set knn dist " + knnDist_node);
     }
@@ -262,17 +264,9 @@ public abstract class MkMaxTree<O> extends AbstractMkTreeUnified<O, MkMaxTreeNod
 
   @Override
   protected void initializeCapacities(MkMaxEntry exampleLeaf) {
-    int distanceSize = ByteArrayUtil.SIZE_DOUBLE; // exampleLeaf.getParentDistance().externalizableSize();
-
-    // overhead = index(4), numEntries(4), id(4), isLeaf(0.125)
-    double overhead = 12.125;
-    if (getPageSize() - overhead < 0) {
-      throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
-    }
-
-    // dirCapacity = (file.getPageSize() - overhead) / (nodeID + objectID +
-    // coveringRadius + parentDistance + knnDistance) + 1
-    dirCapacity = (int) (getPageSize() - overhead) / (4 + 4 + 3 * distanceSize) + 1;
+    // Directory entries: nodeID, objectID, coveringRadius, parentDistance,
+    // knnDistance
+    dirCapacity = pageCapacity(false, ByteArrayUtil.SIZE_DOUBLE);
 
     if (dirCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -282,10 +276,8 @@ public abstract class MkMaxTree<O> extends AbstractMkTreeUnified<O, MkMaxTreeNod
       LOG.warning("Page size is choosen too small! Maximum number of entries " + "in a directory node = " + (dirCapacity - 1));
     }
 
-    // leafCapacity = (file.getPageSize() - overhead) / (objectID +
-    // parentDistance +
-    // knnDistance) + 1
-    leafCapacity = (int) (getPageSize() - overhead) / (4 + 2 * distanceSize) + 1;
+    // Leaf entries: objectID, parentDistance, knnDistance
+    leafCapacity = pageCapacity(true, ByteArrayUtil.SIZE_DOUBLE);
 
     if (leafCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
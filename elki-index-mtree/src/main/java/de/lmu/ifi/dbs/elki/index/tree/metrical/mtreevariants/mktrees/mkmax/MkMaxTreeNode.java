@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkmax;
 
+import java.nio.ByteBuffer;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
@@ -34,7 +36,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
  * 
  * @param <O> the type of DatabaseObject to be stored in the MkMaxTree
  */
-class MkMaxTreeNode<O> extends AbstractMTreeNode<O, MkMaxTreeNode<O>, MkMaxEntry> {
+public class MkMaxTreeNode<O> extends AbstractMTreeNode<O, MkMaxTreeNode<O>, MkMaxEntry> {
   /**
    * Serial version
    */
@@ -100,4 +102,24 @@ class MkMaxTreeNode<O> extends AbstractMTreeNode<O, MkMaxTreeNode<O>, MkMaxEntry
       throw new RuntimeException("Wrong knnDistance in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + knnDistance + ",\n ist: " + entry.getKnnDistance());
     }
   }
+
+  @Override
+  protected int entryDataSize(MkMaxEntry entry) {
+    return 8;
+  }
+
+  @Override
+  protected void writeEntryData(ByteBuffer buffer, MkMaxEntry entry) {
+    buffer.putDouble(entry.getKnnDistance());
+  }
+
+  @Override
+  protected MkMaxEntry readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance) {
+    return new MkMaxLeafEntry(id, parentDistance, buffer.getDouble());
+  }
+
+  @Override
+  protected MkMaxEntry readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius) {
+    return new MkMaxDirectoryEntry(id, parentDistance, pageID, coveringRadius, buffer.getDouble());
+  }
 }
@@ -77,7 +77,7 @@ class MkTabDirectoryEntry extends MTreeDirectoryEntry implements MkTabEntry {
 
   @Override
   public double getKnnDistance(int k) {
-    if(k >= this.knnDistances.length) {
+    if(k > this.knnDistances.length) {
       throw new IllegalArgumentException("Parameter k = " + k + " is not supported!");
     }
 
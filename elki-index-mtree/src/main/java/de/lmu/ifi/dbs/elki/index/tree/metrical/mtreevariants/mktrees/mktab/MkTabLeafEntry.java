@@ -79,7 +79,7 @@ class MkTabLeafEntry extends MTreeLeafEntry implements MkTabEntry {
 
   @Override
   public double getKnnDistance(int k) {
-    if(k >= this.knnDistances.length) {
+    if(k > this.knnDistances.length) {
       throw new IllegalArgumentException("Parameter k = " + k + " is not supported!");
     }
 
@@ -99,17 +99,12 @@ public abstract class MkTabTree<O> extends AbstractMkTreeUnified<O, MkTabTreeNod
 
   @Override
   protected void initializeCapacities(MkTabEntry exampleLeaf) {
-    int distanceSize = ByteArrayUtil.SIZE_DOUBLE; // exampleLeaf.getParentDistance().externalizableSize();
+    // kmax + kmax * knnDistance
+    final int knnSize = ByteArrayUtil.SIZE_INT + getKmax() * ByteArrayUtil.SIZE_DOUBLE;
 
-    // overhead = index(4), numEntries(4), id(4), isLeaf(0.125)
-    double overhead = 12.125;
-    if(getPageSize() - overhead < 0) {
-      throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
-    }
-
-    // dirCapacity = (pageSize - overhead) / (nodeID + objectID +
-    // coveringRadius + parentDistance + kmax + kmax * knnDistance) + 1
-    dirCapacity = (int) (getPageSize() - overhead) / (4 + 4 + distanceSize + distanceSize + 4 + getKmax() * distanceSize) + 1;
+    // Directory entries: nodeID, objectID, coveringRadius, parentDistance,
+    // kNN distances
+    dirCapacity = pageCapacity(false, knnSize);
 
     if(dirCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -119,9 +114,8 @@ public abstract class MkTabTree<O> extends AbstractMkTreeUnified<O, MkTabTreeNod
       LOG.warning("Page size is choosen too small! Maximum number of entries " + "in a directory node = " + (dirCapacity - 1));
     }
 
-    // leafCapacity = (pageSize - overhead) / (objectID + parentDistance + +
-    // kmax + kmax * knnDistance) + 1
-    leafCapacity = (int) (getPageSize() - overhead) / (4 + distanceSize + 4 + getKmax() * distanceSize) + 1;
+    // Leaf entries: objectID, parentDistance, kNN distances
+    leafCapacity = pageCapacity(true, knnSize);
 
     if(leafCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -139,10 +133,11 @@ public abstract class MkTabTree<O> extends AbstractMkTreeUnified<O, MkTabTreeNod
     if(node.isLeaf()) {
       for(int i = 0; i < node.getNumEntries(); i++) {
         MkTabEntry leafEntry = node.getEntry(i);
-        KNNList knns = knnLists.get(getPageID(leafEntry));
-        double[] distances = new double[knns.size()];
+        KNNList knns = knnLists.get(leafEntry.getRoutingObjectID());
+        // Ties may yield more than kmax neighbors.
+        double[] distances = initKnnDistanceList();
         int j = 0;
-        for(DoubleDBIDListIter iter = knns.iter(); iter.valid(); iter.advance(), j++) {
+        for(DoubleDBIDListIter iter = knns.iter(); iter.valid() && j < distances.length; iter.advance(), j++) {
           distances[j] = iter.doubleValue();
         }
         leafEntry.setKnnDistances(distances);
@@ -158,6 +153,7 @@ public abstract class MkTabTree<O> extends AbstractMkTreeUnified<O, MkTabTreeNod
         knnDistances_node = max(knnDistances_node, dirEntry.getKnnDistances());
       }
     }
+    writeNode(node);
     entry.setKnnDistances(knnDistances_node);
   }
 
@@ -266,7 +262,7 @@ public abstract class MkTabTree<O> extends AbstractMkTreeUnified<O, MkTabTreeNod
    *
    * @return a knn distance list with all distances set to null distance
    */
-  private double[] initKnnDistanceList() {
+  protected double[] initKnnDistanceList() {
     double[] knnDistances = new double[getKmax()];
     return knnDistances;
   }
@@ -26,8 +26,6 @@ import java.util.List;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
-import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -70,35 +68,23 @@ public class MkTabTreeIndex<O> extends MkTabTree<O>implements RangeIndex<O>, KNN
 
   /**
    * Creates a new leaf entry representing the specified data object in the
-   * specified subtree.
+   * specified subtree. The kNN distances are computed after all objects have
+   * been inserted, see {@link #kNNdistanceAdjustment}.
    * 
    * @param object the data object to be represented by the new entry
    * @param parentDistance the distance from the object to the routing object of
    *        the parent node
    */
   protected MkTabEntry createNewLeafEntry(DBID id, O object, double parentDistance) {
-    return new MkTabLeafEntry(id, parentDistance, knnDistances(object));
-  }
-
-  /**
-   * Returns the knn distance of the object with the specified id.
-   * 
-   * @param object the query object
-   * @return the knn distance of the object with the specified id
-   */
-  private double[] knnDistances(O object) {
-    KNNList knns = knnq.getKNNForObject(object, getKmax() - 1);
-    double[] distances = new double[getKmax()];
-    int i = 0;
-    for(DoubleDBIDListIter iter = knns.iter(); iter.valid() && i < getKmax(); iter.advance(), i++) {
-      distances[i] = iter.doubleValue();
-    }
-    return distances;
+    return new MkTabLeafEntry(id, parentDistance, initKnnDistanceList());
   }
 
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      return; // Reopened from a persistent page file.
+    }
     List<MkTabEntry> objs = new ArrayList<>(relation.size());
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       DBID id = DBIDUtil.deref(iter); // FIXME: expensive
@@ -106,6 +92,7 @@ public class MkTabTreeIndex<O> extends MkTabTree<O>implements RangeIndex<O>, KNN
       objs.add(createNewLeafEntry(id, object, Double.NaN));
     }
     insertAll(objs);
+    flush();
   }
 
   @Override
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mktab;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
@@ -36,7 +37,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
  * 
  * @param <O> object type
  */
-class MkTabTreeNode<O> extends AbstractMTreeNode<O, MkTabTreeNode<O>, MkTabEntry> {
+public class MkTabTreeNode<O> extends AbstractMTreeNode<O, MkTabTreeNode<O>, MkTabEntry> {
   private static final long serialVersionUID = 2;
 
   /**
@@ -106,4 +107,51 @@ class MkTabTreeNode<O> extends AbstractMTreeNode<O, MkTabTreeNode<O>, MkTabEntry
       throw new RuntimeException("Wrong knnDistances in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + soll + ",\n ist: " + ist);
     }
   }
+
+  @Override
+  protected int entryDataSize(MkTabEntry entry) {
+    final double[] knnDistances = entry.getKnnDistances();
+    return 4 + (knnDistances != null ? knnDistances.length << 3 : 0);
+  }
+
+  @Override
+  protected void writeEntryData(ByteBuffer buffer, MkTabEntry entry) {
+    final double[] knnDistances = entry.getKnnDistances();
+    if(knnDistances == null) {
+      buffer.putInt(-1);
+      return;
+    }
+    buffer.putInt(knnDistances.length);
+    for(double d : knnDistances) {
+      buffer.putDouble(d);
+    }
+  }
+
+  /**
+   * Read the k-nearest neighbor distances of an entry.
+   *
+   * @param buffer Buffer
+   * @return k-nearest neighbor distances, may be {@code null}
+   */
+  private static double[] readKnnDistances(ByteBuffer buffer) {
+    final int len = buffer.getInt();
+    if(len < 0) {
+      return null;
+    }
+    double[] knnDistances = new double[len];
+    for(int i = 0; i < len; i++) {
+      knnDistances[i] = buffer.getDouble();
+    }
+    return knnDistances;
+  }
+
+  @Override
+  protected MkTabEntry readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance) {
+    return new MkTabLeafEntry(id, parentDistance, readKnnDistances(buffer));
+  }
+
+  @Override
+  protected MkTabEntry readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius) {
+    return new MkTabDirectoryEntry(id, parentDistance, pageID, coveringRadius, readKnnDistances(buffer));
+  }
 }
@@ -20,15 +20,23 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -36,15 +44,17 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.JoinIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeSettings;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeJoin;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeQueryUtil;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.NotImplementedException;
-import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 
 /**
  * Class for using an m-tree as database index.
@@ -54,7 +64,7 @@ import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
  *
  * @param <O> Object type
  */
-public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
+public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>, JoinIndex<O>, DynamicIndex, SnapshotIndex {
   /**
    * The relation indexed.
    */
@@ -92,8 +102,6 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
 
   @Override
   protected void initializeCapacities(MTreeEntry exampleLeaf) {
-    int distanceSize = ByteArrayUtil.SIZE_DOUBLE; // exampleLeaf.getParentDistance().externalizableSize();
-
     // FIXME: simulate a proper feature size!
     @SuppressWarnings("unchecked")
     Relation<? extends SpatialComparable> vrel = (Relation<? extends SpatialComparable>) relation;
@@ -104,20 +112,9 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
       featuresize = 0;
     }
 
-    // overhead = index(4), numEntries(4), id(4), isLeaf(0.125)
-    double overhead = 12.125;
-    if(getPageSize() - overhead < 0) {
-      throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
-    }
-
-    // dirCapacity = (pageSize - overhead) / (nodeID + objectID + coveringRadius
-    // + parentDistance) + 1
-    // dirCapacity = (int) (pageSize - overhead) / (4 + 4 + distanceSize +
-    // distanceSize) + 1;
-
-    // dirCapacity = (pageSize - overhead) / (nodeID + **object feature size** +
-    // coveringRadius + parentDistance) + 1
-    dirCapacity = (int) (getPageSize() - overhead) / (4 + featuresize + distanceSize + distanceSize) + 1;
+    // Directory entries: nodeID, objectID, coveringRadius, parentDistance,
+    // and the **object feature size**
+    dirCapacity = pageCapacity(false, featuresize);
 
     if(dirCapacity <= 2) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -126,11 +123,8 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
     if(dirCapacity < 10) {
       getLogger().warning("Page size is choosen too small! Maximum number of entries " + "in a directory node = " + (dirCapacity - 1));
     }
-    // leafCapacity = (pageSize - overhead) / (objectID + parentDistance) + 1
-    // leafCapacity = (int) (pageSize - overhead) / (4 + distanceSize) + 1;
-    // leafCapacity = (pageSize - overhead) / (objectID + ** object size ** +
-    // parentDistance) + 1
-    leafCapacity = (int) (getPageSize() - overhead) / (4 + featuresize + distanceSize) + 1;
+    // Leaf entries: objectID, parentDistance, and the **object feature size**
+    leafCapacity = pageCapacity(true, featuresize);
 
     if(leafCapacity <= 1) {
       throw new RuntimeException("Node size of " + getPageSize() + " Bytes is chosen too small!");
@@ -151,7 +145,16 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      return; // Reopened from a persistent page file.
+    }
     insertAll(relation.getDBIDs());
+    flush();
+  }
+
+  @Override
+  protected Relation<?> getIndexedRelation() {
+    return relation;
   }
 
   @Override
@@ -159,39 +162,68 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
     insert(createNewLeafEntry(DBIDUtil.deref(id), relation.get(id), Double.NaN), false);
   }
 
+  /**
+   * Inserts the specified objects into this index. For vector data, the
+   * objects are sorted along a Hilbert curve first, so that nearby objects
+   * are inserted into the same leaf in one group. This is not necessary when
+   * the tree will be bulk loaded.
+   *
+   * @param ids the objects to be inserted
+   */
   @Override
   public void insertAll(DBIDs ids) {
     List<MTreeEntry> objs = new ArrayList<>(ids.size());
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      final O object = relation.get(id);
-      objs.add(createNewLeafEntry(id, object, Double.NaN));
+    if(ids.size() > 1 && !canBulkLoad() && TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+      List<SortEntry> sorted = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        sorted.add(new SortEntry(DBIDUtil.deref(iter), (NumberVector) relation.get(iter)));
+      }
+      HilbertSpatialSorter.STATIC.sort(sorted);
+      for(SortEntry e : sorted) {
+        objs.add(createNewLeafEntry(e.id, relation.get(e.id), Double.NaN));
+      }
+    }
+    else {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        DBID id = DBIDUtil.deref(iter);
+        final O object = relation.get(id);
+        objs.add(createNewLeafEntry(id, object, Double.NaN));
+      }
     }
     insertAll(objs);
   }
 
   /**
-   * Throws an UnsupportedOperationException since deletion of objects is not
-   * yet supported by an M-Tree.
+   * Deletes the specified object from this index.
    *
-   * @throws UnsupportedOperationException thrown, since deletions aren't
-   *         implemented yet.
+   * @param id Object to delete
+   * @return true if this index did contain the object
    */
   @Override
   public final boolean delete(DBIDRef id) {
-    throw new NotImplementedException();
+    return deleteLeafEntries(DBIDUtil.deref(id)) > 0;
   }
 
   /**
-   * Throws an UnsupportedOperationException since deletion of objects is not
-   * yet supported by an M-Tree.
+   * Deletes the specified objects from this index. The tree is condensed only
+   * once, after all objects have been removed.
    *
-   * @throws UnsupportedOperationException thrown, since deletions aren't
-   *         implemented yet.
+   * @param ids the objects to be deleted
    */
   @Override
   public void deleteAll(DBIDs ids) {
-    throw new NotImplementedException();
+    deleteLeafEntries(ids);
+  }
+
+  @Override
+  public void writeSnapshot(ObjectOutput out) throws IOException {
+    out.writeInt(relation.size());
+    writePages(out);
+  }
+
+  @Override
+  public boolean restoreSnapshot(ObjectInput in) throws IOException {
+    return in.readInt() == relation.size() && readPages(in);
   }
 
   @Override
@@ -224,6 +256,32 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
     return MTreeQueryUtil.getRangeQuery(this, dq);
   }
 
+  @Override
+  public WritableDataStore<KNNList> kNNSelfJoin(DistanceQuery<O> distanceQuery, int k) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      return null;
+    }
+    return new MTreeJoin<>(this, distanceFunction.instantiate(relation)).kNNJoin(relation.getDBIDs(), k);
+  }
+
+  @Override
+  public WritableDataStore<DoubleDBIDList> rangeSelfJoin(DistanceQuery<O> distanceQuery, double range) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      return null;
+    }
+    return new MTreeJoin<>(this, distanceFunction.instantiate(relation)).rangeJoin(relation.getDBIDs(), range);
+  }
+
   @Override
   public String getLongName() {
     return "M-Tree";
@@ -233,4 +291,49 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
   public String getShortName() {
     return "mtree";
   }
+
+  /**
+   * Object with its DBID, for sorting along a space-filling curve.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class SortEntry implements SpatialComparable {
+    /**
+     * Object ID.
+     */
+    DBID id;
+
+    /**
+     * Vector.
+     */
+    NumberVector vec;
+
+    /**
+     * Constructor.
+     *
+     * @param id Object ID
+     * @param vec Vector
+     */
+    SortEntry(DBID id, NumberVector vec) {
+      this.id = id;
+      this.vec = vec;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return vec.getDimensionality();
+    }
+
+    @Override
+    public double getMin(int dimension) {
+      return vec.doubleValue(dimension);
+    }
+
+    @Override
+    public double getMax(int dimension) {
+      return vec.doubleValue(dimension);
+    }
+  }
 }
@@ -20,8 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
 
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 
 /**
  * Represents a node in an M-Tree.
@@ -53,4 +58,14 @@ public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry>
   public MTreeNode(int capacity, boolean isLeaf) {
     super(capacity, isLeaf, MTreeEntry.class);
   }
-}
\ No newline at end of file
+
+  @Override
+  protected MTreeEntry readLeafEntry(ByteBuffer buffer, DBID id, double parentDistance) {
+    return new MTreeLeafEntry(id, parentDistance);
+  }
+
+  @Override
+  protected MTreeEntry readDirectoryEntry(ByteBuffer buffer, DBID id, double parentDistance, int pageID, double coveringRadius) {
+    return new MTreeDirectoryEntry(id, parentDistance, pageID, coveringRadius);
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBlocks;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+
+/**
+ * Dual-tree similarity joins (kNN join and epsilon join) of two M-trees, or of
+ * one tree with itself.
+ *
+ * Every leaf of the query tree is joined with the data tree independently.
+ * Both query leaves and data nodes are balls, so a pair of nodes is pruned if
+ * the distance of their routing objects minus both covering radii exceeds the
+ * largest kNN distance in the query leaf (respectively the join radius). The
+ * parent distances stored in the tree are used with the triangle inequality to
+ * skip most of these routing object distances, and to skip most distances of
+ * single object pairs. Query leaves are processed in parallel; in a self-join,
+ * each leaf is joined with itself first to obtain a good initial kNN bound.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses AbstractMTree
+ * @apiviz.uses MTreeSearchCandidate
+ *
+ * @param <O> Object type
+ */
+public class MTreeJoin<O> {
+  /**
+   * Tree containing the query objects.
+   */
+  protected final AbstractMTree<O, ?, ?, ?> queryTree;
+
+  /**
+   * Tree containing the data objects.
+   */
+  protected final AbstractMTree<O, ?, ?, ?> dataTree;
+
+  /**
+   * Distance query, must match the distance of both trees.
+   */
+  protected final DistanceQuery<O> distanceQuery;
+
+  /**
+   * Constructor for a self-join.
+   *
+   * @param tree Tree to join with itself
+   * @param distanceQuery Distance query
+   */
+  public MTreeJoin(AbstractMTree<O, ?, ?, ?> tree, DistanceQuery<O> distanceQuery) {
+    this(tree, tree, distanceQuery);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param queryTree Tree containing the query objects
+   * @param dataTree Tree containing the data objects
+   * @param distanceQuery Distance query
+   */
+  public MTreeJoin(AbstractMTree<O, ?, ?, ?> queryTree, AbstractMTree<O, ?, ?, ?> dataTree, DistanceQuery<O> distanceQuery) {
+    super();
+    this.queryTree = queryTree;
+    this.dataTree = dataTree;
+    this.distanceQuery = distanceQuery;
+  }
+
+  /**
+   * Find the k nearest neighbors in the data tree of every query object.
+   *
+   * @param ids IDs of the query objects, for allocating the storage
+   * @param k Number of neighbors
+   * @return kNN lists
+   */
+  public WritableDataStore<KNNList> kNNJoin(DBIDs ids, final int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one neighbor has to be requested!");
+    }
+    final WritableDataStore<KNNList> out = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    joinLeaves(ids.size(), leaf -> kNNJoinLeaf(leaf, k, out));
+    return out;
+  }
+
+  /**
+   * Find all data objects within the given radius of every query object.
+   *
+   * @param ids IDs of the query objects, for allocating the storage
+   * @param range Join radius
+   * @return Neighbor lists, sorted by distance
+   */
+  public WritableDataStore<DoubleDBIDList> rangeJoin(DBIDs ids, final double range) {
+    final WritableDataStore<DoubleDBIDList> out = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, DoubleDBIDList.class);
+    joinLeaves(ids.size(), leaf -> rangeJoinLeaf(leaf, range, out));
+    return out;
+  }
+
+  /**
+   * Join every leaf of the query tree, in parallel if possible.
+   *
+   * @param size Number of query objects
+   * @param join Join of a single query leaf
+   */
+  private void joinLeaves(int size, LeafJoin join) {
+    final List<? extends MTreeEntry> leaves = queryTree.getLeaves();
+    long dists = ParallelBlocks.sumInterleaved(size, leaves.size(), i -> join.join(leaves.get(i)));
+    // Statistics counters are not thread safe, so count at the end.
+    dataTree.statistics.countDistanceCalculations(dists);
+  }
+
+  /**
+   * kNN join of a single query leaf.
+   *
+   * @param leafEntry Entry of the query leaf
+   * @param k Number of neighbors
+   * @param out Output storage
+   * @return Number of distance computations
+   */
+  private long kNNJoinLeaf(MTreeEntry leafEntry, int k, WritableDataStore<KNNList> out) {
+    final int leafID = ((DirectoryEntry) leafEntry).getPageID();
+    final QueryLeaf leaf = new QueryLeaf(leafEntry, queryTree.getNodeConcurrent(leafID));
+    final int n = leaf.node.getNumEntries();
+    if(n == 0) {
+      return 0;
+    }
+    final KNNHeap[] heaps = new KNNHeap[n];
+    for(int i = 0; i < n; i++) {
+      heaps[i] = DBIDUtil.newHeap(k);
+    }
+    long dists = 0;
+    double bound = Double.POSITIVE_INFINITY;
+    int skip = -1;
+    if(queryTree == dataTree) {
+      // Join with itself first, which usually gives a good bound.
+      dists += kNNJoinLeaves(leaf, leaf.node, null, 0., heaps, bound);
+      bound = maxKNNDistance(heaps);
+      skip = leafID;
+    }
+    ComparableMinHeap<MTreeSearchCandidate> pq = new ComparableMinHeap<>();
+    pq.add(new MTreeSearchCandidate(0., dataTree.getRootID(), null, 0.));
+    while(!pq.isEmpty()) {
+      MTreeSearchCandidate cand = pq.poll();
+      if(cand.mindist > bound) {
+        break;
+      }
+      if(cand.nodeID == skip) {
+        continue;
+      }
+      AbstractMTreeNode<?, ?, ?> node = dataTree.getNodeConcurrent(cand.nodeID);
+      if(node.isLeaf()) {
+        dists += kNNJoinLeaves(leaf, node, cand.routingObjectID, cand.routingDistance, heaps, bound);
+        bound = maxKNNDistance(heaps);
+        continue;
+      }
+      for(int j = 0; j < node.getNumEntries(); j++) {
+        MTreeEntry entry = node.getEntry(j);
+        final double cr = entry.getCoveringRadius();
+        if(leaf.lowerBound(cand.routingObjectID, cand.routingDistance, entry) - cr > bound) {
+          continue;
+        }
+        final double d = leaf.routingObjectID != null ? distanceQuery.distance(leaf.routingObjectID, entry.getRoutingObjectID()) : 0.;
+        dists += leaf.routingObjectID != null ? 1 : 0;
+        final double mindist = Math.max(d - cr - leaf.coveringRadius, 0.);
+        if(mindist <= bound) {
+          pq.add(new MTreeSearchCandidate(mindist, ((DirectoryEntry) entry).getPageID(), entry.getRoutingObjectID(), d));
+        }
+      }
+    }
+    synchronized(out) {
+      for(int i = 0; i < n; i++) {
+        out.put(leaf.node.getEntry(i).getRoutingObjectID(), heaps[i].toKNNList());
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Join a query leaf with a data leaf.
+   *
+   * @param leaf Query leaf
+   * @param data Data leaf
+   * @param parent Routing object of the data leaf, may be {@code null}
+   * @param parentDistance Distance of the query routing object to the data
+   *        routing object
+   * @param heaps kNN heaps of the query objects
+   * @param bound Largest kNN distance in the query leaf
+   * @return Number of distance computations
+   */
+  private long kNNJoinLeaves(QueryLeaf leaf, AbstractMTreeNode<?, ?, ?> data, DBID parent, double parentDistance, KNNHeap[] heaps, double bound) {
+    final boolean self = data == leaf.node;
+    long dists = 0;
+    for(int j = 0; j < data.getNumEntries(); j++) {
+      final MTreeEntry p = data.getEntry(j);
+      if(leaf.lowerBound(parent, parentDistance, p) > bound) {
+        continue;
+      }
+      // Distance of the data object to the query routing object.
+      double dr = 0.;
+      if(self) {
+        dr = p.getParentDistance();
+      }
+      else if(leaf.routingObjectID != null) {
+        dr = distanceQuery.distance(leaf.routingObjectID, p.getRoutingObjectID());
+        ++dists;
+        if(dr - leaf.coveringRadius > bound) {
+          continue;
+        }
+      }
+      final DBID pid = p.getRoutingObjectID();
+      for(int i = 0; i < heaps.length; i++) {
+        final KNNHeap heap = heaps[i];
+        final double kdist = heap.getKNNDistance();
+        if(leaf.routingObjectID != null && Math.abs(dr - leaf.queryDistances[i]) > kdist) {
+          continue;
+        }
+        final double distance = distanceQuery.distance(leaf.node.getEntry(i).getRoutingObjectID(), pid);
+        ++dists;
+        if(distance <= kdist) {
+          heap.insert(distance, pid);
+        }
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Epsilon join of a single query leaf.
+   *
+   * @param leafEntry Entry of the query leaf
+   * @param range Join radius
+   * @param out Output storage
+   * @return Number of distance computations
+   */
+  private long rangeJoinLeaf(MTreeEntry leafEntry, double range, WritableDataStore<DoubleDBIDList> out) {
+    final QueryLeaf leaf = new QueryLeaf(leafEntry, queryTree.getNodeConcurrent(((DirectoryEntry) leafEntry).getPageID()));
+    final int n = leaf.node.getNumEntries();
+    if(n == 0) {
+      return 0;
+    }
+    final ModifiableDoubleDBIDList[] lists = new ModifiableDoubleDBIDList[n];
+    for(int i = 0; i < n; i++) {
+      lists[i] = DBIDUtil.newDistanceDBIDList();
+    }
+    long dists = 0;
+    List<MTreeSearchCandidate> stack = new ArrayList<>();
+    stack.add(new MTreeSearchCandidate(0., dataTree.getRootID(), null, 0.));
+    while(!stack.isEmpty()) {
+      MTreeSearchCandidate cand = stack.remove(stack.size() - 1);
+      AbstractMTreeNode<?, ?, ?> node = dataTree.getNodeConcurrent(cand.nodeID);
+      final boolean isLeaf = node.isLeaf();
+      for(int j = 0; j < node.getNumEntries(); j++) {
+        final MTreeEntry entry = node.getEntry(j);
+        final double cr = isLeaf ? 0. : entry.getCoveringRadius();
+        if(leaf.lowerBound(cand.routingObjectID, cand.routingDistance, entry) - cr > range) {
+          continue;
+        }
+        double d = 0.;
+        if(leaf.routingObjectID != null) {
+          d = distanceQuery.distance(leaf.routingObjectID, entry.getRoutingObjectID());
+          ++dists;
+          if(d - cr - leaf.coveringRadius > range) {
+            continue;
+          }
+        }
+        if(!isLeaf) {
+          stack.add(new MTreeSearchCandidate(0., ((DirectoryEntry) entry).getPageID(), entry.getRoutingObjectID(), d));
+          continue;
+        }
+        final DBID pid = entry.getRoutingObjectID();
+        for(int i = 0; i < n; i++) {
+          if(leaf.routingObjectID != null && Math.abs(d - leaf.queryDistances[i]) > range) {
+            continue;
+          }
+          final double distance = distanceQuery.distance(leaf.node.getEntry(i).getRoutingObjectID(), pid);
+          ++dists;
+          if(distance <= range) {
+            lists[i].add(distance, pid);
+          }
+        }
+      }
+    }
+    for(int i = 0; i < n; i++) {
+      lists[i].sort();
+    }
+    synchronized(out) {
+      for(int i = 0; i < n; i++) {
+        out.put(leaf.node.getEntry(i).getRoutingObjectID(), lists[i]);
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Largest kNN distance of a set of heaps.
+   *
+   * @param heaps Heaps
+   * @return Largest kNN distance
+   */
+  private static double maxKNNDistance(KNNHeap[] heaps) {
+    double max = 0.;
+    for(KNNHeap heap : heaps) {
+      final double kdist = heap.getKNNDistance();
+      max = kdist > max ? kdist : max;
+    }
+    return max;
+  }
+
+  /**
+   * A query leaf, with the ball that contains it.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class QueryLeaf {
+    /**
+     * Leaf node.
+     */
+    final AbstractMTreeNode<?, ?, ?> node;
+
+    /**
+     * Routing object, {@code null} if the leaf is the root.
+     */
+    final DBID routingObjectID;
+
+    /**
+     * Covering radius.
+     */
+    final double coveringRadius;
+
+    /**
+     * Distances of the query objects to the routing object.
+     */
+    final double[] queryDistances;
+
+    /**
+     * Constructor.
+     *
+     * @param entry Directory entry of the leaf
+     * @param node Leaf node
+     */
+    QueryLeaf(MTreeEntry entry, AbstractMTreeNode<?, ?, ?> node) {
+      this.node = node;
+      this.routingObjectID = entry.getRoutingObjectID();
+      this.coveringRadius = routingObjectID != null ? entry.getCoveringRadius() : Double.POSITIVE_INFINITY;
+      this.queryDistances = new double[node.getNumEntries()];
+      for(int i = 0; i < queryDistances.length; i++) {
+        queryDistances[i] = node.getEntry(i).getParentDistance();
+      }
+    }
+
+    /**
+     * Lower bound for the distance of this leaf to the routing object of an
+     * entry, from the triangle inequality without computing a distance.
+     *
+     * @param parent Routing object of the node containing the entry
+     * @param parentDistance Distance of our routing object to the parent
+     * @param entry Entry
+     * @return Lower bound
+     */
+    double lowerBound(DBID parent, double parentDistance, MTreeEntry entry) {
+      if(parent == null || routingObjectID == null) {
+        return 0.;
+      }
+      return Math.abs(parentDistance - entry.getParentDistance()) - coveringRadius;
+    }
+  }
+
+  /**
+   * Join of a single query leaf, for parallel processing.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  @FunctionalInterface
+  private interface LeafJoin {
+    /**
+     * Join a single query leaf.
+     *
+     * @param leafEntry Entry of the query leaf
+     * @return Number of distance computations
+     */
+    long join(MTreeEntry leafEntry);
+  }
+}
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query;
 
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -40,7 +41,7 @@ public final class MTreeQueryUtil {
 
   /**
    * Get an RTree knn query, using an optimized double implementation when
-   * possible.
+   * possible. An {@link ApproximationHint} enables approximate search.
    * 
    * @param <O> Object type
    * @param tree Tree to query
@@ -49,7 +50,7 @@ public final class MTreeQueryUtil {
    * @return Query object
    */
   public static <O> KNNQuery<O> getKNNQuery(AbstractMTree<O, ?, ?, ?> tree, DistanceQuery<O> distanceQuery, Object... hints) {
-    return new MetricalIndexKNNQuery<>(tree, distanceQuery);
+    return new MetricalIndexKNNQuery<>(tree, distanceQuery, ApproximationHint.find(hints));
   }
 
   /**
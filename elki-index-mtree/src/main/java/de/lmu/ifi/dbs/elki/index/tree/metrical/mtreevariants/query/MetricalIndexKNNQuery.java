@@ -24,9 +24,11 @@ import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.PrefetchCandidates;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
@@ -49,6 +51,16 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
    */
   protected final AbstractMTree<O, ?, ?, ?> index;
 
+  /**
+   * Pruning factor for approximate search, 1 for exact search.
+   */
+  protected final double pruningFactor;
+
+  /**
+   * Maximum number of objects to refine (approximate search).
+   */
+  protected final int budget;
+
   /**
    * Constructor.
    * 
@@ -56,8 +68,21 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
    * @param distanceQuery Distance query used
    */
   public MetricalIndexKNNQuery(AbstractMTree<O, ?, ?, ?> index, DistanceQuery<O> distanceQuery) {
+    this(index, distanceQuery, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param index Index to use
+   * @param distanceQuery Distance query used
+   * @param approx Approximation hint, may be {@code null} for exact search
+   */
+  public MetricalIndexKNNQuery(AbstractMTree<O, ?, ?, ?> index, DistanceQuery<O> distanceQuery, ApproximationHint approx) {
     super(distanceQuery);
     this.index = index;
+    this.pruningFactor = approx != null ? approx.getPruningFactor() : 1.;
+    this.budget = approx != null ? approx.getBudget() : Integer.MAX_VALUE;
   }
 
   @Override
@@ -74,21 +99,31 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
 
     // Push the root node
     pq.add(new MTreeSearchCandidate(0., index.getRootID(), null, 0.));
+    int refined = 0;
 
     // search in tree
     while(!pq.isEmpty()) {
       MTreeSearchCandidate pqNode = pq.poll();
 
-      if(knnList.size() >= k && pqNode.mindist > d_k) {
+      if(knnList.size() >= k && pqNode.mindist * pruningFactor > d_k) {
         break;
       }
 
+      // Approximate search: stop before reading any further page.
+      if(refined >= budget && knnList.size() >= k) {
+        break;
+      }
       AbstractMTreeNode<?, ?, ?> node = index.getNode(pqNode.nodeID);
+      if(node.isLeaf()) {
+        refined += node.getNumEntries();
+      }
       DBID id_p = pqNode.routingObjectID;
       double d1 = pqNode.routingDistance;
 
       // directory node
       if(!node.isLeaf()) {
+        // Collect candidates for prefetching, if supported by the page file.
+        final PrefetchCandidates prefetch = index.prefetchCandidates(node.getNumEntries());
         for(int i = 0; i < node.getNumEntries(); i++) {
           MTreeEntry entry = node.getEntry(i);
           DBID o_r = entry.getRoutingObjectID();
@@ -103,11 +138,13 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
             double d3 = distanceQuery.distance(o_r, q);
             index.statistics.countDistanceCalculation();
             double d_min = Math.max(d3 - r_or, 0.);
-            if(d_min <= d_k) {
+            if(d_min * pruningFactor <= d_k) {
               pq.add(new MTreeSearchCandidate(d_min, ((DirectoryEntry) entry).getPageID(), o_r, d3));
+              prefetch.add(d_min, ((DirectoryEntry) entry).getPageID());
             }
           }
         }
+        prefetch.prefetch();
       }
       // data node
       else {
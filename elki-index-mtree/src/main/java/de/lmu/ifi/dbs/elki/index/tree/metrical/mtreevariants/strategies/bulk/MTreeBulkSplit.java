@@ -0,0 +1,58 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+
+/**
+ * Interface for partitioning the entries of one level of an M-tree during bulk
+ * loading.
+ * 
+ * The tree is built bottom-up: the leaf entries are partitioned into groups
+ * that become the leaves, then the entries representing these nodes are
+ * partitioned again, until all entries fit into the root.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @param <O> the type of DatabaseObject to be stored in the M-Tree
+ * @param <N> the type of AbstractMTreeNode used in the M-Tree
+ * @param <E> the type of MetricalEntry used in the M-Tree
+ */
+public interface MTreeBulkSplit<O, N extends AbstractMTreeNode<O, N, E>, E extends MTreeEntry> {
+  /**
+   * Partition the entries into groups of at most {@code maxEntries} entries.
+   * 
+   * The first entry of each group is its routing object, and the parent
+   * distances of all entries of a group must be set to their distance to this
+   * routing object.
+   * 
+   * @param tree Tree, for computing distances
+   * @param entries Entries to partition
+   * @param maxEntries Maximum number of entries per group
+   * @return Groups of entries
+   */
+  List<List<E>> partition(AbstractMTree<O, N, E, ?> tree, List<E> entries, int maxEntries);
+}
@@ -0,0 +1,249 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Sample-based clustering bulk load for the M-tree.
+ * 
+ * A random sample of seeds is drawn, and every entry is assigned to its
+ * nearest seed. Seeds with too few assigned entries are dropped and their
+ * entries are reassigned to the remaining seeds. Clusters that are still too
+ * large are partitioned recursively. The seed of each cluster becomes its
+ * routing object, so the parent distances are a by-product of the assignment.
+ * 
+ * Since the tree is built level by level, it is balanced by construction.
+ * 
+ * Reference:
+ * <p>
+ * P. Ciaccia, M. Patella<br />
+ * Bulk Loading the M-tree<br />
+ * In Proceedings of the 9th Australasian Database Conference (ADC'98)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @param <O> the type of DatabaseObject to be stored in the M-Tree
+ * @param <N> the type of AbstractMTreeNode used in the M-Tree
+ * @param <E> the type of MetricalEntry used in the M-Tree
+ */
+@Reference(authors = "P. Ciaccia, M. Patella", //
+    title = "Bulk Loading the M-tree", //
+    booktitle = "Proceedings of the 9th Australasian Database Conference (ADC'98)")
+public class SampleClusteringBulkSplit<O, N extends AbstractMTreeNode<O, N, E>, E extends MTreeEntry> implements MTreeBulkSplit<O, N, E> {
+  /**
+   * Random generator.
+   */
+  private Random random;
+
+  /**
+   * Constructor.
+   * 
+   * @param rnd Random generator
+   */
+  public SampleClusteringBulkSplit(RandomFactory rnd) {
+    super();
+    this.random = rnd.getSingleThreadedRandom();
+  }
+
+  @Override
+  public List<List<E>> partition(AbstractMTree<O, N, E, ?> tree, List<E> entries, int maxEntries) {
+    List<List<E>> result = new ArrayList<>();
+    partition(tree, new ArrayList<>(entries), maxEntries, result);
+    return result;
+  }
+
+  /**
+   * Recursive partitioning.
+   * 
+   * @param tree Tree, for computing distances
+   * @param entries Entries to partition (will be reordered)
+   * @param max Maximum number of entries per group
+   * @param result Output groups
+   */
+  private void partition(AbstractMTree<O, N, E, ?> tree, List<E> entries, int max, List<List<E>> result) {
+    final int size = entries.size();
+    if(size <= max) {
+      result.add(withRoutingObject(tree, entries));
+      return;
+    }
+    // Draw the seeds, by moving a random sample to the front.
+    final int k = Math.min(max, Math.max(2, (size + max - 1) / max));
+    List<List<E>> clusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      Collections.swap(entries, i, i + random.nextInt(size - i));
+      List<E> cluster = new ArrayList<>(size / k + 1);
+      E seed = entries.get(i);
+      seed.setParentDistance(0.);
+      cluster.add(seed);
+      clusters.add(cluster);
+    }
+    for(int j = k; j < size; j++) {
+      assignNearest(tree, entries.get(j), clusters);
+    }
+    // Dissolve clusters that are too small, and reassign their entries.
+    final int minSize = Math.max(1, max >> 2);
+    List<E> orphans = new ArrayList<>();
+    for(int i = 0; i < clusters.size();) {
+      if(clusters.get(i).size() < minSize) {
+        orphans.addAll(clusters.remove(i));
+        continue;
+      }
+      ++i;
+    }
+    if(clusters.isEmpty()) {
+      chunk(tree, entries, max, result);
+      return;
+    }
+    for(E e : orphans) {
+      assignNearest(tree, e, clusters);
+    }
+    for(List<E> cluster : clusters) {
+      if(cluster.size() <= max) {
+        result.add(cluster);
+      }
+      else if(cluster.size() == size) {
+        // No progress, e.g., because of duplicates.
+        chunk(tree, cluster, max, result);
+      }
+      else {
+        partition(tree, cluster, max, result);
+      }
+    }
+  }
+
+  /**
+   * Assign an entry to the cluster with the nearest seed, and set its parent
+   * distance accordingly.
+   * 
+   * @param tree Tree, for computing distances
+   * @param e Entry to assign
+   * @param clusters Clusters, with the seed first
+   */
+  private void assignNearest(AbstractMTree<O, N, E, ?> tree, E e, List<List<E>> clusters) {
+    int best = 0;
+    double bestd = Double.POSITIVE_INFINITY;
+    for(int i = 0; i < clusters.size(); i++) {
+      final double d = tree.distance(clusters.get(i).get(0), e);
+      if(d < bestd) {
+        bestd = d;
+        best = i;
+      }
+    }
+    e.setParentDistance(bestd);
+    clusters.get(best).add(e);
+  }
+
+  /**
+   * Fallback when clustering does not make progress: split the entries, sorted
+   * by their distance to the first entry, into balanced chunks.
+   * 
+   * @param tree Tree, for computing distances
+   * @param entries Entries to split (will be reordered)
+   * @param max Maximum number of entries per group
+   * @param result Output groups
+   */
+  private void chunk(AbstractMTree<O, N, E, ?> tree, List<E> entries, int max, List<List<E>> result) {
+    final int size = entries.size();
+    E first = entries.get(0);
+    first.setParentDistance(0.);
+    for(int i = 1; i < size; i++) {
+      E e = entries.get(i);
+      e.setParentDistance(tree.distance(first, e));
+    }
+    Collections.sort(entries, (a, b) -> Double.compare(a.getParentDistance(), b.getParentDistance()));
+    final int chunks = (size + max - 1) / max;
+    for(int c = 0, start = 0; c < chunks; c++) {
+      final int end = (int) (((long) size * (c + 1)) / chunks);
+      result.add(withRoutingObject(tree, new ArrayList<>(entries.subList(start, end))));
+      start = end;
+    }
+  }
+
+  /**
+   * Use the first entry as routing object, and set the parent distances.
+   * 
+   * @param tree Tree, for computing distances
+   * @param group Group of entries
+   * @return Group
+   */
+  private List<E> withRoutingObject(AbstractMTree<O, N, E, ?> tree, List<E> group) {
+    E first = group.get(0);
+    first.setParentDistance(0.);
+    for(int i = 1; i < group.size(); i++) {
+      E e = group.get(i);
+      e.setParentDistance(tree.distance(first, e));
+    }
+    return group;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> the type of DatabaseObject to be stored in the M-Tree
+   * @param <N> the type of AbstractMTreeNode used in the M-Tree
+   * @param <E> the type of MetricalEntry used in the M-Tree
+   */
+  public static class Parameterizer<O, N extends AbstractMTreeNode<O, N, E>, E extends MTreeEntry> extends AbstractParameterizer {
+    /**
+     * Option ID for the random generator.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("mtree.bulk.random", "Random generator / seed for sampling the bulk load seeds.");
+
+    /**
+     * Random generator
+     */
+    RandomFactory rnd = RandomFactory.DEFAULT;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      RandomParameter rndP = new RandomParameter(RANDOM_ID);
+      if(config.grab(rndP)) {
+        rnd = rndP.getValue();
+      }
+    }
+
+    @Override
+    protected SampleClusteringBulkSplit<O, N, E> makeInstance() {
+      return new SampleClusteringBulkSplit<>(rnd);
+    }
+  }
+}
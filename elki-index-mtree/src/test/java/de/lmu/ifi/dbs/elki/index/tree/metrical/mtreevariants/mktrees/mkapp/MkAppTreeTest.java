@@ -0,0 +1,90 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkapp;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MkTreeRKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk.SampleClusteringBulkSplit;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the MkApp-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MkAppTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Maximum k supported by the tree. The log-log regression needs more kNN
+   * distances than coefficients.
+   */
+  private static final int KMAX = 10;
+
+  /**
+   * Minimum recall of the approximation.
+   */
+  private static final double MIN_RECALL = .95;
+
+  /**
+   * Minimum precision of the approximation.
+   */
+  private static final double MIN_PRECISION = .8;
+
+  /**
+   * Test reverse kNN queries on the {@link MkAppTree}, built by insertion. The
+   * kNN distances are approximated, so the results are not exact.
+   */
+  @Test
+  public void testRKNN() {
+    testRKNNEuclidean(makeParameters(), MkTreeRKNNQuery.class, KMAX, MIN_RECALL, MIN_PRECISION);
+  }
+
+  /**
+   * Test reverse kNN queries on the {@link MkAppTree}, bulk loaded with sample-based
+   * clustering. The kNN distances are computed with a self-join.
+   */
+  @Test
+  public void testBulkLoad() {
+    ListParameterization params = makeParameters();
+    params.addParameter(AbstractMTreeFactory.Parameterizer.BULK_SPLIT_ID, SampleClusteringBulkSplit.class);
+    params.addParameter(SampleClusteringBulkSplit.Parameterizer.RANDOM_ID, 0L);
+    testRKNNEuclidean(params, MkTreeRKNNQuery.class, KMAX, MIN_RECALL, MIN_PRECISION);
+  }
+
+  /**
+   * Parameters for the tree.
+   *
+   * @return Parameters
+   */
+  private static ListParameterization makeParameters() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MkAppTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    params.addParameter(MkAppTreeFactory.K_ID, KMAX);
+    params.addParameter(MkAppTreeFactory.P_ID, 3);
+    return params;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkcop;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MkTreeRKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk.SampleClusteringBulkSplit;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the MkCoP-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MkCoPTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Maximum k supported by the tree.
+   */
+  private static final int KMAX = 5;
+
+  /**
+   * Test reverse kNN queries on the {@link MkCoPTree}, built by insertion.
+   */
+  @Test
+  public void testRKNN() {
+    testRKNNEuclidean(makeParameters(), MkTreeRKNNQuery.class, KMAX);
+  }
+
+  /**
+   * Test reverse kNN queries on the {@link MkCoPTree}, bulk loaded with sample-based
+   * clustering. The kNN distances are computed with a self-join.
+   */
+  @Test
+  public void testBulkLoad() {
+    ListParameterization params = makeParameters();
+    params.addParameter(AbstractMTreeFactory.Parameterizer.BULK_SPLIT_ID, SampleClusteringBulkSplit.class);
+    testRKNNEuclidean(params, MkTreeRKNNQuery.class, KMAX);
+  }
+
+  /**
+   * Parameters for the tree.
+   *
+   * @return Parameters
+   */
+  private static ListParameterization makeParameters() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MkCopTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    params.addParameter(MkCopTreeFactory.K_ID, KMAX);
+    return params;
+  }
+}
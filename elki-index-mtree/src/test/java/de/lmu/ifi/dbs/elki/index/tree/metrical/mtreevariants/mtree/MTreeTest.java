@@ -20,13 +20,27 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.bulk.SampleClusteringBulkSplit;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -46,4 +60,86 @@ public class MTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
     testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
   }
+
+  /**
+   * Test the {@link MTree} with sample-based clustering bulk loading.
+   */
+  @Test
+  public void testBulkLoad() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    metparams.addParameter(AbstractMTreeFactory.Parameterizer.BULK_SPLIT_ID, SampleClusteringBulkSplit.class);
+    testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
+
+  /**
+   * Test approximate kNN queries on the {@link MTree}.
+   */
+  @Test
+  public void testApproximate() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testApproximateEuclidean(metparams, MetricalIndexKNNQuery.class);
+  }
+
+  /**
+   * Test the dual-tree similarity joins of the {@link MTree}.
+   */
+  @Test
+  public void testSelfJoin() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testSelfJoinEuclidean(metparams);
+  }
+
+  /**
+   * Test batch insertions and deletions of the {@link MTree}.
+   */
+  @Test
+  public void testDynamic() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testDynamicEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
+
+  /**
+   * The root does not have a routing object, so the parent distances of its
+   * entries must be undefined, whether the tree was built by insertion or bulk
+   * loaded.
+   */
+  @Test
+  public void testRootParentDistance() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(boolean bulk : new boolean[] { false, true }) {
+      ELKIBuilder<MTreeFactory<DoubleVector>> builder = new ELKIBuilder<MTreeFactory<DoubleVector>>(MTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+      if(bulk) {
+        builder.with(AbstractMTreeFactory.Parameterizer.BULK_SPLIT_ID, SampleClusteringBulkSplit.class);
+      }
+      MTreeIndex<DoubleVector> tree = builder.build().instantiate(rel);
+      tree.initialize();
+      MTreeNode<DoubleVector> root = tree.getRoot();
+      assertFalse("Root is a leaf.", root.isLeaf());
+      for(int i = 0; i < root.getNumEntries(); i++) {
+        assertTrue("Parent distance in the root.", Double.isNaN(root.getEntry(i).getParentDistance()));
+      }
+    }
+  }
+
+  /**
+   * Test restoring an {@link MTree} from a snapshot.
+   *
+   * @throws IOException on errors with the temporary files
+   */
+  @Test
+  public void testSnapshot() throws IOException {
+    testSnapshotEuclidean(new ELKIBuilder<MTreeFactory<DoubleVector>>(MTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .build());
+  }
 }
@@ -20,10 +20,18 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -33,6 +41,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.index.preprocessed.AbstractPreprocessorIndex;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -49,7 +58,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @param <O> Object type
  */
-public abstract class AbstractMaterializeKNNPreprocessor<O> extends AbstractPreprocessorIndex<O, KNNList> implements KNNIndex<O> {
+public abstract class AbstractMaterializeKNNPreprocessor<O> extends AbstractPreprocessorIndex<O, KNNList> implements KNNIndex<O>, SnapshotIndex {
   /**
    * The query k value.
    */
@@ -135,6 +144,44 @@ public abstract class AbstractMaterializeKNNPreprocessor<O> extends AbstractPrep
     }
   }
 
+  @Override
+  public void writeSnapshot(ObjectOutput out) throws IOException {
+    out.writeInt(k);
+    out.writeInt(relation.size());
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList knn = get(iter);
+      out.writeInt(knn.size());
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+        out.writeInt(DBIDUtil.asInteger(it));
+        out.writeDouble(it.doubleValue());
+      }
+    }
+  }
+
+  @Override
+  public boolean restoreSnapshot(ObjectInput in) throws IOException {
+    if(storage != null || in.readInt() != k || in.readInt() != relation.size()) {
+      return false;
+    }
+    createStorage();
+    try {
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final int size = in.readInt();
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(int i = 0; i < size; i++) {
+          final int id = in.readInt();
+          heap.insert(in.readDouble(), DBIDUtil.importInteger(id));
+        }
+        storage.put(iter, heap.toKNNList());
+      }
+    }
+    catch(IOException e) {
+      storage = null;
+      throw e;
+    }
+    return true;
+  }
+
   @Override
   public KNNQuery<O> getKNNQuery(DistanceQuery<O> distQ, Object... hints) {
     // k max supported?
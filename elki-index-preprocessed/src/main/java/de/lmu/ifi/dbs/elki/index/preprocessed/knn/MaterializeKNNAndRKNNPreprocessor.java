@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.io.IOException;
+import java.io.ObjectInput;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -102,6 +104,24 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     materializeKNNAndRKNNs(DBIDUtil.ensureArray(relation.getDBIDs()), progress);
   }
 
+  @Override
+  public boolean restoreSnapshot(ObjectInput in) throws IOException {
+    if(!super.restoreSnapshot(in)) {
+      return false;
+    }
+    // Rebuild the reverse neighbors from the restored kNN lists.
+    materialized_RkNN = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT, TreeSet.class);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      materialized_RkNN.put(iter, new TreeSet<DoubleDBIDPair>());
+    }
+    for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
+      for(DoubleDBIDListIter iter = storage.get(id).iter(); iter.valid(); iter.advance()) {
+        materialized_RkNN.get(iter).add(makePair(iter, id));
+      }
+    }
+    return true;
+  }
+
   /**
    * Materializes the kNNs and RkNNs of the specified object IDs.
    *
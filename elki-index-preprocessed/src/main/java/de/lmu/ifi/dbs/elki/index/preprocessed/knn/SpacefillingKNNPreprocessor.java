@@ -34,6 +34,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -340,7 +341,8 @@ public class SpacefillingKNNPreprocessor<O extends NumberVector> implements KNNI
         return null;
       }
     }
-    return new SpaceFillingKNNQuery(distanceQuery);
+    ApproximationHint approx = ApproximationHint.find(hints);
+    return new SpaceFillingKNNQuery(distanceQuery, approx != null ? approx.getBudget() : Integer.MAX_VALUE);
   }
 
   /**
@@ -354,19 +356,28 @@ public class SpacefillingKNNPreprocessor<O extends NumberVector> implements KNNI
      */
     DistanceQuery<O> distq;
 
+    /**
+     * Candidate budget.
+     */
+    private final int budget;
+
     /**
      * Constructor.
      *
      * @param distanceQuery Distance query to use for refinement
+     * @param budget Candidate budget (approximate search)
      */
-    public SpaceFillingKNNQuery(DistanceQuery<O> distanceQuery) {
+    public SpaceFillingKNNQuery(DistanceQuery<O> distanceQuery, int budget) {
       super();
       this.distq = distanceQuery;
+      this.budget = budget;
     }
 
     @Override
     public KNNList getKNNForDBID(DBIDRef id, int k) {
-      final int wsize = (int) Math.ceil(window * k);
+      // Shrink the window to fit the budget, but look at least at k neighbors.
+      final int wsize = Math.min((int) Math.ceil(window * k), //
+          Math.max(k, budget / (2 * curves.size())));
       // Build candidates
       ModifiableDBIDs cands = DBIDUtil.newHashSet(2 * wsize * curves.size());
       final int[] posi = positions.get(id);
@@ -25,8 +25,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -162,6 +166,40 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
   }
 
+  @Test
+  public void testSnapshot() throws IOException {
+    UpdatableDatabase db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      ListParameterization params = new ListParameterization();
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new InputStreamDatabaseConnection(is, new ArrayList<>(), parser));
+      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+    }
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    LinearScanRKNNQuery<DoubleVector> lin_rknn_query = new LinearScanRKNNQuery<>(distanceQuery, lin_knn_query, k);
+
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNAndRKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k);
+    preproc.initialize();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+      preproc.writeSnapshot(out);
+    }
+    // A preprocessor with a different k must not use the snapshot.
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> other = new MaterializeKNNAndRKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k + 1);
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+      assertFalse("Incompatible snapshot was restored.", other.restoreSnapshot(in));
+    }
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> restored = new MaterializeKNNAndRKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k);
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+      assertTrue("Snapshot was not restored.", restored.restoreSnapshot(in));
+    }
+    testKNNQueries(rep, lin_knn_query, restored.getKNNQuery(distanceQuery, k), k);
+    testRKNNQueries(rep, lin_rknn_query, restored.getRKNNQuery(distanceQuery), k);
+  }
+
   private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
@@ -45,10 +45,17 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapte
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBlocks;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPageSerializer;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
 /**
  * Abstract superclass for index structures based on a R*-Tree.
  *
@@ -172,6 +179,64 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     adjustTree(subtree);
   }
 
+  /**
+   * Inserts a batch of leaf entries into this R*-Tree.
+   *
+   * The batch is sorted along a Hilbert curve first, so that consecutive
+   * entries tend to end up in the same leaf. After the regular insertion of
+   * the first entry of a group, all following entries that fall into the MBR
+   * of the same leaf are appended to this leaf without another descent, as
+   * long as this cannot cause an overflow.
+   *
+   * @param entries Leaf entries to insert (will be reordered!)
+   */
+  public void insertLeaves(List<E> entries) {
+    if(entries.isEmpty()) {
+      return;
+    }
+    if(!initialized) {
+      initialize(entries.get(0));
+    }
+    if(entries.size() > 1) {
+      HilbertSpatialSorter.STATIC.sort(entries);
+    }
+    final Logging log = getLogger();
+    for(int i = 0, size = entries.size(); i < size;) {
+      E first = entries.get(i++);
+      settings.getOverflowTreatment().reinitialize();
+      preInsert(first);
+      lastInsertedEntry = first;
+      IndexTreePath<E> subtree = choosePath(getRootPath(), first, height, 1);
+      N leaf = getNode(subtree.getEntry());
+      leaf.addLeafEntry(first);
+      writeNode(leaf);
+      // Only append to this leaf if the first insertion does not overflow it,
+      // as reinsertions and splits would invalidate the path.
+      final boolean room = leaf.getNumEntries() < leafCapacity - 1;
+      adjustTree(subtree);
+      if(!room) {
+        continue;
+      }
+      ModifiableHyperBoundingBox mbr = leaf.computeMBR();
+      int appended = 0;
+      while(i < size && leaf.getNumEntries() < leafCapacity - 1) {
+        E next = entries.get(i);
+        if(!SpatialUtil.contains(mbr, next)) {
+          break;
+        }
+        preInsert(next);
+        leaf.addLeafEntry(next);
+        writeNode(leaf);
+        ++appended;
+        ++i;
+      }
+      if(log.isDebuggingFine() && appended > 0) {
+        log.debugFine("appended " + appended + " entries to " + subtree);
+      }
+    }
+    doExtraIntegrityChecks();
+  }
+
   /**
    * Inserts the specified directory entry at the specified level into this
    * R*-Tree.
@@ -234,6 +299,157 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     doExtraIntegrityChecks();
   }
 
+  /**
+   * Delete a batch of leaf entries, given by their paths.
+   *
+   * In contrast to repeated calls of {@link #deletePath}, each leaf is modified
+   * only once, and the tree is condensed lazily in a single pass afterwards.
+   * The entries of underflowing nodes are collected and reinserted as a batch
+   * using {@link #insertLeaves}.
+   *
+   * @param deletionPaths Paths to the leaf entries to delete; all paths must
+   *        have been computed on the current tree.
+   */
+  protected void deletePaths(List<IndexTreePath<E>> deletionPaths) {
+    if(deletionPaths.isEmpty()) {
+      return;
+    }
+    // Group the deletions by leaf, and remember all pages on the paths.
+    Int2ObjectOpenHashMap<long[]> masks = new Int2ObjectOpenHashMap<>();
+    IntOpenHashSet touched = new IntOpenHashSet();
+    List<E> deleted = new ArrayList<>(deletionPaths.size());
+    for(IndexTreePath<E> path : deletionPaths) {
+      IndexTreePath<E> leafPath = path.getParentPath();
+      N leaf = getNode(leafPath.getEntry());
+      long[] mask = masks.get(leaf.getPageID());
+      if(mask == null) {
+        masks.put(leaf.getPageID(), mask = BitsUtil.zero(leaf.getCapacity()));
+      }
+      if(BitsUtil.get(mask, path.getIndex())) {
+        continue; // Duplicate.
+      }
+      BitsUtil.setI(mask, path.getIndex());
+      deleted.add(path.getEntry());
+      for(IndexTreePath<E> p = leafPath; p != null; p = p.getParentPath()) {
+        if(!touched.add(getPageID(p.getEntry()))) {
+          break; // Ancestors were already added.
+        }
+      }
+    }
+    for(Int2ObjectMap.Entry<long[]> ent : masks.int2ObjectEntrySet()) {
+      N leaf = getNode(ent.getIntKey());
+      leaf.removeMask(ent.getValue());
+      writeNode(leaf);
+    }
+
+    // Condense the tree in one pass, collecting the orphaned leaf entries.
+    List<E> reinsert = new ArrayList<>();
+    N root = getRoot();
+    if(!root.isLeaf()) {
+      condenseTouched(root, touched, reinsert);
+      shrinkRoot();
+    }
+    if(getLogger().isDebugging()) {
+      getLogger().debugFine("Deleted " + deleted.size() + " entries, reinserting " + reinsert.size());
+    }
+    insertLeaves(reinsert);
+    for(E entry : deleted) {
+      postDelete(entry);
+    }
+
+    doExtraIntegrityChecks();
+  }
+
+  /**
+   * Condense the modified parts of a subtree after a batch deletion: children
+   * that underflow are removed and their leaf entries are collected for
+   * reinsertion, all other modified children get their MBRs adjusted.
+   *
+   * @param node Directory node
+   * @param touched Page IDs of the modified nodes
+   * @param reinsert Output list of leaf entries to reinsert
+   */
+  private void condenseTouched(N node, IntOpenHashSet touched, List<E> reinsert) {
+    long[] remove = null;
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      final E entry = node.getEntry(i);
+      if(!touched.contains(getPageID(entry))) {
+        continue;
+      }
+      N child = getNode(entry);
+      if(!child.isLeaf()) {
+        condenseTouched(child, touched, reinsert);
+      }
+      if(child.getNumEntries() == 0 || hasUnderflow(child)) {
+        remove = (remove != null) ? remove : BitsUtil.zero(node.getCapacity());
+        BitsUtil.setI(remove, i);
+        collectLeafEntries(child, reinsert);
+      }
+      else {
+        child.adjustEntry(entry);
+      }
+    }
+    if(remove != null) {
+      node.removeMask(remove);
+    }
+    writeNode(node);
+  }
+
+  /**
+   * Collect all leaf entries of a subtree, and delete its nodes.
+   *
+   * @param node Subtree root
+   * @param result Output list
+   */
+  private void collectLeafEntries(N node, List<E> result) {
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      if(node.isLeaf()) {
+        result.add(node.getEntry(i));
+      }
+      else {
+        collectLeafEntries(getNode(node.getEntry(i)), result);
+      }
+    }
+    deleteNode(node);
+  }
+
+  /**
+   * Shrink the tree while the root is a directory node with at most one
+   * child.
+   */
+  private void shrinkRoot() {
+    N root = getRoot();
+    while(!root.isLeaf() && root.getNumEntries() <= 1) {
+      if(root.getNumEntries() == 0) {
+        N newRoot = createNewLeafNode();
+        newRoot.setPageID(getRootID());
+        writeNode(newRoot);
+        height = 1;
+        return;
+      }
+      final N newRoot;
+      N child = getNode(root.getEntry(0));
+      if(child.isLeaf()) {
+        newRoot = createNewLeafNode();
+        newRoot.setPageID(getRootID());
+        for(int i = 0; i < child.getNumEntries(); i++) {
+          newRoot.addLeafEntry(child.getEntry(i));
+        }
+      }
+      else {
+        newRoot = createNewDirectoryNode();
+        newRoot.setPageID(getRootID());
+        for(int i = 0; i < child.getNumEntries(); i++) {
+          newRoot.addDirectoryEntry(child.getEntry(i));
+        }
+      }
+      deleteNode(child);
+      writeNode(newRoot);
+      height--;
+      root = newRoot;
+    }
+  }
+
   /**
    * Initializes this R*-Tree from an existing persistent file.
    *
@@ -253,70 +469,209 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
 
   @Override
   protected void initializeCapacities(E exampleLeaf) {
-    /* Simulate the creation of a leaf page to get the page capacity */
+    final int dim = exampleLeaf.getDimensionality();
+    final int bytes = getDirectoryPrecision();
+    if(settings.directoryPrecision.bytes != bytes) {
+      getLogger().warning("Reduced directory precision is not supported by " + getClass().getSimpleName());
+    }
+    if(getFile().usesBinaryLayout() && exampleLeaf.getClass() == SpatialPointLeafEntry.class) {
+      // Leaves store floats or doubles.
+      leafCapacity = binaryCapacity(dim, Float.BYTES, Double.BYTES, true);
+      dirCapacity = binaryCapacity(dim, 1, bytes, false);
+    }
+    else {
+      leafCapacity = serializedLeafCapacity(dim);
+      dirCapacity = bytes < Double.BYTES ? compactDirectoryCapacity(dim, bytes) : serializedDirectoryCapacity(dim);
+    }
+
+    if(dirCapacity <= 2) {
+      throw new IllegalArgumentException("Node size of " + getPageSize() + " bytes is chosen too small!");
+    }
+
+    final Logging log = getLogger();
+    if(dirCapacity < 10) {
+      log.warning("Page size is choosen very small! Maximum number of entries in a directory node = " + dirCapacity);
+    }
+
+    // minimum entries per directory node
+    dirMinimum = (int) Math.floor(dirCapacity * settings.relativeMinFill);
+    if(dirMinimum < 1) {
+      dirMinimum = 1;
+    }
+
+    if(leafCapacity <= 2) {
+      throw new IllegalArgumentException("Node size of " + getPageSize() + " bytes is chosen too small!");
+    }
+
+    if(leafCapacity < 10) {
+      log.warning("Page size is choosen very small! Maximum number of entries in a leaf node = " + leafCapacity);
+    }
+
+    // minimum entries per leaf node
+    leafMinimum = (int) Math.floor(leafCapacity * settings.relativeMinFill);
+    if(leafMinimum < 1) {
+      leafMinimum = 1;
+    }
+  }
+
+  /**
+   * Simulate the creation of a leaf page to get the page capacity.
+   *
+   * @param dim Dimensionality
+   * @return Capacity
+   */
+  private int serializedLeafCapacity(int dim) {
     try {
       int cap = 0;
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
       ObjectOutputStream oos = new ObjectOutputStream(baos);
-      SpatialPointLeafEntry sl = new SpatialPointLeafEntry(DBIDUtil.importInteger(0), new double[exampleLeaf.getDimensionality()]);
+      SpatialPointLeafEntry sl = new SpatialPointLeafEntry(DBIDUtil.importInteger(0), new double[dim]);
+      writePageHeader(oos, true, 0);
       while(baos.size() <= getPageSize()) {
         sl.writeExternal(oos);
         oos.flush();
         cap++;
       }
       // the last one caused the page to overflow.
-      leafCapacity = cap - 1;
+      return cap - 1;
     }
     catch(IOException e) {
       throw new AbortException("Error determining page sizes.", e);
     }
+  }
 
-    /* Simulate the creation of a directory page to get the capacity */
+  /**
+   * Simulate the creation of a directory page to get the capacity.
+   *
+   * @param dim Dimensionality
+   * @return Capacity
+   */
+  private int serializedDirectoryCapacity(int dim) {
     try {
       int cap = 0;
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
       ObjectOutputStream oos = new ObjectOutputStream(baos);
-      ModifiableHyperBoundingBox hb = new ModifiableHyperBoundingBox(new double[exampleLeaf.getDimensionality()], new double[exampleLeaf.getDimensionality()]);
+      ModifiableHyperBoundingBox hb = new ModifiableHyperBoundingBox(new double[dim], new double[dim]);
       SpatialDirectoryEntry sl = new SpatialDirectoryEntry(0, hb);
+      writePageHeader(oos, false, 0);
       while(baos.size() <= getPageSize()) {
         sl.writeExternal(oos);
         oos.flush();
         cap++;
       }
-      dirCapacity = cap - 1;
+      return cap - 1;
     }
     catch(IOException e) {
       throw new AbortException("Error determining page sizes.", e);
     }
+  }
 
-    if(dirCapacity <= 2) {
-      throw new IllegalArgumentException("Node size of " + getPageSize() + " bytes is chosen too small!");
+  /**
+   * Determine the capacity of a page stored in the binary layout of
+   * {@link AbstractRStarTreeNode#writeToBuffer}, including the page header of
+   * {@link ByteBufferPageSerializer}.
+   *
+   * Nodes choose the most compact lossless precision when written, so the
+   * capacity is the minimum over all precisions the node may end up using.
+   *
+   * @param dim Dimensionality
+   * @param minbytes Minimum bytes per coordinate
+   * @param maxbytes Maximum bytes per coordinate
+   * @param leaf Leaf flag
+   * @return Capacity
+   */
+  private int binaryCapacity(int dim, int minbytes, int maxbytes, boolean leaf) {
+    final int avail = getPageSize() - ByteBufferPageSerializer.HEADER_SIZE;
+    int cap = Integer.MAX_VALUE;
+    for(int b = minbytes; b <= maxbytes; b <<= 1) {
+      final int base = AbstractRStarTreeNode.bufferSize(0, dim, b, leaf);
+      cap = Math.min(cap, (avail - base) / (AbstractRStarTreeNode.bufferSize(1, dim, b, leaf) - base));
     }
+    return cap;
+  }
 
-    final Logging log = getLogger();
-    if(dirCapacity < 10) {
-      log.warning("Page size is choosen very small! Maximum number of entries in a directory node = " + dirCapacity);
-    }
+  /**
+   * Simulate the header of a node as written by a persistent page file, to
+   * determine the page capacities: the page type marker, the page id, the leaf
+   * flag, the number of entries, and the capacity.
+   *
+   * @param oos Output stream
+   * @param leaf Leaf flag
+   * @param capacity Capacity, negative for the compact directory layout
+   * @throws IOException on errors
+   */
+  private static void writePageHeader(ObjectOutputStream oos, boolean leaf, int capacity) throws IOException {
+    oos.writeInt(1); // Filled page marker
+    oos.writeInt(0); // Page id
+    oos.writeBoolean(leaf);
+    oos.writeInt(0); // Number of entries
+    oos.writeInt(capacity);
+  }
 
-    // minimum entries per directory node
-    dirMinimum = (int) Math.floor(dirCapacity * settings.relativeMinFill);
-    if(dirMinimum < 1) {
-      dirMinimum = 1;
+  /**
+   * Determine the directory capacity for the compact layout of
+   * {@link AbstractRStarTreeNode#writeExternal}, including the header of the
+   * page.
+   *
+   * @param dim Dimensionality
+   * @param bytes Bytes per coordinate
+   * @return Capacity
+   */
+  private int compactDirectoryCapacity(int dim, int bytes) {
+    final int base = AbstractRStarTreeNode.bufferSize(0, dim, bytes, false);
+    int cap = (getPageSize() - base) / (AbstractRStarTreeNode.bufferSize(1, dim, bytes, false) - base);
+    try {
+      for(; cap > 0; cap--) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        final int size = AbstractRStarTreeNode.bufferSize(cap, dim, bytes, false);
+        writePageHeader(oos, false, ~cap);
+        oos.writeInt(size);
+        oos.write(new byte[size]);
+        oos.flush();
+        if(baos.size() <= getPageSize()) {
+          break;
+        }
+      }
     }
-
-    if(leafCapacity <= 2) {
-      throw new IllegalArgumentException("Node size of " + getPageSize() + " bytes is chosen too small!");
+    catch(IOException e) {
+      throw new AbortException("Error determining page sizes.", e);
     }
+    return cap;
+  }
 
-    if(leafCapacity < 10) {
-      log.warning("Page size is choosen very small! Maximum number of entries in a leaf node = " + leafCapacity);
-    }
+  /**
+   * Bytes per coordinate used for directory bounding boxes.
+   *
+   * @return Bytes per coordinate, {@code Double.BYTES} for full precision
+   */
+  protected int getDirectoryPrecision() {
+    return supportsDirectoryPrecision() ? settings.directoryPrecision.bytes : Double.BYTES;
+  }
 
-    // minimum entries per leaf node
-    leafMinimum = (int) Math.floor(leafCapacity * settings.relativeMinFill);
-    if(leafMinimum < 1) {
-      leafMinimum = 1;
+  /**
+   * Test whether this tree can store directory bounding boxes with reduced
+   * precision. This requires plain {@link SpatialDirectoryEntry} objects.
+   *
+   * @return {@code true} when supported
+   */
+  protected boolean supportsDirectoryPrecision() {
+    return false;
+  }
+
+  /**
+   * Write a node, rounding directory bounding boxes to the configured
+   * precision.
+   */
+  @Override
+  protected void writeNode(N node) {
+    if(!node.isLeaf()) {
+      final int bytes = getDirectoryPrecision();
+      if(bytes < Double.BYTES) {
+        node.roundEntries(bytes);
+      }
     }
+    super.writeNode(node);
   }
 
   /**
@@ -338,8 +693,8 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     int minEntries = leafMinimum;
     int maxEntries = leafCapacity;
 
-    ArrayList<E> result = new ArrayList<>();
     List<List<E>> partitions = settings.bulkSplitter.partition(objects, minEntries, maxEntries);
+    List<N> nodes = new ArrayList<>(partitions.size());
 
     for(List<E> partition : partitions) {
       // create leaf node
@@ -352,7 +707,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       // write to file
       writeNode(leafNode);
 
-      result.add(createNewDirectoryEntry(leafNode));
+      nodes.add(leafNode);
 
       if(getLogger().isDebugging()) {
         getLogger().debugFine("Created leaf page " + leafNode.getPageID());
@@ -360,9 +715,34 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     }
 
     if(getLogger().isDebugging()) {
-      getLogger().debugFine("numDataPages = " + result.size());
+      getLogger().debugFine("numDataPages = " + nodes.size());
     }
-    return result;
+    return createDirectoryEntries(nodes);
+  }
+
+  /**
+   * Create the directory entries for bulk loaded nodes. If the nodes contain at
+   * least {@link ParallelBlocks#THRESHOLD} entries together, the bounding boxes
+   * are computed in parallel.
+   *
+   * @param nodes Nodes, already written to the page file
+   * @return Directory entries, in the same order
+   */
+  protected List<E> createDirectoryEntries(final List<N> nodes) {
+    final int size = nodes.size();
+    long entries = 0;
+    for(N node : nodes) {
+      entries += node.getNumEntries();
+    }
+    final int blocks = Math.min(size, ParallelBlocks.getParallelism(entries));
+    return ParallelBlocks.runConcat(entries, blocks, b -> {
+      final int start = (int) (size * (long) b / blocks), end = (int) (size * (long) (b + 1) / blocks);
+      List<E> part = new ArrayList<>(end - start);
+      for(int i = start; i < end; i++) {
+        part.add(createNewDirectoryEntry(nodes.get(i)));
+      }
+      return part;
+    });
   }
 
   /**
@@ -860,6 +1240,17 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       }
     }
 
+    /**
+     * Count a number of distance computations, e.g. of a parallel join.
+     *
+     * @param n Number of distance computations
+     */
+    public void countDistanceCalculations(long n) {
+      if(distanceCalcs != null) {
+        distanceCalcs.increment(n);
+      }
+    }
+
     /**
      * Count a knn query invocation.
      */
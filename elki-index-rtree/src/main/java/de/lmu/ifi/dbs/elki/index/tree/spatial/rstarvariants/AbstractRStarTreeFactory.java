@@ -25,6 +25,7 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings.DirectoryPrecision;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.BulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.CombinedInsertionStrategy;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.InsertionStrategy;
@@ -37,6 +38,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -111,6 +113,11 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
      */
     public static OptionID OVERFLOW_STRATEGY_ID = new OptionID("rtree.overflowtreatment", "The strategy to use for handling overflows.");
 
+    /**
+     * Precision of the bounding boxes stored in directory nodes.
+     */
+    public static final OptionID DIRECTORY_PRECISION_ID = new OptionID("rtree.directory-precision", "Storage precision of directory bounding boxes. Reduced precision is rounded outward, and increases the directory fanout.");
+
     /**
      * Tree settings
      */
@@ -145,6 +152,10 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
       if(config.grab(overflowP)) {
         settings.setOverflowTreatment(overflowP.instantiateClass(config));
       }
+      EnumParameter<DirectoryPrecision> precisionP = new EnumParameter<>(DIRECTORY_PRECISION_ID, DirectoryPrecision.class, DirectoryPrecision.DOUBLE);
+      if(config.grab(precisionP)) {
+        settings.directoryPrecision = precisionP.getValue();
+      }
       configBulkLoad(config);
     }
 
@@ -23,12 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
 import de.lmu.ifi.dbs.elki.index.tree.Entry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
@@ -36,6 +38,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialNode;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 
 /**
  * Abstract superclass for nodes in a R*-Tree.
@@ -203,7 +206,9 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
     if(/* entry.getMBR() == null && */mbr == null) {
       return;
     }
-    if(!SpatialUtil.equals(entry, mbr)) {
+    // Reduced precision directories are rounded outward.
+    final int bytes = parent.storagePrecision(mbr.getDimensionality());
+    if(!SpatialUtil.equals(entry, mbr) && !(bytes > 0 && bytes < Double.BYTES && SpatialUtil.contains(entry, mbr))) {
       String soll = mbr.toString();
       String ist = new HyperBoundingBox(entry).toString();
       throw new RuntimeException("Wrong MBR in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + soll + ",\n ist: " + ist);
@@ -217,6 +222,19 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     super.writeExternal(out);
+    if(!isLeaf && numEntries > 0) {
+      // Directory boxes of reduced precision use the compact layout.
+      final int dim = ((SpatialEntry) entries[0]).getDimensionality();
+      final int bytes = storagePrecision(dim);
+      if(bytes > 0 && bytes < Double.BYTES) {
+        final ByteBuffer buffer = ByteBuffer.allocate(bufferSize(numEntries, dim, bytes, false));
+        writeToBuffer(buffer, dim, bytes);
+        out.writeInt(~entries.length); // Negative marker
+        out.writeInt(buffer.capacity());
+        out.write(buffer.array());
+        return;
+      }
+    }
     // TODO: do we need to write/read the capacity?
     out.writeInt(entries.length);
     for(Entry entry : entries) {
@@ -243,6 +261,12 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
 
     // TODO: do we need to write/read the capacity?
     final int capacity = in.readInt();
+    if(capacity < 0) { // Compact layout
+      final byte[] buf = new byte[in.readInt()];
+      in.readFully(buf);
+      readFromBuffer(ByteBuffer.wrap(buf));
+      return;
+    }
     if(isLeaf()) {
       entries = (E[]) new SpatialPointLeafEntry[capacity];
       for(int i = 0; i < numEntries; i++) {
@@ -260,4 +284,405 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Round the bounding boxes of all entries of this directory node outward to
+   * a reduced precision, so that {@link #writeToBuffer} can store them
+   * compactly.
+   *
+   * Quantization uses a regular grid spanning the bounding box of this node,
+   * so the bounding box of the node itself does not change.
+   *
+   * @param bytes Bytes per coordinate: 4 for floats, 2 or 1 for quantization
+   */
+  public void roundEntries(int bytes) {
+    if(isLeaf || numEntries == 0) {
+      return;
+    }
+    final int dim = ((SpatialEntry) entries[0]).getDimensionality();
+    final ModifiableHyperBoundingBox ref = bytes < Float.BYTES ? computeMBR() : null;
+    final int levels = quantizationLevels(bytes);
+    for(int i = 0; i < numEntries; i++) {
+      final SpatialDirectoryEntry e = (SpatialDirectoryEntry) entries[i];
+      final double[] min = new double[dim], max = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        if(ref == null) {
+          min[d] = floatBelow(e.getMin(d));
+          max[d] = floatAbove(e.getMax(d));
+        }
+        else {
+          final double lo = ref.getMin(d), hi = ref.getMax(d);
+          min[d] = dequantize(quantizeBelow(e.getMin(d), lo, hi, levels), lo, hi, levels);
+          max[d] = dequantize(quantizeAbove(e.getMax(d), lo, hi, levels), lo, hi, levels);
+        }
+      }
+      e.setMBR(new ModifiableHyperBoundingBox(min, max));
+    }
+  }
+
+  /**
+   * Size of the binary layout of {@link #writeToBuffer}.
+   *
+   * @param numEntries Number of entries
+   * @param dim Dimensionality
+   * @param bytes Bytes per coordinate
+   * @param leaf Leaf node
+   * @return Size in bytes
+   */
+  public static int bufferSize(int numEntries, int dim, int bytes, boolean leaf) {
+    return 18 + numEntries * Integer.BYTES //
+        + (bytes < Float.BYTES ? dim * 2 * Double.BYTES : 0) //
+        + numEntries * dim * bytes * (leaf ? 1 : 2);
+  }
+
+  /**
+   * Write this node in a compact binary layout, for subclasses implementing
+   * {@link ByteBufferPage}.
+   *
+   * The ids of all entries are stored first, followed by the coordinates (for
+   * directory entries, the minimum and then the maximum of each MBR).
+   * Coordinates are stored as floats when this is lossless for the entire
+   * node. Directory coordinates that lie on the grid of
+   * {@link #roundEntries} are stored as 8 or 16 bit offsets relative to the
+   * bounding box of the node, which is stored before the coordinates.
+   *
+   * @param buffer Buffer to write to
+   * @throws IllegalStateException if the node contains other entries than
+   *         {@link SpatialPointLeafEntry} or {@link SpatialDirectoryEntry}, see
+   *         {@link #hasBinaryLayout()}
+   */
+  public void writeToBuffer(ByteBuffer buffer) {
+    final int dim = dimensionality();
+    final int bytes = storagePrecision(dim);
+    if(bytes == 0) {
+      throw new IllegalStateException("No binary layout for entries of type " + entries[0].getClass().getName());
+    }
+    writeToBuffer(buffer, dim, bytes);
+  }
+
+  /**
+   * Test whether this node can be stored in the binary layout of
+   * {@link #writeToBuffer}, for subclasses implementing {@link ByteBufferPage}.
+   *
+   * @return {@code true} if all entries are supported
+   */
+  public boolean hasBinaryLayout() {
+    return storagePrecision(dimensionality()) > 0;
+  }
+
+  /**
+   * Size of the binary layout of {@link #writeToBuffer}, for subclasses
+   * implementing {@link ByteBufferPage}.
+   *
+   * @return Size in bytes
+   */
+  public int getBinaryLayoutSize() {
+    final int dim = dimensionality();
+    return bufferSize(numEntries, dim, storagePrecision(dim), isLeaf);
+  }
+
+  /**
+   * Dimensionality of the entries.
+   *
+   * @return Dimensionality, 0 for empty nodes
+   */
+  private int dimensionality() {
+    return numEntries > 0 ? ((SpatialEntry) entries[0]).getDimensionality() : 0;
+  }
+
+  /**
+   * Write this node in the compact binary layout.
+   *
+   * @param buffer Buffer to write to
+   * @param dim Dimensionality
+   * @param bytes Bytes per coordinate
+   */
+  private void writeToBuffer(ByteBuffer buffer, int dim, int bytes) {
+    buffer.putInt(getPageID()).put((byte) (isLeaf ? 1 : 0)).putInt(entries.length) //
+        .putInt(numEntries).putInt(dim).put((byte) bytes);
+    for(int i = 0; i < numEntries; i++) {
+      buffer.putInt(isLeaf ? DBIDUtil.asInteger(((SpatialPointLeafEntry) entries[i]).getDBID()) : ((SpatialDirectoryEntry) entries[i]).getPageID());
+    }
+    if(bytes < Float.BYTES) {
+      final ModifiableHyperBoundingBox ref = computeMBR();
+      for(int d = 0; d < dim; d++) {
+        buffer.putDouble(ref.getMin(d));
+      }
+      for(int d = 0; d < dim; d++) {
+        buffer.putDouble(ref.getMax(d));
+      }
+      final int levels = quantizationLevels(bytes);
+      for(int i = 0; i < numEntries; i++) {
+        final SpatialEntry e = (SpatialEntry) entries[i];
+        for(int d = 0; d < dim; d++) {
+          putCode(buffer, quantizeBelow(e.getMin(d), ref.getMin(d), ref.getMax(d), levels), bytes);
+        }
+        for(int d = 0; d < dim; d++) {
+          putCode(buffer, quantizeAbove(e.getMax(d), ref.getMin(d), ref.getMax(d), levels), bytes);
+        }
+      }
+      return;
+    }
+    final boolean floats = bytes == Float.BYTES;
+    for(int i = 0; i < numEntries; i++) {
+      final SpatialEntry e = (SpatialEntry) entries[i];
+      for(int d = 0; d < dim; d++) {
+        putValue(buffer, e.getMin(d), floats);
+      }
+      for(int d = 0; !isLeaf && d < dim; d++) {
+        putValue(buffer, e.getMax(d), floats);
+      }
+    }
+  }
+
+  /**
+   * Read this node from the binary layout written by
+   * {@link #writeToBuffer(ByteBuffer)}.
+   *
+   * @param buffer Buffer to read from
+   */
+  @SuppressWarnings("unchecked")
+  public void readFromBuffer(ByteBuffer buffer) {
+    setPageID(buffer.getInt());
+    isLeaf = buffer.get() != 0;
+    final int capacity = buffer.getInt();
+    numEntries = buffer.getInt();
+    final int dim = buffer.getInt();
+    final int bytes = buffer.get();
+    final boolean floats = bytes == Float.BYTES;
+    final int[] ids = new int[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      ids[i] = buffer.getInt();
+    }
+    if(isLeaf) {
+      entries = (E[]) new SpatialPointLeafEntry[capacity];
+      for(int i = 0; i < numEntries; i++) {
+        entries[i] = new SpatialPointLeafEntry(DBIDUtil.importInteger(ids[i]), getValues(buffer, dim, floats));
+      }
+      return;
+    }
+    entries = (E[]) new SpatialDirectoryEntry[capacity];
+    if(bytes < Float.BYTES) {
+      final double[] lo = getValues(buffer, dim, false), hi = getValues(buffer, dim, false);
+      final int levels = quantizationLevels(bytes);
+      for(int i = 0; i < numEntries; i++) {
+        final double[] min = new double[dim], max = new double[dim];
+        for(int d = 0; d < dim; d++) {
+          min[d] = dequantize(getCode(buffer, bytes), lo[d], hi[d], levels);
+        }
+        for(int d = 0; d < dim; d++) {
+          max[d] = dequantize(getCode(buffer, bytes), lo[d], hi[d], levels);
+        }
+        entries[i] = new SpatialDirectoryEntry(ids[i], new ModifiableHyperBoundingBox(min, max));
+      }
+      return;
+    }
+    for(int i = 0; i < numEntries; i++) {
+      final double[] min = getValues(buffer, dim, floats);
+      entries[i] = new SpatialDirectoryEntry(ids[i], new ModifiableHyperBoundingBox(min, getValues(buffer, dim, floats)));
+    }
+  }
+
+  /**
+   * Find the most compact lossless precision for the binary layout.
+   *
+   * @param dim Dimensionality
+   * @return Bytes per coordinate, 0 if the entries are not supported
+   */
+  protected int storagePrecision(int dim) {
+    final Class<?> ecls = isLeaf ? SpatialPointLeafEntry.class : SpatialDirectoryEntry.class;
+    boolean floats = true;
+    for(int i = 0; i < numEntries; i++) {
+      final SpatialEntry e = (SpatialEntry) entries[i];
+      if(e.getClass() != ecls || e.getDimensionality() != dim) {
+        return 0;
+      }
+      for(int d = 0; floats && d < dim; d++) {
+        floats = (float) e.getMin(d) == e.getMin(d) && (float) e.getMax(d) == e.getMax(d);
+      }
+    }
+    if(!isLeaf && numEntries > 0) {
+      final ModifiableHyperBoundingBox ref = computeMBR();
+      for(int bytes = 1; bytes < Float.BYTES; bytes <<= 1) {
+        if(isQuantized(ref, dim, bytes)) {
+          return bytes;
+        }
+      }
+    }
+    return floats ? Float.BYTES : Double.BYTES;
+  }
+
+  /**
+   * Test whether all entries lie on the quantization grid.
+   *
+   * @param ref Reference bounding box
+   * @param dim Dimensionality
+   * @param bytes Bytes per coordinate
+   * @return {@code true} if quantization is lossless
+   */
+  private boolean isQuantized(SpatialComparable ref, int dim, int bytes) {
+    final int levels = quantizationLevels(bytes);
+    for(int i = 0; i < numEntries; i++) {
+      final SpatialEntry e = (SpatialEntry) entries[i];
+      for(int d = 0; d < dim; d++) {
+        final double lo = ref.getMin(d), hi = ref.getMax(d);
+        if(dequantize(quantizeBelow(e.getMin(d), lo, hi, levels), lo, hi, levels) != e.getMin(d) //
+            || dequantize(quantizeAbove(e.getMax(d), lo, hi, levels), lo, hi, levels) != e.getMax(d)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Number of quantization steps.
+   *
+   * @param bytes Bytes per coordinate
+   * @return Number of steps
+   */
+  private static int quantizationLevels(int bytes) {
+    return bytes < Float.BYTES ? (1 << (bytes << 3)) - 1 : 0;
+  }
+
+  /**
+   * Value of a quantization grid point. This is monotone in the code, and
+   * exact at both ends of the range.
+   *
+   * @param k Code
+   * @param lo Minimum of the range
+   * @param hi Maximum of the range
+   * @param levels Number of steps
+   * @return Value
+   */
+  private static double dequantize(int k, double lo, double hi, int levels) {
+    return k <= 0 ? lo : k >= levels ? hi : Math.min(hi, lo + (hi - lo) * k / levels);
+  }
+
+  /**
+   * Largest grid point not above the given value.
+   *
+   * @param v Value, within the range
+   * @param lo Minimum of the range
+   * @param hi Maximum of the range
+   * @param levels Number of steps
+   * @return Code
+   */
+  private static int quantizeBelow(double v, double lo, double hi, int levels) {
+    if(!(hi > lo)) {
+      return 0;
+    }
+    int k = (int) Math.max(0, Math.min(levels, Math.floor((v - lo) / (hi - lo) * levels)));
+    while(k > 0 && dequantize(k, lo, hi, levels) > v) {
+      --k;
+    }
+    while(k < levels && dequantize(k + 1, lo, hi, levels) <= v) {
+      ++k;
+    }
+    return k;
+  }
+
+  /**
+   * Smallest grid point not below the given value.
+   *
+   * @param v Value, within the range
+   * @param lo Minimum of the range
+   * @param hi Maximum of the range
+   * @param levels Number of steps
+   * @return Code
+   */
+  private static int quantizeAbove(double v, double lo, double hi, int levels) {
+    if(!(hi > lo)) {
+      return 0;
+    }
+    int k = (int) Math.max(0, Math.min(levels, Math.ceil((v - lo) / (hi - lo) * levels)));
+    while(k < levels && dequantize(k, lo, hi, levels) < v) {
+      ++k;
+    }
+    while(k > 0 && dequantize(k - 1, lo, hi, levels) >= v) {
+      --k;
+    }
+    return k;
+  }
+
+  /**
+   * Round down to the next float.
+   *
+   * @param v Value
+   * @return Float value not larger than v
+   */
+  private static double floatBelow(double v) {
+    final float f = (float) v;
+    return f > v ? Math.nextDown(f) : f;
+  }
+
+  /**
+   * Round up to the next float.
+   *
+   * @param v Value
+   * @return Float value not smaller than v
+   */
+  private static double floatAbove(double v) {
+    final float f = (float) v;
+    return f < v ? Math.nextUp(f) : f;
+  }
+
+  /**
+   * Write a quantization code.
+   *
+   * @param buffer Buffer
+   * @param k Code
+   * @param bytes Bytes per code
+   */
+  private static void putCode(ByteBuffer buffer, int k, int bytes) {
+    if(bytes == 1) {
+      buffer.put((byte) k);
+    }
+    else {
+      buffer.putShort((short) k);
+    }
+  }
+
+  /**
+   * Read a quantization code.
+   *
+   * @param buffer Buffer
+   * @param bytes Bytes per code
+   * @return Code
+   */
+  private static int getCode(ByteBuffer buffer, int bytes) {
+    return bytes == 1 ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+  }
+
+  /**
+   * Write a single coordinate.
+   *
+   * @param buffer Buffer
+   * @param v Value
+   * @param floats Use float precision
+   */
+  private static void putValue(ByteBuffer buffer, double v, boolean floats) {
+    if(floats) {
+      buffer.putFloat((float) v);
+    }
+    else {
+      buffer.putDouble(v);
+    }
+  }
+
+  /**
+   * Read a vector of coordinates.
+   *
+   * @param buffer Buffer
+   * @param dim Dimensionality
+   * @param floats Values are stored as floats
+   * @return Values
+   */
+  private static double[] getValues(ByteBuffer buffer, int dim, boolean floats) {
+    final double[] v = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      v[d] = floats ? buffer.getFloat() : buffer.getDouble();
+    }
+    return v;
+  }
+}
@@ -180,8 +180,8 @@ public abstract class NonFlatRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     int minEntries = dirMinimum;
     int maxEntries = dirCapacity - 1;
 
-    ArrayList<E> result = new ArrayList<>();
     List<List<E>> partitions = settings.bulkSplitter.partition(nodes, minEntries, maxEntries);
+    List<N> dirNodes = new ArrayList<>(partitions.size());
 
     for(List<E> partition : partitions) {
       // create node
@@ -193,13 +193,13 @@ public abstract class NonFlatRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       // write to file
       writeNode(dirNode);
 
-      result.add(createNewDirectoryEntry(dirNode));
+      dirNodes.add(dirNode);
       if(getLogger().isDebuggingFiner()) {
         getLogger().debugFiner("Directory page no: "+dirNode.getPageID());
       }
     }
 
-    return result;
+    return createDirectoryEntries(dirNodes);
   }
 
   /**
@@ -40,6 +40,41 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.split.Top
  * @apiviz.composedOf OverflowTreatment
  */
 public class RTreeSettings {
+  /**
+   * Storage precision of the bounding boxes in directory nodes.
+   *
+   * Reduced precision increases the directory fanout. Boxes are always rounded
+   * outward, so queries remain exact.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public enum DirectoryPrecision {
+    /** Double precision, no rounding */
+    DOUBLE(Double.BYTES),
+    /** Single precision floats, rounded outward */
+    FLOAT(Float.BYTES),
+    /** 16 bit, quantized relative to the bounding box of the node */
+    QUANTIZED16(2),
+    /** 8 bit, quantized relative to the bounding box of the node */
+    QUANTIZED8(1);
+
+    /**
+     * Bytes per coordinate.
+     */
+    public final int bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param bytes Bytes per coordinate
+     */
+    private DirectoryPrecision(int bytes) {
+      this.bytes = bytes;
+    }
+  }
+
   /**
    * The strategy for bulk load.
    */
@@ -65,6 +100,11 @@ public class RTreeSettings {
    */
   protected double relativeMinFill = 0.4;
 
+  /**
+   * Precision of directory bounding boxes.
+   */
+  protected DirectoryPrecision directoryPrecision = DirectoryPrecision.DOUBLE;
+
   /**
    * Constructor with default values.
    */
@@ -125,6 +165,16 @@ public class RTreeSettings {
     this.relativeMinFill = relative;
   }
 
+  /**
+   * Set the precision of directory bounding boxes. (Only supported before the
+   * tree was used!)
+   *
+   * @param precision Directory precision
+   */
+  public void setDirectoryPrecision(DirectoryPrecision precision) {
+    this.directoryPrecision = precision;
+  }
+
   /**
    * @return the overflowTreatment
    */
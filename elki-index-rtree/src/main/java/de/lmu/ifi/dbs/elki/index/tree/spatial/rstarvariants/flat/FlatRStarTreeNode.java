@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.flat;
 import java.util.Arrays;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in a flat R*-Tree.
@@ -30,7 +31,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNod
  * @author Elke Achtert
  * @since 0.2
  */
-public class FlatRStarTreeNode extends AbstractRStarTreeNode<FlatRStarTreeNode, SpatialEntry> {
+public class FlatRStarTreeNode extends AbstractRStarTreeNode<FlatRStarTreeNode, SpatialEntry> implements ByteBufferPage {
   /**
    * Serial version
    */
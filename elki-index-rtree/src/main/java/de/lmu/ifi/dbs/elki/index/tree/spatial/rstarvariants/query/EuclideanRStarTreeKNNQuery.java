@@ -27,9 +27,11 @@ import java.util.Map;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.PrefetchCandidates;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
@@ -63,6 +65,11 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Pruning factor, for squared distances.
+   */
+  private final double sqPruningFactor;
+
   /**
    * Constructor.
    *
@@ -70,7 +77,19 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
    * @param relation Data relation to query
    */
   public EuclideanRStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation) {
-    super(tree, relation, EuclideanDistanceFunction.STATIC);
+    this(tree, relation, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param tree Index to use
+   * @param relation Data relation to query
+   * @param approx Approximation hint, may be {@code null} for exact search
+   */
+  public EuclideanRStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation, ApproximationHint approx) {
+    super(tree, relation, EuclideanDistanceFunction.STATIC, approx);
+    this.sqPruningFactor = pruningFactor * pruningFactor;
   }
 
   @Override
@@ -84,23 +103,31 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
     // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getNode(tree.getRootID()));
+    int refined = 0;
 
     // search in tree
     while(!pq.isEmpty()) {
       double mindist = pq.peekKey();
-      if(mindist > maxDist) {
+      if(mindist * sqPruningFactor > maxDist) {
+        break;
+      }
+      // Approximate search: stop before reading any further page.
+      if(refined >= budget && knnList.size() >= k) {
         break;
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
+      AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+      if(node.isLeaf()) {
+        refined += node.getNumEntries();
+      }
+      maxDist = expandNode(obj, knnList, pq, maxDist, node);
     }
     return knnList.toKNNListSqrt();
   }
 
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
-    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, AbstractRStarTreeNode<?, ?> node) {
     // data node
     if(node.isLeaf()) {
       for(int i = 0; i < node.getNumEntries(); i++) {
@@ -114,20 +141,24 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
     }
     // directory node
     else {
+      // Collect candidates for prefetching, if supported by the page file.
+      final PrefetchCandidates prefetch = tree.prefetchCandidates(node.getNumEntries());
       for(int i = 0; i < node.getNumEntries(); i++) {
         SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
         double distance = SQUARED.minDist(entry, object);
         tree.statistics.countDistanceCalculation();
         // Greedy expand, bypassing the queue
         if(distance <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+          expandNode(object, knnList, pq, maxDist, tree.getNode(entry.getPageID()));
         }
         else {
-          if(distance <= maxDist) {
+          if(distance * sqPruningFactor <= maxDist) {
             pq.add(distance, entry.getPageID());
+            prefetch.add(distance, entry.getPageID());
           }
         }
       }
+      prefetch.prefetch();
     }
     return maxDist;
   }
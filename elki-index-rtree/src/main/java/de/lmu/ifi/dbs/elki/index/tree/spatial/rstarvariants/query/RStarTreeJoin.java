@@ -0,0 +1,363 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBlocks;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Dual-tree similarity joins (kNN join and epsilon join) of two R*-trees, or
+ * of one tree with itself.
+ *
+ * Every leaf of the query tree is joined with the data tree independently:
+ * data nodes are pruned by the minimum distance of their MBR to the MBR of the
+ * query leaf, using the largest kNN distance of the objects in the query leaf
+ * (respectively the join radius) as bound. Single data points are first
+ * checked against the query leaf MBR before computing the distances to the
+ * query points. Query leaves are processed in parallel; in a self-join, each
+ * leaf is joined with itself first to obtain a good initial kNN bound.
+ *
+ * Reference:
+ * <p>
+ * C. Böhm, F. Krebs<br />
+ * The k-Nearest Neighbour Join: Turbo Charging the KDD Process<br />
+ * Knowledge and Information Systems 6(6)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses AbstractRStarTree
+ * @apiviz.uses SpatialPrimitiveDistanceFunction
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "C. Böhm, F. Krebs", //
+    title = "The k-Nearest Neighbour Join: Turbo Charging the KDD Process", //
+    booktitle = "Knowledge and Information Systems 6(6)")
+public class RStarTreeJoin<O extends SpatialComparable> {
+  /**
+   * Tree containing the query points.
+   */
+  protected final AbstractRStarTree<?, ?, ?> queryTree;
+
+  /**
+   * Tree containing the data points.
+   */
+  protected final AbstractRStarTree<?, ?, ?> dataTree;
+
+  /**
+   * Spatial primitive distance function.
+   */
+  protected final SpatialPrimitiveDistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Constructor for a self-join.
+   *
+   * @param tree Tree to join with itself
+   * @param distanceFunction Distance function
+   */
+  public RStarTreeJoin(AbstractRStarTree<?, ?, ?> tree, SpatialPrimitiveDistanceFunction<? super O> distanceFunction) {
+    this(tree, tree, distanceFunction);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param queryTree Tree containing the query points
+   * @param dataTree Tree containing the data points
+   * @param distanceFunction Distance function
+   */
+  public RStarTreeJoin(AbstractRStarTree<?, ?, ?> queryTree, AbstractRStarTree<?, ?, ?> dataTree, SpatialPrimitiveDistanceFunction<? super O> distanceFunction) {
+    super();
+    this.queryTree = queryTree;
+    this.dataTree = dataTree;
+    this.distanceFunction = distanceFunction;
+  }
+
+  /**
+   * Find the k nearest neighbors in the data tree of every query point.
+   *
+   * @param ids IDs of the query points, for allocating the storage
+   * @param k Number of neighbors
+   * @return kNN lists
+   */
+  public WritableDataStore<KNNList> kNNJoin(DBIDs ids, final int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one neighbor has to be requested!");
+    }
+    final WritableDataStore<KNNList> out = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    joinLeaves(ids.size(), leafID -> kNNJoinLeaf(leafID, k, out));
+    return out;
+  }
+
+  /**
+   * Find all data points within the given radius of every query point.
+   *
+   * @param ids IDs of the query points, for allocating the storage
+   * @param range Join radius
+   * @return Neighbor lists, sorted by distance
+   */
+  public WritableDataStore<DoubleDBIDList> rangeJoin(DBIDs ids, final double range) {
+    final WritableDataStore<DoubleDBIDList> out = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, DoubleDBIDList.class);
+    joinLeaves(ids.size(), leafID -> rangeJoinLeaf(leafID, range, out));
+    return out;
+  }
+
+  /**
+   * Join every leaf of the query tree, in parallel if possible.
+   *
+   * @param size Number of query points
+   * @param join Join of a single query leaf
+   */
+  private void joinLeaves(int size, LeafJoin join) {
+    final int[] leaves = getLeafIDs(queryTree);
+    long dists = ParallelBlocks.sumInterleaved(size, leaves.length, i -> join.join(leaves[i]));
+    // Statistics counters are not thread safe, so count at the end.
+    dataTree.statistics.countDistanceCalculations(dists);
+  }
+
+  /**
+   * kNN join of a single query leaf.
+   *
+   * @param leafID Page id of the query leaf
+   * @param k Number of neighbors
+   * @param out Output storage
+   * @return Number of distance computations
+   */
+  private long kNNJoinLeaf(int leafID, int k, WritableDataStore<KNNList> out) {
+    final AbstractRStarTreeNode<?, ?> leaf = queryTree.getNodeConcurrent(leafID);
+    final int n = leaf.getNumEntries();
+    if(n == 0) {
+      return 0;
+    }
+    final SpatialComparable mbr = leaf.computeMBR();
+    final KNNHeap[] heaps = new KNNHeap[n];
+    for(int i = 0; i < n; i++) {
+      heaps[i] = DBIDUtil.newHeap(k);
+    }
+    long dists = 0;
+    double bound = Double.POSITIVE_INFINITY;
+    int skip = -1;
+    if(queryTree == dataTree) {
+      // Join with itself first, which usually gives a good bound.
+      dists += kNNJoinLeaves(leaf, mbr, leaf, heaps, bound);
+      bound = maxKNNDistance(heaps);
+      skip = leafID;
+    }
+    DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(21);
+    pq.add(0., dataTree.getRootID());
+    while(!pq.isEmpty() && pq.peekKey() <= bound) {
+      final int nodeID = pq.peekValue();
+      pq.poll(); // Remove from heap.
+      if(nodeID == skip) {
+        continue;
+      }
+      AbstractRStarTreeNode<?, ?> node = dataTree.getNodeConcurrent(nodeID);
+      if(node.isLeaf()) {
+        dists += kNNJoinLeaves(leaf, mbr, node, heaps, bound);
+        bound = maxKNNDistance(heaps);
+        continue;
+      }
+      for(int j = 0; j < node.getNumEntries(); j++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(j);
+        double distance = distanceFunction.minDist(mbr, entry);
+        ++dists;
+        if(distance <= bound) {
+          pq.add(distance, entry.getPageID());
+        }
+      }
+    }
+    synchronized(out) {
+      for(int i = 0; i < n; i++) {
+        out.put(((SpatialPointLeafEntry) leaf.getEntry(i)).getDBID(), heaps[i].toKNNList());
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Join a query leaf with a data leaf.
+   *
+   * @param leaf Query leaf
+   * @param mbr Bounding box of the query leaf
+   * @param data Data leaf
+   * @param heaps kNN heaps of the query points
+   * @param bound Largest kNN distance in the query leaf
+   * @return Number of distance computations
+   */
+  private long kNNJoinLeaves(AbstractRStarTreeNode<?, ?> leaf, SpatialComparable mbr, AbstractRStarTreeNode<?, ?> data, KNNHeap[] heaps, double bound) {
+    long dists = 0;
+    for(int j = 0; j < data.getNumEntries(); j++) {
+      final SpatialPointLeafEntry p = (SpatialPointLeafEntry) data.getEntry(j);
+      final double lb = distanceFunction.minDist(mbr, p);
+      ++dists;
+      if(lb > bound) {
+        continue;
+      }
+      for(int i = 0; i < heaps.length; i++) {
+        final KNNHeap heap = heaps[i];
+        final double kdist = heap.getKNNDistance();
+        if(lb > kdist) {
+          continue;
+        }
+        final double distance = distanceFunction.minDist((SpatialPointLeafEntry) leaf.getEntry(i), p);
+        ++dists;
+        if(distance <= kdist) {
+          heap.insert(distance, p.getDBID());
+        }
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Epsilon join of a single query leaf.
+   *
+   * @param leafID Page id of the query leaf
+   * @param range Join radius
+   * @param out Output storage
+   * @return Number of distance computations
+   */
+  private long rangeJoinLeaf(int leafID, double range, WritableDataStore<DoubleDBIDList> out) {
+    final AbstractRStarTreeNode<?, ?> leaf = queryTree.getNodeConcurrent(leafID);
+    final int n = leaf.getNumEntries();
+    if(n == 0) {
+      return 0;
+    }
+    final SpatialComparable mbr = leaf.computeMBR();
+    final ModifiableDoubleDBIDList[] lists = new ModifiableDoubleDBIDList[n];
+    for(int i = 0; i < n; i++) {
+      lists[i] = DBIDUtil.newDistanceDBIDList();
+    }
+    long dists = 0;
+    int[] stack = new int[101];
+    int ps = 0;
+    stack[ps++] = dataTree.getRootID();
+    while(ps > 0) {
+      AbstractRStarTreeNode<?, ?> node = dataTree.getNodeConcurrent(stack[--ps]);
+      if(node.isLeaf()) {
+        for(int j = 0; j < node.getNumEntries(); j++) {
+          final SpatialPointLeafEntry p = (SpatialPointLeafEntry) node.getEntry(j);
+          ++dists;
+          if(distanceFunction.minDist(mbr, p) > range) {
+            continue;
+          }
+          for(int i = 0; i < n; i++) {
+            final double distance = distanceFunction.minDist((SpatialPointLeafEntry) leaf.getEntry(i), p);
+            ++dists;
+            if(distance <= range) {
+              lists[i].add(distance, p.getDBID());
+            }
+          }
+        }
+        continue;
+      }
+      for(int j = 0; j < node.getNumEntries(); j++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(j);
+        ++dists;
+        if(distanceFunction.minDist(mbr, entry) <= range) {
+          if(ps == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length + (stack.length >>> 1));
+          }
+          stack[ps++] = entry.getPageID();
+        }
+      }
+    }
+    for(int i = 0; i < n; i++) {
+      lists[i].sort();
+    }
+    synchronized(out) {
+      for(int i = 0; i < n; i++) {
+        out.put(((SpatialPointLeafEntry) leaf.getEntry(i)).getDBID(), lists[i]);
+      }
+    }
+    return dists;
+  }
+
+  /**
+   * Largest kNN distance of a set of heaps.
+   *
+   * @param heaps Heaps
+   * @return Largest kNN distance
+   */
+  private static double maxKNNDistance(KNNHeap[] heaps) {
+    double max = 0.;
+    for(KNNHeap heap : heaps) {
+      final double kdist = heap.getKNNDistance();
+      max = kdist > max ? kdist : max;
+    }
+    return max;
+  }
+
+  /**
+   * Collect the page ids of all leaves of a tree.
+   *
+   * @param tree Tree
+   * @return Leaf page ids
+   */
+  private static int[] getLeafIDs(AbstractRStarTree<?, ?, ?> tree) {
+    List<?> leaves = tree.getLeaves();
+    int[] ids = new int[leaves.size()];
+    for(int i = 0; i < ids.length; i++) {
+      ids[i] = ((DirectoryEntry) leaves.get(i)).getPageID();
+    }
+    return ids;
+  }
+
+  /**
+   * Join of a single query leaf, for parallel processing.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  @FunctionalInterface
+  private interface LeafJoin {
+    /**
+     * Join a single query leaf.
+     *
+     * @param leafID Page id of the query leaf
+     * @return Number of distance computations
+     */
+    long join(int leafID);
+  }
+}
@@ -25,11 +25,13 @@ import java.util.Map.Entry;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.PrefetchCandidates;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
@@ -75,6 +77,16 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
    */
   protected Relation<? extends O> relation;
 
+  /**
+   * Pruning factor for approximate search, 1 for exact search.
+   */
+  protected final double pruningFactor;
+
+  /**
+   * Maximum number of objects to refine (approximate search).
+   */
+  protected final int budget;
+
   /**
    * Constructor.
    * 
@@ -83,10 +95,24 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
    * @param distanceFunction Distance function
    */
   public RStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation, SpatialPrimitiveDistanceFunction<? super O> distanceFunction) {
+    this(tree, relation, distanceFunction, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param tree Index to use
+   * @param relation Data relation to query
+   * @param distanceFunction Distance function
+   * @param approx Approximation hint, may be {@code null} for exact search
+   */
+  public RStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation, SpatialPrimitiveDistanceFunction<? super O> distanceFunction, ApproximationHint approx) {
     super();
     this.relation = relation;
     this.tree = tree;
     this.distanceFunction = distanceFunction;
+    this.pruningFactor = approx != null ? approx.getPruningFactor() : 1.;
+    this.budget = approx != null ? approx.getBudget() : Integer.MAX_VALUE;
   }
 
   @Override
@@ -105,24 +131,32 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
     // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getNode(tree.getRootID()));
+    int refined = 0;
 
     // search in tree
     while(!pq.isEmpty()) {
       double mindist = pq.peekKey();
 
-      if(mindist > maxDist) {
+      if(mindist * pruningFactor > maxDist) {
+        break;
+      }
+      // Approximate search: stop before reading any further page.
+      if(refined >= budget && knnList.size() >= k) {
         break;
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
+      AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+      if(node.isLeaf()) {
+        refined += node.getNumEntries();
+      }
+      maxDist = expandNode(obj, knnList, pq, maxDist, node);
     }
     return knnList.toKNNList();
   }
 
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
-    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, AbstractRStarTreeNode<?, ?> node) {
     // data node
     if(node.isLeaf()) {
       for(int i = 0; i < node.getNumEntries(); i++) {
@@ -136,20 +170,24 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     }
     // directory node
     else {
+      // Collect candidates for prefetching, if supported by the page file.
+      final PrefetchCandidates prefetch = tree.prefetchCandidates(node.getNumEntries());
       for(int i = 0; i < node.getNumEntries(); i++) {
         SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
         double distance = distanceFunction.minDist(entry, object);
         tree.statistics.countDistanceCalculation();
         // Greedy expand, bypassing the queue
         if(distance <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+          expandNode(object, knnList, pq, maxDist, tree.getNode(entry.getPageID()));
         }
         else {
-          if(distance <= maxDist) {
+          if(distance * pruningFactor <= maxDist) {
             pq.add(distance, entry.getPageID());
+            prefetch.add(distance, entry.getPageID());
           }
         }
       }
+      prefetch.prefetch();
     }
     return maxDist;
   }
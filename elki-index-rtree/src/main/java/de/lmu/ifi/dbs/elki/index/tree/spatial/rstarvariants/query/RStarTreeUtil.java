@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.distance.SpatialDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -74,7 +75,7 @@ public final class RStarTreeUtil {
 
   /**
    * Get an RTree knn query, using an optimized double implementation when
-   * possible.
+   * possible. An {@link ApproximationHint} enables approximate search.
    * 
    * @param <O> Object type
    * @param tree Tree to query
@@ -86,9 +87,10 @@ public final class RStarTreeUtil {
   public static <O extends SpatialComparable> KNNQuery<O> getKNNQuery(AbstractRStarTree<?, ?, ?> tree, SpatialDistanceQuery<O> distanceQuery, Object... hints) {
     // Can we support this distance function - spatial distances only!
     SpatialPrimitiveDistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    ApproximationHint approx = ApproximationHint.find(hints);
     if(EuclideanDistanceFunction.STATIC.equals(df)) {
-      return (KNNQuery<O>) new EuclideanRStarTreeKNNQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
+      return (KNNQuery<O>) new EuclideanRStarTreeKNNQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation(), approx);
     }
-    return new RStarTreeKNNQuery<>(tree, distanceQuery.getRelation(), df);
+    return new RStarTreeKNNQuery<>(tree, distanceQuery.getRelation(), df, approx);
   }
 }
\ No newline at end of file
@@ -69,6 +69,11 @@ public abstract class RStarTree extends NonFlatRStarTree<RStarTreeNode, SpatialE
     return new SpatialDirectoryEntry(node.getPageID(), node.computeMBR());
   }
 
+  @Override
+  protected boolean supportsDirectoryPrecision() {
+    return true;
+  }
+
   /**
    * Creates a new leaf node with the specified capacity.
    *
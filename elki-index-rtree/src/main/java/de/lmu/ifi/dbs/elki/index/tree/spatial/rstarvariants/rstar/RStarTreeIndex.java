@@ -20,26 +20,35 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.SpatialDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.JoinIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.index.tree.IndexTreePath;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeJoin;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
@@ -52,7 +61,7 @@ import de.lmu.ifi.dbs.elki.persistent.PageFile;
  * 
  * @param <O> Object type
  */
-public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
+public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements RangeIndex<O>, KNNIndex<O>, JoinIndex<O>, DynamicIndex, SnapshotIndex {
   /**
    * The appropriate logger for this index.
    */
@@ -88,7 +97,11 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   @Override
   public void initialize() {
     super.initialize();
+    if(initialized) {
+      return; // Reopened from a persistent page file.
+    }
     insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    flush();
   }
 
   /**
@@ -103,28 +116,30 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
 
   /**
    * Inserts the specified objects into this index. If a bulk load mode is
-   * implemented, the objects are inserted in one bulk.
+   * implemented, the objects are inserted in one bulk, otherwise they are
+   * inserted as a spatially sorted batch.
    * 
    * @param ids the objects to be inserted
    */
   @Override
   public void insertAll(DBIDs ids) {
-    if(ids.isEmpty() || (ids.size() == 1)) {
+    if(ids.isEmpty()) {
+      return;
+    }
+    if(ids.size() == 1) {
+      insert(ids.iter());
       return;
     }
 
-    // Make an example leaf
+    List<SpatialEntry> leafs = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      leafs.add(createNewLeafEntry(iter));
+    }
     if(canBulkLoad()) {
-      List<SpatialEntry> leafs = new ArrayList<>(ids.size());
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        leafs.add(createNewLeafEntry(iter));
-      }
       bulkLoad(leafs);
     }
     else {
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        insert(DBIDUtil.deref(iter));
-      }
+      insertLeaves(leafs);
     }
 
     doExtraIntegrityChecks();
@@ -148,11 +163,35 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
     return true;
   }
 
+  /**
+   * Deletes the specified objects from this index. The tree is condensed only
+   * once, after all objects have been removed.
+   * 
+   * @param ids the objects to be deleted
+   */
   @Override
   public void deleteAll(DBIDs ids) {
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      delete(iter);
+    // Each object must be removed only once.
+    final DBIDs unique = DBIDUtil.ensureSet(ids);
+    List<IndexTreePath<SpatialEntry>> paths = new ArrayList<>(unique.size());
+    for(DBIDIter iter = unique.iter(); iter.valid(); iter.advance()) {
+      IndexTreePath<SpatialEntry> deletionPath = findPathToObject(getRootPath(), relation.get(iter), iter);
+      if(deletionPath != null) {
+        paths.add(deletionPath);
+      }
     }
+    deletePaths(paths);
+  }
+
+  @Override
+  public void writeSnapshot(ObjectOutput out) throws IOException {
+    out.writeInt(relation.size());
+    writePages(out);
+  }
+
+  @Override
+  public boolean restoreSnapshot(ObjectInput in) throws IOException {
+    return in.readInt() == relation.size() && readPages(in);
   }
 
   @Override
@@ -183,6 +222,26 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
     return RStarTreeUtil.getKNNQuery(this, dq, hints);
   }
 
+  @Override
+  public WritableDataStore<KNNList> kNNSelfJoin(DistanceQuery<O> distanceQuery, int k) {
+    // Query on the relation we index, spatial distances only!
+    if(distanceQuery.getRelation() != relation || !(distanceQuery instanceof SpatialDistanceQuery)) {
+      return null;
+    }
+    SpatialDistanceQuery<O> dq = (SpatialDistanceQuery<O>) distanceQuery;
+    return new RStarTreeJoin<O>(this, dq.getDistanceFunction()).kNNJoin(relation.getDBIDs(), k);
+  }
+
+  @Override
+  public WritableDataStore<DoubleDBIDList> rangeSelfJoin(DistanceQuery<O> distanceQuery, double range) {
+    // Query on the relation we index, spatial distances only!
+    if(distanceQuery.getRelation() != relation || !(distanceQuery instanceof SpatialDistanceQuery)) {
+      return null;
+    }
+    SpatialDistanceQuery<O> dq = (SpatialDistanceQuery<O>) distanceQuery;
+    return new RStarTreeJoin<O>(this, dq.getDistanceFunction()).rangeJoin(relation.getDBIDs(), range);
+  }
+
   @Override
   public String getLongName() {
     return "R*-Tree";
@@ -22,6 +22,9 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
 import java.util.List;
+
+import de.lmu.ifi.dbs.elki.parallel.ParallelBlocks;
+
 /**
  * Encapsulates the required parameters for a bulk split of a spatial index.
  * 
@@ -85,4 +88,46 @@ public abstract class AbstractBulkSplit implements BulkSplit {
     }
     return partitions;
   }
-}
\ No newline at end of file
+
+  /**
+   * Partition independent ranges of a list, in parallel if the ranges contain
+   * at least {@link ParallelBlocks#THRESHOLD} objects together. Each range is
+   * partitioned into a list of its own, and these are concatenated in the order
+   * of the ranges, so the result is the same as when partitioning the ranges
+   * one after another.
+   *
+   * @param bounds Range boundaries, one more than the number of ranges
+   * @param ret Output list
+   * @param partitioner Partitioning of a single range
+   * @param <T> Object type
+   */
+  protected static <T> void partitionRanges(int[] bounds, List<List<T>> ret, RangePartitioner<T> partitioner) {
+    final int nranges = bounds.length - 1;
+    ret.addAll(ParallelBlocks.runConcat(bounds[nranges] - bounds[0], nranges, i -> {
+      List<List<T>> part = new ArrayList<>();
+      partitioner.partition(bounds[i], bounds[i + 1], part);
+      return part;
+    }));
+  }
+
+  /**
+   * Partitioning of a range of the input list.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> Object type
+   */
+  @FunctionalInterface
+  protected interface RangePartitioner<T> {
+    /**
+     * Partition a range.
+     *
+     * @param start Range start
+     * @param end Range end (exclusive)
+     * @param ret Output list
+     */
+    void partition(int start, int end, List<List<T>> ret);
+  }
+}
@@ -80,6 +80,7 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
     final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
 
     final double len = end - start; // double intentional!
+    final int[] bounds = new int[s + 1];
     for (int i = 0; i < s; i++) {
       // We don't completely sort, but only ensure the quantile is invariant.
       int s2 = start + (int) ((i * len) / s);
@@ -89,11 +90,20 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
         c.setDimension(depth);
         QuickSelect.quickSelect(objs, c, s2, end, e2);
       }
-      if (depth + 1 == dims) {
-        ret.add(objs.subList(s2, e2));
-      } else {
-        // Descend
-        strPartition(objs, s2, e2, depth + 1, dims, maxEntries, c, ret);
+      bounds[i] = s2;
+      bounds[i + 1] = e2;
+    }
+    if (depth + 1 == dims) {
+      for (int i = 0; i < s; i++) {
+        ret.add(objs.subList(bounds[i], bounds[i + 1]));
+      }
+    } else if (depth == 0) {
+      // The slabs are independent, and may be partitioned in parallel.
+      partitionRanges(bounds, ret, (s2, e2, out) -> strPartition(objs, s2, e2, 1, dims, maxEntries, new SpatialSingleMeanComparator(0), out));
+    } else {
+      // Descend
+      for (int i = 0; i < s; i++) {
+        strPartition(objs, bounds[i], bounds[i + 1], depth + 1, dims, maxEntries, c, ret);
       }
     }
   }
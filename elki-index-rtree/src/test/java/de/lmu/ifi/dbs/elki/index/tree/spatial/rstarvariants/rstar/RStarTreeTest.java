@@ -20,11 +20,42 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings.DirectoryPrecision;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.BulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.AdaptiveSortTileRecursiveBulkSplit;
@@ -43,7 +74,11 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.BinarySplitSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBlocks;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -356,4 +391,249 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, AdaptiveSortTileRecursiveBulkSplit.class);
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test {@link RStarTree} with reduced precision directory bounding boxes.
+   */
+  @Test
+  public void testDirectoryPrecision() {
+    for(DirectoryPrecision precision : DirectoryPrecision.values()) {
+      ListParameterization spatparams = new ListParameterization();
+      spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+      spatparams.addParameter(RStarTreeFactory.Parameterizer.DIRECTORY_PRECISION_ID, precision);
+      testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      //
+      spatparams = new ListParameterization();
+      spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+      spatparams.addParameter(RStarTreeFactory.Parameterizer.DIRECTORY_PRECISION_ID, precision);
+      spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class);
+      testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    }
+  }
+
+  /**
+   * Test approximate kNN queries on the {@link RStarTree}.
+   */
+  @Test
+  public void testApproximate() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testApproximateEuclidean(spatparams, RStarTreeKNNQuery.class);
+  }
+
+  /**
+   * Test the dual-tree similarity joins of the {@link RStarTree}.
+   */
+  @Test
+  public void testSelfJoin() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testSelfJoinEuclidean(spatparams);
+  }
+
+  /**
+   * Test batch insertions and deletions of the {@link RStarTree}.
+   */
+  @Test
+  public void testDynamic() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testDynamicEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test restoring an {@link RStarTree} from a snapshot.
+   *
+   * @throws IOException on errors with the temporary files
+   */
+  @Test
+  public void testSnapshot() throws IOException {
+    testSnapshotEuclidean(new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .build());
+  }
+
+  /**
+   * Test that the parallel sort-tile-recursive bulk loads produce the same
+   * pages as the serial bulk loads.
+   */
+  @Test
+  public void testParallelBulkLoad() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[ParallelBlocks.THRESHOLD + 1234][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(Class<? extends BulkSplit> split : Arrays.asList(SortTileRecursiveBulkSplit.class, AdaptiveSortTileRecursiveBulkSplit.class, MaxExtensionSortTileRecursiveBulkSplit.class)) {
+      RStarTreeFactory<DoubleVector> factory = new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+          .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, split) //
+          .build();
+      RStarTreeIndex<DoubleVector> serial = factory.instantiate(rel);
+      serial.initialize();
+      // Force the parallel code paths, even on a single processor.
+      final AtomicInteger tasks = new AtomicInteger();
+      ParallelBlocks.setCore(new ParallelCore(4) {
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+          tasks.incrementAndGet();
+          return super.submit(task);
+        }
+      });
+      RStarTreeIndex<DoubleVector> parallel = factory.instantiate(rel);
+      try {
+        parallel.initialize();
+      }
+      finally {
+        ParallelBlocks.setCore(null);
+      }
+      assertTrue("Bulk load did not run in parallel.", tasks.get() > 0);
+      assertTrue("Tree too small to test parallel bulk loading.", serial.getHeight() > 2);
+      assertEquals("Tree height differs.", serial.getHeight(), parallel.getHeight());
+      assertEquals("Root page differs.", serial.getRootID(), parallel.getRootID());
+      assertSameNode(serial, parallel, serial.getRootID());
+    }
+  }
+
+  /**
+   * Test bulk deletion with duplicate ids.
+   */
+  @Test
+  public void testDeleteDuplicates() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[2000][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final AtomicInteger deletions = new AtomicInteger();
+    RStarTreeIndex<DoubleVector> tree = new RStarTreeIndex<DoubleVector>(rel, new MemoryPageFileFactory<RStarTreeNode>(300).newPageFile(RStarTreeNode.class), new RTreeSettings()) {
+      @Override
+      protected void postDelete(SpatialEntry entry) {
+        deletions.incrementAndGet();
+        super.postDelete(entry);
+      }
+    };
+    tree.initialize();
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      if(rnd.nextInt(4) == 0) {
+        del.add(it);
+        del.add(it);
+      }
+    }
+    tree.deleteAll(del);
+    HashSetModifiableDBIDs remaining = DBIDUtil.newHashSet(rel.getDBIDs());
+    remaining.removeDBIDs(del);
+    assertEquals("Objects not deleted exactly once.", rel.size() - remaining.size(), deletions.get());
+    assertEquals("Tree size does not match.", remaining.size(), countObjects(tree, tree.getRootID()));
+  }
+
+  /**
+   * Count the objects in a subtree.
+   *
+   * @param tree Tree
+   * @param pageID Subtree root
+   * @return Number of objects
+   */
+  private static int countObjects(RStarTree tree, int pageID) {
+    RStarTreeNode node = tree.getNode(pageID);
+    if(node.isLeaf()) {
+      return node.getNumEntries();
+    }
+    int count = 0;
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      count += countObjects(tree, ((DirectoryEntry) node.getEntry(i)).getPageID());
+    }
+    return count;
+  }
+
+  /**
+   * Test that the parallel kNN self-join gives the same result as the serial
+   * join.
+   */
+  @Test
+  public void testParallelSelfJoin() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[ParallelBlocks.THRESHOLD + 1234][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    RStarTreeIndex<DoubleVector> tree = new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .build().instantiate(rel);
+    tree.initialize();
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final int k = 5;
+    DataStore<KNNList> serial = tree.kNNSelfJoin(dq, k);
+    // Force the parallel code paths, even on a single processor.
+    final AtomicInteger tasks = new AtomicInteger();
+    ParallelBlocks.setCore(new ParallelCore(4) {
+      @Override
+      public <T> Future<T> submit(Callable<T> task) {
+        tasks.incrementAndGet();
+        return super.submit(task);
+      }
+    });
+    DataStore<KNNList> parallel;
+    try {
+      parallel = tree.kNNSelfJoin(dq, k);
+    }
+    finally {
+      ParallelBlocks.setCore(null);
+    }
+    assertTrue("Join did not run in parallel.", tasks.get() > 0);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList e = serial.get(it), a = parallel.get(it);
+      assertEquals("kNN list size differs.", e.size(), a.size());
+      for(DoubleDBIDListIter ei = e.iter(), ai = a.iter(); ei.valid(); ei.advance(), ai.advance()) {
+        assertEquals("kNN distance differs.", ei.doubleValue(), ai.doubleValue(), 0.);
+      }
+    }
+  }
+
+  /**
+   * Compare a page of two trees, recursively.
+   *
+   * @param expect Expected tree
+   * @param actual Actual tree
+   * @param pageID Page to compare
+   */
+  private static void assertSameNode(RStarTree expect, RStarTree actual, int pageID) {
+    RStarTreeNode e = expect.getNode(pageID), a = actual.getNode(pageID);
+    assertEquals("Node type differs on page " + pageID, e.isLeaf(), a.isLeaf());
+    assertEquals("Number of entries differs on page " + pageID, e.getNumEntries(), a.getNumEntries());
+    for(int i = 0; i < e.getNumEntries(); i++) {
+      SpatialEntry ee = e.getEntry(i), ae = a.getEntry(i);
+      for(int d = 0; d < ee.getDimensionality(); d++) {
+        assertEquals("Bounding box differs on page " + pageID, ee.getMin(d), ae.getMin(d), 0.);
+        assertEquals("Bounding box differs on page " + pageID, ee.getMax(d), ae.getMax(d), 0.);
+      }
+      if(e.isLeaf()) {
+        assertTrue("Object differs on page " + pageID, DBIDUtil.equal(((LeafEntry) ee).getDBID(), ((LeafEntry) ae).getDBID()));
+      }
+      else {
+        final int child = ((DirectoryEntry) ee).getPageID();
+        assertEquals("Child page differs on page " + pageID, child, ((DirectoryEntry) ae).getPageID());
+        assertSameNode(expect, actual, child);
+      }
+    }
+  }
 }
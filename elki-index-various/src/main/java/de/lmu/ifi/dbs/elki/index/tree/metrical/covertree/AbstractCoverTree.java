@@ -21,16 +21,21 @@
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.IndexUpdateBuffer;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -45,13 +50,18 @@ import net.jafama.FastMath;
 
 /**
  * Abstract base class for cover tree variants.
+ *
+ * Dynamic updates are supported with an {@link IndexUpdateBuffer}: inserted
+ * objects are scanned linearly, deleted objects remain as routing objects but
+ * are not reported, and the tree is rebuilt once too many changes have
+ * accumulated.
  * 
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @param <O> Object type
  */
-public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
+public abstract class AbstractCoverTree<O> extends AbstractIndex<O>implements DynamicIndex {
   /**
    * Constant expansion rate. 2 would be the intuitive value, but the original
    * version used 1.3, so we copy this. This means that in every level, the
@@ -89,6 +99,11 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    */
   protected int truncate = 10;
 
+  /**
+   * Pending modifications since the last build.
+   */
+  protected final IndexUpdateBuffer<O> buffer;
+
   /**
    * Constructor.
    *
@@ -105,6 +120,7 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
     this.expansion = expansion;
     this.invLogExpansion = 1. / FastMath.log(expansion);
     this.scaleBottom = (int) Math.ceil(FastMath.log(Double.MIN_NORMAL) * invLogExpansion);
+    this.buffer = new IndexUpdateBuffer<>(relation);
   }
 
   /**
@@ -163,7 +179,76 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    */
   protected double distance(O a, DBIDRef b) {
     ++distComputations;
-    return distanceQuery.distance(a, b);
+    // Deleted routing objects are no longer in the relation.
+    return buffer.isDeleted(b) ? distanceQuery.distance(a, buffer.get(b)) : distanceQuery.distance(a, b);
+  }
+
+  /**
+   * Scan the objects inserted since the tree was built.
+   * 
+   * @param obj Query object
+   * @param range Query radius
+   * @param ret Output list
+   */
+  protected void scanInserted(O obj, double range, ModifiableDoubleDBIDList ret) {
+    for(DBIDIter it = buffer.getInserted().iter(); it.valid(); it.advance()) {
+      final double d = distance(obj, it);
+      if(d <= range) {
+        ret.add(d, it);
+      }
+    }
+  }
+
+  /**
+   * Scan the objects inserted since the tree was built.
+   * 
+   * @param obj Query object
+   * @param knnList kNN heap
+   * @param d_k Current kNN distance
+   * @return New kNN distance
+   */
+  protected double scanInserted(O obj, KNNHeap knnList, double d_k) {
+    for(DBIDIter it = buffer.getInserted().iter(); it.valid(); it.advance()) {
+      final double d = distance(obj, it);
+      if(d <= d_k) {
+        d_k = knnList.insert(d, it);
+      }
+    }
+    return d_k;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    buffer.insert(id);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    buffer.insertAll(ids);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    final boolean found = buffer.delete(id);
+    rebuildIfNeeded();
+    return found;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    buffer.deleteAll(ids);
+    rebuildIfNeeded();
+  }
+
+  /**
+   * Rebuild the tree, if too many changes are pending.
+   */
+  protected void rebuildIfNeeded() {
+    if(buffer.needsRebuild()) {
+      initialize();
+    }
   }
 
   /**
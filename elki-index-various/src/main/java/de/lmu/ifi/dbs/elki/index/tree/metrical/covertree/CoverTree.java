@@ -20,6 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
@@ -41,6 +44,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -64,7 +68,8 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * TODO: allow insertions and removals as in the original publication, instead
+ * of buffering them.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -76,7 +81,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Cover trees for nearest neighbor", //
 booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
 url = "http://dx.doi.org/10.1145/1143844.1143857")
-public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -179,8 +184,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
   @Override
   public void initialize() {
+    root = null;
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    buffer.reset(relation.size());
+    if(root != null && LOG.isVerbose()) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -191,6 +198,84 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     }
   }
 
+  @Override
+  public void writeSnapshot(ObjectOutput out) throws IOException {
+    out.writeDouble(expansion);
+    out.writeInt(truncate);
+    out.writeInt(relation.size());
+    out.writeBoolean(root != null);
+    if(root != null) {
+      writeNode(out, root);
+    }
+  }
+
+  /**
+   * Write a subtree (pre-order).
+   *
+   * @param out Output
+   * @param cur Current node
+   * @throws IOException on write errors
+   */
+  private static void writeNode(ObjectOutput out, Node cur) throws IOException {
+    out.writeDouble(cur.maxDist);
+    out.writeDouble(cur.parentDist);
+    out.writeInt(cur.singletons.size());
+    for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+      out.writeInt(DBIDUtil.asInteger(it));
+      out.writeDouble(it.doubleValue());
+    }
+    out.writeInt(cur.children != null ? cur.children.size() : -1);
+    if(cur.children != null) {
+      for(Node child : cur.children) {
+        writeNode(out, child);
+      }
+    }
+  }
+
+  @Override
+  public boolean restoreSnapshot(ObjectInput in) throws IOException {
+    if(root != null || in.readDouble() != expansion || in.readInt() != truncate || in.readInt() != relation.size()) {
+      return false;
+    }
+    if(in.readBoolean()) {
+      root = readNode(in);
+    }
+    buffer.reset(relation.size());
+    return true;
+  }
+
+  /**
+   * Read a subtree written by {@link #writeNode}.
+   *
+   * @param in Input
+   * @return Subtree
+   * @throws IOException on read errors
+   */
+  private static Node readNode(ObjectInput in) throws IOException {
+    final double maxDist = in.readDouble(), parentDist = in.readDouble();
+    final int size = in.readInt();
+    if(size <= 0) {
+      throw new IOException("Invalid cover tree node in snapshot.");
+    }
+    Node node = new Node(DBIDUtil.importInteger(in.readInt()), maxDist, parentDist);
+    in.readDouble(); // Routing object, distance 0.
+    for(int i = 1; i < size; i++) {
+      final int id = in.readInt();
+      node.singletons.add(in.readDouble(), DBIDUtil.importInteger(id));
+    }
+    final int numc = in.readInt();
+    if(numc < 0) {
+      node.children = null;
+    }
+    else {
+      node.children.ensureCapacity(numc);
+      for(int i = 0; i < numc; i++) {
+        node.children.add(readNode(in));
+      }
+    }
+    return node;
+  }
+
   /**
    * Bulk-load the index.
    *
@@ -353,6 +438,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      scanInserted(obj, range, ret);
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
@@ -374,14 +463,14 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= range) {
+          if(d <= range && !buffer.isDeleted(it)) {
             ret.add(d, it); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
         while(it.valid()) {
-          if(d - it.doubleValue() <= range) {
+          if(d - it.doubleValue() <= range && !buffer.isDeleted(it)) {
             final double d2 = distance(obj, it);
             if(d2 <= range) {
               ret.add(d2, it);
@@ -415,7 +504,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      double d_k = scanInserted(obj, knnList, Double.POSITIVE_INFINITY);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -451,14 +543,14 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= d_k) {
+          if(d <= d_k && !buffer.isDeleted(it)) {
             d_k = knnList.insert(d, it); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
         while(it.valid()) {
-          if(d - it.doubleValue() <= d_k) {
+          if(d - it.doubleValue() <= d_k && !buffer.isDeleted(it)) {
             final double d2 = distance(obj, it);
             if(d2 <= d_k) {
               d_k = knnList.insert(d2, it);
@@ -66,7 +66,8 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * In Proc. 23rd International Conference on Machine Learning (ICML).
  * </p>
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * TODO: allow insertions and removals as in the original publication, instead
+ * of buffering them.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -162,8 +163,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
 
   @Override
   public void initialize() {
+    root = null;
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    buffer.reset(relation.size());
+    if(root != null && LOG.isVerbose()) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -335,6 +338,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      scanInserted(obj, range, ret);
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       DBIDVar r = DBIDUtil.newVar();
@@ -353,13 +360,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= range) {
+          if(d <= range && !buffer.isDeleted(r)) {
             ret.add(d, r); // First element is a candidate now
           }
         }
         // For remaining singletons, compute the distances:
         for(int i = 1, l = cur.singletons.size(); i < l; i++) {
           cur.singletons.assignVar(i, r);
+          if(buffer.isDeleted(r)) {
+            continue;
+          }
           final double d2 = distance(obj, r);
           if(d2 <= range) {
             ret.add(d2, r);
@@ -391,7 +401,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      double d_k = scanInserted(obj, knnList, Double.POSITIVE_INFINITY);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -424,18 +437,20 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
         }
         else { // Leaf node
           // Consider routing object, too:
-          if(d <= d_k) {
+          if(d <= d_k && !buffer.isDeleted(it)) {
             d_k = knnList.insert(d, it); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
-        while(it.valid()) {
+        for(; it.valid(); it.advance()) {
+          if(buffer.isDeleted(it)) {
+            continue;
+          }
           final double d2 = distance(obj, it);
           if(d2 <= d_k) {
             d_k = knnList.insert(d2, it);
           }
-          it.advance();
         }
       }
       return knnList.toKNNList();
@@ -27,8 +27,10 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
@@ -46,7 +48,9 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFun
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.IndexUpdateBuffer;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -60,10 +64,13 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ArrayModifiableDBIDs} to sort the data in a
- * serialized tree.
+ * Simple implementation of a static in-memory K-D-tree. It is very simple and
+ * memory efficient: all it uses is one {@link ArrayModifiableDBIDs} to sort the
+ * data in a serialized tree.
+ *
+ * Dynamic updates are supported with an {@link IndexUpdateBuffer}: new objects
+ * are scanned linearly, deleted objects are skipped, and the tree is rebuilt
+ * once the number of changes exceeds a fraction of the tree size.
  *
  * Reference:
  * <p>
@@ -91,7 +98,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 title = "Multidimensional binary search trees used for associative searching", //
 booktitle = "Communications of the ACM, Vol. 18 Issue 9, Sept. 1975", //
 url = "http://dx.doi.org/10.1145/361002.361007")
-public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O> {
+public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O>, DynamicIndex {
   /**
    * Class logger
    */
@@ -112,6 +119,11 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
    */
   int leafsize;
 
+  /**
+   * Pending modifications since the last build.
+   */
+  final IndexUpdateBuffer<O> buffer;
+
   /**
    * Counter for comparisons.
    */
@@ -131,6 +143,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
   public MinimalisticMemoryKDTree(Relation<O> relation, int leafsize) {
     super(relation);
     this.leafsize = leafsize;
+    this.buffer = new IndexUpdateBuffer<>(relation);
     assert(leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
@@ -154,7 +167,44 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     else {
       comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
     }
-    buildTree(0, sorted.size(), 0, comp);
+    if(sorted.size() > 0) {
+      buildTree(0, sorted.size(), 0, comp);
+    }
+    buffer.reset(sorted.size());
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    buffer.insert(id);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    buffer.insertAll(ids);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    final boolean found = buffer.delete(id);
+    rebuildIfNeeded();
+    return found;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    buffer.deleteAll(ids);
+    rebuildIfNeeded();
+  }
+
+  /**
+   * Rebuild the tree, if too many changes are pending.
+   */
+  protected void rebuildIfNeeded() {
+    if(buffer.needsRebuild()) {
+      initialize();
+    }
   }
 
   /**
@@ -308,7 +358,16 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     @Override
     public KNNList getKNNForObject(O obj, int k) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      double maxdist = kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      // Objects inserted since the tree was built:
+      for(DBIDIter iter = buffer.getInserted().iter(); iter.valid(); iter.advance()) {
+        double dist = norm.distance(obj, relation.get(iter));
+        countObjectAccess();
+        countDistanceComputation();
+        if(dist <= maxdist) {
+          maxdist = knns.insert(dist, iter);
+        }
+      }
       return knns.toKNNList();
     }
 
@@ -327,6 +386,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DBIDArrayIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(buffer.isDeleted(iter)) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -339,7 +401,8 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      O split = buffer.get(iter.seek(middle));
+      final boolean deleted = buffer.isDeleted(iter);
       countObjectAccess();
 
       // Distance to axis:
@@ -353,12 +416,14 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        double dist = norm.distance(query, split);
-        countDistanceComputation();
-        if(dist <= maxdist) {
-          assert(iter.getOffset() == middle);
-          knns.insert(dist, iter /* .seek(middle) */);
-          maxdist = knns.getKNNDistance();
+        if(!deleted) {
+          double dist = norm.distance(query, split);
+          countDistanceComputation();
+          if(dist <= maxdist) {
+            assert(iter.getOffset() == middle);
+            knns.insert(dist, iter /* .seek(middle) */);
+            maxdist = knns.getKNNDistance();
+          }
         }
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
@@ -373,7 +438,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(!deleted && Math.abs(delta) <= maxdist) {
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -390,7 +455,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(!deleted && Math.abs(delta) <= maxdist) {
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -432,6 +497,15 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
       kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
+      // Objects inserted since the tree was built:
+      for(DBIDIter iter = buffer.getInserted().iter(); iter.valid(); iter.advance()) {
+        double dist = norm.distance(obj, relation.get(iter));
+        countObjectAccess();
+        countDistanceComputation();
+        if(dist <= range) {
+          result.add(dist, iter);
+        }
+      }
     }
 
     /**
@@ -448,6 +522,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DBIDArrayIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(buffer.isDeleted(iter)) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -459,7 +536,8 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      O split = buffer.get(iter.seek(middle));
+      final boolean deleted = buffer.isDeleted(iter);
       countObjectAccess();
 
       // Distance to axis:
@@ -472,7 +550,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       final int next = (axis + 1) % dims;
 
       // Current object:
-      if(close) {
+      if(close && !deleted) {
         double dist = norm.distance(query, split);
         countDistanceComputation();
         if(dist <= radius) {
@@ -24,7 +24,9 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListMIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
@@ -44,7 +46,9 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFun
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.IndexUpdateBuffer;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -57,15 +61,17 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ModifiableDoubleDBIDList} to sort the data in a
- * serialized tree and store the current attribute value.
+ * Simple implementation of a static in-memory K-D-tree. It is very simple and
+ * memory efficient: all it uses is one {@link ModifiableDoubleDBIDList} to sort
+ * the data in a serialized tree and store the current attribute value.
  *
  * It needs about 3 times as much memory as {@link MinimalisticMemoryKDTree} but
  * it is also considerably faster because it does not need to lookup this value
  * from the vectors.
  *
+ * Dynamic updates are supported with an {@link IndexUpdateBuffer}, the tree is
+ * rebuilt once too many changes have accumulated.
+ *
  * Reference:
  * <p>
  * J. L. Bentley<br/>
@@ -87,7 +93,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 title = "Multidimensional binary search trees used for associative searching", //
 booktitle = "Communications of the ACM, Vol. 18 Issue 9, Sept. 1975", //
 url = "http://dx.doi.org/10.1145/361002.361007")
-public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O> {
+public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O>, DynamicIndex {
   /**
    * Class logger
    */
@@ -108,6 +114,11 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    */
   int leafsize;
 
+  /**
+   * Pending modifications since the last build.
+   */
+  final IndexUpdateBuffer<O> buffer;
+
   /**
    * Counter for comparisons.
    */
@@ -127,6 +138,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
   public SmallMemoryKDTree(Relation<O> relation, int leafsize) {
     super(relation);
     this.leafsize = leafsize;
+    this.buffer = new IndexUpdateBuffer<>(relation);
     assert(leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
@@ -146,7 +158,44 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       sorted.add(Double.NaN, it);
     }
-    buildTree(0, sorted.size(), 0, sorted.iter());
+    if(sorted.size() > 0) {
+      buildTree(0, sorted.size(), 0, sorted.iter());
+    }
+    buffer.reset(sorted.size());
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    buffer.insert(id);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    buffer.insertAll(ids);
+    rebuildIfNeeded();
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    final boolean found = buffer.delete(id);
+    rebuildIfNeeded();
+    return found;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    buffer.deleteAll(ids);
+    rebuildIfNeeded();
+  }
+
+  /**
+   * Rebuild the tree, if too many changes are pending.
+   */
+  protected void rebuildIfNeeded() {
+    if(buffer.needsRebuild()) {
+      initialize();
+    }
   }
 
   /**
@@ -276,7 +325,16 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     @Override
     public KNNList getKNNForObject(O obj, int k) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      double maxdist = kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      // Objects inserted since the tree was built:
+      for(DBIDIter iter = buffer.getInserted().iter(); iter.valid(); iter.advance()) {
+        double dist = norm.distance(obj, relation.get(iter));
+        countObjectAccess();
+        countDistanceComputation();
+        if(dist <= maxdist) {
+          maxdist = knns.insert(dist, iter);
+        }
+      }
       return knns.toKNNList();
     }
 
@@ -295,6 +353,9 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DoubleDBIDListIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(buffer.isDeleted(iter)) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -310,7 +371,8 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
 
       // Distance to axis:
       final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
-      assert(iter.doubleValue() == relation.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + relation.get(iter).doubleValue(axis) + " " + relation.get(iter);
+      assert(iter.doubleValue() == buffer.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + buffer.get(iter).doubleValue(axis) + " " + buffer.get(iter);
+      final boolean deleted = buffer.isDeleted(iter);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
 
@@ -320,14 +382,16 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = norm.distance(query, split);
-        countDistanceComputation();
-        if(dist <= maxdist) {
-          assert(iter.getOffset() == middle);
-          knns.insert(dist, iter /* .seek(middle) */);
-          maxdist = knns.getKNNDistance();
+        if(!deleted) {
+          O split = relation.get(iter.seek(middle));
+          countObjectAccess();
+          double dist = norm.distance(query, split);
+          countDistanceComputation();
+          if(dist <= maxdist) {
+            assert(iter.getOffset() == middle);
+            knns.insert(dist, iter /* .seek(middle) */);
+            maxdist = knns.getKNNDistance();
+          }
         }
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
@@ -342,7 +406,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(!deleted && Math.abs(delta) <= maxdist) {
             O split = relation.get(iter.seek(middle));
             countObjectAccess();
             double dist = norm.distance(query, split);
@@ -362,7 +426,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(!deleted && Math.abs(delta) <= maxdist) {
             O split = relation.get(iter.seek(middle));
             countObjectAccess();
             double dist = norm.distance(query, split);
@@ -407,6 +471,15 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
       kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
+      // Objects inserted since the tree was built:
+      for(DBIDIter iter = buffer.getInserted().iter(); iter.valid(); iter.advance()) {
+        double dist = norm.distance(obj, relation.get(iter));
+        countObjectAccess();
+        countDistanceComputation();
+        if(dist <= range) {
+          result.add(dist, iter);
+        }
+      }
     }
 
     /**
@@ -423,6 +496,9 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(buffer.isDeleted(iter)) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -437,6 +513,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
 
       // Distance to axis:
       final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
+      final boolean deleted = buffer.isDeleted(iter);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
       final boolean close = (Math.abs(delta) <= radius);
@@ -445,7 +522,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
       final int next = (axis + 1) % dims;
 
       // Current object:
-      if(close) {
+      if(close && !deleted) {
         O split = relation.get(iter.seek(middle));
         countObjectAccess();
         double dist = norm.distance(query, split);
@@ -29,7 +29,9 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -42,6 +44,7 @@ import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
@@ -67,6 +70,9 @@ import net.jafama.FastMath;
  * in: Report TR1997b, ETH Zentrum, Zurich, Switzerland
  * </p>
  * 
+ * Insertions and deletions update the approximations only; the quantile grid
+ * is recomputed when a new vector does not fit into the current grid.
+ * 
  * @author Thomas Bernecker
  * @author Erich Schubert
  * @since 0.5.0
@@ -85,7 +91,7 @@ import net.jafama.FastMath;
 title = "An approximation based data structure for similarity search", //
 booktitle = "Report TR1997b, ETH Zentrum, Zurich, Switzerland", //
 url = "http://citeseerx.ist.psu.edu/viewdoc/download?doi=10.1.1.40.480&rep=rep1&type=pdf")
-public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V>, DynamicIndex {
   /**
    * Logging class.
    */
@@ -133,6 +139,11 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
 
   @Override
   public void initialize() {
+    vectorApprox.clear();
+    if(relation.size() == 0) {
+      splitPositions = null; // Grid is built on the first insertion.
+      return;
+    }
     setPartitions(relation);
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       DBID id = DBIDUtil.deref(iter);
@@ -140,6 +151,77 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     }
   }
 
+  @Override
+  public void insert(DBIDRef id) {
+    V dv = relation.get(id);
+    if(!insideGrid(dv)) {
+      initialize();
+      return;
+    }
+    vectorApprox.add(calculateApproximation(DBIDUtil.deref(id), dv));
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      if(!insideGrid(relation.get(iter))) {
+        initialize();
+        return;
+      }
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      DBID id = DBIDUtil.deref(iter);
+      vectorApprox.add(calculateApproximation(id, relation.get(id)));
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    for(int i = 0, l = vectorApprox.size(); i < l; i++) {
+      if(DBIDUtil.equal(vectorApprox.get(i).id, id)) {
+        // Order is irrelevant, move the last element here.
+        VectorApproximation last = vectorApprox.remove(l - 1);
+        if(i < l - 1) {
+          vectorApprox.set(i, last);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    DBIDs set = DBIDUtil.ensureSet(ids);
+    int j = 0;
+    for(int i = 0, l = vectorApprox.size(); i < l; i++) {
+      VectorApproximation va = vectorApprox.get(i);
+      if(!set.contains(va.id)) {
+        vectorApprox.set(j++, va);
+      }
+    }
+    vectorApprox.subList(j, vectorApprox.size()).clear();
+  }
+
+  /**
+   * Test whether a vector is covered by the current grid.
+   * 
+   * @param dv Data vector
+   * @return {@code true} if the vector fits into the grid
+   */
+  private boolean insideGrid(V dv) {
+    if(splitPositions == null) {
+      return false;
+    }
+    for(int d = 0; d < splitPositions.length; d++) {
+      final double val = dv.doubleValue(d);
+      if(val < splitPositions[d][0] || val > splitPositions[d][splitPositions[d].length - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Initialize the data set grid by computing quantiles.
    * 
@@ -215,6 +297,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    * @return Number of scanned bytes.
    */
   public long getScannedPages() {
+    if(splitPositions == null) {
+      return 0;
+    }
     int vacapacity = pageSize / VectorApproximation.byteOnDisk(splitPositions.length, partitions);
     long vasize = (long) Math.ceil((vectorApprox.size()) / (1.0 * vacapacity));
     return vasize * scans;
@@ -289,6 +374,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
 
     @Override
     public void getRangeForObject(V query, double eps, ModifiableDoubleDBIDList result) {
+      if(splitPositions == null) {
+        return; // Empty index.
+      }
       // generate query approximation and lookup table
       VectorApproximation queryApprox = calculateApproximation(null, query);
 
@@ -343,6 +431,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
 
     @Override
     public KNNList getKNNForObject(V query, int k) {
+      if(splitPositions == null) {
+        return DBIDUtil.newHeap(k).toKNNList(); // Empty index.
+      }
       // generate query approximation and lookup table
       VectorApproximation queryApprox = calculateApproximation(null, query);
 
@@ -20,10 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.index;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanNormCachingDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanNormCachingDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ObjectBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -46,6 +66,48 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
    */
   @Test
   public void testExactCosine() {
-    testExactCosine(new ListParameterization(), LinearScanPrimitiveDistanceKNNQuery.class, LinearScanPrimitiveDistanceRangeQuery.class);
+    testExactCosine(new ListParameterization(), LinearScanNormCachingDistanceKNNQuery.class, LinearScanNormCachingDistanceRangeQuery.class);
+  }
+
+  /**
+   * Test that cosine distances remain correct when objects are inserted after
+   * the distance query was created.
+   */
+  @Test
+  public void testDynamicCosine() {
+    UpdatableDatabase db = (UpdatableDatabase) AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, new ListParameterization(), HashmapDatabase.class);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, CosineDistanceFunction.STATIC);
+    DBIDIter first = rep.iterDBIDs();
+    DoubleVector q = rep.get(first);
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      assertEquals("Distance does not match.", CosineDistanceFunction.STATIC.distance(q, rep.get(iter)), dist.distance(first, iter), 0.);
+    }
+    // Delete every tenth object, except the first:
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    int i = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+      if(i > 0 && i % 10 == 0) {
+        del.add(iter);
+      }
+    }
+    ObjectBundle removed = db.delete(del);
+    // Reinsert them (with new DBIDs):
+    MultipleObjectsBundle reinsert = new MultipleObjectsBundle();
+    for(int c = 0; c < removed.metaLength(); c++) {
+      if(!TypeUtil.DBID.isAssignableFromType(removed.meta(c))) {
+        ArrayList<Object> column = new ArrayList<>(removed.dataLength());
+        for(int j = 0; j < removed.dataLength(); j++) {
+          column.add(removed.data(j, c));
+        }
+        reinsert.appendColumn(removed.meta(c), column);
+      }
+    }
+    DBIDs added = db.insert(reinsert);
+    assertEquals("Database size does not match.", shoulds, rep.size());
+    for(DBIDIter iter = added.iter(); iter.valid(); iter.advance()) {
+      assertEquals("Distance does not match.", CosineDistanceFunction.STATIC.distance(q, rep.get(iter)), dist.distance(first, iter), 0.);
+      assertEquals("Distance does not match.", CosineDistanceFunction.STATIC.distance(rep.get(iter), q), dist.distance(iter, first), 0.);
+    }
   }
 }
@@ -20,8 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
+import java.io.IOException;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
@@ -44,4 +47,25 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
     testExactEuclidean(metparams, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
   }
+
+  /**
+   * Test dynamic updates of {@link CoverTree}.
+   */
+  @Test
+  public void testCovertreeDynamic() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+    metparams.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    testDynamicEuclidean(metparams, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
+  }
+
+  /**
+   * Test restoring a {@link CoverTree} from a snapshot.
+   *
+   * @throws IOException on errors with the temporary files
+   */
+  @Test
+  public void testCovertreeSnapshot() throws IOException {
+    testSnapshotEuclidean(new CoverTree.Factory<>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+  }
 }
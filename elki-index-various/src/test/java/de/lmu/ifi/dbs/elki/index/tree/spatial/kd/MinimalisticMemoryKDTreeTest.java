@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
 
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -42,4 +43,14 @@ public class MinimalisticMemoryKDTreeTest extends AbstractIndexStructureTest {
     spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MinimalisticMemoryKDTree.Factory.class);
     testExactEuclidean(spatparams, MinimalisticMemoryKDTree.KDTreeKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
   }
+
+  /**
+   * Test dynamic updates of {@link MinimalisticMemoryKDTree}.
+   */
+  @Test
+  public void testMinimalisticMemoryKDTreeDynamic() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, MinimalisticMemoryKDTree.Factory.class);
+    testDynamicEuclidean(spatparams, MinimalisticMemoryKDTree.KDTreeKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
+  }
 }
@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.index.vafile;
 
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -43,4 +44,15 @@ public class VAFileTest extends AbstractIndexStructureTest {
     spatparams.addParameter(VAFile.Factory.PARTITIONS_ID, 4);
     testExactEuclidean(spatparams, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
   }
+
+  /**
+   * Test dynamic updates of {@link VAFile}.
+   */
+  @Test
+  public void testVAFileDynamic() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(HashmapDatabase.Parameterizer.INDEX_ID, VAFile.Factory.class);
+    spatparams.addParameter(VAFile.Factory.PARTITIONS_ID, 4);
+    testDynamicEuclidean(spatparams, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
+  }
 }
@@ -0,0 +1,209 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+
+/**
+ * Buffer of pending modifications, for indexes that are built in bulk.
+ *
+ * This allows static index structures to implement {@link DynamicIndex}
+ * without a full rebuild on every change: new objects are kept in a buffer,
+ * which queries need to scan linearly, and deleted objects are marked with a
+ * tombstone, and need to be skipped by queries. Because the static structure
+ * may still need deleted objects (e.g., as routing objects or split values),
+ * their values are retained until the next rebuild.
+ *
+ * Once the number of pending changes exceeds a fraction of the indexed objects,
+ * the index should be rebuilt; with a constant fraction, the rebuild cost is
+ * amortized over the modifications.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public class IndexUpdateBuffer<O> {
+  /**
+   * Default fraction of changes that trigger a rebuild.
+   */
+  public static final double DEFAULT_REBUILD_FRACTION = 0.1;
+
+  /**
+   * Relation indexed.
+   */
+  private final Relation<? extends O> relation;
+
+  /**
+   * Fraction of modified objects that triggers a rebuild.
+   */
+  private final double rebuildFraction;
+
+  /**
+   * Number of objects in the static part of the index.
+   */
+  private int indexed = 0;
+
+  /**
+   * Objects inserted since the last rebuild.
+   */
+  private HashSetModifiableDBIDs inserted = DBIDUtil.newHashSet();
+
+  /**
+   * Tombstones: objects in the static index which have been deleted.
+   */
+  private HashSetModifiableDBIDs deleted = DBIDUtil.newHashSet();
+
+  /**
+   * Retained values of deleted objects.
+   */
+  private WritableDataStore<O> retained = null;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation indexed
+   * @param rebuildFraction Fraction of modified objects that triggers a
+   *        rebuild
+   */
+  public IndexUpdateBuffer(Relation<? extends O> relation, double rebuildFraction) {
+    super();
+    this.relation = relation;
+    this.rebuildFraction = rebuildFraction;
+  }
+
+  /**
+   * Constructor, with the default rebuild fraction.
+   *
+   * @param relation Relation indexed
+   */
+  public IndexUpdateBuffer(Relation<? extends O> relation) {
+    this(relation, DEFAULT_REBUILD_FRACTION);
+  }
+
+  /**
+   * Reset the buffer, after (re-) building the static index.
+   *
+   * @param indexed Number of objects in the static index
+   */
+  public void reset(int indexed) {
+    this.indexed = indexed;
+    inserted.clear();
+    deleted.clear();
+    retained = null;
+  }
+
+  /**
+   * Add a new object to the buffer.
+   *
+   * @param id Object id
+   */
+  public void insert(DBIDRef id) {
+    inserted.add(id);
+  }
+
+  /**
+   * Add new objects to the buffer.
+   *
+   * @param ids Object ids
+   */
+  public void insertAll(DBIDs ids) {
+    inserted.addDBIDs(ids);
+  }
+
+  /**
+   * Delete an object. The object must still be available in the relation.
+   *
+   * @param id Object id
+   * @return {@code true} if the object was not deleted before
+   */
+  public boolean delete(DBIDRef id) {
+    if(inserted.remove(id)) {
+      return true;
+    }
+    if(!deleted.add(id)) {
+      return false;
+    }
+    if(retained == null) {
+      retained = DataStoreUtil.makeStorage(DBIDUtil.EMPTYDBIDS, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, Object.class);
+    }
+    retained.put(id, relation.get(id));
+    return true;
+  }
+
+  /**
+   * Delete objects. The objects must still be available in the relation.
+   *
+   * @param ids Object ids
+   */
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
+
+  /**
+   * Test whether an object of the static index has been deleted.
+   *
+   * @param id Object id
+   * @return {@code true} when deleted
+   */
+  public boolean isDeleted(DBIDRef id) {
+    return !deleted.isEmpty() && deleted.contains(id);
+  }
+
+  /**
+   * Get the object indexed for an id of the static index. For deleted objects,
+   * this returns the retained value.
+   *
+   * @param id Object id
+   * @return Object
+   */
+  public O get(DBIDRef id) {
+    return isDeleted(id) ? retained.get(id) : relation.get(id);
+  }
+
+  /**
+   * Objects inserted since the last rebuild, to be scanned linearly.
+   *
+   * @return Inserted objects
+   */
+  public DBIDs getInserted() {
+    return inserted;
+  }
+
+  /**
+   * Test whether the index should be rebuilt.
+   *
+   * @return {@code true} if the pending changes exceed the rebuild fraction
+   */
+  public boolean needsRebuild() {
+    return inserted.size() + deleted.size() > rebuildFraction * indexed;
+  }
+}
@@ -20,9 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFile;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
@@ -78,6 +83,11 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   private E rootEntry;
 
+  /**
+   * The header of the page file.
+   */
+  private TreeIndexHeader header;
+
   /**
    * Constructor.
    *
@@ -93,11 +103,12 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   @Override
   public void initialize() {
-    TreeIndexHeader header = createHeader();
+    header = createHeader();
+    // The root entry is needed to read an existing tree.
+    rootEntry = createRootEntry();
     if(this.file.initialize(header)) {
       initializeFromFile(header, file);
     }
-    rootEntry = createRootEntry();
   }
 
   /**
@@ -172,6 +183,31 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
     }
   }
 
+  /**
+   * Returns the node with the specified id, for readers running in parallel.
+   * Page files are not thread safe, so these reads are serialized.
+   *
+   * @param nodeID the page id of the node to be returned
+   * @return the node with the specified id
+   */
+  public N getNodeConcurrent(int nodeID) {
+    synchronized(this) {
+      return getNode(nodeID);
+    }
+  }
+
+  /**
+   * Get a collector for the children of an expanded node, which prefetches the
+   * most promising children if the page file supports this.
+   *
+   * @param capacity Maximum number of children
+   * @return Prefetch candidates, a no-op if the page file does not prefetch
+   */
+  public PrefetchCandidates prefetchCandidates(int capacity) {
+    final int depth = file.getPrefetchDepth();
+    return depth > 0 ? new PrefetchCandidates(file, depth, capacity) : PrefetchCandidates.NONE;
+  }
+
   /**
    * Returns the node that is represented by the specified entry.
    *
@@ -211,6 +247,28 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
     return new TreeIndexHeader(file.getPageSize(), dirCapacity, leafCapacity, dirMinimum, leafMinimum);
   }
 
+  /**
+   * Get the header of the page file, if the tree was initialized.
+   *
+   * @return Header, or {@code null}
+   */
+  protected TreeIndexHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Write all modified nodes and the header to the page file, so that a
+   * persistent tree can be reopened with {@link #initialize()}. Trees that
+   * are modified after they were built need to be flushed again.
+   */
+  public void flush() {
+    if(header == null) {
+      return;
+    }
+    header.setCapacities(dirCapacity, leafCapacity, dirMinimum, leafMinimum);
+    file.flush();
+  }
+
   /**
    * Initializes this index from an existing persistent file.
    *
@@ -233,6 +291,79 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
     this.initialized = true;
   }
 
+  /**
+   * Write the header and all pages of an in-memory tree, e.g., for a
+   * {@link de.lmu.ifi.dbs.elki.index.SnapshotIndex}.
+   *
+   * @param out Output
+   * @throws IOException on write errors
+   */
+  protected void writePages(ObjectOutput out) throws IOException {
+    if(!(file instanceof MemoryPageFile)) {
+      throw new IOException("Only in-memory trees can be written to a snapshot.");
+    }
+    out.writeInt(file.getPageSize());
+    out.writeInt(dirCapacity);
+    out.writeInt(leafCapacity);
+    out.writeInt(dirMinimum);
+    out.writeInt(leafMinimum);
+    final int next = file.getNextPageID();
+    out.writeInt(next);
+    for(int i = 0; i < next; i++) {
+      N node = file.readPage(i);
+      out.writeBoolean(node != null);
+      if(node != null) {
+        out.writeObject(node);
+      }
+    }
+  }
+
+  /**
+   * Read the header and all pages written by {@link #writePages}, instead of
+   * building the tree.
+   *
+   * @param in Input
+   * @return {@code false} if the pages cannot be used with this tree
+   * @throws IOException on read errors
+   */
+  protected boolean readPages(ObjectInput in) throws IOException {
+    if(initialized || !(file instanceof MemoryPageFile) || file.getNextPageID() != 0) {
+      return false;
+    }
+    TreeIndexHeader header = createHeader();
+    if(in.readInt() != header.getPageSize()) {
+      return false;
+    }
+    header = new TreeIndexHeader(header.getPageSize(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    final int next = in.readInt();
+    try {
+      for(int i = 0; i < next; i++) {
+        if(in.readBoolean()) {
+          @SuppressWarnings("unchecked")
+          N node = (N) in.readObject();
+          file.writePage(node);
+        }
+      }
+    }
+    catch(ClassNotFoundException | ClassCastException e) {
+      file.clear();
+      throw new IOException("Invalid page in snapshot.", e);
+    }
+    catch(IOException e) {
+      file.clear();
+      throw e;
+    }
+    file.setNextPageID(next);
+    for(int i = next - 1; i >= 0; i--) {
+      if(file.readPage(i) == null) {
+        file.deletePage(i);
+      }
+    }
+    rootEntry = createRootEntry();
+    initializeFromFile(header, file);
+    return true;
+  }
+
   /**
    * Initializes the index.
    *
@@ -0,0 +1,118 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree;
+
+import de.lmu.ifi.dbs.elki.persistent.PageFile;
+
+/**
+ * Collects the children of an expanded directory node during a best-first
+ * search, and prefetches the most promising ones, i.e., those with the
+ * smallest distances, up to the prefetch depth of the page file.
+ *
+ * Obtain instances with {@link IndexTree#prefetchCandidates(int)}; if the
+ * page file does not prefetch, all operations are no-ops.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ */
+public class PrefetchCandidates {
+  /**
+   * Instance used when prefetching is disabled.
+   */
+  static final PrefetchCandidates NONE = new PrefetchCandidates(null, 0, 0);
+
+  /**
+   * Page file to prefetch from.
+   */
+  private final PageFile<?> file;
+
+  /**
+   * Maximum number of pages to prefetch.
+   */
+  private final int depth;
+
+  /**
+   * Distances of the candidates.
+   */
+  private final double[] dists;
+
+  /**
+   * Page ids of the candidates.
+   */
+  private final int[] ids;
+
+  /**
+   * Number of candidates.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param file Page file
+   * @param depth Prefetch depth
+   * @param capacity Maximum number of candidates
+   */
+  PrefetchCandidates(PageFile<?> file, int depth, int capacity) {
+    super();
+    this.file = file;
+    this.depth = depth;
+    this.dists = new double[capacity];
+    this.ids = new int[capacity];
+  }
+
+  /**
+   * Add a child node that will be visited by the search.
+   *
+   * @param distance Distance of the child
+   * @param pageID Page id of the child
+   */
+  public void add(double distance, int pageID) {
+    if(size < ids.length) {
+      dists[size] = distance;
+      ids[size++] = pageID;
+    }
+  }
+
+  /**
+   * Prefetch the pages of the closest candidates, and clear the candidates.
+   */
+  public void prefetch() {
+    final int n = size, k = Math.min(n, depth);
+    // Partial selection sort, as the depth is small.
+    for(int i = 0; i < k; i++) {
+      int best = i;
+      for(int j = i + 1; j < n; j++) {
+        best = dists[j] < dists[best] ? j : best;
+      }
+      final double d = dists[best];
+      dists[best] = dists[i];
+      dists[i] = d;
+      final int id = ids[best];
+      ids[best] = ids[i];
+      ids[i] = id;
+      file.prefetch(id);
+    }
+    size = 0;
+  }
+}
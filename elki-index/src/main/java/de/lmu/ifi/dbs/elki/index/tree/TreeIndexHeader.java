@@ -174,6 +174,22 @@ public class TreeIndexHeader extends DefaultPageHeader {
     return leafMinimum;
   }
 
+  /**
+   * Set the capacities of the nodes, which are usually only known after the
+   * header was created, once the first entry is inserted into the tree.
+   *
+   * @param dirCapacity the maximum number of entries in a directory node
+   * @param leafCapacity the maximum number of entries in a leaf node
+   * @param dirMinimum the minimum number of entries in a directory node
+   * @param leafMinimum the minimum number of entries in a leaf node
+   */
+  public void setCapacities(int dirCapacity, int leafCapacity, int dirMinimum, int leafMinimum) {
+    this.dirCapacity = dirCapacity;
+    this.leafCapacity = leafCapacity;
+    this.dirMinimum = dirMinimum;
+    this.leafMinimum = leafMinimum;
+  }
+
   /** @return the number of bytes needed for the listing of empty pages */
   public int getEmptyPagesSize() {
     return emptyPagesSize;
@@ -0,0 +1,67 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pages that have a compact binary layout, in addition to the
+ * {@link java.io.Externalizable} one. They can be read directly from a
+ * (memory-mapped) buffer, see {@link ByteBufferPageSerializer}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface ByteBufferPage extends ExternalizablePage {
+  /**
+   * Test whether this page can be stored in the binary layout. Pages that
+   * contain entries without a binary layout must be externalized instead.
+   *
+   * @return {@code true} if {@link #writeToBuffer} can store this page
+   */
+  boolean hasBinaryLayout();
+
+  /**
+   * Size of the binary layout of this page.
+   *
+   * @return Size in bytes
+   */
+  int getBinaryLayoutSize();
+
+  /**
+   * Write the page to a buffer.
+   *
+   * @param buffer Buffer, positioned at the page start
+   * @throws IOException on write errors
+   * @throws IllegalStateException if the page has no binary layout, see
+   *         {@link #hasBinaryLayout()}
+   */
+  void writeToBuffer(ByteBuffer buffer) throws IOException;
+
+  /**
+   * Read the page from a buffer.
+   *
+   * @param buffer Buffer, positioned at the page start
+   * @throws IOException on read errors
+   */
+  void readFromBuffer(ByteBuffer buffer) throws IOException;
+}
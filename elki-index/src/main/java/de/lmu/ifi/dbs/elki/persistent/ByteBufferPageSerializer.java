@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Serializer for pages with a binary layout.
+ *
+ * Every page starts with a magic number that includes the format version, so
+ * that pages can be told apart from Java serialization streams and from
+ * pages written with an older layout.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ByteBufferPage
+ *
+ * @param <P> Page type
+ */
+public class ByteBufferPageSerializer<P extends ByteBufferPage> implements ByteBufferSerializer<P> {
+  /**
+   * Magic number, without the version.
+   */
+  public static final int MAGIC = 0x454C0000;
+
+  /**
+   * Current version of the binary page layout.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of the page header written before the page layout, in bytes.
+   */
+  public static final int HEADER_SIZE = Integer.BYTES;
+
+  /**
+   * Page class.
+   */
+  private final Class<P> pageclass;
+
+  /**
+   * Constructor.
+   *
+   * @param pageclass Page class
+   */
+  public ByteBufferPageSerializer(Class<P> pageclass) {
+    super();
+    this.pageclass = pageclass;
+  }
+
+  /**
+   * Test if a page in the buffer was written by this serializer. The buffer
+   * position is not modified.
+   *
+   * @param buffer Buffer
+   * @return {@code true} if the page has the binary layout
+   */
+  public static boolean isBinaryPage(ByteBuffer buffer) {
+    return (buffer.getInt(buffer.position()) & 0xFFFF0000) == MAGIC;
+  }
+
+  @Override
+  public P fromByteBuffer(ByteBuffer buffer) throws IOException {
+    final int magic = buffer.getInt();
+    if((magic & 0xFFFF0000) != MAGIC) {
+      throw new IOException("Not a binary page.");
+    }
+    if((magic & 0xFFFF) != VERSION) {
+      throw new IOException("Unsupported page layout version: " + (magic & 0xFFFF));
+    }
+    try {
+      P page = pageclass.newInstance();
+      page.readFromBuffer(buffer);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+  }
+
+  @Override
+  public void toByteBuffer(ByteBuffer buffer, P page) throws IOException {
+    buffer.putInt(MAGIC | VERSION);
+    page.writeToBuffer(buffer);
+  }
+
+  @Override
+  public int getByteSize(P page) throws IOException {
+    return HEADER_SIZE + page.getBinaryLayoutSize();
+  }
+
+  /**
+   * Test if a page can be written by a binary serializer; all pages that do
+   * not implement {@link ByteBufferPage} are assumed to be supported.
+   *
+   * @param page Page
+   * @return {@code false} if the page must be externalized
+   */
+  public static boolean hasBinaryLayout(ExternalizablePage page) {
+    return !(page instanceof ByteBufferPage) || ((ByteBufferPage) page).hasBinaryLayout();
+  }
+}
@@ -28,15 +28,20 @@ import java.nio.channels.FileChannel;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.CompressedBundleWriter;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Convert an input file to the more efficient ELKI bundle format.
  *
+ * Optionally, the block-compressed variant of the bundle format can be written
+ * (see {@link CompressedBundleWriter}).
+ *
  * @author Erich Schubert
  * @since 0.5.5
  */
@@ -56,6 +61,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
    */
   private File outfile;
 
+  /**
+   * Write a compressed bundle.
+   */
+  private boolean compress;
+
   /**
    * Constructor.
    *
@@ -63,9 +73,21 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @param outfile Output filename
    */
   public ConvertToBundleApplication(DatabaseConnection input, File outfile) {
+    this(input, outfile, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input Data source configuration
+   * @param outfile Output filename
+   * @param compress Write a compressed bundle
+   */
+  public ConvertToBundleApplication(DatabaseConnection input, File outfile, boolean compress) {
     super();
     this.input = input;
     this.outfile = outfile;
+    this.compress = compress;
   }
 
   @Override
@@ -77,12 +99,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
     if(LOG.isVerbose()) {
       LOG.verbose("Serializing to output file: " + outfile.toString());
     }
-    // TODO: make configurable?
-    BundleWriter writer = new BundleWriter();
     try {
       FileOutputStream fos = new FileOutputStream(outfile);
       FileChannel channel = fos.getChannel();
-      writer.writeBundleStream(bundle.asStream(), channel);
+      if(compress) {
+        new CompressedBundleWriter().write(bundle, channel);
+      }
+      else {
+        new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+      }
       channel.close();
       fos.close();
     }
@@ -109,6 +134,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     public static final OptionID DATABASE_CONNECTION_ID = new OptionID("dbc", "Database connection class.");
 
+    /**
+     * Flag to write a block-compressed bundle.
+     */
+    public static final OptionID COMPRESS_ID = new OptionID("bundle.compress", "Write a block-compressed bundle, which is smaller and can be decompressed in parallel.");
+
     /**
      * The data input step.
      */
@@ -119,6 +149,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     private File outfile;
 
+    /**
+     * Write a compressed bundle.
+     */
+    private boolean compress;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -127,11 +162,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
         input = inputP.instantiateClass(config);
       }
       outfile = super.getParameterOutputFile(config, "File name to serialize the bundle to.");
+      Flag compressF = new Flag(COMPRESS_ID);
+      if(config.grab(compressF)) {
+        compress = compressF.isTrue();
+      }
     }
 
     @Override
     protected ConvertToBundleApplication makeInstance() {
-      return new ConvertToBundleApplication(input, outfile);
+      return new ConvertToBundleApplication(input, outfile, compress);
     }
   }
 
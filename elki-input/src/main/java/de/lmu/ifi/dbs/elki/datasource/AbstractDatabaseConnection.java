@@ -24,6 +24,7 @@ import java.util.List;
 
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.filter.StreamFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
@@ -76,13 +77,16 @@ public abstract class AbstractDatabaseConnection implements DatabaseConnection {
     }
     // We dynamically switch between streaming and bundle operations.
     BundleStreamSource stream = null;
+    // Bundles collected by us can be released while streaming.
+    boolean owned = false;
     for(ObjectFilter filter : filters) {
       if(filter instanceof StreamFilter) {
         StreamFilter sfilter = (StreamFilter) filter;
-        stream = sfilter.init((stream != null) ? stream : bundle.asStream());
+        stream = sfilter.init((stream != null) ? stream : new StreamFromBundle(bundle, owned));
         bundle = null; // No longer a bundle
       }
       else {
+        owned |= stream != null;
         bundle = filter.filter((bundle != null) ? bundle : stream.asMultipleObjectsBundle());
         stream = null; // No longer a stream
       }
@@ -103,17 +107,20 @@ public abstract class AbstractDatabaseConnection implements DatabaseConnection {
     }
     // We dynamically switch between streaming and bundle operations.
     MultipleObjectsBundle bundle = null;
+    // Bundles collected by us can be released while streaming.
+    boolean owned = false;
     for(ObjectFilter filter : filters) {
       if(filter instanceof StreamFilter) {
-        stream = ((StreamFilter) filter).init((stream != null) ? stream : bundle.asStream());
+        stream = ((StreamFilter) filter).init((stream != null) ? stream : new StreamFromBundle(bundle, owned));
         bundle = null;
       }
       else {
+        owned |= stream != null && !(stream instanceof StreamFromBundle);
         bundle = filter.filter((bundle != null) ? bundle : stream.asMultipleObjectsBundle());
         stream = null;
       }
     }
-    return (stream != null) ? stream : bundle.asStream();
+    return (stream != null) ? stream : new StreamFromBundle(bundle, owned);
   }
 
   /**
@@ -24,16 +24,30 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
+import de.lmu.ifi.dbs.elki.data.ByteBufferDoubleVector;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.CompressedBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedVectorColumn;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.datasource.filter.selection.RandomSamplingStreamFilter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.BlockSamplingInputStream;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
 /**
  * Class to load a database from a bundle file.
@@ -42,10 +56,25 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
  * that parsing should be simpler, albeit the focus was on using it in on-disk
  * indexes.
  *
+ * Optionally, bundles containing only dense vectors of a constant
+ * dimensionality can be memory-mapped instead of deserialized; see
+ * {@link MappedVectorColumn}. Block-compressed bundles are detected
+ * automatically, and decompressed in parallel; see
+ * {@link CompressedBundleReader}.
+ *
+ * Optionally, a random sample of the rows can be loaded. The same rows are
+ * selected as by the {@link RandomSamplingStreamFilter} with the same seed, but
+ * for fixed-stride vector bundles, only the sampled rows are accessed. Of
+ * block-compressed bundles, whole blocks are sampled, and the other blocks are
+ * neither read nor decompressed. As with {@link BlockSamplingInputStream},
+ * this is a cluster sample.
+ *
  * @author Erich Schubert
  * @since 0.5.5
  *
  * @apiviz.composedOf BundleReader
+ * @apiviz.composedOf MappedVectorColumn
+ * @apiviz.composedOf CompressedBundleReader
  */
 public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -58,6 +87,21 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    */
   private File infile;
 
+  /**
+   * Memory-map the file, if possible.
+   */
+  private boolean mmap;
+
+  /**
+   * Sampling probability, 1 to load all rows.
+   */
+  private double prob = 1.;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
   /**
    * Constructor.
    *
@@ -65,16 +109,76 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    * @param infile Input file
    */
   public BundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    this(filters, infile, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   * @param mmap Memory-map the file, if possible
+   */
+  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile, boolean mmap) {
     super(filters);
     this.infile = infile;
+    this.mmap = mmap;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   * @param mmap Memory-map the file, if possible
+   * @param prob Sampling probability, 1 to load all rows
+   * @param rnd Random generator for sampling
+   */
+  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile, boolean mmap, double prob, RandomFactory rnd) {
+    this(filters, infile, mmap);
+    this.prob = prob;
+    this.rnd = rnd;
   }
 
   @Override
   public MultipleObjectsBundle loadData() {
     try {
+      try (FileInputStream fis = new FileInputStream(infile);
+          FileChannel channel = fis.getChannel()) {
+        if(CompressedBundleReader.isCompressedBundle(channel)) {
+          try (CompressedBundleReader reader = new CompressedBundleReader(channel)) {
+            if(LOG.isVerbose()) {
+              LOG.verbose("Decompressing " + reader.getNumRows() + " rows in " + reader.getNumBlocks() + " blocks.");
+            }
+            return invokeBundleFilters(prob < 1. ? reader.load(sampleBlocks(reader)) : reader.load());
+          }
+        }
+      }
+      if(mmap || prob < 1.) {
+        try (FileInputStream fis = new FileInputStream(infile);
+            FileChannel channel = fis.getChannel()) {
+          // Mappings remain valid after closing the channel.
+          MappedVectorColumn column = MappedVectorColumn.map(channel);
+          if(column != null) {
+            if(LOG.isVerbose()) {
+              LOG.verbose("Memory-mapped " + column.size() + " vectors.");
+            }
+            MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+            bundle.appendColumn(column.getDataTypeInformation(), prob < 1. ? sample(column) : column);
+            return invokeBundleFilters(bundle);
+          }
+        }
+        if(mmap) {
+          LOG.warning("Bundle does not have a fixed-stride vector layout, falling back to deserialization.");
+        }
+      }
       FileInputStream fis = new FileInputStream(infile);
       FileChannel channel = fis.getChannel();
-      MultipleObjectsBundle bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      BundleStreamSource source = new BundleReader(channel);
+      if(prob < 1.) {
+        source = new RandomSamplingStreamFilter(prob, rnd).init(source);
+      }
+      MultipleObjectsBundle bundle = invokeStreamFilters(source).asMultipleObjectsBundle();
       channel.close();
       fis.close();
       return bundle;
@@ -84,6 +188,48 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     }
   }
 
+  /**
+   * Sample rows of a column by seeking to the sampled positions only.
+   *
+   * @param column Vector column
+   * @return Sampled vectors
+   */
+  private List<ByteBufferDoubleVector> sample(MappedVectorColumn column) {
+    final Random random = rnd.getSingleThreadedRandom();
+    List<ByteBufferDoubleVector> sample = new ArrayList<>((int) (column.size() * prob) + 1);
+    for(int i = 0, size = column.size(); i < size; i++) {
+      if(random.nextDouble() < prob) {
+        sample.add(column.get(i));
+      }
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Sampled " + sample.size() + " of " + column.size() + " vectors.");
+    }
+    return sample;
+  }
+
+  /**
+   * Sample the blocks of a compressed bundle.
+   *
+   * @param reader Compressed bundle reader
+   * @return Sampled block numbers
+   */
+  private int[] sampleBlocks(CompressedBundleReader reader) {
+    final Random random = rnd.getSingleThreadedRandom();
+    final int numblocks = reader.getNumBlocks();
+    int[] blocks = new int[numblocks];
+    int n = 0;
+    for(int b = 0; b < numblocks; b++) {
+      if(random.nextDouble() < prob) {
+        blocks[n++] = b;
+      }
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Sampled " + n + " of " + numblocks + " blocks.");
+    }
+    return Arrays.copyOf(blocks, n);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -102,11 +248,41 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
      */
     private static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
 
+    /**
+     * Flag to memory-map the bundle file.
+     */
+    public static final OptionID MMAP_ID = new OptionID("bundle.mmap", "Memory-map bundles of dense vectors with constant dimensionality, instead of deserializing them.");
+
+    /**
+     * Probability of loading each row.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("bundle.sample", "Load only a random sample of the rows, each row (each block, for compressed bundles) being loaded with this probability.");
+
+    /**
+     * Random generator seed for sampling.
+     */
+    public static final OptionID SEED_ID = new OptionID("bundle.sample.seed", "Random generator seed for sampling the bundle rows.");
+
     /**
      * File to load.
      */
     private File infile;
 
+    /**
+     * Memory-map the file.
+     */
+    private boolean mmap;
+
+    /**
+     * Sampling probability.
+     */
+    private double prob = 1.;
+
+    /**
+     * Random generator for sampling.
+     */
+    private RandomFactory rnd;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -115,11 +291,26 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
       if(config.grab(infileP)) {
         infile = infileP.getValue();
       }
+      Flag mmapF = new Flag(MMAP_ID);
+      if(config.grab(mmapF)) {
+        mmap = mmapF.isTrue();
+      }
+      DoubleParameter probP = new DoubleParameter(SAMPLE_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE) //
+          .setOptional(true);
+      if(config.grab(probP)) {
+        prob = probP.doubleValue();
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
     }
 
     @Override
     protected BundleDatabaseConnection makeInstance() {
-      return new BundleDatabaseConnection(filters, infile);
+      return new BundleDatabaseConnection(filters, infile, mmap, prob, rnd);
     }
   }
 }
@@ -0,0 +1,229 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.ByteBufferDoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.columnar.ColumnarFile;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+
+/**
+ * Load a database from a {@link ColumnarFile}.
+ *
+ * Only the selected columns are read from disk. Numerical columns are decoded
+ * in batches of one chunk, and packed into one buffer per chunk, which is
+ * shared by the {@link ByteBufferDoubleVector}s of the chunk. Label columns are
+ * combined into a single {@link LabelList} relation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ColumnarFile
+ */
+public class ColumnarDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ColumnarDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Columns to load, {@code null} for all.
+   */
+  private int[] columns;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   * @param columns Columns to load, {@code null} for all
+   */
+  public ColumnarDatabaseConnection(List<ObjectFilter> filters, File infile, int[] columns) {
+    super(filters);
+    this.infile = infile;
+    this.columns = columns;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try (FileInputStream fis = new FileInputStream(infile);
+        FileChannel channel = fis.getChannel();
+        ColumnarFile file = new ColumnarFile(channel)) {
+      // Split the selected columns by type.
+      int[] sel = columns;
+      if(sel == null) {
+        sel = new int[file.getNumColumns()];
+        for(int i = 0; i < sel.length; i++) {
+          sel[i] = i;
+        }
+      }
+      int numnum = 0;
+      for(int c : sel) {
+        if(c < 0 || c >= file.getNumColumns()) {
+          throw new AbortException("Column " + c + " does not exist, the file has " + file.getNumColumns() + " columns.");
+        }
+        numnum += file.getType(c).isNumeric() ? 1 : 0;
+      }
+      final int dim = numnum;
+      int[] numcols = new int[dim], labcols = new int[sel.length - dim];
+      String[] names = new String[dim];
+      for(int i = 0, n = 0, l = 0; i < sel.length; i++) {
+        if(file.getType(sel[i]).isNumeric()) {
+          names[n] = file.getName(sel[i]);
+          numcols[n++] = sel[i];
+        }
+        else {
+          labcols[l++] = sel[i];
+        }
+      }
+
+      final int size = file.getNumRows();
+      List<ByteBufferDoubleVector> vectors = dim > 0 ? new ArrayList<>(size) : null;
+      List<LabelList> labels = labcols.length > 0 ? new ArrayList<>(size) : null;
+      double[] values = new double[file.getMaxChunkSize()];
+      String[][] strings = new String[labcols.length][file.getMaxChunkSize()];
+      ArrayList<String> buf = new ArrayList<>(labcols.length);
+      final int stride = dim * ByteArrayUtil.SIZE_DOUBLE;
+      for(int chunk = 0; chunk < file.getNumChunks(); chunk++) {
+        final int n = file.getChunkSize(chunk);
+        if(dim > 0) {
+          // Transpose the columns into one packed row-major buffer.
+          ByteBuffer packed = ByteBuffer.allocate(n * stride);
+          for(int d = 0, p = 0; d < dim; d++, p += ByteArrayUtil.SIZE_DOUBLE) {
+            file.readNumeric(numcols[d], chunk, values);
+            for(int i = 0, q = p; i < n; i++, q += stride) {
+              packed.putDouble(q, values[i]);
+            }
+          }
+          for(int i = 0; i < n; i++) {
+            vectors.add(new ByteBufferDoubleVector(packed, i * stride, dim));
+          }
+        }
+        if(labels != null) {
+          for(int l = 0; l < labcols.length; l++) {
+            file.readLabels(labcols[l], chunk, strings[l]);
+          }
+          for(int i = 0; i < n; i++) {
+            buf.clear();
+            for(int l = 0; l < labcols.length; l++) {
+              if(strings[l][i] != null) {
+                buf.add(strings[l][i]);
+              }
+            }
+            labels.add(LabelList.make(buf));
+          }
+        }
+      }
+      if(LOG.isVerbose()) {
+        LOG.verbose("Loaded " + size + " rows with " + dim + " numerical and " + labcols.length + " label columns.");
+      }
+      MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+      if(vectors != null) {
+        bundle.appendColumn(new VectorFieldTypeInformation<>(ByteBufferDoubleVector.FACTORY, dim, names, ByteBufferDoubleVector.VARIABLE_SERIALIZER), vectors);
+      }
+      if(labels != null) {
+        bundle.appendColumn(TypeUtil.LABELLIST, labels);
+      }
+      return invokeBundleFilters(bundle);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading columnar file", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * Option ID for the input file.
+     */
+    public static final OptionID INPUT_ID = new OptionID("columnar.input", "Columnar file to load the data from.");
+
+    /**
+     * Option ID for the columns to load.
+     */
+    public static final OptionID COLUMNS_ID = new OptionID("columnar.columns", "Indexes of the columns to load (starting at 0). Numerical columns form a vector, label columns a label list. Default: all columns.");
+
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    /**
+     * Columns to load.
+     */
+    private int[] columns;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(INPUT_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+      IntListParameter columnsP = new IntListParameter(COLUMNS_ID, true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT_LIST);
+      if(config.grab(columnsP)) {
+        columns = columnsP.getValue();
+      }
+    }
+
+    @Override
+    protected ColumnarDatabaseConnection makeInstance() {
+      return new ColumnarDatabaseConnection(filters, infile, columns);
+    }
+  }
+}
@@ -25,8 +25,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
@@ -35,21 +39,44 @@ import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource.Event;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelNumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
 import de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileListParameter.FilesType;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Parameter;
 
 /**
  * Database that will loading multiple files, concatenating the results.
  * 
+ * If a parser factory is available (as when configured via parameters), the
+ * files are decompressed and parsed in parallel, using one parser instance per
+ * file. At most twice as many files as there are threads are in flight at any
+ * time, and the results are concatenated in the order of the input files, so
+ * the result is exactly the same as when loading sequentially.
+ * 
+ * When configured via parameters, each additional parser is instantiated anew
+ * from the parser options, and so are all the objects it is configured with.
+ * Parsers therefore do not share any state, except for objects that are
+ * shared by design, such as the (stateless) vector factories. An object given
+ * as an instance rather than as a class cannot be instantiated again; then the
+ * files are loaded sequentially with the single parser.
+ * 
  * @author Erich Schubert
  * @since 0.5.0
+ * 
+ * @apiviz.uses ParallelCore
  */
 public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -67,6 +94,11 @@ public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnecti
    */
   private Parser parser;
 
+  /**
+   * Factory for additional parsers, for parallel loading. May be null.
+   */
+  private Supplier<? extends Parser> parsers;
+
   /**
    * Constructor.
    * 
@@ -75,62 +107,80 @@ public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnecti
    * @param filters Filters
    */
   public ConcatenateFilesDatabaseConnection(List<File> files, Parser parser, List<ObjectFilter> filters) {
+    this(files, parser, null, filters);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param files Input files
+   * @param parser Parser
+   * @param parsers Factory for independent parser instances, to load files in
+   *        parallel; may be null
+   * @param filters Filters
+   */
+  public ConcatenateFilesDatabaseConnection(List<File> files, Parser parser, Supplier<? extends Parser> parsers, List<ObjectFilter> filters) {
     super(filters);
     this.files = files;
     this.parser = parser;
+    this.parsers = parsers;
   }
 
   @Override
   public MultipleObjectsBundle loadData() {
     MultipleObjectsBundle objects = new MultipleObjectsBundle();
     objects.appendColumn(TypeUtil.STRING, new ArrayList<>());
-    for(File file : files) {
-      String filestr = file.getPath();
-      try (InputStream inputStream = FileUtil.tryGzipInput(//
-          new BufferedInputStream(new FileInputStream(file)))) {
-        final BundleStreamSource source;
-        if(parser instanceof StreamingParser) {
-          final StreamingParser streamParser = (StreamingParser) parser;
-          streamParser.initStream(inputStream);
-          source = streamParser;
+    ParallelCore core = ParallelCore.getCore();
+    // Parallel parsers already use all threads; do not nest them.
+    if(parsers == null || files.size() < 2 || parser instanceof ParallelNumberVectorLabelParser) {
+      for(File file : files) {
+        try (InputStream inputStream = open(file)) {
+          final BundleStreamSource source;
+          if(parser instanceof StreamingParser) {
+            final StreamingParser streamParser = (StreamingParser) parser;
+            streamParser.initStream(inputStream);
+            source = streamParser;
+          }
+          else {
+            MultipleObjectsBundle parsingResult = parser.parse(inputStream);
+            // normalize objects and transform labels
+            source = parsingResult.asStream();
+          }
+          append(objects, file.getPath(), source);
         }
-        else {
-          MultipleObjectsBundle parsingResult = parser.parse(inputStream);
-          // normalize objects and transform labels
-          source = parsingResult.asStream();
+        catch(IOException e) {
+          throw new AbortException("Loading file " + file.getPath() + " failed: " + e.toString(), e);
         }
-        BundleMeta meta = null; // NullPointerException on invalid streams
-        loop: for(Event e = source.nextEvent();; e = source.nextEvent()) {
-          switch(e){
-          case END_OF_STREAM:
-            break loop;
-          case META_CHANGED:
-            meta = source.getMeta();
-            for(int i = 0; i < meta.size(); i++) {
-              if(i + 1 >= objects.metaLength()) {
-                objects.appendColumn(meta.get(i), new ArrayList<>());
-              }
-              else {
-                // Ensure compatibility:
-                if(!objects.meta(i + 1).isAssignableFromType(meta.get(i))) {
-                  throw new AbortException("Incompatible files loaded. Cannot concatenate with unaligned columns, please preprocess manually.");
-                }
-              }
-            }
-            break; // switch
-          case NEXT_OBJECT:
-            Object[] o = new Object[objects.metaLength()];
-            o[0] = filestr;
-            for(int i = 0; i < meta.size(); i++) {
-              o[i + 1] = source.data(i);
-            }
-            objects.appendSimple(o);
-            break; // switch
+      }
+    }
+    else {
+      core.connect();
+      try {
+        final int maxpending = core.getParallelism() << 1;
+        ArrayDeque<Future<MultipleObjectsBundle>> pending = new ArrayDeque<>(maxpending + 1);
+        int next = 0; // Next file to append.
+        for(int i = 0; i < files.size() || !pending.isEmpty();) {
+          if(i < files.size() && pending.size() < maxpending) {
+            final File file = files.get(i++);
+            pending.add(core.submit(() -> parse(file, parsers.get())));
+            continue;
           }
+          // Append in input order, for deterministic results.
+          append(objects, files.get(next++).getPath(), pending.poll().get().asStream());
+        }
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AbortException("Loading was interrupted.", e);
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
         }
+        throw new AbortException("Loading failed.", e.getCause());
       }
-      catch(IOException e) {
-        throw new AbortException("Loading file " + filestr + " failed: " + e.toString(), e);
+      finally {
+        core.disconnect();
       }
     }
     parser.cleanup();
@@ -141,6 +191,75 @@ public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnecti
     return invokeBundleFilters(objects);
   }
 
+  /**
+   * Open an input file, decompressing if necessary.
+   * 
+   * @param file Input file
+   * @return Input stream
+   * @throws IOException on errors
+   */
+  private static InputStream open(File file) throws IOException {
+    return new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(file)));
+  }
+
+  /**
+   * Parse a single file, with a parser of its own.
+   * 
+   * @param file Input file
+   * @param parser Parser, not shared with other threads
+   * @return Parsed objects
+   */
+  private static MultipleObjectsBundle parse(File file, Parser parser) {
+    try (InputStream inputStream = open(file)) {
+      return parser.parse(inputStream);
+    }
+    catch(IOException e) {
+      throw new AbortException("Loading file " + file.getPath() + " failed: " + e.toString(), e);
+    }
+    finally {
+      parser.cleanup();
+    }
+  }
+
+  /**
+   * Append the objects of one file.
+   * 
+   * @param objects Output bundle
+   * @param filestr File name
+   * @param source Objects of the file
+   */
+  private static void append(MultipleObjectsBundle objects, String filestr, BundleStreamSource source) {
+    BundleMeta meta = null; // NullPointerException on invalid streams
+    loop: for(Event e = source.nextEvent();; e = source.nextEvent()) {
+      switch(e){
+      case END_OF_STREAM:
+        break loop;
+      case META_CHANGED:
+        meta = source.getMeta();
+        for(int i = 0; i < meta.size(); i++) {
+          if(i + 1 >= objects.metaLength()) {
+            objects.appendColumn(meta.get(i), new ArrayList<>());
+          }
+          else {
+            // Ensure compatibility:
+            if(!objects.meta(i + 1).isAssignableFromType(meta.get(i))) {
+              throw new AbortException("Incompatible files loaded. Cannot concatenate with unaligned columns, please preprocess manually.");
+            }
+          }
+        }
+        break; // switch
+      case NEXT_OBJECT:
+        Object[] o = new Object[objects.metaLength()];
+        o[0] = filestr;
+        for(int i = 0; i < meta.size(); i++) {
+          o[i + 1] = source.data(i);
+        }
+        objects.appendSimple(o);
+        break; // switch
+      }
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -167,6 +286,11 @@ public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnecti
      */
     private List<File> files;
 
+    /**
+     * Factory for further parser instances.
+     */
+    private Supplier<Parser> parsers;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -175,12 +299,53 @@ public class ConcatenateFilesDatabaseConnection extends AbstractDatabaseConnecti
         files = filesP.getValue();
       }
       configFilters(config);
-      configParser(config, Parser.class, NumberVectorLabelParser.class);
+      TrackParameters track = new TrackParameters(config);
+      configParser(track, Parser.class, NumberVectorLabelParser.class);
+      if(parser != null) {
+        // Remember the parser configuration, to create further instances.
+        // Object parameters are recorded by their class, never by the
+        // instance, so that every parser gets its own objects.
+        final List<OptionID> ids = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+        for(TrackedParameter p : track.getAllParameters()) {
+          Parameter<?> opt = p.getParameter();
+          if(!opt.isDefined()) {
+            continue;
+          }
+          if((opt instanceof ObjectParameter && ((ObjectParameter<?>) opt).isGivenInstance()) //
+              || (opt instanceof ObjectListParameter && ((ObjectListParameter<?>) opt).isGivenInstance())) {
+            return; // Cannot instantiate again, load sequentially.
+          }
+          ids.add(opt.getOptionID());
+          values.add(opt.getValue());
+        }
+        parsers = () -> newParser(ids, values);
+      }
+    }
+
+    /**
+     * Instantiate a new parser.
+     * 
+     * @param ids Parser option IDs
+     * @param values Parser option values
+     * @return New parser
+     */
+    private static Parser newParser(List<OptionID> ids, List<Object> values) {
+      ListParameterization config = new ListParameterization();
+      for(int i = 0; i < ids.size(); i++) {
+        config.addParameter(ids.get(i), values.get(i));
+      }
+      ObjectParameter<Parser> parserP = new ObjectParameter<>(PARSER_ID, Parser.class);
+      Parser parser = config.grab(parserP) ? parserP.instantiateClass(config) : null;
+      if(parser == null || config.hasErrors()) {
+        throw new AbortException("Could not instantiate another parser: " + config.getErrors());
+      }
+      return parser;
     }
 
     @Override
     protected ConcatenateFilesDatabaseConnection makeInstance() {
-      return new ConcatenateFilesDatabaseConnection(files, parser, filters);
+      return new ConcatenateFilesDatabaseConnection(files, parser, parsers, filters);
     }
   }
 }
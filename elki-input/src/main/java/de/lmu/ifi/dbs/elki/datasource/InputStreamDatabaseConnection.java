@@ -24,7 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.AbstractStreamFilter;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
@@ -120,6 +124,40 @@ public class InputStreamDatabaseConnection extends AbstractDatabaseConnection im
     }
   }
 
+  @Override
+  public BundleStreamSource loadStream() {
+    // Non-streaming parsers need to parse all data first.
+    if(!(parser instanceof StreamingParser)) {
+      return new StreamFromBundle(loadData(), true);
+    }
+    if(LOG.isDebugging()) {
+      LOG.debugFine("Parsing as stream.");
+    }
+    final StreamingParser streamParser = (StreamingParser) parser;
+    streamParser.initStream(in);
+    // Release the parser when the stream was consumed.
+    return invokeStreamFilters(new AbstractStreamFilter() {
+      @Override
+      public BundleMeta getMeta() {
+        return source.getMeta();
+      }
+
+      @Override
+      public Object data(int rnum) {
+        return source.data(rnum);
+      }
+
+      @Override
+      public Event nextEvent() {
+        Event ev = source.nextEvent();
+        if(ev == Event.END_OF_STREAM) {
+          parser.cleanup();
+        }
+        return ev;
+      }
+    }.init(streamParser));
+  }
+
   @Override
   public void close() throws IOException {
     in.close();
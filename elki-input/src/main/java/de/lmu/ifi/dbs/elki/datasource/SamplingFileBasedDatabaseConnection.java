@@ -0,0 +1,166 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.datasource.filter.selection.RandomSamplingStreamFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.BlockSamplingInputStream;
+import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Database connection that parses only a random sample of a text file.
+ *
+ * In contrast to the {@link RandomSamplingStreamFilter}, which is applied
+ * after parsing, the sampling is done on blocks of the raw input (see
+ * {@link BlockSamplingInputStream}): blocks that are not sampled are skipped
+ * without being read or tokenized. This makes exploratory runs on a small
+ * sample of huge files cheap. As whole blocks of lines are sampled, this is a
+ * cluster sample; use small blocks for sorted files.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses BlockSamplingInputStream
+ */
+public class SamplingFileBasedDatabaseConnection extends FileBasedDatabaseConnection {
+  /**
+   * Constructor.
+   *
+   * @param filters Filters, can be null
+   * @param parser the parser to provide a database
+   * @param infile File to load the data from
+   * @param prob Sampling probability of each block
+   * @param blocksize Block size, in bytes
+   * @param rnd Random generator
+   */
+  public SamplingFileBasedDatabaseConnection(List<ObjectFilter> filters, Parser parser, File infile, double prob, int blocksize, RandomFactory rnd) {
+    super(filters, parser, open(infile, prob, blocksize, rnd));
+  }
+
+  /**
+   * Open the sampled input stream.
+   *
+   * @param infile File to load the data from
+   * @param prob Sampling probability of each block
+   * @param blocksize Block size, in bytes
+   * @param rnd Random generator
+   * @return Input stream
+   */
+  private static InputStream open(File infile, double prob, int blocksize, RandomFactory rnd) {
+    try {
+      InputStream in = FileUtil.tryGzipInput(new FileInputStream(infile));
+      return new BufferedInputStream(new BlockSamplingInputStream(in, blocksize, prob, rnd.getSingleThreadedRandom()));
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not load input file: " + infile, e);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends FileBasedDatabaseConnection.Parameterizer {
+    /**
+     * Size of the sampled blocks, in bytes.
+     * <p>
+     * Key: {@code -dbc.sample.blocksize}<br />
+     * Default: 65536
+     * </p>
+     */
+    public static final OptionID BLOCKSIZE_ID = new OptionID("dbc.sample.blocksize", "Size of the blocks of the input file (in bytes) that are sampled, or skipped, as a whole.");
+
+    /**
+     * Probability of reading each block.
+     * <p>
+     * Key: {@code -dbc.sample}
+     * </p>
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("dbc.sample", "Probability of reading each block of the input file.");
+
+    /**
+     * Random generator seed for sampling.
+     * <p>
+     * Key: {@code -dbc.sample.seed}
+     * </p>
+     */
+    public static final OptionID SEED_ID = new OptionID("dbc.sample.seed", "Random generator seed for sampling the input blocks.");
+
+    /**
+     * Sampling probability.
+     */
+    protected double prob;
+
+    /**
+     * Block size.
+     */
+    protected int blocksize;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter probP = new DoubleParameter(SAMPLE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE) //
+          .addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE);
+      if(config.grab(probP)) {
+        prob = probP.doubleValue();
+      }
+      IntParameter blocksizeP = new IntParameter(BLOCKSIZE_ID, 1 << 16) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(blocksizeP)) {
+        blocksize = blocksizeP.intValue();
+      }
+      RandomParameter rndP = new RandomParameter(SEED_ID);
+      if(config.grab(rndP)) {
+        rnd = rndP.getValue();
+      }
+    }
+
+    @Override
+    protected SamplingFileBasedDatabaseConnection makeInstance() {
+      return new SamplingFileBasedDatabaseConnection(filters, parser, infile, prob, blocksize, rnd);
+    }
+  }
+}
@@ -0,0 +1,535 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Parameter;
+
+/**
+ * Database connection that keeps a snapshot of the loaded data in a directory,
+ * to avoid parsing and filtering the input again in repeated runs.
+ *
+ * On the first run, the data is loaded from the source connection and written
+ * to the snapshot directory as a bundle, along with the DBIDs that were
+ * assigned. Later runs restore the data from the bundle, memory-mapping it if
+ * it only contains dense vectors (see {@link BundleDatabaseConnection}), and
+ * reuse the same DBIDs. The database can then also restore indexes that
+ * implement {@link SnapshotIndex}, instead of building them again.
+ *
+ * A snapshot is only used if its fingerprint matches: a checksum of the source
+ * configuration, including the size and modification time of all input
+ * files. Otherwise it is considered stale, and replaced.
+ *
+ * The DBIDs are only reused if they are not yet in use in this JVM (e.g., by
+ * another database loaded from the same snapshot). Otherwise, new DBIDs are
+ * assigned, and the indexes are built again.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf DatabaseConnection
+ * @apiviz.uses BundleDatabaseConnection
+ * @apiviz.uses SnapshotIndex
+ */
+public class SnapshotDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SnapshotDatabaseConnection.class);
+
+  /**
+   * Magic number of snapshot files (including the format version).
+   */
+  public static final int MAGIC = 0x534e4101;
+
+  /**
+   * File name of the data bundle.
+   */
+  public static final String DATA_FILE = "data.bundle";
+
+  /**
+   * File name of the snapshot manifest.
+   */
+  public static final String MANIFEST_FILE = "snapshot.manifest";
+
+  /**
+   * File name prefix of index snapshots.
+   */
+  private static final String INDEX_PREFIX = "index-";
+
+  /**
+   * File name suffix of index snapshots.
+   */
+  private static final String INDEX_SUFFIX = ".snapshot";
+
+  /**
+   * Source connection.
+   */
+  private DatabaseConnection source;
+
+  /**
+   * Snapshot directory.
+   */
+  private File directory;
+
+  /**
+   * Fingerprint of the source.
+   */
+  private long fingerprint;
+
+  /**
+   * Verify the checksum of the data bundle.
+   */
+  private boolean verify;
+
+  /**
+   * DBIDs of the data, if they are a range.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Flag, if the data was restored from the snapshot.
+   */
+  private boolean restored;
+
+  /**
+   * Constructor.
+   *
+   * @param source Source connection
+   * @param directory Snapshot directory
+   * @param fingerprint Fingerprint of the source, to detect stale snapshots
+   * @param verify Verify the checksum of the data when restoring
+   */
+  public SnapshotDatabaseConnection(DatabaseConnection source, File directory, long fingerprint, boolean verify) {
+    super(null);
+    this.source = source;
+    this.directory = directory;
+    this.fingerprint = fingerprint;
+    this.verify = verify;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    MultipleObjectsBundle bundle = restore();
+    if(bundle != null) {
+      restored = true;
+      return bundle;
+    }
+    bundle = source.loadData();
+    DBIDs given = bundle.getDBIDs();
+    if(given == null) {
+      // Assign DBIDs now, so that they can be reproduced.
+      bundle.setDBIDs(ids = DBIDUtil.generateStaticDBIDRange(bundle.dataLength()));
+    }
+    else if(given instanceof DBIDRange) {
+      ids = (DBIDRange) given;
+    }
+    try {
+      write(bundle);
+    }
+    catch(IOException e) {
+      LOG.warning("Could not write the snapshot: " + e.getMessage(), e);
+      ids = null; // Do not write index snapshots
+    }
+    return bundle;
+  }
+
+  /**
+   * Restore the data from the snapshot.
+   *
+   * @return Bundle, or {@code null} if the snapshot is missing or stale
+   */
+  private MultipleObjectsBundle restore() {
+    File manifest = new File(directory, MANIFEST_FILE), data = new File(directory, DATA_FILE);
+    if(!manifest.exists() || !data.exists()) {
+      return null;
+    }
+    final int start, size;
+    final long crc;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+      if(in.readInt() != MAGIC || in.readLong() != fingerprint) {
+        LOG.verbose("Snapshot is stale, loading the data again.");
+        return null;
+      }
+      start = in.readInt();
+      size = in.readInt();
+      if(in.readLong() != data.length()) {
+        LOG.warning("Snapshot data was modified, loading the data again.");
+        return null;
+      }
+      crc = in.readLong();
+    }
+    catch(IOException e) {
+      LOG.warning("Could not read the snapshot manifest: " + e.getMessage());
+      return null;
+    }
+    if(verify && crc != checksum(data)) {
+      LOG.warning("Snapshot checksum does not match, loading the data again.");
+      return null;
+    }
+    MultipleObjectsBundle bundle = new BundleDatabaseConnection(null, data, true).loadData();
+    if(bundle.dataLength() != size) {
+      LOG.warning("Snapshot data is incomplete, loading the data again.");
+      return null;
+    }
+    if(start >= 0) {
+      DBIDRange range = DBIDUtil.tryGenerateStaticDBIDRange(start, size);
+      if(range == null) {
+        // Another database in this JVM already uses these DBIDs, so the index
+        // snapshots cannot be used. Record the new DBIDs for the rebuilt ones.
+        LOG.verbose("The DBIDs of the snapshot are already in use, assigning new DBIDs.");
+        bundle.setDBIDs(range = DBIDUtil.generateStaticDBIDRange(size));
+        try {
+          writeManifest(manifest, start(range), size, data.length(), crc);
+        }
+        catch(IOException e) {
+          LOG.warning("Could not update the snapshot manifest: " + e.getMessage(), e);
+          return bundle; // Do not use index snapshots
+        }
+      }
+      bundle.setDBIDs(ids = range);
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Restored " + size + " objects from snapshot " + directory);
+    }
+    return bundle;
+  }
+
+  /**
+   * Write the snapshot.
+   *
+   * @param bundle Data to write
+   * @throws IOException on errors
+   */
+  private void write(MultipleObjectsBundle bundle) throws IOException {
+    if(!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    File manifest = new File(directory, MANIFEST_FILE), data = new File(directory, DATA_FILE);
+    // Invalidate first, in case we fail.
+    if(manifest.exists() && !manifest.delete()) {
+      throw new IOException("Could not remove the old manifest.");
+    }
+    // Index snapshots refer to the old data.
+    File[] old = directory.listFiles();
+    for(int i = 0; old != null && i < old.length; i++) {
+      final String name = old[i].getName();
+      if(name.startsWith(INDEX_PREFIX) && name.endsWith(INDEX_SUFFIX) && !old[i].delete()) {
+        throw new IOException("Could not remove the old index snapshot " + old[i]);
+      }
+    }
+    MultipleObjectsBundle out = bundle;
+    if(ids != null) {
+      // The DBID range is stored in the manifest; this allows memory-mapping.
+      out = new MultipleObjectsBundle();
+      for(int i = 0; i < bundle.metaLength(); i++) {
+        out.appendColumn(bundle.meta(i), bundle.getColumn(i));
+      }
+    }
+    try (FileOutputStream fos = new FileOutputStream(data);
+        FileChannel channel = fos.getChannel()) {
+      new BundleWriter().writeBundleStream(out.asStream(), channel);
+    }
+    writeManifest(manifest, ids != null && ids.size() > 0 ? start(ids) : -1, bundle.dataLength(), data.length(), checksum(data));
+    if(LOG.isVerbose()) {
+      LOG.verbose("Wrote snapshot of " + bundle.dataLength() + " objects to " + directory);
+    }
+  }
+
+  /**
+   * Write the snapshot manifest.
+   *
+   * @param manifest Manifest file
+   * @param start First DBID, or {@code -1}
+   * @param size Number of objects
+   * @param length Length of the data file
+   * @param crc Checksum of the data file
+   * @throws IOException on errors
+   */
+  private void writeManifest(File manifest, int start, int size, long length, long crc) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifest)))) {
+      dos.writeInt(MAGIC);
+      dos.writeLong(fingerprint);
+      dos.writeInt(start);
+      dos.writeInt(size);
+      dos.writeLong(length);
+      dos.writeLong(crc);
+    }
+  }
+
+  /**
+   * Get the first DBID of a range.
+   *
+   * @param ids DBID range
+   * @return First DBID, as integer
+   */
+  private static int start(DBIDRange ids) {
+    return DBIDUtil.asInteger(ids.iter());
+  }
+
+  /**
+   * Restore an index from the snapshot.
+   *
+   * @param index Index
+   * @param key Key of the index within the database
+   * @param config Fingerprint of the index configuration
+   * @return {@code true} if the index was restored
+   */
+  public boolean restoreIndex(SnapshotIndex index, String key, long config) {
+    File file = indexFile(key);
+    if(ids == null || !file.exists()) {
+      return false;
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if(in.readInt() != MAGIC || in.readLong() != fingerprint || in.readLong() != config //
+          || in.readInt() != start(ids) || in.readInt() != ids.size() //
+          || !index.getClass().getName().equals(in.readUTF())) {
+        LOG.verbose("Index snapshot " + file + " is stale.");
+        return false;
+      }
+      if(!index.restoreSnapshot(in)) {
+        LOG.verbose("Index snapshot " + file + " is not compatible.");
+        return false;
+      }
+      if(LOG.isVerbose()) {
+        LOG.verbose("Restored " + index.getClass().getSimpleName() + " from snapshot " + file);
+      }
+      return true;
+    }
+    catch(IOException e) {
+      LOG.warning("Could not read index snapshot " + file + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Write an index to the snapshot.
+   *
+   * @param index Index, initialized
+   * @param key Key of the index within the database
+   * @param config Fingerprint of the index configuration
+   */
+  public void writeIndex(SnapshotIndex index, String key, long config) {
+    if(ids == null || ids.size() == 0) {
+      return;
+    }
+    File file = indexFile(key);
+    try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeLong(fingerprint);
+      out.writeLong(config);
+      out.writeInt(start(ids));
+      out.writeInt(ids.size());
+      out.writeUTF(index.getClass().getName());
+      index.writeSnapshot(out);
+    }
+    catch(IOException e) {
+      LOG.warning("Could not write index snapshot " + file + ": " + e.getMessage(), e);
+      file.delete();
+    }
+  }
+
+  /**
+   * Get the file name of an index snapshot.
+   *
+   * @param key Index key
+   * @return File
+   */
+  private File indexFile(String key) {
+    return new File(directory, INDEX_PREFIX + key + INDEX_SUFFIX);
+  }
+
+  /**
+   * Check whether the data was restored from the snapshot.
+   *
+   * @return {@code true} if restored
+   */
+  public boolean isRestored() {
+    return restored;
+  }
+
+  /**
+   * Compute the checksum of a file.
+   *
+   * @param file File
+   * @return CRC32 checksum, {@code -1} on errors
+   */
+  private static long checksum(File file) {
+    CRC32 crc = new CRC32();
+    try (InputStream in = new CheckedInputStream(new FileInputStream(file), crc)) {
+      byte[] buf = new byte[1 << 16];
+      while(in.read(buf) >= 0) {
+        // Only update the checksum
+      }
+    }
+    catch(IOException e) {
+      return -1L;
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Compute a fingerprint of tracked parameters. For file parameters, the size
+   * and modification time of the files are included.
+   *
+   * @param track Tracked parameters
+   * @return Fingerprint
+   */
+  public static long fingerprint(TrackParameters track) {
+    CRC32 crc = new CRC32();
+    StringBuilder buf = new StringBuilder();
+    for(TrackedParameter p : track.getAllParameters()) {
+      Parameter<?> opt = p.getParameter();
+      if(!opt.isDefined()) {
+        continue;
+      }
+      buf.setLength(0);
+      buf.append(opt.getOptionID().getName()).append('=').append(opt.getValueAsString());
+      Object value = opt.getValue();
+      if(value instanceof File) {
+        appendFile(buf, (File) value);
+      }
+      else if(value instanceof List) {
+        for(Object o : (List<?>) value) {
+          if(o instanceof File) {
+            appendFile(buf, (File) o);
+          }
+        }
+      }
+      crc.update(buf.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Append the size and modification time of a file.
+   *
+   * @param buf Output buffer
+   * @param file File
+   */
+  private static void appendFile(StringBuilder buf, File file) {
+    buf.append(' ').append(file.length()).append(' ').append(file.lastModified());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Directory to store the snapshot in.
+     */
+    public static final OptionID DIRECTORY_ID = new OptionID("snapshot.dir", "Directory to store the snapshot of the database in.");
+
+    /**
+     * Source database connection.
+     */
+    public static final OptionID SOURCE_ID = new OptionID("snapshot.source", "Database connection to load the data from, if there is no valid snapshot.");
+
+    /**
+     * Flag to verify the data checksum.
+     */
+    public static final OptionID VERIFY_ID = new OptionID("snapshot.verify", "Verify the checksum of the snapshot data before using it.");
+
+    /**
+     * Source connection.
+     */
+    private DatabaseConnection source;
+
+    /**
+     * Snapshot directory.
+     */
+    private File directory;
+
+    /**
+     * Fingerprint of the source configuration.
+     */
+    private long fingerprint;
+
+    /**
+     * Verify the data checksum.
+     */
+    private boolean verify;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter directoryP = new FileParameter(DIRECTORY_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(directoryP)) {
+        directory = directoryP.getValue();
+      }
+      Flag verifyF = new Flag(VERIFY_ID);
+      if(config.grab(verifyF)) {
+        verify = verifyF.isTrue();
+      }
+      TrackParameters track = new TrackParameters(config);
+      ObjectParameter<DatabaseConnection> sourceP = new ObjectParameter<>(SOURCE_ID, DatabaseConnection.class, FileBasedDatabaseConnection.class);
+      if(track.grab(sourceP)) {
+        source = sourceP.instantiateClass(track);
+        fingerprint = fingerprint(track);
+      }
+    }
+
+    @Override
+    protected SnapshotDatabaseConnection makeInstance() {
+      return new SnapshotDatabaseConnection(source, directory, fingerprint, verify);
+    }
+  }
+}
@@ -0,0 +1,596 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Reader for block-compressed bundle files, as written by
+ * {@link CompressedBundleWriter}.
+ *
+ * The rows are split into blocks of a fixed number of rows, and each block is
+ * compressed independently. The footer contains the offsets of all blocks, so
+ * blocks can be read in any order, and decompressed in parallel.
+ *
+ * File layout:
+ * <ol>
+ * <li>Header: {@code int} magic, {@code int} version</li>
+ * <li>Blocks, compressed with {@link LZ4BlockCodec} (stored uncompressed if
+ * the compressed length is not smaller).</li>
+ * <li>Footer: {@code int} number of rows, {@code int} rows per block,
+ * {@code byte} DBID flag, {@code int} number of columns; for each column the
+ * type (see {@link TypeInformationSerializer}) and the column codec
+ * ({@code byte}); for each dictionary column the dictionary ({@code int} size,
+ * followed by varint length-prefixed serialized objects); for each block the
+ * {@code long} offset, {@code int} compressed and {@code int} uncompressed
+ * length.</li>
+ * <li>Trailer: {@code long} offset of the footer, {@code int} magic</li>
+ * </ol>
+ * Within an uncompressed block, the DBIDs (if present) are stored
+ * frame-of-reference bit-packed, followed by the columns in order:
+ * <ul>
+ * <li>{@link #CODEC_VECTOR}: vectors of a constant dimensionality, one stream
+ * per dimension. Each stream either stores decimal values as zigzag varint
+ * deltas of the scaled values ({@link #FLOAT_DECIMAL}), or the XOR with the
+ * previous value, with the leading and trailing zero bytes omitted
+ * ({@link #FLOAT_XOR}).</li>
+ * <li>{@link #CODEC_DICTIONARY}: bit-packed codes into the dictionary, 0 for
+ * {@code null}. Used for class labels and other repetitive columns.</li>
+ * <li>{@link #CODEC_SERIALIZED}: a presence byte, followed by the serialized
+ * object.</li>
+ * </ul>
+ * Bit-packed data stores the minimum as signed varint, the bit width as
+ * {@code byte}, and then the offsets from the minimum, least significant bit
+ * first.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses LZ4BlockCodec
+ * @apiviz.has MultipleObjectsBundle
+ */
+public class CompressedBundleReader implements AutoCloseable {
+  /**
+   * Magic number.
+   */
+  public static final int MAGIC = 0xa8123b14;
+
+  /**
+   * Format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of the trailer.
+   */
+  static final int TRAILER_SIZE = ByteArrayUtil.SIZE_LONG + ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Column codec: number vectors of constant dimensionality.
+   */
+  public static final byte CODEC_VECTOR = 0;
+
+  /**
+   * Column codec: dictionary of serialized objects.
+   */
+  public static final byte CODEC_DICTIONARY = 1;
+
+  /**
+   * Column codec: serialized objects.
+   */
+  public static final byte CODEC_SERIALIZED = 2;
+
+  /**
+   * Floating point stream: scaled decimal deltas.
+   */
+  static final byte FLOAT_DECIMAL = 0;
+
+  /**
+   * Floating point stream: XOR with the previous value.
+   */
+  static final byte FLOAT_XOR = 1;
+
+  /**
+   * Powers of ten for decimal scaling; all exactly representable.
+   */
+  static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8 };
+
+  /**
+   * Input channel.
+   */
+  private FileChannel channel;
+
+  /**
+   * Number of rows, and rows per block.
+   */
+  private int numrows, blockrows;
+
+  /**
+   * Whether or not we have DBIDs.
+   */
+  private boolean hasids;
+
+  /**
+   * Bundle meta.
+   */
+  private BundleMeta meta;
+
+  /**
+   * Column codecs.
+   */
+  private byte[] codecs;
+
+  /**
+   * Serializers of the columns.
+   */
+  private ByteBufferSerializer<?>[] serializers;
+
+  /**
+   * Dictionaries of the columns.
+   */
+  private Object[][] dictionaries;
+
+  /**
+   * Block offsets.
+   */
+  private long[] offsets;
+
+  /**
+   * Compressed and uncompressed block lengths.
+   */
+  private int[] clens, rawlens;
+
+  /**
+   * Constructor. Reads the file schema and block index.
+   *
+   * @param channel Input channel
+   * @throws IOException on IO errors
+   */
+  public CompressedBundleReader(FileChannel channel) throws IOException {
+    super();
+    this.channel = channel;
+    final long size = channel.size();
+    if(size < 2 * ByteArrayUtil.SIZE_INT + TRAILER_SIZE) {
+      throw new AbortException("File too short for a compressed bundle.");
+    }
+    ByteBuffer header = read(0, 2 * ByteArrayUtil.SIZE_INT);
+    if(header.getInt() != MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int version = header.getInt();
+    if(version != VERSION) {
+      throw new AbortException("Unsupported compressed bundle version: " + version);
+    }
+    ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+    final long footerpos = trailer.getLong();
+    if(trailer.getInt() != MAGIC || footerpos < 0 || footerpos > size - TRAILER_SIZE) {
+      throw new AbortException("Corrupt compressed bundle trailer.");
+    }
+    readFooter(read(footerpos, (int) (size - TRAILER_SIZE - footerpos)));
+  }
+
+  /**
+   * Test whether a file is a compressed bundle.
+   *
+   * @param channel Input channel
+   * @return {@code true} if the file starts with the magic number
+   * @throws IOException on IO errors
+   */
+  public static boolean isCompressedBundle(FileChannel channel) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(ByteArrayUtil.SIZE_INT);
+    while(buf.hasRemaining()) {
+      if(channel.read(buf, buf.position()) < 0) {
+        return false;
+      }
+    }
+    return buf.getInt(0) == MAGIC;
+  }
+
+  /**
+   * Parse the footer.
+   *
+   * @param footer Footer data
+   * @throws IOException on decoding errors
+   */
+  private void readFooter(ByteBuffer footer) throws IOException {
+    numrows = footer.getInt();
+    blockrows = footer.getInt();
+    if(numrows < 0 || blockrows <= 0) {
+      throw new AbortException("Invalid block size in compressed bundle.");
+    }
+    hasids = footer.get() != 0;
+    final int nummeta = footer.getInt();
+    meta = new BundleMeta(nummeta);
+    codecs = new byte[nummeta];
+    serializers = new ByteBufferSerializer<?>[nummeta];
+    for(int i = 0; i < nummeta; i++) {
+      try {
+        SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(footer);
+        meta.add(type);
+        serializers[i] = type.getSerializer();
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      codecs[i] = footer.get();
+      if(codecs[i] == CODEC_VECTOR ? !isVectorColumn(meta.get(i)) : (codecs[i] != CODEC_DICTIONARY && codecs[i] != CODEC_SERIALIZED)) {
+        throw new AbortException("Unsupported column codec " + codecs[i] + " for type " + meta.get(i));
+      }
+    }
+    dictionaries = new Object[nummeta][];
+    for(int i = 0; i < nummeta; i++) {
+      if(codecs[i] == CODEC_DICTIONARY) {
+        Object[] dict = dictionaries[i] = new Object[footer.getInt()];
+        for(int j = 0; j < dict.length; j++) {
+          byte[] bytes = new byte[ByteArrayUtil.readUnsignedVarint(footer)];
+          footer.get(bytes);
+          dict[j] = serializers[i].fromByteBuffer(ByteBuffer.wrap(bytes));
+        }
+      }
+    }
+    final int numblocks = getNumBlocks();
+    offsets = new long[numblocks];
+    clens = new int[numblocks];
+    rawlens = new int[numblocks];
+    for(int b = 0; b < numblocks; b++) {
+      offsets[b] = footer.getLong();
+      clens[b] = footer.getInt();
+      rawlens[b] = footer.getInt();
+    }
+  }
+
+  /**
+   * Test if a column type can be stored with the vector codec.
+   *
+   * @param type Column type
+   * @return {@code true} for number vector fields of constant dimensionality
+   */
+  static boolean isVectorColumn(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    return vtype.mindim() == vtype.maxdim() && vtype.getFactory() instanceof NumberVector.Factory;
+  }
+
+  /**
+   * Read a range of the file.
+   *
+   * @param pos Position
+   * @param len Length
+   * @return New buffer containing the data
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer read(long pos, int len) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(len);
+    while(buffer.hasRemaining()) {
+      if(channel.read(buffer, pos + buffer.position()) < 0) {
+        throw new AbortException("Unexpected end of compressed bundle.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Get the bundle meta.
+   *
+   * @return Meta
+   */
+  public BundleMeta getMeta() {
+    return meta;
+  }
+
+  /**
+   * Test whether the bundle contains DBIDs.
+   *
+   * @return {@code true} when DBIDs are stored
+   */
+  public boolean hasDBIDs() {
+    return hasids;
+  }
+
+  /**
+   * Get the number of rows.
+   *
+   * @return Number of rows
+   */
+  public int getNumRows() {
+    return numrows;
+  }
+
+  /**
+   * Get the number of blocks.
+   *
+   * @return Number of blocks
+   */
+  public int getNumBlocks() {
+    return (numrows + blockrows - 1) / blockrows;
+  }
+
+  /**
+   * Get the number of rows in a block.
+   *
+   * @param block Block number
+   * @return Number of rows
+   */
+  public int getBlockSize(int block) {
+    return Math.min(blockrows, numrows - block * blockrows);
+  }
+
+  /**
+   * Get the codec of a column.
+   *
+   * @param col Column
+   * @return Codec
+   */
+  public byte getCodec(int col) {
+    return codecs[col];
+  }
+
+  /**
+   * Read and decode a single block.
+   *
+   * This method is thread safe, and can be used to decode multiple blocks
+   * concurrently.
+   *
+   * @param block Block number
+   * @return Bundle containing the rows of this block
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle readBlock(int block) throws IOException {
+    final int n = getBlockSize(block), rawlen = rawlens[block];
+    ByteBuffer in = read(offsets[block], clens[block]);
+    if(clens[block] != rawlen) {
+      byte[] raw = new byte[rawlen];
+      LZ4BlockCodec.decompress(in.array(), 0, clens[block], raw, rawlen);
+      in = ByteBuffer.wrap(raw);
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    long[] tmp = new long[n];
+    ArrayModifiableDBIDs ids = null;
+    if(hasids) {
+      unpack(in, tmp, n);
+      ids = DBIDUtil.newArray(n);
+      for(int i = 0; i < n; i++) {
+        ids.add(DBIDUtil.importInteger((int) tmp[i]));
+      }
+    }
+    for(int c = 0; c < codecs.length; c++) {
+      List<Object> column = new ArrayList<>(n);
+      switch(codecs[c]){
+      case CODEC_VECTOR: {
+        VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) meta.get(c);
+        NumberVector.Factory<?> factory = (NumberVector.Factory<?>) vtype.getFactory();
+        final int dim = vtype.getDimensionality();
+        double[][] rows = new double[n][dim];
+        double[] values = new double[n];
+        for(int d = 0; d < dim; d++) {
+          decodeDoubles(in, values, n);
+          for(int i = 0; i < n; i++) {
+            rows[i][d] = values[i];
+          }
+        }
+        for(int i = 0; i < n; i++) {
+          column.add(factory.newNumberVector(rows[i]));
+        }
+        break;
+      }
+      case CODEC_DICTIONARY: {
+        unpack(in, tmp, n);
+        final Object[] dict = dictionaries[c];
+        for(int i = 0; i < n; i++) {
+          column.add(tmp[i] > 0 ? dict[(int) tmp[i] - 1] : null);
+        }
+        break;
+      }
+      default: {
+        final ByteBufferSerializer<?> ser = serializers[c];
+        for(int i = 0; i < n; i++) {
+          column.add(in.get() != 0 ? ser.fromByteBuffer(in) : null);
+        }
+      }
+      }
+      bundle.appendColumn(meta.get(c), column);
+    }
+    if(in.hasRemaining()) {
+      throw new AbortException("Corrupt compressed bundle: trailing data in block " + block);
+    }
+    bundle.setDBIDs(ids);
+    return bundle;
+  }
+
+  /**
+   * Read all blocks, decompressing them in parallel.
+   *
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle load() throws IOException {
+    int[] blocks = new int[getNumBlocks()];
+    for(int b = 0; b < blocks.length; b++) {
+      blocks[b] = b;
+    }
+    return load(blocks);
+  }
+
+  /**
+   * Read the given blocks, decompressing them in parallel. Other blocks are
+   * neither read nor decompressed.
+   *
+   * @param blocks Block numbers, in the order to load them
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle load(int[] blocks) throws IOException {
+    int size = 0;
+    for(int block : blocks) {
+      size += getBlockSize(block);
+    }
+    List<List<Object>> columns = new ArrayList<>(meta.size());
+    for(int c = 0; c < meta.size(); c++) {
+      columns.add(new ArrayList<>(size));
+    }
+    ArrayModifiableDBIDs ids = hasids ? DBIDUtil.newArray(size) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      final int maxpending = core.getParallelism() << 1;
+      ArrayDeque<Future<MultipleObjectsBundle>> pending = new ArrayDeque<>(maxpending + 1);
+      for(int b = 0; b < blocks.length || !pending.isEmpty();) {
+        if(b < blocks.length && pending.size() < maxpending) {
+          final int block = blocks[b++];
+          pending.add(core.submit(() -> readBlock(block)));
+          continue;
+        }
+        // Merge in file order.
+        MultipleObjectsBundle part = pending.poll().get();
+        for(int c = 0; c < columns.size(); c++) {
+          columns.get(c).addAll(part.getColumn(c));
+        }
+        if(ids != null) {
+          ids.addDBIDs(part.getDBIDs());
+        }
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Loading was interrupted.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Decompression failed.", e.getCause());
+    }
+    finally {
+      core.disconnect();
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int c = 0; c < columns.size(); c++) {
+      bundle.appendColumn(meta.get(c), columns.get(c));
+    }
+    bundle.setDBIDs(ids);
+    return bundle;
+  }
+
+  /**
+   * Decode a stream of floating point values.
+   *
+   * @param in Input buffer
+   * @param out Output array
+   * @param n Number of values
+   * @throws IOException on decoding errors
+   */
+  static void decodeDoubles(ByteBuffer in, double[] out, int n) throws IOException {
+    final byte codec = in.get();
+    if(codec == FLOAT_DECIMAL) {
+      final int scale = in.get();
+      if(scale < 0 || scale >= POW10.length) {
+        throw new AbortException("Corrupt compressed bundle: invalid decimal scale " + scale);
+      }
+      final double div = POW10[scale];
+      long m = 0;
+      for(int i = 0; i < n; i++) {
+        m += ByteArrayUtil.readSignedVarintLong(in);
+        out[i] = m / div;
+      }
+      return;
+    }
+    if(codec != FLOAT_XOR) {
+      throw new AbortException("Corrupt compressed bundle: unknown value codec " + codec);
+    }
+    long prev = 0;
+    for(int i = 0; i < n; i++) {
+      final int ctrl = in.get() & 0xFF;
+      final int lead = ctrl >>> 4, trail = ctrl & 0xF;
+      long x = 0;
+      for(int j = 8 - lead - trail; j > 0; j--) {
+        x = (x << 8) | (in.get() & 0xFF);
+      }
+      prev ^= trail < 8 ? x << (trail << 3) : 0L;
+      out[i] = Double.longBitsToDouble(prev);
+    }
+  }
+
+  /**
+   * Unpack frame-of-reference bit-packed values.
+   *
+   * @param in Input buffer
+   * @param out Output array
+   * @param n Number of values
+   * @throws IOException on decoding errors
+   */
+  static void unpack(ByteBuffer in, long[] out, int n) throws IOException {
+    final long base = ByteArrayUtil.readSignedVarintLong(in);
+    final int width = in.get();
+    if(width < 0 || width > 64) {
+      throw new AbortException("Corrupt compressed bundle: invalid bit width " + width);
+    }
+    if(width == 0) {
+      Arrays.fill(out, 0, n, base);
+      return;
+    }
+    int cur = 0, bits = 0;
+    for(int i = 0; i < n; i++) {
+      long v = 0;
+      for(int w = 0; w < width;) {
+        if(bits == 0) {
+          cur = in.get() & 0xFF;
+          bits = 8;
+        }
+        final int take = Math.min(width - w, bits);
+        v |= ((long) (cur & ((1 << take) - 1))) << w;
+        cur >>>= take;
+        bits -= take;
+        w += take;
+      }
+      out[i] = base + v;
+    }
+  }
+
+  @Override
+  public void close() {
+    channel = null;
+  }
+}
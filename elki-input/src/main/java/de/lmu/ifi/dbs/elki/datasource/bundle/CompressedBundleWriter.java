@@ -0,0 +1,446 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import static de.lmu.ifi.dbs.elki.datasource.bundle.CompressedBundleReader.*;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Write a bundle in the block-compressed format read by
+ * {@link CompressedBundleReader}.
+ *
+ * The codec of each column is chosen automatically: number vectors of a
+ * constant dimensionality are stored column-wise with a floating point codec
+ * chosen per block and dimension, columns with few distinct values (such as
+ * class labels) are dictionary encoded and bit-packed, and all other columns
+ * use the serializer of their type.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses MultipleObjectsBundle - - «reads»
+ * @apiviz.uses CompressedBundleReader - - «writes»
+ * @apiviz.uses LZ4BlockCodec
+ */
+public class CompressedBundleWriter {
+  /**
+   * Default number of rows per block.
+   */
+  public static final int DEFAULT_BLOCK_ROWS = 1 << 12;
+
+  /**
+   * Rows per block.
+   */
+  private int blockrows;
+
+  /**
+   * Uncompressed block buffer, reused.
+   */
+  private ByteBuffer raw;
+
+  /**
+   * Constructor.
+   *
+   * @param blockrows Rows per block
+   */
+  public CompressedBundleWriter(int blockrows) {
+    super();
+    if(blockrows <= 0) {
+      throw new IllegalArgumentException("Invalid block size: " + blockrows);
+    }
+    this.blockrows = blockrows;
+  }
+
+  /**
+   * Constructor with default block size.
+   */
+  public CompressedBundleWriter() {
+    this(DEFAULT_BLOCK_ROWS);
+  }
+
+  /**
+   * Write a bundle to a file.
+   *
+   * @param bundle Bundle to write
+   * @param out Output channel
+   * @throws IOException on IO errors
+   */
+  public void write(MultipleObjectsBundle bundle, FileChannel out) throws IOException {
+    final int numrows = bundle.dataLength(), nummeta = bundle.metaLength();
+    final ArrayDBIDs ids = bundle.getDBIDs();
+    // Choose the column codecs, and build the dictionaries.
+    byte[] codecs = new byte[nummeta];
+    List<List<byte[]>> dictlists = new ArrayList<>(nummeta);
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object2IntOpenHashMap<ByteBuffer>[] dicts = new Object2IntOpenHashMap[nummeta];
+    for(int c = 0; c < nummeta; c++) {
+      SimpleTypeInformation<?> type = bundle.meta(c);
+      if(isVectorColumn(type) && !hasNulls(bundle, c)) {
+        codecs[c] = CODEC_VECTOR;
+        dictlists.add(null);
+        continue;
+      }
+      if(type.getSerializer() == null) {
+        throw new AbortException("Cannot serialize - no serializer found for type: " + type.toString());
+      }
+      dictlists.add(new ArrayList<byte[]>());
+      dicts[c] = buildDictionary(bundle, c, dictlists.get(c));
+      codecs[c] = dicts[c] != null ? CODEC_DICTIONARY : CODEC_SERIALIZED;
+    }
+
+    raw = ByteBuffer.allocate(1 << 16);
+    ByteBuffer header = ByteBuffer.allocate(2 * ByteArrayUtil.SIZE_INT);
+    header.putInt(MAGIC).putInt(VERSION).flip();
+    writeFully(header, out);
+    final int numblocks = (numrows + blockrows - 1) / blockrows;
+    long[] offsets = new long[numblocks];
+    int[] clens = new int[numblocks], rawlens = new int[numblocks];
+    long[] tmp = new long[Math.min(numrows, blockrows)];
+    double[] values = new double[tmp.length];
+    byte[] comp = new byte[0];
+    DBIDArrayIter iter = ids != null ? ids.iter() : null;
+    for(int block = 0, start = 0; block < numblocks; block++, start += blockrows) {
+      final int n = Math.min(numrows - start, blockrows);
+      raw.clear();
+      if(iter != null) {
+        for(int i = 0; i < n; i++) {
+          tmp[i] = DBIDUtil.asInteger(iter.seek(start + i));
+        }
+        pack(tmp, n);
+      }
+      for(int c = 0; c < nummeta; c++) {
+        switch(codecs[c]){
+        case CODEC_VECTOR: {
+          final int dim = ((VectorFieldTypeInformation<?>) bundle.meta(c)).getDimensionality();
+          for(int d = 0; d < dim; d++) {
+            for(int i = 0; i < n; i++) {
+              values[i] = ((NumberVector) bundle.data(start + i, c)).doubleValue(d);
+            }
+            encodeDoubles(values, n);
+          }
+          break;
+        }
+        case CODEC_DICTIONARY: {
+          final ByteBufferSerializer<?> ser = bundle.meta(c).getSerializer();
+          for(int i = 0; i < n; i++) {
+            Object o = bundle.data(start + i, c);
+            tmp[i] = o != null ? dicts[c].getInt(ByteBuffer.wrap(serialize(ser, o))) + 1 : 0;
+          }
+          pack(tmp, n);
+          break;
+        }
+        default: {
+          final ByteBufferSerializer<?> ser = bundle.meta(c).getSerializer();
+          for(int i = 0; i < n; i++) {
+            Object o = bundle.data(start + i, c);
+            if(o == null) {
+              ensure(1).put((byte) 0);
+              continue;
+            }
+            byte[] bytes = serialize(ser, o);
+            ensure(1 + bytes.length).put((byte) 1).put(bytes);
+          }
+        }
+        }
+      }
+      // Compress, unless this does not reduce the size.
+      final int rawlen = raw.position();
+      if(comp.length < LZ4BlockCodec.maxCompressedLength(rawlen)) {
+        comp = new byte[LZ4BlockCodec.maxCompressedLength(rawlen)];
+      }
+      final int clen = LZ4BlockCodec.compress(raw.array(), rawlen, comp);
+      offsets[block] = out.position();
+      rawlens[block] = rawlen;
+      if(clen < rawlen) {
+        clens[block] = clen;
+        writeFully(ByteBuffer.wrap(comp, 0, clen), out);
+      }
+      else {
+        clens[block] = rawlen;
+        raw.flip();
+        writeFully(raw, out);
+      }
+    }
+
+    // Write the footer.
+    final long footerpos = out.position();
+    raw.clear();
+    ensure(3 * ByteArrayUtil.SIZE_INT + 1).putInt(numrows).putInt(blockrows) //
+        .put((byte) (ids != null ? 1 : 0)).putInt(nummeta);
+    for(int c = 0; c < nummeta; c++) {
+      writeType(bundle.meta(c));
+      ensure(1).put(codecs[c]);
+    }
+    for(int c = 0; c < nummeta; c++) {
+      if(codecs[c] == CODEC_DICTIONARY) {
+        ensure(ByteArrayUtil.SIZE_INT).putInt(dictlists.get(c).size());
+        for(byte[] bytes : dictlists.get(c)) {
+          ByteArrayUtil.writeUnsignedVarint(ensure(ByteArrayUtil.getUnsignedVarintSize(bytes.length) + bytes.length), bytes.length);
+          raw.put(bytes);
+        }
+      }
+    }
+    for(int b = 0; b < numblocks; b++) {
+      ensure(ByteArrayUtil.SIZE_LONG + 2 * ByteArrayUtil.SIZE_INT).putLong(offsets[b]).putInt(clens[b]).putInt(rawlens[b]);
+    }
+    ensure(TRAILER_SIZE).putLong(footerpos).putInt(MAGIC);
+    raw.flip();
+    writeFully(raw, out);
+    raw = null;
+  }
+
+  /**
+   * Serialize a type into the buffer.
+   *
+   * @param type Type information
+   * @throws IOException on serialization errors
+   */
+  private void writeType(SimpleTypeInformation<?> type) throws IOException {
+    while(true) {
+      final int pos = raw.position();
+      try {
+        TypeInformationSerializer.STATIC.toByteBuffer(raw, type);
+        return;
+      }
+      catch(BufferOverflowException e) {
+        // The type sizes are not reliably computable, so grow and retry.
+        raw.position(pos);
+        ensure(raw.capacity());
+      }
+    }
+  }
+
+  /**
+   * Test if a column contains {@code null} values.
+   *
+   * @param bundle Bundle
+   * @param c Column
+   * @return {@code true} if there are missing values
+   */
+  private static boolean hasNulls(MultipleObjectsBundle bundle, int c) {
+    for(Object o : bundle.getColumn(c)) {
+      if(o == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Build the dictionary of a column, if it has few distinct values.
+   *
+   * @param bundle Bundle
+   * @param c Column
+   * @param list Output list of the dictionary entries
+   * @return Dictionary, or {@code null} if there are too many distinct values
+   * @throws IOException on serialization errors
+   */
+  private static Object2IntOpenHashMap<ByteBuffer> buildDictionary(MultipleObjectsBundle bundle, int c, List<byte[]> list) throws IOException {
+    final ByteBufferSerializer<?> ser = bundle.meta(c).getSerializer();
+    final int maxsize = bundle.dataLength() >> 1;
+    Object2IntOpenHashMap<ByteBuffer> dict = new Object2IntOpenHashMap<>();
+    dict.defaultReturnValue(-1);
+    for(Object o : bundle.getColumn(c)) {
+      if(o == null) {
+        continue;
+      }
+      byte[] bytes = serialize(ser, o);
+      ByteBuffer key = ByteBuffer.wrap(bytes);
+      if(dict.getInt(key) < 0) {
+        if(list.size() >= maxsize) {
+          list.clear();
+          return null;
+        }
+        dict.put(key, list.size());
+        list.add(bytes);
+      }
+    }
+    return dict;
+  }
+
+  /**
+   * Serialize an object.
+   *
+   * @param ser Serializer
+   * @param o Object
+   * @return Serialized object
+   * @throws IOException on serialization errors
+   */
+  @SuppressWarnings("unchecked")
+  private static byte[] serialize(ByteBufferSerializer<?> ser, Object o) throws IOException {
+    ByteBufferSerializer<Object> oser = (ByteBufferSerializer<Object>) ser;
+    ByteBuffer buf = ByteBuffer.allocate(oser.getByteSize(o));
+    oser.toByteBuffer(buf, o);
+    return buf.array();
+  }
+
+  /**
+   * Encode a stream of floating point values.
+   *
+   * Values that are decimals with few digits, e.g. parsed from text files,
+   * are stored as deltas of the scaled integers, all others by the XOR with
+   * the previous value.
+   *
+   * @param values Values
+   * @param n Number of values
+   */
+  private void encodeDoubles(double[] values, int n) {
+    ensure(2 + n * 10);
+    final int scale = decimalScale(values, n);
+    if(scale >= 0) {
+      raw.put(FLOAT_DECIMAL).put((byte) scale);
+      final double mul = POW10[scale];
+      long prev = 0;
+      for(int i = 0; i < n; i++) {
+        final long m = Math.round(values[i] * mul);
+        ByteArrayUtil.writeSignedVarintLong(raw, m - prev);
+        prev = m;
+      }
+      return;
+    }
+    raw.put(FLOAT_XOR);
+    long prev = 0;
+    for(int i = 0; i < n; i++) {
+      final long bits = Double.doubleToRawLongBits(values[i]), x = bits ^ prev;
+      prev = bits;
+      if(x == 0) {
+        raw.put((byte) 0x80);
+        continue;
+      }
+      final int lead = Long.numberOfLeadingZeros(x) >>> 3, trail = Long.numberOfTrailingZeros(x) >>> 3;
+      raw.put((byte) ((lead << 4) | trail));
+      for(int j = 7 - lead; j >= trail; j--) {
+        raw.put((byte) (x >>> (j << 3)));
+      }
+    }
+  }
+
+  /**
+   * Find the smallest decimal scale at which all values are reproduced exactly.
+   *
+   * @param values Values
+   * @param n Number of values
+   * @return Scale, or -1
+   */
+  private static int decimalScale(double[] values, int n) {
+    scales: for(int s = 0; s < POW10.length; s++) {
+      final double mul = POW10[s];
+      for(int i = 0; i < n; i++) {
+        final double v = values[i], scaled = v * mul;
+        // Also rejects NaN, infinity, and large values.
+        if(!(Math.abs(scaled) < 0x1p52)) {
+          return -1;
+        }
+        if(Double.doubleToRawLongBits(Math.round(scaled) / mul) != Double.doubleToRawLongBits(v)) {
+          continue scales;
+        }
+      }
+      return s;
+    }
+    return -1;
+  }
+
+  /**
+   * Frame-of-reference bit-pack values.
+   *
+   * @param values Values
+   * @param n Number of values
+   */
+  private void pack(long[] values, int n) {
+    long min = n > 0 ? values[0] : 0, max = min;
+    for(int i = 1; i < n; i++) {
+      min = values[i] < min ? values[i] : min;
+      max = values[i] > max ? values[i] : max;
+    }
+    final int width = 64 - Long.numberOfLeadingZeros(max - min);
+    ensure(11 + (int) (((long) n * width + 7) >>> 3));
+    ByteArrayUtil.writeSignedVarintLong(raw, min);
+    raw.put((byte) width);
+    if(width == 0) {
+      return;
+    }
+    int cur = 0, bits = 0;
+    for(int i = 0; i < n; i++) {
+      long v = values[i] - min;
+      for(int w = width; w > 0;) {
+        final int take = Math.min(w, 8 - bits);
+        cur |= ((int) v & ((1 << take) - 1)) << bits;
+        v >>>= take;
+        w -= take;
+        bits += take;
+        if(bits == 8) {
+          raw.put((byte) cur);
+          cur = bits = 0;
+        }
+      }
+    }
+    if(bits > 0) {
+      raw.put((byte) cur);
+    }
+  }
+
+  /**
+   * Ensure the block buffer has enough space.
+   *
+   * @param size Required space
+   * @return Buffer, eventually resized
+   */
+  private ByteBuffer ensure(int size) {
+    if(raw.remaining() < size) {
+      ByteBuffer newbuf = ByteBuffer.allocate(Math.max(raw.capacity() << 1, raw.position() + size));
+      raw.flip();
+      raw = newbuf.put(raw);
+    }
+    return raw;
+  }
+
+  /**
+   * Write the remaining buffer contents.
+   *
+   * @param buf Buffer, flipped
+   * @param out Output channel
+   * @throws IOException on IO errors
+   */
+  private static void writeFully(ByteBuffer buf, FileChannel out) throws IOException {
+    while(buf.hasRemaining()) {
+      out.write(buf);
+    }
+  }
+}
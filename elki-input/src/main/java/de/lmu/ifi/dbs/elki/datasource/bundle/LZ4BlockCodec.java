@@ -0,0 +1,240 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Pure Java byte compression in the LZ4 block format.
+ *
+ * Blocks consist of sequences of a token byte (literal length in the upper,
+ * match length minus 4 in the lower four bits, with lengths of 15 and more
+ * continued in further bytes of 255), the literals, and a two byte
+ * little-endian match offset. The last sequence only contains literals.
+ *
+ * The compressor uses a single hash table of four-byte prefixes, i.e. it
+ * favors speed over compression ratio. The uncompressed length is not part of
+ * the block, but must be stored by the caller.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class LZ4BlockCodec {
+  /**
+   * Minimum match length.
+   */
+  private static final int MIN_MATCH = 4;
+
+  /**
+   * The last literals of a block are never part of a match.
+   */
+  private static final int LAST_LITERALS = 5;
+
+  /**
+   * Matches must not start within the last bytes of a block.
+   */
+  private static final int MF_LIMIT = 12;
+
+  /**
+   * Maximum match offset.
+   */
+  private static final int MAX_OFFSET = 0xFFFF;
+
+  /**
+   * Hash table size, in bits.
+   */
+  private static final int HASH_BITS = 14;
+
+  /**
+   * Fake constructor: static class.
+   */
+  private LZ4BlockCodec() {
+    // Do not instantiate
+  }
+
+  /**
+   * Maximum size of the compressed data.
+   *
+   * @param len Input length
+   * @return Maximum compressed length
+   */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Compress a byte array.
+   *
+   * @param src Source data
+   * @param srclen Source length
+   * @param dst Destination, of at least {@link #maxCompressedLength} bytes
+   * @return Compressed length
+   */
+  public static int compress(byte[] src, int srclen, byte[] dst) {
+    int anchor = 0, op = 0;
+    if(srclen > MF_LIMIT) {
+      final int[] table = new int[1 << HASH_BITS];
+      final int mflimit = srclen - MF_LIMIT, matchlimit = srclen - LAST_LITERALS;
+      int ip = 0;
+      while(ip < mflimit) {
+        final int seq = readInt(src, ip);
+        final int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+        int ref = table[h] - 1;
+        table[h] = ip + 1;
+        if(ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+          ++ip;
+          continue;
+        }
+        // Extend the match backwards and forwards.
+        while(ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+          --ip;
+          --ref;
+        }
+        int len = MIN_MATCH;
+        while(ip + len < matchlimit && src[ip + len] == src[ref + len]) {
+          ++len;
+        }
+        op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, len);
+        ip += len;
+        anchor = ip;
+      }
+    }
+    return writeSequence(src, anchor, srclen - anchor, dst, op, 0, 0);
+  }
+
+  /**
+   * Decompress a byte array.
+   *
+   * @param src Compressed data
+   * @param srcoff Offset of the compressed data
+   * @param srclen Compressed length
+   * @param dst Destination array
+   * @param dstlen Uncompressed length
+   */
+  public static void decompress(byte[] src, int srcoff, int srclen, byte[] dst, int dstlen) {
+    final int end = srcoff + srclen;
+    int ip = srcoff, op = 0;
+    try {
+      while(true) {
+        final int token = src[ip++] & 0xFF;
+        int litlen = token >>> 4;
+        if(litlen == 15) {
+          int b;
+          do {
+            litlen += (b = src[ip++] & 0xFF);
+          }
+          while(b == 255);
+        }
+        System.arraycopy(src, ip, dst, op, litlen);
+        ip += litlen;
+        op += litlen;
+        if(ip >= end) {
+          break;
+        }
+        final int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+        ip += 2;
+        int len = token & 0xF;
+        if(len == 15) {
+          int b;
+          do {
+            len += (b = src[ip++] & 0xFF);
+          }
+          while(b == 255);
+        }
+        len += MIN_MATCH;
+        int ref = op - offset;
+        if(offset == 0 || ref < 0) {
+          throw new AbortException("Corrupt compressed block: invalid match offset.");
+        }
+        // Byte-wise copy, because matches may overlap their output.
+        for(final int mend = op + len; op < mend;) {
+          dst[op++] = dst[ref++];
+        }
+      }
+    }
+    catch(IndexOutOfBoundsException e) {
+      throw new AbortException("Corrupt compressed block.", e);
+    }
+    if(ip != end || op != dstlen) {
+      throw new AbortException("Corrupt compressed block: length mismatch.");
+    }
+  }
+
+  /**
+   * Write a sequence.
+   *
+   * @param src Source data
+   * @param litoff Offset of the literals
+   * @param litlen Number of literals
+   * @param dst Output buffer
+   * @param op Output position
+   * @param offset Match offset
+   * @param len Match length, 0 for the final sequence
+   * @return New output position
+   */
+  private static int writeSequence(byte[] src, int litoff, int litlen, byte[] dst, int op, int offset, int len) {
+    final int tokenpos = op++;
+    int token = litlen < 15 ? litlen << 4 : 0xF0;
+    if(litlen >= 15) {
+      op = writeLength(dst, op, litlen - 15);
+    }
+    System.arraycopy(src, litoff, dst, op, litlen);
+    op += litlen;
+    if(len > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      final int mlen = len - MIN_MATCH;
+      token |= mlen < 15 ? mlen : 0xF;
+      if(mlen >= 15) {
+        op = writeLength(dst, op, mlen - 15);
+      }
+    }
+    dst[tokenpos] = (byte) token;
+    return op;
+  }
+
+  /**
+   * Write an extended length.
+   *
+   * @param dst Output buffer
+   * @param op Output position
+   * @param len Remaining length
+   * @return New output position
+   */
+  private static int writeLength(byte[] dst, int op, int len) {
+    for(; len >= 255; len -= 255) {
+      dst[op++] = (byte) 255;
+    }
+    dst[op++] = (byte) len;
+    return op;
+  }
+
+  /**
+   * Read four bytes, little endian.
+   *
+   * @param b Buffer
+   * @param p Position
+   * @return Integer
+   */
+  private static int readInt(byte[] b, int p) {
+    return (b[p] & 0xFF) | ((b[p + 1] & 0xFF) << 8) | ((b[p + 2] & 0xFF) << 16) | (b[p + 3] << 24);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.ByteBufferDoubleVector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Column of dense vectors stored with a fixed stride in a memory-mapped bundle
+ * file.
+ *
+ * A bundle file with a single column of {@link DoubleVector}s of constant
+ * dimensionality (and no DBIDs) has a fixed record size: the serializers of
+ * {@link DoubleVector} store the dimensionality followed by the raw values.
+ * Such files can be memory-mapped, and the vectors accessed as
+ * {@link ByteBufferDoubleVector} flyweights without deserialization. Files
+ * larger than 2 GB are mapped in multiple segments.
+ *
+ * Because the file is mapped read-only, multiple processes loading the same
+ * file share the operating system page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has ByteBufferDoubleVector
+ * @apiviz.uses BundleReader
+ */
+public class MappedVectorColumn extends AbstractList<ByteBufferDoubleVector> implements RandomAccess {
+  /**
+   * Mapped segments.
+   */
+  private final ByteBuffer[] segments;
+
+  /**
+   * Number of records per segment.
+   */
+  private final int perSegment;
+
+  /**
+   * Record size and size of the dimensionality prefix.
+   */
+  private final int stride, prefix;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of records.
+   */
+  private final int size;
+
+  /**
+   * Vector type.
+   */
+  private final VectorFieldTypeInformation<ByteBufferDoubleVector> type;
+
+  /**
+   * Constructor.
+   *
+   * @param segments Mapped segments
+   * @param perSegment Records per segment
+   * @param stride Record size
+   * @param prefix Size of the dimensionality prefix
+   * @param size Number of records
+   * @param type Vector type
+   */
+  private MappedVectorColumn(ByteBuffer[] segments, int perSegment, int stride, int prefix, int size, VectorFieldTypeInformation<ByteBufferDoubleVector> type) {
+    super();
+    this.segments = segments;
+    this.perSegment = perSegment;
+    this.stride = stride;
+    this.prefix = prefix;
+    this.size = size;
+    this.type = type;
+    this.dim = type.getDimensionality();
+  }
+
+  /**
+   * Try to map a bundle file.
+   *
+   * @param channel File channel
+   * @return Mapped column, or {@code null} if the file does not have a
+   *         fixed-stride layout.
+   * @throws IOException on IO errors
+   */
+  public static MappedVectorColumn map(FileChannel channel) throws IOException {
+    final long filesize = channel.size();
+    MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, Math.min(filesize, Integer.MAX_VALUE));
+    BundleReader reader = new BundleReader(header);
+    final BundleMeta meta;
+    try {
+      meta = reader.getMeta();
+    }
+    catch(BufferUnderflowException e) {
+      throw new AbortException("Truncated bundle header.", e);
+    }
+    if(reader.hasDBIDs() || meta.size() != 1 || !(meta.get(0) instanceof VectorFieldTypeInformation)) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) meta.get(0);
+    if(vtype.getRestrictionClass() != DoubleVector.class || vtype.mindim() != vtype.maxdim()) {
+      return null;
+    }
+    final int dim = vtype.getDimensionality();
+    final int prefix = prefixSize(vtype.getSerializer(), dim);
+    if(prefix < 0) {
+      return null;
+    }
+    final long start = header.position();
+    final int stride = prefix + dim * ByteArrayUtil.SIZE_DOUBLE;
+    if((filesize - start) % stride != 0 || (filesize - start) / stride > Integer.MAX_VALUE) {
+      return null;
+    }
+    final int size = (int) ((filesize - start) / stride);
+    // Map whole records only, in segments of at most 2 GB each.
+    final int perSegment = Math.max(1, Integer.MAX_VALUE / stride);
+    final int numseg = Math.max(1, (size + perSegment - 1) / perSegment);
+    ByteBuffer[] segments = new ByteBuffer[numseg];
+    for(int i = 0; i < numseg; i++) {
+      final long off = start + i * (long) perSegment * stride;
+      final long len = Math.min(perSegment, size - i * (long) perSegment) * stride;
+      segments[i] = channel.map(MapMode.READ_ONLY, off, len);
+    }
+    String[] labels = null;
+    if(vtype.getLabel(0) != null) {
+      labels = new String[dim];
+      for(int i = 0; i < dim; i++) {
+        labels[i] = vtype.getLabel(i);
+      }
+    }
+    VectorFieldTypeInformation<ByteBufferDoubleVector> type = labels != null ? //
+        new VectorFieldTypeInformation<>(ByteBufferDoubleVector.FACTORY, dim, labels, ByteBufferDoubleVector.VARIABLE_SERIALIZER) : //
+        new VectorFieldTypeInformation<>(ByteBufferDoubleVector.FACTORY, dim, ByteBufferDoubleVector.VARIABLE_SERIALIZER);
+    return new MappedVectorColumn(segments, perSegment, stride, prefix, size, type);
+  }
+
+  /**
+   * Get the size of the dimensionality prefix of a record.
+   *
+   * @param ser Serializer
+   * @param dim Dimensionality
+   * @return Prefix size, or {@code -1} if the serializer is not supported.
+   */
+  private static int prefixSize(ByteBufferSerializer<?> ser, int dim) {
+    if(ser instanceof DoubleVector.VariableSerializer) {
+      return ByteArrayUtil.getUnsignedVarintSize(dim);
+    }
+    if(ser instanceof DoubleVector.ShortSerializer) {
+      return ByteArrayUtil.SIZE_SHORT;
+    }
+    if(ser instanceof DoubleVector.SmallSerializer) {
+      return ByteArrayUtil.SIZE_BYTE;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the data type of the vectors.
+   *
+   * @return Vector type
+   */
+  public SimpleTypeInformation<ByteBufferDoubleVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public ByteBufferDoubleVector get(int index) {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+    }
+    final int seg = index / perSegment;
+    return new ByteBufferDoubleVector(segments[seg], (index - seg * perSegment) * stride + prefix, dim);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * View the column as data store, without copying.
+   *
+   * @param ids DBIDs, in the same order as the file
+   * @return Data store
+   */
+  public DataStore<ByteBufferDoubleVector> asDataStore(DBIDRange ids) {
+    assert (ids.size() == size) : "DBID range does not match the column size.";
+    return id -> get(ids.getOffset(id));
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.columnar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Reader for a simple columnar file format.
+ *
+ * The rows are split into chunks of a fixed number of rows, and each chunk
+ * stores every column contiguously. Thus, individual columns can be read
+ * without touching the others, and decoded in batches. All values are stored
+ * in big-endian byte order.
+ *
+ * File layout:
+ * <ol>
+ * <li>Header: {@code int} magic, {@code int} version</li>
+ * <li>Column chunks: {@code rows * width} bytes each, where the width depends on
+ * the {@link ColumnType}. Label columns store {@code int} codes into the
+ * dictionary of the column, {@code -1} for missing labels.</li>
+ * <li>Footer: {@code int} number of rows, {@code int} rows per chunk,
+ * {@code int} number of columns; for each column its name (string) and type
+ * ({@code byte}); for each label column the dictionary ({@code int} size
+ * followed by the strings); for each chunk and column the {@code long} file
+ * offset of the column chunk.</li>
+ * <li>Trailer: {@code long} offset of the footer, {@code int} magic</li>
+ * </ol>
+ * Strings are encoded as by {@link ByteArrayUtil#writeString}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ColumnType
+ */
+public class ColumnarFile implements AutoCloseable {
+  /**
+   * Magic number.
+   */
+  public static final int MAGIC = 0xa8123b13;
+
+  /**
+   * Format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of the trailer.
+   */
+  static final int TRAILER_SIZE = ByteArrayUtil.SIZE_LONG + ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Column types.
+   *
+   * @author Erich Schubert
+   */
+  public enum ColumnType {
+    /** Double precision values */
+    DOUBLE(ByteArrayUtil.SIZE_DOUBLE),
+    /** Single precision values */
+    FLOAT(ByteArrayUtil.SIZE_FLOAT),
+    /** Long integer values */
+    LONG(ByteArrayUtil.SIZE_LONG),
+    /** Dictionary encoded labels */
+    LABEL(ByteArrayUtil.SIZE_INT);
+
+    /**
+     * Width of an entry, in bytes.
+     */
+    final int width;
+
+    /**
+     * Constructor.
+     *
+     * @param width Width in bytes
+     */
+    ColumnType(int width) {
+      this.width = width;
+    }
+
+    /**
+     * Test if the column is numerical.
+     *
+     * @return {@code true} for numerical columns
+     */
+    public boolean isNumeric() {
+      return this != LABEL;
+    }
+  }
+
+  /**
+   * Input channel.
+   */
+  private FileChannel channel;
+
+  /**
+   * Number of rows, and rows per chunk.
+   */
+  private int numrows, chunkrows;
+
+  /**
+   * Column names.
+   */
+  private String[] names;
+
+  /**
+   * Column types.
+   */
+  private ColumnType[] types;
+
+  /**
+   * Label dictionaries.
+   */
+  private String[][] dictionaries;
+
+  /**
+   * Chunk offsets, by chunk and column.
+   */
+  private long[][] offsets;
+
+  /**
+   * Read buffer, reused.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Constructor. Reads the file schema.
+   *
+   * @param channel Input channel
+   * @throws IOException on IO errors
+   */
+  public ColumnarFile(FileChannel channel) throws IOException {
+    super();
+    this.channel = channel;
+    final long size = channel.size();
+    if(size < 2 * ByteArrayUtil.SIZE_INT + TRAILER_SIZE) {
+      throw new AbortException("File too short for the columnar format.");
+    }
+    ByteBuffer header = read(0, 2 * ByteArrayUtil.SIZE_INT);
+    if(header.getInt() != MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int version = header.getInt();
+    if(version != VERSION) {
+      throw new AbortException("Unsupported columnar format version: " + version);
+    }
+    ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+    final long footerpos = trailer.getLong();
+    if(trailer.getInt() != MAGIC || footerpos < 0 || footerpos > size - TRAILER_SIZE) {
+      throw new AbortException("Corrupt columnar file trailer.");
+    }
+    readFooter(read(footerpos, (int) (size - TRAILER_SIZE - footerpos)));
+  }
+
+  /**
+   * Parse the footer.
+   *
+   * @param footer Footer data
+   * @throws IOException on decoding errors
+   */
+  private void readFooter(ByteBuffer footer) throws IOException {
+    numrows = footer.getInt();
+    chunkrows = footer.getInt();
+    if(numrows < 0 || chunkrows < 0 || (long) chunkrows * ByteArrayUtil.SIZE_LONG > Integer.MAX_VALUE) {
+      throw new AbortException("Invalid chunk size in columnar file.");
+    }
+    final int numcols = footer.getInt();
+    names = new String[numcols];
+    types = new ColumnType[numcols];
+    for(int i = 0; i < numcols; i++) {
+      names[i] = ByteArrayUtil.readString(footer);
+      final int t = footer.get();
+      if(t < 0 || t >= ColumnType.values().length) {
+        throw new AbortException("Unknown column type: " + t);
+      }
+      types[i] = ColumnType.values()[t];
+    }
+    dictionaries = new String[numcols][];
+    for(int i = 0; i < numcols; i++) {
+      if(types[i] == ColumnType.LABEL) {
+        String[] dict = dictionaries[i] = new String[footer.getInt()];
+        for(int j = 0; j < dict.length; j++) {
+          dict[j] = ByteArrayUtil.readString(footer);
+        }
+      }
+    }
+    offsets = new long[getNumChunks()][numcols];
+    for(long[] row : offsets) {
+      for(int i = 0; i < numcols; i++) {
+        row[i] = footer.getLong();
+      }
+    }
+  }
+
+  /**
+   * Read a range of the file.
+   *
+   * @param pos Position
+   * @param len Length
+   * @return Buffer containing the data (shared, valid until the next call)
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer read(long pos, int len) throws IOException {
+    if(buffer == null || buffer.capacity() < len) {
+      buffer = ByteBuffer.allocate(len);
+    }
+    buffer.clear().limit(len);
+    while(buffer.hasRemaining()) {
+      if(channel.read(buffer, pos + buffer.position()) < 0) {
+        throw new AbortException("Unexpected end of columnar file.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Get the number of rows.
+   *
+   * @return Number of rows
+   */
+  public int getNumRows() {
+    return numrows;
+  }
+
+  /**
+   * Get the number of columns.
+   *
+   * @return Number of columns
+   */
+  public int getNumColumns() {
+    return names.length;
+  }
+
+  /**
+   * Get the number of chunks.
+   *
+   * @return Number of chunks
+   */
+  public int getNumChunks() {
+    return chunkrows > 0 ? (numrows + chunkrows - 1) / chunkrows : 0;
+  }
+
+  /**
+   * Get the number of rows in a chunk.
+   *
+   * @param chunk Chunk number
+   * @return Number of rows
+   */
+  public int getChunkSize(int chunk) {
+    return Math.min(chunkrows, numrows - chunk * chunkrows);
+  }
+
+  /**
+   * Get the maximum number of rows per chunk.
+   *
+   * @return Rows per chunk
+   */
+  public int getMaxChunkSize() {
+    return chunkrows;
+  }
+
+  /**
+   * Get the name of a column.
+   *
+   * @param col Column
+   * @return Name
+   */
+  public String getName(int col) {
+    return names[col];
+  }
+
+  /**
+   * Get the type of a column.
+   *
+   * @param col Column
+   * @return Type
+   */
+  public ColumnType getType(int col) {
+    return types[col];
+  }
+
+  /**
+   * Decode a chunk of a numerical column.
+   *
+   * @param col Column
+   * @param chunk Chunk
+   * @param out Output array, must have at least chunk size entries
+   * @throws IOException on IO errors
+   */
+  public void readNumeric(int col, int chunk, double[] out) throws IOException {
+    final ColumnType type = types[col];
+    final int n = getChunkSize(chunk);
+    ByteBuffer buf = read(offsets[chunk][col], n * type.width);
+    switch(type){
+    case DOUBLE:
+      buf.asDoubleBuffer().get(out, 0, n);
+      return;
+    case FLOAT:
+      for(int i = 0, p = 0; i < n; i++, p += ByteArrayUtil.SIZE_FLOAT) {
+        out[i] = buf.getFloat(p);
+      }
+      return;
+    case LONG:
+      for(int i = 0, p = 0; i < n; i++, p += ByteArrayUtil.SIZE_LONG) {
+        out[i] = buf.getLong(p);
+      }
+      return;
+    default:
+      throw new AbortException("Column " + names[col] + " is not numerical.");
+    }
+  }
+
+  /**
+   * Decode a chunk of a label column.
+   *
+   * @param col Column
+   * @param chunk Chunk
+   * @param out Output array, must have at least chunk size entries
+   * @throws IOException on IO errors
+   */
+  public void readLabels(int col, int chunk, String[] out) throws IOException {
+    if(types[col] != ColumnType.LABEL) {
+      throw new AbortException("Column " + names[col] + " is not a label column.");
+    }
+    final int n = getChunkSize(chunk);
+    ByteBuffer buf = read(offsets[chunk][col], n * ColumnType.LABEL.width);
+    final String[] dict = dictionaries[col];
+    for(int i = 0, p = 0; i < n; i++, p += ByteArrayUtil.SIZE_INT) {
+      final int code = buf.getInt(p);
+      out[i] = code >= 0 ? dict[code] : null;
+    }
+  }
+
+  @Override
+  public void close() {
+    buffer = null;
+    channel = null;
+  }
+}
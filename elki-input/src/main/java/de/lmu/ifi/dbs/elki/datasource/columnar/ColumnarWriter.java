@@ -0,0 +1,237 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.columnar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.columnar.ColumnarFile.ColumnType;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Write a bundle in the columnar format read by {@link ColumnarFile}.
+ *
+ * Number vector fields are stored as one {@link ColumnType#DOUBLE} column per
+ * dimension, label lists as one {@link ColumnType#LABEL} column per label
+ * position, and other objects (e.g. class labels) as a single label column
+ * using their string representation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses MultipleObjectsBundle - - «reads»
+ * @apiviz.uses ColumnarFile - - «writes»
+ */
+public class ColumnarWriter {
+  /**
+   * Default number of rows per chunk.
+   */
+  public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+
+  /**
+   * Rows per chunk.
+   */
+  private int chunkrows;
+
+  /**
+   * Constructor.
+   *
+   * @param chunkrows Rows per chunk
+   */
+  public ColumnarWriter(int chunkrows) {
+    super();
+    if(chunkrows <= 0 || (long) chunkrows * ByteArrayUtil.SIZE_DOUBLE > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkrows);
+    }
+    this.chunkrows = chunkrows;
+  }
+
+  /**
+   * Constructor with default chunk size.
+   */
+  public ColumnarWriter() {
+    this(DEFAULT_CHUNK_ROWS);
+  }
+
+  /**
+   * Write a bundle to a file.
+   *
+   * @param bundle Bundle to write
+   * @param out Output channel
+   * @throws IOException on IO errors
+   */
+  public void write(MultipleObjectsBundle bundle, FileChannel out) throws IOException {
+    final int numrows = bundle.dataLength();
+    // Derive the schema: source column, and position within the object.
+    List<String> names = new ArrayList<>();
+    List<ColumnType> types = new ArrayList<>();
+    List<int[]> sources = new ArrayList<>();
+    for(int c = 0; c < bundle.metaLength(); c++) {
+      SimpleTypeInformation<?> meta = bundle.meta(c);
+      if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta)) {
+        VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+        for(int d = 0; d < vmeta.getDimensionality(); d++) {
+          String label = vmeta.getLabel(d);
+          names.add(label != null ? label : ("c" + c + "d" + d));
+          types.add(ColumnType.DOUBLE);
+          sources.add(new int[] { c, d });
+        }
+      }
+      else if(TypeUtil.LABELLIST.isAssignableFromType(meta)) {
+        int maxlen = 0;
+        for(int r = 0; r < numrows; r++) {
+          LabelList ll = (LabelList) bundle.data(r, c);
+          maxlen = ll != null ? Math.max(maxlen, ll.size()) : maxlen;
+        }
+        for(int l = 0; l < maxlen; l++) {
+          names.add("c" + c + "l" + l);
+          types.add(ColumnType.LABEL);
+          sources.add(new int[] { c, l });
+        }
+      }
+      else if(TypeUtil.GUESSED_LABEL.isAssignableFromType(meta) || TypeUtil.CLASSLABEL.isAssignableFromType(meta)) {
+        names.add("c" + c);
+        types.add(ColumnType.LABEL);
+        sources.add(new int[] { c, -1 });
+      }
+      else {
+        throw new AbortException("Unsupported data type for the columnar format: " + meta);
+      }
+    }
+    final int numcols = names.size();
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object2IntOpenHashMap<String>[] dicts = new Object2IntOpenHashMap[numcols];
+    List<List<String>> dictlists = new ArrayList<>(numcols);
+    for(int i = 0; i < numcols; i++) {
+      dictlists.add(new ArrayList<String>());
+      if(types.get(i) == ColumnType.LABEL) {
+        dicts[i] = new Object2IntOpenHashMap<>();
+        dicts[i].defaultReturnValue(-1);
+      }
+    }
+
+    ByteBuffer buf = ByteBuffer.allocateDirect(chunkrows * ByteArrayUtil.SIZE_DOUBLE);
+    buf.putInt(ColumnarFile.MAGIC).putInt(ColumnarFile.VERSION);
+    writeFully(buf, out);
+    final int numchunks = (numrows + chunkrows - 1) / chunkrows;
+    long[][] offsets = new long[numchunks][numcols];
+    for(int chunk = 0, start = 0; chunk < numchunks; chunk++, start += chunkrows) {
+      final int end = Math.min(numrows, start + chunkrows);
+      for(int i = 0; i < numcols; i++) {
+        offsets[chunk][i] = out.position();
+        final int c = sources.get(i)[0], d = sources.get(i)[1];
+        if(types.get(i) == ColumnType.DOUBLE) {
+          for(int r = start; r < end; r++) {
+            buf.putDouble(((NumberVector) bundle.data(r, c)).doubleValue(d));
+          }
+        }
+        else {
+          for(int r = start; r < end; r++) {
+            Object o = bundle.data(r, c);
+            String s = d < 0 ? (o != null ? o.toString() : null) : //
+                (o != null && d < ((LabelList) o).size() ? ((LabelList) o).get(d) : null);
+            buf.putInt(s != null ? encode(dicts[i], dictlists.get(i), s) : -1);
+          }
+        }
+        writeFully(buf, out);
+      }
+    }
+
+    // Write the footer.
+    final long footerpos = out.position();
+    int size = 3 * ByteArrayUtil.SIZE_INT + numchunks * numcols * ByteArrayUtil.SIZE_LONG + ColumnarFile.TRAILER_SIZE;
+    for(int i = 0; i < numcols; i++) {
+      size += ByteArrayUtil.getStringSize(names.get(i)) + ByteArrayUtil.SIZE_BYTE;
+      if(types.get(i) == ColumnType.LABEL) {
+        size += ByteArrayUtil.SIZE_INT;
+        for(String s : dictlists.get(i)) {
+          size += ByteArrayUtil.getStringSize(s);
+        }
+      }
+    }
+    ByteBuffer footer = ByteBuffer.allocate(size);
+    footer.putInt(numrows).putInt(chunkrows).putInt(numcols);
+    for(int i = 0; i < numcols; i++) {
+      ByteArrayUtil.writeString(footer, names.get(i));
+      footer.put((byte) types.get(i).ordinal());
+    }
+    for(int i = 0; i < numcols; i++) {
+      if(types.get(i) == ColumnType.LABEL) {
+        footer.putInt(dictlists.get(i).size());
+        for(String s : dictlists.get(i)) {
+          ByteArrayUtil.writeString(footer, s);
+        }
+      }
+    }
+    for(long[] row : offsets) {
+      for(long off : row) {
+        footer.putLong(off);
+      }
+    }
+    footer.putLong(footerpos).putInt(ColumnarFile.MAGIC);
+    writeFully(footer, out);
+  }
+
+  /**
+   * Get the dictionary code of a label, adding it if necessary.
+   *
+   * @param dict Dictionary map
+   * @param list Dictionary list
+   * @param s Label
+   * @return Code
+   */
+  private static int encode(Object2IntOpenHashMap<String> dict, List<String> list, String s) {
+    int code = dict.getInt(s);
+    if(code < 0) {
+      code = list.size();
+      dict.put(s, code);
+      list.add(s);
+    }
+    return code;
+  }
+
+  /**
+   * Write the buffer contents, and clear the buffer.
+   *
+   * @param buf Buffer
+   * @param out Output channel
+   * @throws IOException on IO errors
+   */
+  private static void writeFully(ByteBuffer buf, FileChannel out) throws IOException {
+    buf.flip();
+    while(buf.hasRemaining()) {
+      out.write(buf);
+    }
+    buf.clear();
+  }
+}
@@ -23,7 +23,11 @@ package de.lmu.ifi.dbs.elki.datasource.filter;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -31,13 +35,37 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 /**
  * Abstract base class for simple conversion filters such as normalizations and projections.
  * 
+ * When used as a stream filter, the data is collected once for the statistics
+ * pass (unless the input already is a bundle), and then converted lazily while
+ * streaming, so that no converted copy of the whole data set is built.
+ * 
  * @author Erich Schubert
  * @since 0.4.0
  * 
  * @param <I> Input object type
  * @param <O> Input object type
  */
-public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
+public abstract class AbstractConversionFilter<I, O> implements StreamFilter {
+  /**
+   * Data source, when streaming.
+   */
+  private BundleStreamSource source;
+
+  /**
+   * Converted meta data, when streaming.
+   */
+  private BundleMeta meta;
+
+  /**
+   * Column to convert when streaming, -1 for none.
+   */
+  private int column = -1;
+
+  /**
+   * Type of the converted column, when streaming.
+   */
+  private SimpleTypeInformation<?> columnType;
+
   /**
    * A standard implementation of the filter process. First of all, all suitable
    * representations are found. Then (if {@link #prepareStart} returns true),
@@ -71,17 +99,9 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
       final SimpleTypeInformation<I> castType = (SimpleTypeInformation<I>) type;
 
       // When necessary, perform an initialization scan
-      if(prepareStart(castType)) {
-        FiniteProgress pprog = logger.isVerbose() ? new FiniteProgress("Preparing normalization", objects.dataLength(), logger) : null;
-        for(Object o : column) {
-          @SuppressWarnings("unchecked")
-          final I obj = (I) o;
-          prepareProcessInstance(obj);
-          logger.incrementProcessed(pprog);
-        }
-        logger.ensureCompleted(pprog);
-        prepareComplete();
-      }
+      @SuppressWarnings("unchecked")
+      final List<I> inColumn = (List<I>) column;
+      prepare(castType, inColumn);
 
       @SuppressWarnings("unchecked")
       final List<O> castColumn = (List<O>) column;
@@ -101,6 +121,108 @@ public abstract class AbstractConversionFilter<I, O> implements ObjectFilter {
     return bundle;
   }
 
+  @Override
+  public BundleStreamSource init(BundleStreamSource source) {
+    // The statistics pass needs all data; free if the source is a bundle.
+    MultipleObjectsBundle objects = source.asMultipleObjectsBundle();
+    // Bundles collected here are private, and can be released while streaming.
+    this.source = source instanceof StreamFromBundle ? source : new StreamFromBundle(objects, true);
+    this.meta = null;
+    this.column = -1;
+    if(objects.dataLength() == 0) {
+      return this;
+    }
+    int match = -1;
+    for(int r = 0; r < objects.metaLength(); r++) {
+      if(getInputTypeRestriction().isAssignableFromType(objects.meta(r))) {
+        if(match >= 0) {
+          // Multiple columns share the filter state: convert in place instead.
+          this.source = filter(objects).asStream();
+          return this;
+        }
+        match = r;
+      }
+    }
+    if(match >= 0) {
+      @SuppressWarnings("unchecked")
+      final SimpleTypeInformation<I> castType = (SimpleTypeInformation<I>) objects.meta(match);
+      @SuppressWarnings("unchecked")
+      final List<I> castColumn = (List<I>) objects.getColumn(match);
+      prepare(castType, castColumn);
+      columnType = convertedType(castType);
+      column = match;
+    }
+    return this;
+  }
+
+  @Override
+  public BundleMeta getMeta() {
+    return meta;
+  }
+
+  @Override
+  public Object data(int rnum) {
+    if(rnum != column) {
+      return source.data(rnum);
+    }
+    @SuppressWarnings("unchecked")
+    final I obj = (I) source.data(rnum);
+    return filterSingleObject(obj);
+  }
+
+  @Override
+  public Event nextEvent() {
+    Event ev = source.nextEvent();
+    if(ev == Event.META_CHANGED) {
+      BundleMeta origmeta = source.getMeta();
+      meta = new BundleMeta(origmeta.size());
+      for(int i = 0; i < origmeta.size(); i++) {
+        meta.add(i == column ? columnType : origmeta.get(i));
+      }
+    }
+    return ev;
+  }
+
+  @Override
+  public boolean hasDBIDs() {
+    return source.hasDBIDs();
+  }
+
+  @Override
+  public boolean assignDBID(DBIDVar var) {
+    return source.assignDBID(var);
+  }
+
+  @Override
+  public MultipleObjectsBundle asMultipleObjectsBundle() {
+    return MultipleObjectsBundle.fromStream(this);
+  }
+
+  /**
+   * Statistics pass over a column, before it is converted.
+   * 
+   * The default implementation scans the column once, using
+   * {@link #prepareStart}, {@link #prepareProcessInstance} and
+   * {@link #prepareComplete}. Filters that need random access to the column
+   * (e.g. to compute medians) can override this method instead.
+   * 
+   * @param in Input type information
+   * @param column Column data, must not be modified
+   */
+  protected void prepare(SimpleTypeInformation<I> in, List<I> column) {
+    if(!prepareStart(in)) {
+      return;
+    }
+    final Logging logger = getLogger();
+    FiniteProgress pprog = logger.isVerbose() ? new FiniteProgress("Preparing normalization", column.size(), logger) : null;
+    for(I obj : column) {
+      prepareProcessInstance(obj);
+      logger.incrementProcessed(pprog);
+    }
+    logger.ensureCompleted(pprog);
+    prepareComplete();
+  }
+
   /**
    * Class logger.
    * 
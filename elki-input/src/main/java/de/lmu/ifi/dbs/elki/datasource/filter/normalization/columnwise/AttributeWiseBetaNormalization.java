@@ -26,10 +26,7 @@ import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
-import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
-import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
-import de.lmu.ifi.dbs.elki.datasource.filter.FilterUtil;
 import de.lmu.ifi.dbs.elki.datasource.filter.normalization.NonNumericFeaturesException;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.LinearEquationSystem;
@@ -68,14 +65,14 @@ public class AttributeWiseBetaNormalization<V extends NumberVector> extends Attr
   private static final Logging LOG = Logging.getLogger(AttributeWiseBetaNormalization.class);
 
   /**
-   * Number vector factory.
+   * Expected outlier rate alpha.
    */
-  protected NumberVector.Factory<V> factory;
+  protected double alpha = 0.01;
 
   /**
-   * Expected outlier rate alpha.
+   * Beta distribution used for the projection.
    */
-  protected double alpha = 0.01;
+  private BetaDistribution beta;
 
   /**
    * Constructor.
@@ -88,56 +85,43 @@ public class AttributeWiseBetaNormalization<V extends NumberVector> extends Attr
   }
 
   @Override
-  public MultipleObjectsBundle filter(MultipleObjectsBundle objects) {
-    if(objects.dataLength() == 0) {
-      return objects;
-    }
-    for(int r = 0; r < objects.metaLength(); r++) {
-      SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) objects.meta(r);
-      final List<?> column = (List<?>) objects.getColumn(r);
-      if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type)) {
-        continue;
-      }
-      @SuppressWarnings("unchecked")
-      final List<V> castColumn = (List<V>) column;
-      // Get the replacement type information
-      @SuppressWarnings("unchecked")
-      final VectorFieldTypeInformation<V> castType = (VectorFieldTypeInformation<V>) type;
-      factory = FilterUtil.guessFactory(castType);
-
-      // Scan to find the best
-      final int dim = castType.getDimensionality();
-      dists = new ArrayList<>(dim);
-      // Scratch space for testing:
-      double[] test = new double[castColumn.size()];
-
-      // We iterate over dimensions, this kind of filter needs fast random
-      // access.
-      Adapter adapter = new Adapter();
-      for(int d = 0; d < dim; d++) {
-        adapter.dim = d;
-        Distribution dist = findBestFit(castColumn, adapter, d, test);
-        if(LOG.isVerbose()) {
-          LOG.verbose("Best fit for dimension " + d + ": " + dist.toString());
-        }
-        dists.add(dist);
+  protected void prepare(SimpleTypeInformation<V> in, List<V> column) {
+    // Scan to find the best
+    final int dim = ((VectorFieldTypeInformation<V>) in).getDimensionality();
+    dists = new ArrayList<>(dim);
+    // Scratch space for testing:
+    double[] test = new double[column.size()];
+
+    // We iterate over dimensions, this kind of filter needs fast random
+    // access.
+    Adapter adapter = new Adapter();
+    for(int d = 0; d < dim; d++) {
+      adapter.dim = d;
+      Distribution dist = findBestFit(column, adapter, d, test);
+      if(LOG.isVerbose()) {
+        LOG.verbose("Best fit for dimension " + d + ": " + dist.toString());
       }
+      dists.add(dist);
+    }
 
-      // Beta distribution for projection
-      double p = FastMath.pow(alpha, -1 / FastMath.sqrt(dim));
-      BetaDistribution beta = new BetaDistribution(p, p);
-      // Normalization scan
-      double[] buf = new double[dim];
-      for(int i = 0; i < objects.dataLength(); i++) {
-        final V obj = castColumn.get(i);
-        for(int d = 0; d < dim; d++) {
-          // TODO: when available, use logspace for better numerical precision!
-          buf[d] = beta.quantile(dists.get(d).cdf(obj.doubleValue(d)));
-        }
-        castColumn.set(i, factory.newNumberVector(buf));
-      }
+    // Beta distribution for projection
+    double p = FastMath.pow(alpha, -1 / FastMath.sqrt(dim));
+    beta = new BetaDistribution(p, p);
+  }
+
+  @Override
+  protected V filterSingleObject(V obj) {
+    double[] buf = new double[dists.size()];
+    for(int d = 0; d < buf.length; d++) {
+      // TODO: when available, use logspace for better numerical precision!
+      buf[d] = beta.quantile(dists.get(d).cdf(obj.doubleValue(d)));
     }
-    return objects;
+    return factory.newNumberVector(buf);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
   }
 
   @Override
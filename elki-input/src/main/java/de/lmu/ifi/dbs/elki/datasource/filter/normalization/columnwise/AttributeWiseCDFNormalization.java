@@ -28,8 +28,7 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
-import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
-import de.lmu.ifi.dbs.elki.datasource.filter.FilterUtil;
+import de.lmu.ifi.dbs.elki.datasource.filter.AbstractVectorConversionFilter;
 import de.lmu.ifi.dbs.elki.datasource.filter.normalization.Normalization;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.statistics.distribution.Distribution;
@@ -64,9 +63,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParamet
  * @apiviz.uses NumberVector
  * @apiviz.uses DistributionEstimator
  */
-// TODO: extract superclass AbstractAttributeWiseNormalization
 @Alias({ "de.lmu.ifi.dbs.elki.datasource.filter.normalization.AttributeWiseCDFNormalization" })
-public class AttributeWiseCDFNormalization<V extends NumberVector> implements Normalization<V> {
+public class AttributeWiseCDFNormalization<V extends NumberVector> extends AbstractVectorConversionFilter<V, V> implements Normalization<V> {
   /**
    * Class logger.
    */
@@ -82,11 +80,6 @@ public class AttributeWiseCDFNormalization<V extends NumberVector> implements No
    */
   protected List<Distribution> dists;
 
-  /**
-   * Number vector factory.
-   */
-  protected NumberVector.Factory<V> factory;
-
   /**
    * Constructor.
    *
@@ -98,54 +91,35 @@ public class AttributeWiseCDFNormalization<V extends NumberVector> implements No
   }
 
   @Override
-  public MultipleObjectsBundle filter(MultipleObjectsBundle objects) {
-    if(objects.dataLength() == 0) {
-      return objects;
-    }
-    for(int r = 0; r < objects.metaLength(); r++) {
-      SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) objects.meta(r);
-      final List<?> column = (List<?>) objects.getColumn(r);
-      if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type)) {
-        continue;
-      }
-      @SuppressWarnings("unchecked")
-      final List<V> castColumn = (List<V>) column;
-      // Get the replacement type information
-      @SuppressWarnings("unchecked")
-      final VectorFieldTypeInformation<V> castType = (VectorFieldTypeInformation<V>) type;
-      factory = FilterUtil.guessFactory(castType);
-
-      // Scan to find the best
-      final int dim = castType.getDimensionality();
-      dists = new ArrayList<>(dim);
-      // Scratch space for testing:
-      double[] test = estimators.size() > 1 ? new double[castColumn.size()] : null;
+  protected void prepare(SimpleTypeInformation<V> in, List<V> column) {
+    // Scan to find the best
+    final int dim = ((VectorFieldTypeInformation<V>) in).getDimensionality();
+    dists = new ArrayList<>(dim);
+    // Scratch space for testing:
+    double[] test = estimators.size() > 1 ? new double[column.size()] : null;
 
-      // We iterate over dimensions, this kind of filter needs fast random
-      // access.
-      Adapter adapter = new Adapter();
-      for(int d = 0; d < dim; d++) {
-        adapter.dim = d;
-        Distribution dist = findBestFit(castColumn, adapter, d, test);
-        // Special handling for constant distributions:
-        // We want them to remain 0, instead of - usually - becoming constant .5
-        if(dist instanceof UniformDistribution) {
-          dist = constantZero(castColumn, adapter) ? new UniformDistribution(0., 1.) : dist;
-        }
-        dists.add(dist);
+    // We iterate over dimensions, this kind of filter needs fast random
+    // access.
+    Adapter adapter = new Adapter();
+    for(int d = 0; d < dim; d++) {
+      adapter.dim = d;
+      Distribution dist = findBestFit(column, adapter, d, test);
+      // Special handling for constant distributions:
+      // We want them to remain 0, instead of - usually - becoming constant .5
+      if(dist instanceof UniformDistribution) {
+        dist = constantZero(column, adapter) ? new UniformDistribution(0., 1.) : dist;
       }
+      dists.add(dist);
+    }
+  }
 
-      // Normalization scan
-      double[] buf = new double[dim];
-      for(int i = 0; i < objects.dataLength(); i++) {
-        final V obj = castColumn.get(i);
-        for(int d = 0; d < dim; d++) {
-          buf[d] = dists.get(d).cdf(obj.doubleValue(d));
-        }
-        castColumn.set(i, factory.newNumberVector(buf));
-      }
+  @Override
+  protected V filterSingleObject(V obj) {
+    double[] buf = new double[dists.size()];
+    for(int d = 0; d < buf.length; d++) {
+      buf[d] = dists.get(d).cdf(obj.doubleValue(d));
     }
-    return objects;
+    return factory.newNumberVector(buf);
   }
 
   /**
@@ -216,6 +190,22 @@ public class AttributeWiseCDFNormalization<V extends NumberVector> implements No
     return true;
   }
 
+  @Override
+  protected SimpleTypeInformation<? super V> convertedType(SimpleTypeInformation<V> in) {
+    initializeOutputType(in);
+    return in;
+  }
+
+  @Override
+  protected SimpleTypeInformation<? super V> getInputTypeRestriction() {
+    return TypeUtil.NUMBER_VECTOR_FIELD;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder(1000) //
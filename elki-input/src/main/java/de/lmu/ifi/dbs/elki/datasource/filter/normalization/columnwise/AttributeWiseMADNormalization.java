@@ -26,8 +26,7 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
-import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
-import de.lmu.ifi.dbs.elki.datasource.filter.FilterUtil;
+import de.lmu.ifi.dbs.elki.datasource.filter.AbstractVectorConversionFilter;
 import de.lmu.ifi.dbs.elki.datasource.filter.normalization.NonNumericFeaturesException;
 import de.lmu.ifi.dbs.elki.datasource.filter.normalization.Normalization;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -52,19 +51,13 @@ import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
  *
  * @apiviz.uses NumberVector
  */
-// TODO: extract superclass AbstractAttributeWiseNormalization
 @Alias({ "de.lmu.ifi.dbs.elki.datasource.filter.normalization.AttributeWiseMADNormalization" })
-public class AttributeWiseMADNormalization<V extends NumberVector> implements Normalization<V> {
+public class AttributeWiseMADNormalization<V extends NumberVector> extends AbstractVectorConversionFilter<V, V> implements Normalization<V> {
   /**
    * Class logger.
    */
   private static final Logging LOG = Logging.getLogger(AttributeWiseMADNormalization.class);
 
-  /**
-   * Number vector factory.
-   */
-  protected NumberVector.Factory<V> factory;
-
   /**
    * Stores the median in each dimension.
    */
@@ -83,79 +76,56 @@ public class AttributeWiseMADNormalization<V extends NumberVector> implements No
   }
 
   @Override
-  public MultipleObjectsBundle filter(MultipleObjectsBundle objects) {
-    if(objects.dataLength() == 0) {
-      return objects;
-    }
-    for(int r = 0; r < objects.metaLength(); r++) {
-      SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) objects.meta(r);
-      final List<?> column = (List<?>) objects.getColumn(r);
-      if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type)) {
-        continue;
+  protected void prepare(SimpleTypeInformation<V> in, List<V> column) {
+    final int dim = ((VectorFieldTypeInformation<V>) in).getDimensionality();
+    median = new double[dim];
+    imadsigma = new double[dim];
+    // Scratch space for testing:
+    double[] test = new double[column.size()];
+
+    FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Analyzing data", dim, LOG) : null;
+    // We iterate over dimensions, this kind of filter needs fast random
+    // access.
+    for(int d = 0; d < dim; d++) {
+      for(int i = 0; i < test.length; i++) {
+        test[i] = column.get(i).doubleValue(d);
       }
-      @SuppressWarnings("unchecked")
-      final List<V> castColumn = (List<V>) column;
-      // Get the replacement type information
-      @SuppressWarnings("unchecked")
-      final VectorFieldTypeInformation<V> castType = (VectorFieldTypeInformation<V>) type;
-      factory = FilterUtil.guessFactory(castType);
-
-      // Scan to find the best
-      final int dim = castType.getDimensionality();
-      median = new double[dim];
-      imadsigma = new double[dim];
-      // Scratch space for testing:
-      double[] test = new double[castColumn.size()];
-
-      FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Analyzing data", dim, LOG) : null;
-      // We iterate over dimensions, this kind of filter needs fast random
-      // access.
-      for(int d = 0; d < dim; d++) {
-        for(int i = 0; i < test.length; i++) {
-          test[i] = castColumn.get(i).doubleValue(d);
-        }
-        final double med = QuickSelect.median(test);
-        median[d] = med;
-        int zeros = 0;
-        for(int i = 0; i < test.length; i++) {
-          if((test[i] = Math.abs(test[i] - med)) == 0.) {
-            zeros++;
-          }
-        }
-        // Rescale the true MAD for the best standard deviation estimate:
-        if(zeros < (test.length >>> 1)) {
-          imadsigma[d] = NormalDistribution.PHIINV075 / QuickSelect.median(test);
+      final double med = QuickSelect.median(test);
+      median[d] = med;
+      int zeros = 0;
+      for(int i = 0; i < test.length; i++) {
+        if((test[i] = Math.abs(test[i] - med)) == 0.) {
+          zeros++;
         }
-        else if(zeros == test.length) {
-          LOG.warning("Constant attribute detected. Using MAD=1.");
-          imadsigma[d] = 1.; // Does not matter. Constant distribution.
-        }
-        else {
-          // We have more than 50% zeros, so the regular MAD estimate does not
-          // work. Generalize the MAD approach to use the 50% non-zero value:
-          final int rank = zeros + ((test.length - zeros) >> 1);
-          final double rel = .5 + rank * .5 / test.length;
-          imadsigma[d] = NormalDistribution.quantile(0., 1., rel) / QuickSelect.quickSelect(test, rank);
-          LOG.warning("Near-constant attribute detected. Using modified MAD.");
-        }
-        LOG.incrementProcessed(dprog);
       }
-      LOG.ensureCompleted(dprog);
-
-      FiniteProgress nprog = LOG.isVerbose() ? new FiniteProgress("Data normalization", objects.dataLength(), LOG) : null;
-      // Normalization scan
-      double[] buf = new double[dim];
-      for(int i = 0; i < objects.dataLength(); i++) {
-        final V obj = castColumn.get(i);
-        for(int d = 0; d < dim; d++) {
-          buf[d] = normalize(d, obj.doubleValue(d));
-        }
-        castColumn.set(i, factory.newNumberVector(buf));
-        LOG.incrementProcessed(nprog);
+      // Rescale the true MAD for the best standard deviation estimate:
+      if(zeros < (test.length >>> 1)) {
+        imadsigma[d] = NormalDistribution.PHIINV075 / QuickSelect.median(test);
       }
-      LOG.ensureCompleted(nprog);
+      else if(zeros == test.length) {
+        LOG.warning("Constant attribute detected. Using MAD=1.");
+        imadsigma[d] = 1.; // Does not matter. Constant distribution.
+      }
+      else {
+        // We have more than 50% zeros, so the regular MAD estimate does not
+        // work. Generalize the MAD approach to use the 50% non-zero value:
+        final int rank = zeros + ((test.length - zeros) >> 1);
+        final double rel = .5 + rank * .5 / test.length;
+        imadsigma[d] = NormalDistribution.quantile(0., 1., rel) / QuickSelect.quickSelect(test, rank);
+        LOG.warning("Near-constant attribute detected. Using modified MAD.");
+      }
+      LOG.incrementProcessed(dprog);
     }
-    return objects;
+    LOG.ensureCompleted(dprog);
+  }
+
+  @Override
+  protected V filterSingleObject(V obj) {
+    double[] buf = new double[median.length];
+    for(int d = 0; d < buf.length; d++) {
+      buf[d] = normalize(d, obj.doubleValue(d));
+    }
+    return factory.newNumberVector(buf);
   }
 
   @Override
@@ -192,6 +162,22 @@ public class AttributeWiseMADNormalization<V extends NumberVector> implements No
     return (val / imadsigma[d]) + median[d];
   }
 
+  @Override
+  protected SimpleTypeInformation<? super V> convertedType(SimpleTypeInformation<V> in) {
+    initializeOutputType(in);
+    return in;
+  }
+
+  @Override
+  protected SimpleTypeInformation<? super V> getInputTypeRestriction() {
+    return TypeUtil.NUMBER_VECTOR_FIELD;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
   @Override
   public String toString() {
     return new StringBuilder(1000).append("normalization class: ").append(getClass().getName()).append('\n') //
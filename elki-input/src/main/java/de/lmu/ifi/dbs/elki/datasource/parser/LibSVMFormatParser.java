@@ -97,7 +97,7 @@ public class LibSVMFormatParser<V extends SparseNumberVector> extends SparseNumb
         double attribute = tokenizer.getDouble();
         tokenizer.advance();
         thismax = Math.max(thismax, index + 1);
-        values.put(index, attribute);
+        addValue(index, attribute);
       }
       catch(NumberFormatException e) {
         String comment = tokenizer.getSubstring();
@@ -107,9 +107,8 @@ public class LibSVMFormatParser<V extends SparseNumberVector> extends SparseNumb
         throw new RuntimeException("Parsing error in line " + reader.getLineNumber() + ": expected data, got " + comment);
       }
     }
-    curvec = sparsefactory.newNumberVector(values, thismax);
+    curvec = makeVector(thismax);
     curlbl = LabelList.make(labels);
-    values.clear();
     labels.clear();
     return true;
   }
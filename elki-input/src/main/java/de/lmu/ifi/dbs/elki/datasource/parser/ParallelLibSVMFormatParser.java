@@ -0,0 +1,75 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel variant of the {@link LibSVMFormatParser}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> Vector type
+ */
+public class ParallelLibSVMFormatParser<V extends SparseNumberVector> extends ParallelSparseNumberVectorLabelParser<V> {
+  /**
+   * Input format of libSVM files.
+   */
+  private static final CSVReaderFormat LIBSVM_FORMAT = new CSVReaderFormat(LibSVMFormatParser.WHITESPACE_PATTERN, null, LibSVMFormatParser.COMMENT_PATTERN);
+
+  /**
+   * Constructor.
+   *
+   * @param factory Vector factory
+   * @param chunksize Chunk size (in characters)
+   */
+  public ParallelLibSVMFormatParser(SparseNumberVector.Factory<V> factory, int chunksize) {
+    super(LIBSVM_FORMAT, null, factory, chunksize);
+  }
+
+  @Override
+  protected NumberVectorLabelParser<V> makeLineParser() {
+    return new LibSVMFormatParser<>(sparsefactory);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends SparseNumberVector> extends ParallelSparseNumberVectorLabelParser.Parameterizer<V> {
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // Avoid additional options: super.makeOptions(config);
+      getFactory(config);
+      getChunksize(config);
+    }
+
+    @Override
+    protected ParallelLibSVMFormatParser<V> makeInstance() {
+      return new ParallelLibSVMFormatParser<>((SparseNumberVector.Factory<V>) factory, chunksize);
+    }
+  }
+}
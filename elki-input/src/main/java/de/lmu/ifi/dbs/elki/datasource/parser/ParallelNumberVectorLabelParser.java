@@ -0,0 +1,408 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel variant of the {@link NumberVectorLabelParser}.
+ *
+ * The input is split into line-aligned chunks, which are tokenized and parsed
+ * on the shared {@link ParallelCore} thread pool, and then reassembled in the
+ * original order. Only a bounded number of chunks is in flight at any time.
+ *
+ * Label columns, header rows and the dimensionality checks behave as in the
+ * streaming parser. Because the result is only available after the whole file
+ * has been read, this parser does not support stream filters.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ * @apiviz.has NumberVector
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Input format.
+   */
+  protected CSVReaderFormat format;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  protected long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Chunk size, in characters.
+   */
+  protected int chunksize;
+
+  /**
+   * Emit a double-precision limit warning only once.
+   */
+  private volatile boolean warnedPrecision = false;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param chunksize Chunk size (in characters)
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int chunksize) {
+    super();
+    this.format = format;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.chunksize = chunksize;
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    // Parser used for merging and building the type information.
+    NumberVectorLabelParser<V> merged = makeLineParser();
+    merged.mindim = Integer.MAX_VALUE;
+    merged.maxdim = 0;
+    List<V> vecs = new ArrayList<>();
+    List<LabelList> lbls = new ArrayList<>();
+
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try (InputStreamReader reader = new InputStreamReader(in)) {
+      final int maxpending = core.getParallelism() << 1;
+      ArrayDeque<Future<ChunkParser<V>>> pending = new ArrayDeque<>(maxpending + 1);
+      char[] buf = new char[chunksize];
+      int len = 0;
+      boolean eof = false;
+      while(!eof) {
+        // Fill the buffer.
+        while(len < buf.length) {
+          int read = reader.read(buf, len, buf.length - len);
+          if(read < 0) {
+            eof = true;
+            break;
+          }
+          len += read;
+        }
+        // Split after the last complete line.
+        int cut = len;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) { // Line longer than the buffer.
+            char[] newbuf = new char[buf.length << 1];
+            System.arraycopy(buf, 0, newbuf, 0, len);
+            buf = newbuf;
+            continue;
+          }
+        }
+        if(cut > 0) {
+          pending.add(core.submit(new ChunkParser<>(this, makeLineParser(), new String(buf, 0, cut))));
+          System.arraycopy(buf, cut, buf, 0, len - cut);
+          len -= cut;
+        }
+        while(pending.size() >= maxpending || (eof && !pending.isEmpty())) {
+          merge(pending.poll().get(), merged, vecs, lbls);
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error while reading the input.", e);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Parsing was interrupted.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Parsing failed.", e.getCause());
+    }
+    finally {
+      core.disconnect();
+    }
+    if(merged.maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(merged.getTypeInformation(merged.mindim, merged.maxdim), vecs);
+    if(merged.haslabels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    return bundle;
+  }
+
+  /**
+   * Make a parser for the lines of one chunk.
+   *
+   * @return Line parser
+   */
+  protected NumberVectorLabelParser<V> makeLineParser() {
+    return new NumberVectorLabelParser<>(format, labelIndices, factory);
+  }
+
+  /**
+   * Merge the results of a chunk.
+   *
+   * @param chunk Parsed chunk
+   * @param merged Merged state
+   * @param vecs Output vectors
+   * @param lbls Output labels
+   */
+  private void merge(ChunkParser<V> chunk, NumberVectorLabelParser<V> merged, List<V> vecs, List<LabelList> lbls) {
+    // Rows without numerical values before the first vector of the chunk are
+    // header rows only if no vector was seen before; otherwise the streaming
+    // parser would produce empty vectors for them.
+    for(List<String> row : chunk.leading) {
+      if(vecs.isEmpty()) {
+        merged.columnnames = row;
+        continue;
+      }
+      vecs.add(factory.newNumberVector(new double[0]));
+      lbls.add(LabelList.make(row));
+      merged.mindim = 0;
+      merged.haslabels |= !row.isEmpty();
+    }
+    vecs.addAll(chunk.vecs);
+    lbls.addAll(chunk.lbls);
+    merged.mindim = Math.min(merged.mindim, chunk.mindim);
+    merged.maxdim = Math.max(merged.maxdim, chunk.maxdim);
+    merged.haslabels |= chunk.parser.haslabels;
+    warnedPrecision |= chunk.parser.warnedPrecision;
+  }
+
+  @Override
+  public void cleanup() {
+    warnedPrecision = false;
+  }
+
+  /**
+   * Parser for a single chunk of lines.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  private static class ChunkParser<V extends NumberVector> implements Callable<ChunkParser<V>> {
+    /**
+     * Line parser.
+     */
+    NumberVectorLabelParser<V> parser;
+
+    /**
+     * Chunk data.
+     */
+    private String data;
+
+    /**
+     * Comment matcher.
+     */
+    private Matcher comment;
+
+    /**
+     * Parsed vectors.
+     */
+    List<V> vecs = new ArrayList<>();
+
+    /**
+     * Parsed labels.
+     */
+    List<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Rows without numerical data before the first vector.
+     */
+    List<List<String>> leading = new ArrayList<>();
+
+    /**
+     * Minimum and maximum dimensionality.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent parser
+     * @param parser Line parser
+     * @param data Chunk data
+     */
+    ChunkParser(ParallelNumberVectorLabelParser<V> parent, NumberVectorLabelParser<V> parser, String data) {
+      super();
+      this.parser = parser;
+      this.data = data;
+      this.comment = parent.format.comment != null ? parent.format.comment.matcher(data) : null;
+      parser.warnedPrecision = parent.warnedPrecision;
+    }
+
+    @Override
+    public ChunkParser<V> call() {
+      final NumberVectorLabelParser<V> parser = this.parser;
+      final String str = this.data;
+      final int len = str.length();
+      for(int start = 0; start < len;) {
+        int end = str.indexOf('\n', start);
+        end = end < 0 ? len : end;
+        final int next = end + 1;
+        while(end > start && str.charAt(end - 1) == '\r') {
+          --end;
+        }
+        if(end > start && (comment == null || !comment.region(start, end).matches())) {
+          parser.tokenizer.initialize(str, start, end);
+          if(parser.parseLineInternal()) {
+            final int curdim = parser.curvec.getDimensionality();
+            mindim = (curdim < mindim) ? curdim : mindim;
+            maxdim = (curdim > maxdim) ? curdim : maxdim;
+            vecs.add(parser.curvec);
+            lbls.add(parser.curlbl);
+          }
+          else {
+            leading.add(parser.columnnames);
+          }
+        }
+        start = next;
+      }
+      this.data = null;
+      this.comment = null;
+      parser.unique.clear();
+      return this;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Size of the chunks to parse in parallel, in characters.
+     * <p>
+     * Key: {@code -parser.chunksize}<br />
+     * Default: 1048576
+     * </p>
+     */
+    public static final OptionID CHUNKSIZE_ID = new OptionID("parser.chunksize", "Size of the chunks (in characters) parsed in parallel.");
+
+    /**
+     * Reader format.
+     */
+    protected CSVReaderFormat format;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Chunk size.
+     */
+    protected int chunksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      format = config.tryInstantiate(CSVReaderFormat.class);
+      IntListParameter labelIndicesP = new IntListParameter(NumberVectorLabelParser.Parameterizer.LABEL_INDICES_ID, true);
+      if(config.grab(labelIndicesP)) {
+        labelIndices = labelIndicesP.getValueAsBitSet();
+      }
+      getFactory(config);
+      getChunksize(config);
+    }
+
+    /**
+     * Get the object factory.
+     *
+     * @param config Parameterization
+     */
+    protected void getFactory(Parameterization config) {
+      ObjectParameter<NumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+    }
+
+    /**
+     * Get the chunk size.
+     *
+     * @param config Parameterization
+     */
+    protected void getChunksize(Parameterization config) {
+      IntParameter chunksizeP = new IntParameter(CHUNKSIZE_ID, 1 << 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(chunksizeP)) {
+        chunksize = chunksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory, chunksize);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import de.lmu.ifi.dbs.elki.data.SparseFloatVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel variant of the {@link SparseNumberVectorLabelParser}.
+ *
+ * Chunks of lines are parsed in parallel, each line directly into sorted
+ * dimension and value arrays (without an intermediate map), and the
+ * dimensionality is obtained by reducing the per-chunk maxima.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has SparseNumberVector
+ *
+ * @param <V> vector type
+ */
+public class ParallelSparseNumberVectorLabelParser<V extends SparseNumberVector> extends ParallelNumberVectorLabelParser<V> {
+  /**
+   * Same as {@link #factory}, but subtype.
+   */
+  protected SparseNumberVector.Factory<V> sparsefactory;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Indices to use as labels
+   * @param factory Vector factory
+   * @param chunksize Chunk size (in characters)
+   */
+  public ParallelSparseNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, SparseNumberVector.Factory<V> factory, int chunksize) {
+    super(format, labelIndices, factory, chunksize);
+    this.sparsefactory = factory;
+  }
+
+  @Override
+  protected NumberVectorLabelParser<V> makeLineParser() {
+    return new SparseNumberVectorLabelParser<>(format, labelIndices, sparsefactory);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends SparseNumberVector> extends ParallelNumberVectorLabelParser.Parameterizer<V> {
+    @Override
+    protected void getFactory(Parameterization config) {
+      ObjectParameter<SparseNumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, SparseNumberVector.Factory.class, SparseFloatVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+    }
+
+    @Override
+    protected ParallelSparseNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelSparseNumberVectorLabelParser<>(format, labelIndices, (SparseNumberVector.Factory<V>) factory, chunksize);
+    }
+  }
+}
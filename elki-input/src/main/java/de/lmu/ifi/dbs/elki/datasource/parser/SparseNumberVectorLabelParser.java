@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.datasource.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.data.LabelList;
@@ -37,8 +38,6 @@ import de.lmu.ifi.dbs.elki.utilities.io.ParseUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-
 /**
  * <p>
  * Parser for parsing one point per line, attributes separated by whitespace.
@@ -99,9 +98,25 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector> extends
   protected SparseNumberVector.Factory<V> sparsefactory;
 
   /**
-   * (Reused) set of values for the number vector.
+   * (Reused) dimensions of the current vector.
+   */
+  int[] dims = new int[16];
+
+  /**
+   * (Reused) values of the current vector.
+   */
+  double[] values = new double[16];
+
+  /**
+   * Number of values of the current vector.
+   */
+  int size = 0;
+
+  /**
+   * Whether the dimensions of the current vector are not in ascending order,
+   * and may contain duplicates.
    */
-  Int2DoubleOpenHashMap values = new Int2DoubleOpenHashMap();
+  boolean unsorted = false;
 
   /**
    * (Reused) label buffer.
@@ -149,7 +164,7 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector> extends
     int thismax = 0, index = -1;
 
     while(tokenizer.valid()) {
-      if(values.size() < cardinality) {
+      if(size < cardinality || distinctValues() < cardinality) {
         try {
           // Try reading the next index:
           if(index < 0) {
@@ -161,7 +176,7 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector> extends
           if(!isLabelColumn(index)) {
             double attribute = tokenizer.getDouble();
             thismax = index >= thismax ? index + 1 : thismax;
-            values.put(index, attribute);
+            addValue(index, attribute);
             tokenizer.advance();
             index = -1;
             continue;
@@ -183,13 +198,86 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector> extends
     if(index >= 0 && !tokenizer.valid()) {
       throw new IllegalArgumentException("Parser expected double value, but line ended too early: " + reader.getLineNumber());
     }
-    curvec = sparsefactory.newNumberVector(values, thismax);
+    curvec = makeVector(thismax);
     curlbl = LabelList.make(labels);
-    values.clear();
     labels.clear();
     return true;
   }
 
+  /**
+   * Add a value to the current vector.
+   *
+   * @param dim Dimension
+   * @param value Value
+   */
+  protected void addValue(int dim, double value) {
+    unsorted |= size > 0 && dims[size - 1] >= dim;
+    if(size == dims.length) {
+      dims = Arrays.copyOf(dims, size << 1);
+      values = Arrays.copyOf(values, size << 1);
+    }
+    dims[size] = dim;
+    values[size++] = value;
+  }
+
+  /**
+   * Build the current vector, and reset the value buffers.
+   *
+   * The dimensions are usually given in ascending order; otherwise they are
+   * sorted, and for duplicate dimensions the last value is used.
+   *
+   * @param maxdim Dimensionality
+   * @return Vector
+   */
+  protected V makeVector(int maxdim) {
+    final int n = distinctValues();
+    size = 0;
+    return sparsefactory.newNumberVector(dims, values, n, maxdim);
+  }
+
+  /**
+   * Number of distinct dimensions of the current vector. If necessary, the
+   * value buffers are sorted, and duplicate dimensions are removed.
+   *
+   * @return Number of distinct dimensions
+   */
+  protected int distinctValues() {
+    if(unsorted) {
+      size = sortValues(size);
+      unsorted = false;
+    }
+    return size;
+  }
+
+  /**
+   * Sort the value buffers by dimension, and remove duplicates.
+   *
+   * @param n Number of values
+   * @return Number of distinct dimensions
+   */
+  private int sortValues(int n) {
+    final int[] d = dims;
+    final double[] v = values;
+    // Stable sort, so the last value of a duplicate dimension remains last.
+    it.unimi.dsi.fastutil.Arrays.mergeSort(0, n, (a, b) -> Integer.compare(d[a], d[b]), (a, b) -> {
+      final int td = d[a];
+      d[a] = d[b];
+      d[b] = td;
+      final double tv = v[a];
+      v[a] = v[b];
+      v[b] = tv;
+    });
+    int o = 0;
+    for(int i = 0; i < n; i++) {
+      if(o > 0 && d[o - 1] == d[i]) {
+        --o;
+      }
+      d[o] = d[i];
+      v[o++] = v[i];
+    }
+    return o;
+  }
+
   @Override
   protected SimpleTypeInformation<V> getTypeInformation(int mindim, int maxdim) {
     if(mindim == maxdim) {
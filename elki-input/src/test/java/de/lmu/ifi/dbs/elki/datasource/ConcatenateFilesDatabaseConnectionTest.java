@@ -0,0 +1,126 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ * 
+ * Copyright (C) 2017
+ * ELKI Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test loading multiple files in parallel.
+ *
+ * @author Erich Schubert
+ */
+public class ConcatenateFilesDatabaseConnectionTest {
+  @Test
+  public void testParallelOrder() throws IOException {
+    List<File> files = makeFiles();
+    MultipleObjectsBundle expect = loadSequential(files);
+    // Parallel, configured by parameters.
+    MultipleObjectsBundle bundle = new ELKIBuilder<>(ConcatenateFilesDatabaseConnection.class) //
+        .with(ConcatenateFilesDatabaseConnection.Parameterizer.INPUT_ID, files) //
+        .with(CSVReaderFormat.Parameterizer.COLUMN_SEPARATOR_ID, ";") //
+        .build().loadData();
+    assertBundleEquals(expect, bundle);
+  }
+
+  @Test
+  public void testGivenInstance() throws IOException {
+    List<File> files = makeFiles();
+    MultipleObjectsBundle expect = loadSequential(files);
+    // A factory given as instance cannot be instantiated again per parser.
+    MultipleObjectsBundle bundle = new ELKIBuilder<>(ConcatenateFilesDatabaseConnection.class) //
+        .with(ConcatenateFilesDatabaseConnection.Parameterizer.INPUT_ID, files) //
+        .with(CSVReaderFormat.Parameterizer.COLUMN_SEPARATOR_ID, ";") //
+        .with(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, DoubleVector.FACTORY) //
+        .build().loadData();
+    assertBundleEquals(expect, bundle);
+    for(int i = 0; i < bundle.dataLength(); i++) {
+      assertTrue("Wrong vector type.", bundle.data(i, 1) instanceof DoubleVector);
+    }
+  }
+
+  /**
+   * Write gzip compressed test files of varying size.
+   *
+   * @return Files
+   * @throws IOException on errors
+   */
+  private static List<File> makeFiles() throws IOException {
+    Random rnd = new Random(0L);
+    List<File> files = new ArrayList<>();
+    for(int f = 0; f < 10; f++) {
+      File file = File.createTempFile("ELKIUnitTest", ".csv.gz");
+      file.deleteOnExit();
+      try (Writer w = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+        // Files of varying size, so that they finish out of order.
+        for(int i = 0, n = 10 + rnd.nextInt(1000); i < n; i++) {
+          w.append(Integer.toString(f)).append(';').append(Integer.toString(i)).append(';').append(Double.toString(rnd.nextDouble())).append('\n');
+        }
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Sequential reference, with a single parser.
+   *
+   * @param files Input files
+   * @return Loaded data
+   */
+  private static MultipleObjectsBundle loadSequential(List<File> files) {
+    Parser parser = new ELKIBuilder<>(NumberVectorLabelParser.class) //
+        .with(CSVReaderFormat.Parameterizer.COLUMN_SEPARATOR_ID, ";") //
+        .build();
+    return new ConcatenateFilesDatabaseConnection(files, parser, null).loadData();
+  }
+
+  private static void assertBundleEquals(MultipleObjectsBundle expect, MultipleObjectsBundle bundle) {
+    assertEquals("Size does not match.", expect.dataLength(), bundle.dataLength());
+    assertEquals("Columns do not match.", expect.metaLength(), bundle.metaLength());
+    for(int i = 0; i < expect.dataLength(); i++) {
+      assertEquals("File name does not match.", expect.data(i, 0), bundle.data(i, 0));
+      assertArrayEquals("Vector does not match.", ((NumberVector) expect.data(i, 1)).toArray(), ((NumberVector) bundle.data(i, 1)).toArray(), 0.);
+    }
+  }
+}
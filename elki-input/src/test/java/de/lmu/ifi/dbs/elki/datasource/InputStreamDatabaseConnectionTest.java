@@ -0,0 +1,100 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test that the input stream connection parses incrementally.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InputStreamDatabaseConnectionTest {
+  @Test
+  public void testLoadStream() {
+    StringBuilder buf = new StringBuilder();
+    final int n = 10000;
+    for(int i = 0; i < n; i++) {
+      buf.append(i).append(' ').append(i * .5).append('\n');
+    }
+    byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+    final int[] read = new int[1];
+    InputStream in = new FilterInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      public int read() throws IOException {
+        int r = super.read();
+        read[0] += r >= 0 ? 1 : 0;
+        return r;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int r = super.read(b, off, len);
+        read[0] += r > 0 ? r : 0;
+        return r;
+      }
+    };
+    BundleStreamSource stream = new ELKIBuilder<>(InputStreamDatabaseConnection.class) //
+        .with(InputStreamDatabaseConnection.Parameterizer.STREAM_ID, in) //
+        .with(AbstractDatabaseConnection.Parameterizer.PARSER_ID, NumberVectorLabelParser.class) //
+        .build().loadStream();
+    assertEquals("No data read yet.", 0, read[0]);
+    int count = 0, vcol = -1;
+    for(BundleStreamSource.Event ev = stream.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = stream.nextEvent()) {
+      switch(ev){
+      case META_CHANGED:
+        for(int i = 0; i < stream.getMeta().size(); i++) {
+          if(NumberVector.class.isAssignableFrom(stream.getMeta().get(i).getRestrictionClass())) {
+            vcol = i;
+          }
+        }
+        break;
+      case NEXT_OBJECT:
+        if(count == 0) {
+          assertTrue("Input was not parsed incrementally.", read[0] < data.length);
+        }
+        NumberVector v = (NumberVector) stream.data(vcol);
+        assertEquals("Wrong object.", count, v.doubleValue(0), 0.);
+        ++count;
+        break;
+      default:
+        break;
+      }
+    }
+    assertEquals("Wrong number of objects.", n, count);
+    assertEquals("Not all data read.", data.length, read[0]);
+  }
+}
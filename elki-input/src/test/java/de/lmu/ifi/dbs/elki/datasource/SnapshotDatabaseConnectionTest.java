@@ -0,0 +1,176 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ * 
+ * Copyright (C) 2017
+ * ELKI Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test the database snapshots.
+ *
+ * @author Erich Schubert
+ */
+public class SnapshotDatabaseConnectionTest {
+  /**
+   * Test data.
+   */
+  private static final double[][] DATA = makeData(1000, 3);
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File dir = Files.createTempDirectory("ELKIUnitTest").toFile();
+    try {
+      SnapshotDatabaseConnection first = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, true);
+      MultipleObjectsBundle orig = first.loadData();
+      assertFalse("Data must be loaded from the source.", first.isRestored());
+      assertTrue("Snapshot was not written.", new File(dir, SnapshotDatabaseConnection.MANIFEST_FILE).exists());
+
+      SnapshotDatabaseConnection second = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(new double[0][]), dir, 42L, true);
+      MultipleObjectsBundle bundle = second.loadData();
+      assertTrue("Data was not restored from the snapshot.", second.isRestored());
+      assertBundleEquals(orig, bundle);
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testStaleFingerprint() throws IOException {
+    File dir = Files.createTempDirectory("ELKIUnitTest").toFile();
+    try {
+      new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, false).loadData();
+
+      double[][] other = makeData(10, 3);
+      SnapshotDatabaseConnection second = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(other), dir, 43L, false);
+      MultipleObjectsBundle bundle = second.loadData();
+      assertFalse("Stale snapshot was used.", second.isRestored());
+      assertEquals("Data was not loaded from the source.", other.length, bundle.dataLength());
+
+      // The snapshot must have been replaced.
+      SnapshotDatabaseConnection third = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 43L, false);
+      assertEquals("Snapshot was not replaced.", other.length, third.loadData().dataLength());
+      assertTrue("Data was not restored from the snapshot.", third.isRestored());
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testCorruption() throws IOException {
+    File dir = Files.createTempDirectory("ELKIUnitTest").toFile();
+    try {
+      MultipleObjectsBundle orig = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, true).loadData();
+      // Flip a byte near the end of the data, keeping the file size.
+      File data = new File(dir, SnapshotDatabaseConnection.DATA_FILE);
+      try (RandomAccessFile raf = new RandomAccessFile(data, "rw")) {
+        raf.seek(raf.length() - 5);
+        int b = raf.read();
+        raf.seek(raf.length() - 5);
+        raf.write(b ^ 0xFF);
+      }
+      SnapshotDatabaseConnection second = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, true);
+      MultipleObjectsBundle bundle = second.loadData();
+      assertFalse("Corrupted snapshot was used.", second.isRestored());
+      assertEquals("Data was not loaded from the source.", orig.dataLength(), bundle.dataLength());
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testDBIDCollision() throws IOException {
+    File dir = Files.createTempDirectory("ELKIUnitTest").toFile();
+    try {
+      MultipleObjectsBundle orig = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, false).loadData();
+      // The DBIDs of the first bundle are still in use in this JVM.
+      MultipleObjectsBundle bundle = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, false).loadData();
+      DBIDs ids = orig.getDBIDs(), rids = bundle.getDBIDs();
+      assertNotNull("No DBIDs restored.", rids);
+      assertEquals("DBIDs do not match.", ids.size(), rids.size());
+      for(DBIDIter it = rids.iter(); it.valid(); it.advance()) {
+        assertFalse("Restored DBIDs collide with DBIDs in use.", ids.contains(it));
+      }
+      // The manifest now records the new DBIDs.
+      MultipleObjectsBundle third = new SnapshotDatabaseConnection(new ArrayAdapterDatabaseConnection(DATA), dir, 42L, false).loadData();
+      assertTrue("DBIDs are not a range.", third.getDBIDs() instanceof DBIDRange);
+      assertFalse("Restored DBIDs collide with DBIDs in use.", rids.contains(third.getDBIDs().iter()));
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  /**
+   * Generate random test data.
+   *
+   * @param n Number of vectors
+   * @param dim Dimensionality
+   * @return Data
+   */
+  private static double[][] makeData(int n, int dim) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[n][dim];
+    for(int i = 0; i < n; i++) {
+      for(int d = 0; d < dim; d++) {
+        data[i][d] = rnd.nextGaussian();
+      }
+    }
+    return data;
+  }
+
+  private static void assertBundleEquals(MultipleObjectsBundle expect, MultipleObjectsBundle bundle) {
+    assertEquals("Size does not match.", expect.dataLength(), bundle.dataLength());
+    assertEquals("Columns do not match.", expect.metaLength(), bundle.metaLength());
+    for(int i = 0; i < expect.dataLength(); i++) {
+      assertArrayEquals("Vector does not match.", ((NumberVector) expect.data(i, 0)).toArray(), ((NumberVector) bundle.data(i, 0)).toArray(), 0.);
+    }
+    // The DBIDs of the first run are still in use, so new DBIDs are assigned.
+    assertEquals("DBIDs do not match.", expect.getDBIDs().size(), bundle.getDBIDs().size());
+  }
+
+  private static void delete(File dir) {
+    File[] files = dir.listFiles();
+    for(int i = 0; files != null && i < files.length; i++) {
+      files[i].delete();
+    }
+    dir.delete();
+  }
+}
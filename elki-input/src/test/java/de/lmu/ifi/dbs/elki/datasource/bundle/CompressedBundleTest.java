@@ -0,0 +1,222 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.BundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.selection.RandomSamplingStreamFilter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Test the block-compressed bundle format.
+ *
+ * @author Erich Schubert
+ */
+public class CompressedBundleTest extends AbstractDataSourceTest {
+  @Test
+  public void testDecimalVectors() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "normalization-test-1.csv");
+    // Small blocks, to have a partial last block.
+    File file = writeTemporary(orig, 7);
+    try (FileInputStream fis = new FileInputStream(file);
+        FileChannel channel = fis.getChannel();
+        CompressedBundleReader reader = new CompressedBundleReader(channel)) {
+      assertEquals("Unexpected codec.", CompressedBundleReader.CODEC_VECTOR, reader.getCodec(0));
+      // Random access to a block.
+      MultipleObjectsBundle block = reader.readBlock(3);
+      assertEquals("Block size does not match.", 7, block.dataLength());
+      assertArrayEquals("Vector does not match.", ((NumberVector) orig.data(21, 0)).toArray(), ((NumberVector) block.data(0, 0)).toArray(), 0.);
+    }
+    assertTrue("Compressed bundle is not smaller.", file.length() < writePlain(orig).length());
+    assertBundleEquals(orig, new BundleDatabaseConnection(null, file).loadData());
+  }
+
+  @Test
+  public void testLabels() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "label-selection-test-1.csv");
+    File file = writeTemporary(orig, 5);
+    assertBundleEquals(orig, new BundleDatabaseConnection(null, file).loadData());
+  }
+
+  @Test
+  public void testRandomDoublesWithDBIDs() throws IOException {
+    Random rnd = new Random(0L);
+    List<DoubleVector> vecs = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      vecs.add(new DoubleVector(new double[] { rnd.nextGaussian(), i % 10, -0. }));
+    }
+    MultipleObjectsBundle orig = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 3), vecs);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(1000);
+    orig.setDBIDs(ids);
+    File file = writeTemporary(orig, 100);
+    MultipleObjectsBundle bundle = new BundleDatabaseConnection(null, file).loadData();
+    assertBundleEquals(orig, bundle);
+    assertEquals("DBIDs do not match.", 1000, bundle.getDBIDs().size());
+    DBIDArrayIter it = bundle.getDBIDs().iter();
+    for(DBIDIter it2 = ids.iter(); it2.valid(); it2.advance(), it.advance()) {
+      assertTrue("DBIDs do not match.", DBIDUtil.equal(it2, it));
+    }
+  }
+
+  @Test
+  public void testLZ4() {
+    Random rnd = new Random(0L);
+    byte[] data = new byte[100000];
+    for(int i = 0; i < data.length; i++) {
+      // Mix of random bytes, and long repetitive runs.
+      data[i] = (byte) ((i / 1000) % 3 == 0 ? rnd.nextInt() : (i % 7));
+    }
+    byte[] comp = new byte[LZ4BlockCodec.maxCompressedLength(data.length)];
+    int clen = LZ4BlockCodec.compress(data, data.length, comp);
+    assertTrue("Data was not compressed.", clen < data.length);
+    byte[] out = new byte[data.length];
+    LZ4BlockCodec.decompress(comp, 0, clen, out, out.length);
+    assertArrayEquals("Decompressed data does not match.", data, out);
+  }
+
+  @Test
+  public void testSampling() throws IOException {
+    Random rnd = new Random(0L);
+    List<DoubleVector> vecs = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      vecs.add(new DoubleVector(new double[] { i, rnd.nextGaussian() }));
+    }
+    MultipleObjectsBundle orig = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 2), vecs);
+    MultipleObjectsBundle expect = new RandomSamplingStreamFilter(0.1, new RandomFactory(1L)).filter(orig);
+    assertTrue("Sample size unexpected.", expect.dataLength() > 50 && expect.dataLength() < 150);
+    // Fixed-stride bundle, with and without memory mapping.
+    File plain = writePlain(orig);
+    assertBundleEquals(expect, new BundleDatabaseConnection(null, plain, false, 0.1, new RandomFactory(1L)).loadData());
+    assertBundleEquals(expect, new BundleDatabaseConnection(null, plain, true, 0.1, new RandomFactory(1L)).loadData());
+    // Compressed bundle: blocks are sampled.
+    File file = writeTemporary(orig, 10);
+    Random brnd = new RandomFactory(1L).getSingleThreadedRandom();
+    List<DoubleVector> bvecs = new ArrayList<>();
+    for(int b = 0; b < 100; b++) {
+      if(brnd.nextDouble() < 0.1) {
+        bvecs.addAll(vecs.subList(b * 10, b * 10 + 10));
+      }
+    }
+    assertTrue("Sample size unexpected.", bvecs.size() > 0 && bvecs.size() < 300);
+    MultipleObjectsBundle bexpect = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 2), bvecs);
+    assertBundleEquals(bexpect, new BundleDatabaseConnection(null, file, false, 0.1, new RandomFactory(1L)).loadData());
+  }
+
+  @Test
+  public void testLoadBlocks() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "label-selection-test-1.csv");
+    File file = writeTemporary(orig, 5);
+    try (FileInputStream fis = new FileInputStream(file);
+        FileChannel channel = fis.getChannel();
+        CompressedBundleReader reader = new CompressedBundleReader(channel)) {
+      MultipleObjectsBundle bundle = reader.load(new int[] { 1, 3 });
+      assertEquals("Size does not match.", 10, bundle.dataLength());
+      for(int i = 0; i < 5; i++) {
+        for(int c = 0; c < orig.metaLength(); c++) {
+          assertEquals("Object does not match.", String.valueOf(orig.data(5 + i, c)), String.valueOf(bundle.data(i, c)));
+          assertEquals("Object does not match.", String.valueOf(orig.data(15 + i, c)), String.valueOf(bundle.data(5 + i, c)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param orig Expected bundle
+   * @param bundle Loaded bundle
+   */
+  private static void assertBundleEquals(MultipleObjectsBundle orig, MultipleObjectsBundle bundle) {
+    assertEquals("Size does not match.", orig.dataLength(), bundle.dataLength());
+    assertEquals("Columns do not match.", orig.metaLength(), bundle.metaLength());
+    for(int i = 0; i < orig.dataLength(); i++) {
+      for(int c = 0; c < orig.metaLength(); c++) {
+        Object o = orig.data(i, c), b = bundle.data(i, c);
+        if(o instanceof NumberVector) {
+          double[] ov = ((NumberVector) o).toArray(), bv = ((NumberVector) b).toArray();
+          for(int d = 0; d < ov.length; d++) {
+            assertEquals("Value does not match.", Double.doubleToLongBits(ov[d]), Double.doubleToLongBits(bv[d]));
+          }
+        }
+        else {
+          assertEquals("Object does not match.", String.valueOf(o), String.valueOf(b));
+        }
+      }
+    }
+  }
+
+  /**
+   * Write a compressed bundle to a temporary file.
+   *
+   * @param bundle Bundle
+   * @param blockrows Rows per block
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File writeTemporary(MultipleObjectsBundle bundle, int blockrows) throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file);
+        FileChannel channel = fos.getChannel()) {
+      new CompressedBundleWriter(blockrows).write(bundle, channel);
+    }
+    return file;
+  }
+
+  /**
+   * Write an uncompressed bundle to a temporary file.
+   *
+   * @param bundle Bundle
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File writePlain(MultipleObjectsBundle bundle) throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file);
+        FileChannel channel = fos.getChannel()) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    }
+    return file;
+  }
+}
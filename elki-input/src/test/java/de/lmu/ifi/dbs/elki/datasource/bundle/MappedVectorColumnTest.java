@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ByteBufferDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.BundleDatabaseConnection;
+
+/**
+ * Test memory-mapped loading of bundle files.
+ *
+ * @author Erich Schubert
+ */
+public class MappedVectorColumnTest extends AbstractDataSourceTest {
+  @Test
+  public void testMapped() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "normalization-test-1.csv");
+    File file = writeTemporary(orig);
+
+    MappedVectorColumn column;
+    try (FileInputStream fis = new FileInputStream(file);
+        FileChannel channel = fis.getChannel()) {
+      column = MappedVectorColumn.map(channel);
+    }
+    assertEquals("Size does not match.", orig.dataLength(), column.size());
+    assertEquals("Dimensionality does not match.", 3, ((NumberVector) column.get(0)).getDimensionality());
+    for(int i = 0; i < orig.dataLength(); i++) {
+      assertArrayEquals("Vector does not match.", ((NumberVector) orig.data(i, 0)).toArray(), column.get(i).toArray(), 0.);
+    }
+
+    // Load through the database connection.
+    MultipleObjectsBundle bundle = new BundleDatabaseConnection(null, file, true).loadData();
+    assertTrue("Not memory mapped.", bundle.getColumn(0) instanceof MappedVectorColumn);
+    assertEquals("Unexpected data type", ByteBufferDoubleVector.class, bundle.data(0, 0).getClass());
+    assertArrayEquals("Vector does not match.", ((NumberVector) orig.data(42, 0)).toArray(), ((NumberVector) bundle.data(42, 0)).toArray(), 0.);
+  }
+
+  @Test
+  public void testNotFixedStride() throws IOException {
+    // Labels have variable length, so this cannot be mapped.
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "label-selection-test-1.csv");
+    File file = writeTemporary(orig);
+    try (FileInputStream fis = new FileInputStream(file);
+        FileChannel channel = fis.getChannel()) {
+      assertNull("Variable length records must not be mapped.", MappedVectorColumn.map(channel));
+    }
+    // The database connection falls back to deserialization.
+    MultipleObjectsBundle bundle = new BundleDatabaseConnection(null, file, true).loadData();
+    assertEquals("Size does not match.", orig.dataLength(), bundle.dataLength());
+    assertEquals("Columns do not match.", orig.metaLength(), bundle.metaLength());
+  }
+
+  /**
+   * Write a bundle to a temporary file.
+   *
+   * @param bundle Bundle
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File writeTemporary(MultipleObjectsBundle bundle) throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file);
+        FileChannel channel = fos.getChannel()) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    }
+    return file;
+  }
+}
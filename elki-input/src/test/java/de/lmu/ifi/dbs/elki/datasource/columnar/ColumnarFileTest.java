@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ByteBufferDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.ColumnarDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.columnar.ColumnarFile.ColumnType;
+
+/**
+ * Test the columnar file format.
+ *
+ * @author Erich Schubert
+ */
+public class ColumnarFileTest extends AbstractDataSourceTest {
+  @Test
+  public void testRoundTrip() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "label-selection-test-1.csv");
+    // Small chunks, to have a partial last chunk.
+    File file = writeTemporary(orig, 7);
+    try (FileInputStream fis = new FileInputStream(file);
+        FileChannel channel = fis.getChannel();
+        ColumnarFile cf = new ColumnarFile(channel)) {
+      assertEquals("Rows do not match.", orig.dataLength(), cf.getNumRows());
+      assertEquals("Columns do not match.", 3, cf.getNumColumns());
+      assertEquals("Chunks do not match.", 3, cf.getNumChunks());
+      assertEquals("Unexpected type.", ColumnType.DOUBLE, cf.getType(0));
+      assertEquals("Unexpected type.", ColumnType.LABEL, cf.getType(2));
+    }
+
+    MultipleObjectsBundle bundle = new ColumnarDatabaseConnection(null, file, null).loadData();
+    assertEquals("Size does not match.", orig.dataLength(), bundle.dataLength());
+    assertEquals("Columns do not match.", orig.metaLength(), bundle.metaLength());
+    assertEquals("Unexpected data type", ByteBufferDoubleVector.class, bundle.data(0, 0).getClass());
+    for(int i = 0; i < orig.dataLength(); i++) {
+      assertArrayEquals("Vector does not match.", ((NumberVector) orig.data(i, 0)).toArray(), ((NumberVector) bundle.data(i, 0)).toArray(), 0.);
+      assertEquals("Label does not match.", String.valueOf(orig.data(i, 1)), String.valueOf(bundle.data(i, 1)));
+    }
+  }
+
+  @Test
+  public void testColumnSelection() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "normalization-test-1.csv");
+    File file = writeTemporary(orig, 100);
+    MultipleObjectsBundle bundle = new ColumnarDatabaseConnection(null, file, new int[] { 2, 0 }).loadData();
+    assertEquals("Size does not match.", orig.dataLength(), bundle.dataLength());
+    assertEquals("Only one relation expected.", 1, bundle.metaLength());
+    for(int i = 0; i < orig.dataLength(); i++) {
+      NumberVector o = (NumberVector) orig.data(i, 0), v = (NumberVector) bundle.data(i, 0);
+      assertEquals("Dimensionality does not match.", 2, v.getDimensionality());
+      assertEquals("Column 2 does not match.", o.doubleValue(2), v.doubleValue(0), 0.);
+      assertEquals("Column 0 does not match.", o.doubleValue(0), v.doubleValue(1), 0.);
+    }
+  }
+
+  /**
+   * Write a bundle to a temporary file.
+   *
+   * @param bundle Bundle
+   * @param chunkrows Rows per chunk
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File writeTemporary(MultipleObjectsBundle bundle, int chunkrows) throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", ".columnar");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file);
+        FileChannel channel = fos.getChannel()) {
+      new ColumnarWriter(chunkrows).write(bundle, channel);
+    }
+    return file;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.normalization.columnwise.AttributeWiseMADNormalization;
+import de.lmu.ifi.dbs.elki.datasource.filter.normalization.columnwise.AttributeWiseMinMaxNormalization;
+
+/**
+ * Test that streaming conversion filters produce the same results as the
+ * bundle-based filters.
+ *
+ * @author Erich Schubert
+ */
+public class AbstractConversionFilterTest extends AbstractDataSourceTest {
+  @Test
+  public void streamingMatchesBundle() {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    // Streamed through the filter chain:
+    MultipleObjectsBundle streamed = readBundle(filename, new AttributeWiseMinMaxNormalization<DoubleVector>(), new AttributeWiseMADNormalization<DoubleVector>());
+    // Bundle filters, one after another:
+    MultipleObjectsBundle bundle = readBundle(filename);
+    bundle = new AttributeWiseMinMaxNormalization<DoubleVector>().filter(bundle);
+    bundle = new AttributeWiseMADNormalization<DoubleVector>().filter(bundle);
+
+    assertEquals("Size does not match.", bundle.dataLength(), streamed.dataLength());
+    for(int i = 0; i < bundle.dataLength(); i++) {
+      assertArrayEquals("Vector does not match.", ((NumberVector) bundle.data(i, 0)).toArray(), ((NumberVector) streamed.data(i, 0)).toArray(), 0.);
+    }
+  }
+
+  @Test
+  public void releaseIntermediate() {
+    MultipleObjectsBundle bundle = readBundle(UNITTEST + "normalization-test-1.csv");
+    // A shared bundle must not be modified.
+    MultipleObjectsBundle copy = MultipleObjectsBundle.fromStream(new StreamFromBundle(bundle, false));
+    assertNotNull("Shared bundle was modified.", bundle.data(0, 0));
+    // An intermediate bundle is released while streaming.
+    MultipleObjectsBundle result = MultipleObjectsBundle.fromStream(new StreamFromBundle(copy, true));
+    assertEquals("Size does not match.", bundle.dataLength(), result.dataLength());
+    assertNull("Intermediate bundle was not released.", copy.data(0, 0));
+    assertArrayEquals("Vector does not match.", ((NumberVector) bundle.data(42, 0)).toArray(), ((NumberVector) result.data(42, 0)).toArray(), 0.);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test the parallel number vector parser against the streaming parser.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelNumberVectorLabelParserTest extends AbstractDataSourceTest {
+  @Test
+  public void compareFiles() throws IOException {
+    for(String name : new String[] { "normally-distributed-data-1.csv", "label-selection-test-1.csv", "external-id-test-1.csv", "dimensionality-test-2.csv" }) {
+      MultipleObjectsBundle expect, bundle;
+      try (InputStream is = open(UNITTEST + name)) {
+        expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+      }
+      // Use tiny chunks to exercise chunk boundaries and buffer growth.
+      Parser parser = new ELKIBuilder<>(ParallelNumberVectorLabelParser.class) //
+          .with(ParallelNumberVectorLabelParser.Parameterizer.CHUNKSIZE_ID, 16) //
+          .build();
+      try (InputStream is = open(UNITTEST + name)) {
+        bundle = parser.parse(is);
+      }
+      assertBundleEquals(name, expect, bundle);
+    }
+  }
+
+  @Test
+  public void headerAndComments() {
+    String data = "# comment\nx y z\n1 2 3 a\n\n// another\n4 5 6 b\r\n7 8 9";
+    ParallelNumberVectorLabelParser<DoubleVector> parser = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 8);
+    MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertEquals("Columns", 2, bundle.metaLength());
+    assertEquals("Length", 3, bundle.dataLength());
+    assertEquals("Column name", "z", ((VectorFieldTypeInformation<?>) bundle.meta(0)).getLabel(2));
+    assertArrayEquals("Values", new double[] { 4, 5, 6 }, ((NumberVector) bundle.data(1, 0)).toArray(), 0.);
+    assertEquals("Label", "b", bundle.data(1, 1).toString());
+    MultipleObjectsBundle expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertBundleEquals("inline", expect, bundle);
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param name Data set name
+   * @param expect Expected bundle
+   * @param bundle Actual bundle
+   */
+  private static void assertBundleEquals(String name, MultipleObjectsBundle expect, MultipleObjectsBundle bundle) {
+    assertEquals("Columns differ: " + name, expect.metaLength(), bundle.metaLength());
+    assertEquals("Length differs: " + name, expect.dataLength(), bundle.dataLength());
+    for(int c = 0; c < expect.metaLength(); c++) {
+      assertEquals("Type differs: " + name, expect.meta(c).toString(), bundle.meta(c).toString());
+    }
+    for(int i = 0; i < expect.dataLength(); i++) {
+      assertArrayEquals("Vectors differ: " + name, ((NumberVector) expect.data(i, 0)).toArray(), ((NumberVector) bundle.data(i, 0)).toArray(), 0.);
+      for(int c = 1; c < expect.metaLength(); c++) {
+        assertEquals("Labels differ: " + name, String.valueOf(expect.data(i, c)), String.valueOf(bundle.data(i, c)));
+      }
+    }
+  }
+}
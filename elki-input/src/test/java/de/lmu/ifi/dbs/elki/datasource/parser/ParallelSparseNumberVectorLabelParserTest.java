@@ -0,0 +1,107 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.data.SparseFloatVector;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test the parallel sparse vector parsers against the streaming parsers.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelSparseNumberVectorLabelParserTest extends AbstractDataSourceTest {
+  @Test
+  public void compareSparse() throws IOException {
+    MultipleObjectsBundle expect, bundle;
+    try (InputStream is = open(UNITTEST + "parsertest.sparse")) {
+      expect = new ELKIBuilder<>(SparseNumberVectorLabelParser.class).build().parse(is);
+    }
+    Parser parser = new ELKIBuilder<>(ParallelSparseNumberVectorLabelParser.class) //
+        .with(ParallelNumberVectorLabelParser.Parameterizer.CHUNKSIZE_ID, 8) //
+        .build();
+    try (InputStream is = open(UNITTEST + "parsertest.sparse")) {
+      bundle = parser.parse(is);
+    }
+    assertBundleEquals(expect, bundle);
+  }
+
+  @Test
+  public void compareLibSVM() throws IOException {
+    MultipleObjectsBundle expect, bundle;
+    try (InputStream is = open(UNITTEST + "parsertest.libsvm")) {
+      expect = new ELKIBuilder<>(LibSVMFormatParser.class).build().parse(is);
+    }
+    Parser parser = new ELKIBuilder<>(ParallelLibSVMFormatParser.class) //
+        .with(ParallelNumberVectorLabelParser.Parameterizer.CHUNKSIZE_ID, 8) //
+        .build();
+    try (InputStream is = open(UNITTEST + "parsertest.libsvm")) {
+      bundle = parser.parse(is);
+    }
+    assertEquals("Unexpected data type", SparseFloatVector.class, bundle.data(0, 0).getClass());
+    assertBundleEquals(expect, bundle);
+  }
+
+  @Test
+  public void unsortedDimensions() {
+    String data = "a 3:1 1:2 7:3\nb 5:1 2:4 5:2\n";
+    ParallelLibSVMFormatParser<SparseDoubleVector> parser = new ParallelLibSVMFormatParser<>(SparseDoubleVector.FACTORY, 1 << 10);
+    MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertEquals("Length", 2, bundle.dataLength());
+    assertArrayEquals("Values", new double[] { 0, 2, 0, 1, 0, 0, 0, 3 }, ((NumberVector) bundle.data(0, 0)).toArray(), 0.);
+    // Duplicate dimensions: the last value is used.
+    assertArrayEquals("Values", new double[] { 0, 0, 4, 0, 0, 2 }, ((NumberVector) bundle.data(1, 0)).toArray(), 0.);
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param expect Expected bundle
+   * @param bundle Actual bundle
+   */
+  private static void assertBundleEquals(MultipleObjectsBundle expect, MultipleObjectsBundle bundle) {
+    assertEquals("Columns differ", expect.metaLength(), bundle.metaLength());
+    assertEquals("Length differs", expect.dataLength(), bundle.dataLength());
+    for(int c = 0; c < expect.metaLength(); c++) {
+      assertEquals("Type differs", expect.meta(c).toString(), bundle.meta(c).toString());
+    }
+    for(int i = 0; i < expect.dataLength(); i++) {
+      assertEquals("Vectors differ", expect.data(i, 0).toString(), bundle.data(i, 0).toString());
+      for(int c = 1; c < expect.metaLength(); c++) {
+        assertEquals("Labels differ", String.valueOf(expect.data(i, c)), String.valueOf(bundle.data(i, c)));
+      }
+    }
+  }
+}
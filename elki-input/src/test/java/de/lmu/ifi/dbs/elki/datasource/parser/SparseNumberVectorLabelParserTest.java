@@ -23,8 +23,10 @@ package de.lmu.ifi.dbs.elki.datasource.parser;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -70,4 +72,35 @@ public class SparseNumberVectorLabelParserTest extends AbstractDataSourceTest {
     assertEquals("Unexpected data type", SparseDoubleVector.class, bundle.data(0, 0).getClass());
     assertEquals("Unexpected data type", LabelList.class, bundle.data(0, 1).getClass());
   }
+
+  /**
+   * Repeated dimensions count only once towards the number of values, and the
+   * last value is used.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void duplicateDimensions() throws IOException {
+    String data = "2 1 1.0 1 2.0 3 4.0 x\n3 0 1 2 2 0 3 a b\n";
+    Parser parser = new ELKIBuilder<>(SparseNumberVectorLabelParser.class) //
+        .with(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, SparseDoubleVector.Factory.class)//
+        .build();
+    MultipleObjectsBundle bundle;
+    try (InputStream is = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+        InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, null, parser)) {
+      bundle = dbc.loadData();
+    }
+    assertEquals("Length", 2, bundle.dataLength());
+
+    SparseNumberVector v = (SparseNumberVector) bundle.data(0, 0);
+    assertEquals("Dimensionality", 4, v.getDimensionality());
+    assertEquals("Value", 2., v.doubleValue(1), 0.);
+    assertEquals("Value", 4., v.doubleValue(3), 0.);
+    assertEquals("Labels", "x", bundle.data(0, 1).toString());
+
+    v = (SparseNumberVector) bundle.data(1, 0);
+    assertEquals("Value", 3., v.doubleValue(0), 0.);
+    assertEquals("Value", 2., v.doubleValue(2), 0.);
+    assertEquals("Labels", "a b", bundle.data(1, 1).toString());
+  }
 }
@@ -68,6 +68,15 @@ public interface PageFile<P extends Page> {
    */
   void close();
 
+  /**
+   * Write all modified pages and the file header to the backing storage, so
+   * that the file can be reopened, but keep the file open. By default, this
+   * does nothing.
+   */
+  default void flush() {
+    // Nothing to write by default.
+  }
+
   /**
    * Clears this PageFile.
    */
@@ -103,6 +112,36 @@ public interface PageFile<P extends Page> {
    */
   boolean initialize(PageHeader header);
 
+  /**
+   * Hint that a page will likely be read soon. Page files may start loading
+   * it asynchronously; by default, this does nothing.
+   * 
+   * @param pageID Page id
+   */
+  default void prefetch(int pageID) {
+    // No prefetching by default.
+  }
+
+  /**
+   * Get the maximum number of pages to prefetch when a node is expanded.
+   * 
+   * @return Prefetch depth, 0 if prefetching is not supported
+   */
+  default int getPrefetchDepth() {
+    return 0;
+  }
+
+  /**
+   * Test whether pages that support a compact binary layout are stored in this
+   * layout instead of being serialized. Indexes use this to compute their page
+   * capacities; by default, pages are serialized.
+   * 
+   * @return {@code true} if the binary page layout is used
+   */
+  default boolean usesBinaryLayout() {
+    return false;
+  }
+
   /**
    * Log some statistics to the appropriate logger.
    */
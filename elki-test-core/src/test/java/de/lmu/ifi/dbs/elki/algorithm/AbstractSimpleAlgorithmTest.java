@@ -73,12 +73,25 @@ public abstract class AbstractSimpleAlgorithmTest {
    * @return Database
    */
   public static Database makeSimpleDatabase(String filename, int expectedSize, ListParameterization params) {
+    return makeSimpleDatabase(filename, expectedSize, params, StaticArrayDatabase.class);
+  }
+
+  /**
+   * Generate a simple DoubleVector database from a file.
+   *
+   * @param filename File to load
+   * @param expectedSize Expected size in records
+   * @param params Extra parameters
+   * @param dbclass Database class
+   * @return Database
+   */
+  public static Database makeSimpleDatabase(String filename, int expectedSize, ListParameterization params, Class<? extends Database> dbclass) {
     assertNotNull("Params, if given, must not be null.", params);
     // Allow loading test data from resources.
     try (InputStream is = open(filename)) {
       params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, InputStreamDatabaseConnection.class);
       params.addParameter(InputStreamDatabaseConnection.Parameterizer.STREAM_ID, is);
-      Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+      Database db = ClassGenericsUtil.parameterizeOrAbort(dbclass, params);
 
       // Ensure we have no unused parameters:
       if(params.hasUnusedParameters()) {
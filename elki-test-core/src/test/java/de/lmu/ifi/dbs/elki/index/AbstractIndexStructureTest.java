@@ -21,23 +21,55 @@
 package de.lmu.ifi.dbs.elki.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.PrecomputedRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.SnapshotDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ObjectBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -53,10 +85,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParamet
  */
 public abstract class AbstractIndexStructureTest {
   // the following values depend on the data set used!
-  String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+  protected String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
 
   // size of the data set
-  int shoulds = 600;
+  protected int shoulds = 600;
 
   // query point
   double[] querypoint = new double[] { 0.5, 0.5, 0.5 };
@@ -213,4 +245,291 @@ public abstract class AbstractIndexStructureTest {
       }
     }
   }
+
+  /**
+   * Test routine for dynamic updates: objects are deleted from and reinserted
+   * into a {@link HashmapDatabase}, and the results are compared to a linear
+   * scan.
+   *
+   * @param inputparams Parameters
+   * @param expectKNNQuery Expected kNN query class
+   * @param expectRangeQuery Expected range query class
+   */
+  protected void testDynamicEuclidean(ListParameterization inputparams, Class<?> expectKNNQuery, Class<?> expectRangeQuery) {
+    inputparams.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    UpdatableDatabase db = (UpdatableDatabase) AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams, HashmapDatabase.class);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps);
+    assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), expectRangeQuery.isAssignableFrom(rangeq.getClass()));
+    DoubleVector dv = DoubleVector.wrap(querypoint);
+    assertLinearScan(rep, dist, knnq, rangeq, dv);
+
+    // Remove some of the nearest neighbors:
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    DoubleDBIDListIter it = knnq.getKNNForObject(dv, k).iter();
+    for(int i = 0; i < 3; i++, it.advance()) {
+      del.add(it);
+    }
+    ObjectBundle removed = db.delete(del);
+    assertEquals("Database size does not match.", shoulds - del.size(), rep.size());
+    assertLinearScan(rep, dist, knnq, rangeq, dv);
+
+    // Reinsert them (without the DBID column):
+    MultipleObjectsBundle reinsert = new MultipleObjectsBundle();
+    for(int i = 0; i < removed.metaLength(); i++) {
+      if(!TypeUtil.DBID.isAssignableFromType(removed.meta(i))) {
+        ArrayList<Object> column = new ArrayList<>(removed.dataLength());
+        for(int j = 0; j < removed.dataLength(); j++) {
+          column.add(removed.data(j, i));
+        }
+        reinsert.appendColumn(removed.meta(i), column);
+      }
+    }
+    db.insert(reinsert);
+    assertEquals("Database size does not match.", shoulds, rep.size());
+    assertLinearScan(rep, dist, knnq, rangeq, dv);
+
+    // Remove every third object, to trigger rebuilding:
+    ArrayModifiableDBIDs many = DBIDUtil.newArray(rep.size() / 3 + 1);
+    for(DBIDArrayIter iter = DBIDUtil.newArray(rep.getDBIDs()).iter(); iter.valid(); iter.advance()) {
+      if(iter.getOffset() % 3 == 0) {
+        many.add(iter);
+      }
+    }
+    db.delete(many);
+    assertEquals("Database size does not match.", shoulds - many.size(), rep.size());
+    assertLinearScan(rep, dist, knnq, rangeq, dv);
+  }
+
+  /**
+   * Test routine for approximate kNN queries using an
+   * {@link ApproximationHint}.
+   *
+   * @param inputparams Parameters
+   * @param expectKNNQuery Expected kNN query class
+   */
+  protected void testApproximateEuclidean(ListParameterization inputparams, Class<?> expectKNNQuery) {
+    inputparams.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    DoubleVector dv = DoubleVector.wrap(querypoint);
+
+    // Without error bound and budget, results must be exact.
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k, new ApproximationHint(0., 0));
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+    KNNList ids = knnq.getKNNForObject(dv, k);
+    assertEquals("Result size does not match expectation!", shouldd.length, ids.size());
+    int i = 0;
+    for(DoubleDBIDListIter res = ids.iter(); res.valid(); res.advance(), i++) {
+      assertEquals("Expected distance doesn't match.", shouldd[i], res.doubleValue(), 1e-15);
+    }
+
+    // With an error bound, every neighbor is within (1+eps) of the true one.
+    final double epsilon = .5;
+    knnq = db.getKNNQuery(dist, k, new ApproximationHint(epsilon, 0));
+    ids = knnq.getKNNForObject(dv, k);
+    assertEquals("Result size does not match expectation!", shouldd.length, ids.size());
+    i = 0;
+    for(DoubleDBIDListIter res = ids.iter(); res.valid(); res.advance(), i++) {
+      assertTrue("Approximate distance too small.", res.doubleValue() >= shouldd[i] - 1e-15);
+      assertTrue("Approximate distance exceeds error bound.", res.doubleValue() <= shouldd[i] * (1 + epsilon) + 1e-15);
+    }
+
+    // With a tight budget, we still need to get k results.
+    knnq = db.getKNNQuery(dist, k, new ApproximationHint(0., k));
+    ids = knnq.getKNNForObject(dv, k);
+    assertEquals("Result size does not match expectation!", shouldd.length, ids.size());
+    i = 0;
+    for(DoubleDBIDListIter res = ids.iter(); res.valid(); res.advance(), i++) {
+      assertTrue("Approximate distance too small.", res.doubleValue() >= shouldd[i] - 1e-15);
+    }
+  }
+
+  /**
+   * Test routine for similarity self-joins: the kNN join and the epsilon join
+   * of a {@link JoinIndex} are compared to a linear scan for every object.
+   *
+   * @param inputparams Parameters
+   */
+  protected void testSelfJoinEuclidean(ListParameterization inputparams) {
+    inputparams.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    It<JoinIndex<DoubleVector>> it = rep.getHierarchy().iterChildren(rep).filter(JoinIndex.class);
+    assertTrue("No join index found.", it.valid());
+    DataStore<KNNList> knns = it.get().kNNSelfJoin(dist, k);
+    DataStore<DoubleDBIDList> ranges = it.get().rangeSelfJoin(dist, eps);
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      int inrange = 0;
+      for(DBIDIter iter2 = rep.iterDBIDs(); iter2.valid(); iter2.advance()) {
+        final double d = dist.distance(iter, iter2);
+        heap.insert(d, iter2);
+        inrange += d <= eps ? 1 : 0;
+      }
+      KNNList expect = heap.toKNNList(), ids = knns.get(iter);
+      assertEquals("kNN join result size does not match expectation!", expect.size(), ids.size());
+      for(DoubleDBIDListIter e = expect.iter(), res = ids.iter(); res.valid(); res.advance(), e.advance()) {
+        assertEquals("Expected distance doesn't match.", e.doubleValue(), res.doubleValue(), 1e-15);
+      }
+      DoubleDBIDList rids = ranges.get(iter);
+      assertEquals("Range join result size does not match expectation!", inrange, rids.size());
+      double prev = 0.;
+      for(DoubleDBIDListIter res = rids.iter(); res.valid(); res.advance()) {
+        assertTrue("Range join result not sorted.", prev <= res.doubleValue());
+        prev = res.doubleValue();
+      }
+    }
+    // Plain bulk queries must not materialize all neighborhoods.
+    assertFalse("Self-join used without heavy use hint.", db.getRangeQuery(dist, eps, DatabaseQuery.HINT_BULK) instanceof PrecomputedRangeQuery);
+    // Heavy bulk range queries with a fixed radius are answered by the join.
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE);
+    assertTrue("Returned range query is not of expected class: got " + rangeq.getClass(), rangeq instanceof PrecomputedRangeQuery);
+    DBIDIter first = rep.iterDBIDs();
+    assertEquals("Range query result size does not match.", ranges.get(first).size(), rangeq.getRangeForDBID(first, eps).size());
+  }
+
+  /**
+   * Test routine for index snapshots: the index is built on a database loaded
+   * through a {@link SnapshotDatabaseConnection}, and then restored from the
+   * snapshot into a new instance, which must give the same results.
+   *
+   * @param factory Index factory
+   * @throws IOException on errors with the temporary files
+   */
+  protected void testSnapshotEuclidean(IndexFactory<DoubleVector, ?> factory) throws IOException {
+    File dir = Files.createTempDirectory("elki-snapshot").toFile();
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      SnapshotDatabaseConnection conn = new SnapshotDatabaseConnection(new InputStreamDatabaseConnection(is, null, new NumberVectorLabelParser<>(DoubleVector.FACTORY)), dir, 1L, true);
+      Database db = new StaticArrayDatabase(conn, Arrays.<IndexFactory<?, ?>> asList(factory), 2L);
+      db.initialize();
+      Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      assertEquals("Database size does not match.", shoulds, rep.size());
+      File[] files = dir.listFiles((d, name) -> name.startsWith("index-") && name.endsWith(".snapshot"));
+      assertEquals("Index snapshot was not written.", 1, files.length);
+      final String name = files[0].getName(), key = name.substring(6, name.length() - 9);
+
+      // A different index configuration must not be used.
+      assertFalse("Stale index snapshot was restored.", conn.restoreIndex((SnapshotIndex) factory.instantiate(rep), key, 3L));
+      Index index = factory.instantiate(rep);
+      assertTrue("Index snapshot was not restored.", conn.restoreIndex((SnapshotIndex) index, key, 2L));
+      DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+      @SuppressWarnings("unchecked")
+      KNNQuery<DoubleVector> knnq = ((KNNIndex<DoubleVector>) index).getKNNQuery(dist, k);
+      assertNotNull("Restored index does not support kNN queries.", knnq);
+      @SuppressWarnings("unchecked")
+      RangeQuery<DoubleVector> rangeq = index instanceof RangeIndex ? ((RangeIndex<DoubleVector>) index).getRangeQuery(dist, eps) : null;
+      assertLinearScan(rep, dist, knnq, rangeq, DoubleVector.wrap(querypoint));
+    }
+    finally {
+      File[] files = dir.listFiles();
+      for(int i = 0; files != null && i < files.length; i++) {
+        files[i].delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test routine for reverse kNN queries: the results for every tenth object
+   * are compared to a linear scan, for all k up to the given maximum.
+   *
+   * @param inputparams Parameters
+   * @param expectRKNNQuery Expected RkNN query class
+   * @param maxk Maximum k supported by the index
+   */
+  protected void testRKNNEuclidean(ListParameterization inputparams, Class<?> expectRKNNQuery, int maxk) {
+    testRKNNEuclidean(inputparams, expectRKNNQuery, maxk, 1., 1.);
+  }
+
+  /**
+   * Test routine for approximate reverse kNN queries: the results for every
+   * tenth object are compared to a linear scan, for all k up to the given
+   * maximum. With a minimum recall and precision of 1, the results must be
+   * exact.
+   *
+   * @param inputparams Parameters
+   * @param expectRKNNQuery Expected RkNN query class
+   * @param maxk Maximum k supported by the index
+   * @param minrecall Minimum recall over all queries
+   * @param minprecision Minimum precision over all queries
+   */
+  protected void testRKNNEuclidean(ListParameterization inputparams, Class<?> expectRKNNQuery, int maxk, double minrecall, double minprecision) {
+    inputparams.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    RKNNQuery<DoubleVector> rknnq = db.getRKNNQuery(dist, maxk);
+    assertTrue("Returned rknn query is not of expected class: expected " + expectRKNNQuery + " got " + rknnq.getClass(), expectRKNNQuery.isAssignableFrom(rknnq.getClass()));
+    RKNNQuery<DoubleVector> lin = new LinearScanRKNNQuery<>(dist, new LinearScanDistanceKNNQuery<>(dist), maxk);
+    final boolean exact = minrecall >= 1. && minprecision >= 1.;
+    long found = 0, expected = 0, returned = 0;
+    for(DBIDArrayIter iter = DBIDUtil.newArray(rep.getDBIDs()).iter(); iter.valid(); iter.advance()) {
+      if(iter.getOffset() % 10 != 0) {
+        continue;
+      }
+      for(int k = 1; k <= maxk; k++) {
+        DoubleDBIDList expect = lin.getRKNNForDBID(iter, k), ids = rknnq.getRKNNForDBID(iter, k);
+        if(exact) {
+          assertEquals("Result size does not match expectation!", expect.size(), ids.size());
+          for(DoubleDBIDListIter e = expect.iter(), res = ids.iter(); res.valid(); res.advance(), e.advance()) {
+            assertEquals("Expected distance doesn't match.", e.doubleValue(), res.doubleValue(), 1e-15);
+          }
+          continue;
+        }
+        DBIDs truth = DBIDUtil.newHashSet(expect);
+        for(DoubleDBIDListIter res = ids.iter(); res.valid(); res.advance()) {
+          assertEquals("Returned distance is wrong.", dist.distance(iter, res), res.doubleValue(), 1e-15);
+          found += truth.contains(res) ? 1 : 0;
+        }
+        expected += expect.size();
+        returned += ids.size();
+      }
+    }
+    if(!exact) {
+      assertTrue("Recall too low: " + found + " of " + expected, found >= minrecall * expected);
+      assertTrue("Precision too low: " + found + " of " + returned, found >= minprecision * returned);
+    }
+  }
+
+  /**
+   * Compare the query results to a linear scan.
+   *
+   * @param rep Data relation
+   * @param dist Distance query
+   * @param knnq kNN query to test
+   * @param rangeq Range query to test
+   * @param dv Query vector
+   */
+  private void assertLinearScan(Relation<DoubleVector> rep, DistanceQuery<DoubleVector> dist, KNNQuery<DoubleVector> knnq, RangeQuery<DoubleVector> rangeq, DoubleVector dv) {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    ModifiableDoubleDBIDList range = DBIDUtil.newDistanceDBIDList();
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      final double d = dist.distance(dv, iter);
+      heap.insert(d, iter);
+      if(d <= eps) {
+        range.add(d, iter);
+      }
+    }
+    range.sort();
+    KNNList expect = heap.toKNNList();
+    KNNList ids = knnq.getKNNForObject(dv, k);
+    assertEquals("Result size does not match expectation!", expect.size(), ids.size());
+    for(DoubleDBIDListIter e = expect.iter(), res = ids.iter(); res.valid(); res.advance(), e.advance()) {
+      assertEquals("Expected distance doesn't match.", e.doubleValue(), res.doubleValue(), 1e-15);
+    }
+    if(rangeq == null) {
+      return;
+    }
+    DoubleDBIDList rids = rangeq.getRangeForObject(dv, eps);
+    assertEquals("Result size does not match expectation!", range.size(), rids.size());
+    for(DoubleDBIDListIter e = range.iter(), res = rids.iter(); res.valid(); res.advance(), e.advance()) {
+      assertEquals("Expected distance doesn't match.", e.doubleValue(), res.doubleValue(), 1e-15);
+    }
+  }
 }
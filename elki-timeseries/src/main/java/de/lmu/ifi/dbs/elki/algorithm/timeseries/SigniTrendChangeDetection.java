@@ -24,12 +24,17 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StreamingDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreEvent;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -129,6 +134,23 @@ public class SigniTrendChangeDetection extends AbstractAlgorithm<ChangePoints> {
     return new Instance().run(relation);
   }
 
+  /**
+   * Executes Signi-Trend for given relation.
+   *
+   * On a {@link StreamingDatabase}, the current window is processed in arrival
+   * order, and the result is then kept up to date as new micro-batches arrive.
+   *
+   * @param database Database
+   * @param relation relation to process
+   * @return list with all the detected trends for every time series
+   */
+  public ChangePoints run(Database database, Relation<NumberVector> relation) {
+    if(database instanceof StreamingDatabase) {
+      return new Instance().runIncremental((StreamingDatabase) database, relation);
+    }
+    return run(relation);
+  }
+
   /**
    * Instance for one data set.
    * 
@@ -136,7 +158,7 @@ public class SigniTrendChangeDetection extends AbstractAlgorithm<ChangePoints> {
    *
    * @apiviz.exclude
    */
-  protected class Instance {
+  protected class Instance implements DataStoreListener {
     /**
      * Moving average and variance.
      */
@@ -147,6 +169,31 @@ public class SigniTrendChangeDetection extends AbstractAlgorithm<ChangePoints> {
      */
     protected double weight;
 
+    /**
+     * Data relation, for incremental processing.
+     */
+    private Relation<NumberVector> relation;
+
+    /**
+     * Change points result, for incremental processing.
+     */
+    private ChangePoints changepoints;
+
+    /**
+     * Score storage, for incremental processing.
+     */
+    private WritableDoubleDataStore vals;
+
+    /**
+     * Score range, for incremental processing.
+     */
+    private DoubleMinMax mm;
+
+    /**
+     * Score meta, for incremental processing.
+     */
+    private BasicOutlierScoreMeta meta;
+
     /**
      * Constructor.
      */
@@ -184,6 +231,60 @@ public class SigniTrendChangeDetection extends AbstractAlgorithm<ChangePoints> {
       return changepoints;
     }
 
+    /**
+     * Process the window of a streaming database, and register for updates.
+     *
+     * @param database Streaming database
+     * @param relation Data relation
+     * @return Change points, updated as new data arrives
+     */
+    public ChangePoints runIncremental(StreamingDatabase database, Relation<NumberVector> relation) {
+      final int dim = RelationUtil.dimensionality(relation);
+      ewma = new double[dim];
+      ewmv = new double[dim];
+      weight = 0.;
+
+      this.relation = relation;
+      changepoints = new ChangePoints("Signi-Trend Changepoints", "signitrend-changepoints");
+      vals = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT);
+      mm = new DoubleMinMax();
+      processRows(database.getWindowDBIDs());
+      meta = new BasicOutlierScoreMeta(mm.getMin(), mm.getMax(), 0, Double.POSITIVE_INFINITY, 0.);
+      DoubleRelation scores = new MaterializedDoubleRelation("Signi-Trend scores", "signitrend-scores", vals, relation.getDBIDs());
+      changepoints.addChildResult(new OutlierResult(meta, scores));
+      database.addDataStoreListener(this);
+      return changepoints;
+    }
+
+    /**
+     * Process new rows, in the given order.
+     *
+     * @param ids Rows to process
+     */
+    private void processRows(DBIDs ids) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        double absmax = processRow(iter, relation.get(iter), changepoints);
+        vals.putDouble(iter, absmax); // Store absolute maximum
+        mm.put(absmax);
+      }
+    }
+
+    /**
+     * Update the result on a micro-batch of the streaming database.
+     *
+     * Note: when data store events are accumulated, insertions are no longer
+     * guaranteed to be delivered in arrival order.
+     */
+    @Override
+    public void contentChanged(DataStoreEvent e) {
+      processRows(e.getInserts());
+      for(DBIDIter iter = e.getRemovals().iter(); iter.valid(); iter.advance()) {
+        vals.delete(iter);
+      }
+      meta.setActualMinimum(mm.getMin());
+      meta.setActualMaximum(mm.getMax());
+    }
+
     /**
      * Process one row, assuming a constant time interval.
      * 
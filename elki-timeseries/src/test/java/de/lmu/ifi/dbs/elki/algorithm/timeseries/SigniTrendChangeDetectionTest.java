@@ -0,0 +1,119 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.StreamingDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for Signi-Trend change detection.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class SigniTrendChangeDetectionTest {
+  /**
+   * Test that incremental processing on a streaming database, with the data
+   * arriving in two batches, gives the same scores as a single pass.
+   */
+  @Test
+  public void testIncremental() {
+    double[][] data = makeData();
+    final int split = 100;
+
+    Database sdb = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    sdb.initialize();
+    Relation<NumberVector> srel = sdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ChangePoints expect = makeAlgorithm().run(srel);
+
+    StreamingDatabase db = new StreamingDatabase(new ArrayAdapterDatabaseConnection(Arrays.copyOf(data, split)), null, 32, 0, 0);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ChangePoints result = makeAlgorithm().run(db, rel);
+    assertEquals("Objects not ingested.", data.length - split, db.ingest(new ArrayAdapterDatabaseConnection(Arrays.copyOfRange(data, split, data.length)).loadData().asStream()));
+    assertEquals("Window size", data.length, db.getWindowDBIDs().size());
+
+    // Compare the change points, in order:
+    assertTrue("No change points detected.", expect.changepoints.size() > 0);
+    assertEquals("Number of change points", expect.changepoints.size(), result.changepoints.size());
+    for(int i = 0; i < expect.changepoints.size(); i++) {
+      ChangePoint e = expect.changepoints.get(i), r = result.changepoints.get(i);
+      assertEquals("Change point column", e.column, r.column);
+      assertEquals("Change point score", e.score, r.score, 0.);
+    }
+    // Compare the scores, in arrival order:
+    OutlierResult escores = ResultUtil.filterResults(expect.getHierarchy(), expect, OutlierResult.class).get(0);
+    OutlierResult rscores = ResultUtil.filterResults(result.getHierarchy(), result, OutlierResult.class).get(0);
+    DBIDIter eit = srel.iterDBIDs(), rit = db.getWindowDBIDs().iter();
+    for(; eit.valid(); eit.advance(), rit.advance()) {
+      assertTrue("Missing score.", rit.valid());
+      assertEquals("Score", escores.getScores().doubleValue(eit), rscores.getScores().doubleValue(rit), 0.);
+    }
+    assertEquals("Maximum score", escores.getOutlierMeta().getActualMaximum(), rscores.getOutlierMeta().getActualMaximum(), 0.);
+  }
+
+  /**
+   * Make the algorithm.
+   *
+   * @return Algorithm
+   */
+  private static SigniTrendChangeDetection makeAlgorithm() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(SigniTrendChangeDetection.Parameterizer.HALFLIFE_ID, 10);
+    params.addParameter(SigniTrendChangeDetection.Parameterizer.BIAS_ID, 0.1);
+    params.addParameter(SigniTrendChangeDetection.Parameterizer.MINSIGMA_ID, 3.);
+    return ClassGenericsUtil.parameterizeOrAbort(SigniTrendChangeDetection.class, params);
+  }
+
+  /**
+   * Make a noisy time series with level shifts.
+   *
+   * @return Data
+   */
+  private static double[][] makeData() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[300][2];
+    for(int i = 0; i < data.length; i++) {
+      data[i][0] = (i < 150 ? 0. : 5.) + rnd.nextGaussian();
+      data[i][1] = (i < 250 ? 1. : -3.) + rnd.nextGaussian();
+    }
+    return data;
+  }
+}
@@ -33,6 +33,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ApproximationHint;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -49,8 +50,10 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.PatternParameter;
@@ -62,6 +65,10 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * performing a number of queries and comparing them to the results obtained by
  * exact indexing (e.g. linear scanning).
  * 
+ * When approximation factors or work budgets are given, the queries are
+ * repeated with an {@link ApproximationHint} for every setting, and recall and
+ * query time are reported to obtain a recall/latency trade-off curve.
+ * 
  * @author Erich Schubert
  * @since 0.5.5
  * 
@@ -105,6 +112,16 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
    */
   protected Pattern pattern;
 
+  /**
+   * Approximation factors to evaluate, may be {@code null}.
+   */
+  protected double[] epsilons;
+
+  /**
+   * Work budgets to evaluate, may be {@code null}.
+   */
+  protected int[] budgets;
+
   /**
    * Constructor.
    * 
@@ -117,6 +134,23 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
    * @param pattern
    */
   public ValidateApproximativeKNNIndex(DistanceFunction<? super O> distanceFunction, int k, DatabaseConnection queries, double sampling, boolean forcelinear, RandomFactory random, Pattern pattern) {
+    this(distanceFunction, k, queries, sampling, forcelinear, random, pattern, null, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function to use
+   * @param k K parameter
+   * @param queries Query data set (may be null!)
+   * @param sampling Sampling rate
+   * @param random Random factory
+   * @param forcelinear Force the use of linear scanning.
+   * @param pattern
+   * @param epsilons Approximation factors to evaluate (may be null)
+   * @param budgets Work budgets to evaluate (may be null)
+   */
+  public ValidateApproximativeKNNIndex(DistanceFunction<? super O> distanceFunction, int k, DatabaseConnection queries, double sampling, boolean forcelinear, RandomFactory random, Pattern pattern, double[] epsilons, int[] budgets) {
     super(distanceFunction);
     this.k = k;
     this.queries = queries;
@@ -124,6 +158,8 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
     this.forcelinear = forcelinear;
     this.random = random;
     this.pattern = pattern;
+    this.epsilons = epsilons;
+    this.budgets = budgets;
   }
 
   /**
@@ -136,11 +172,6 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
   public Result run(Database database, Relation<O> relation) {
     // Get a distance and kNN query instance.
     DistanceQuery<O> distQuery = database.getDistanceQuery(relation, getDistanceFunction());
-    // Approximate query:
-    KNNQuery<O> knnQuery = database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_OPTIMIZED_ONLY);
-    if(knnQuery == null || knnQuery instanceof LinearScanQuery) {
-      throw new AbortException("Expected an accelerated query, but got a linear scan -- index is not used.");
-    }
     // Exact query:
     KNNQuery<O> truekNNQuery;
     if(forcelinear) {
@@ -149,9 +180,39 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
     else {
       truekNNQuery = database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_EXACT);
     }
+    if(epsilons == null && budgets == null) {
+      validate(database, relation, distQuery, truekNNQuery, null);
+      return null;
+    }
+    // Recall/latency trade-off curve:
+    for(double epsilon : epsilons != null ? epsilons : new double[] { 0. }) {
+      for(int budget : budgets != null ? budgets : new int[] { 0 }) {
+        validate(database, relation, distQuery, truekNNQuery, new ApproximationHint(epsilon, budget));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Validate the approximate queries for one setting.
+   * 
+   * @param database Database
+   * @param relation Relation
+   * @param distQuery Distance query
+   * @param truekNNQuery Reference query
+   * @param approx Approximation hint, may be {@code null}
+   */
+  private void validate(Database database, Relation<O> relation, DistanceQuery<O> distQuery, KNNQuery<O> truekNNQuery, ApproximationHint approx) {
+    // Approximate query:
+    KNNQuery<O> knnQuery = approx == null ? database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_OPTIMIZED_ONLY) //
+        : database.getKNNQuery(distQuery, k, DatabaseQuery.HINT_OPTIMIZED_ONLY, approx);
+    if(knnQuery == null || knnQuery instanceof LinearScanQuery) {
+      throw new AbortException("Expected an accelerated query, but got a linear scan -- index is not used.");
+    }
     if(knnQuery.getClass().equals(truekNNQuery.getClass())) {
       LOG.warning("Query classes are the same. This experiment may be invalid!");
     }
+    final String prefix = approx != null ? approx.toString() + " " : "";
 
     // No query set - use original database.
     if(queries == null || pattern != null) {
@@ -164,10 +225,13 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       MeanVariance mvdist = new MeanVariance(), mvdaerr = new MeanVariance(),
           mvdrerr = new MeanVariance();
       int misses = 0;
+      long time = 0L;
       for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
         if(pattern == null || pattern.matcher(lrel.get(iditer)).find()) {
           // Query index:
+          long start = System.nanoTime();
           KNNList knns = knnQuery.getKNNForDBID(iditer, k);
+          time += System.nanoTime() - start;
           // Query reference:
           KNNList trueknns = truekNNQuery.getKNNForDBID(iditer, k);
 
@@ -195,15 +259,16 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       }
       LOG.ensureCompleted(prog);
       if(LOG.isStatistics()) {
-        LOG.statistics("Mean number of results: " + mv.getMean() + " +- " + mv.getNaiveStddev());
-        LOG.statistics("Recall of true results: " + mvrec.getMean() + " +- " + mvrec.getNaiveStddev());
+        LOG.statistics(prefix + "Mean number of results: " + mv.getMean() + " +- " + mv.getNaiveStddev());
+        LOG.statistics(prefix + "Recall of true results: " + mvrec.getMean() + " +- " + mvrec.getNaiveStddev());
+        LOG.statistics(prefix + "Mean query time (ms): " + (time * 1e-6 / mv.getCount()));
         if(mvdist.getCount() > 0) {
-          LOG.statistics("Mean k-distance: " + mvdist.getMean() + " +- " + mvdist.getNaiveStddev());
-          LOG.statistics("Mean absolute k-error: " + mvdaerr.getMean() + " +- " + mvdaerr.getNaiveStddev());
-          LOG.statistics("Mean relative k-error: " + mvdrerr.getMean() + " +- " + mvdrerr.getNaiveStddev());
+          LOG.statistics(prefix + "Mean k-distance: " + mvdist.getMean() + " +- " + mvdist.getNaiveStddev());
+          LOG.statistics(prefix + "Mean absolute k-error: " + mvdaerr.getMean() + " +- " + mvdaerr.getNaiveStddev());
+          LOG.statistics(prefix + "Mean relative k-error: " + mvdrerr.getMean() + " +- " + mvdrerr.getNaiveStddev());
         }
         if(misses > 0) {
-          LOG.statistics(String.format("Number of queries that returned less than k=%d objects: %d (%.2f%%)", k, misses, misses * 100. / mv.getCount()));
+          LOG.statistics(prefix + String.format("Number of queries that returned less than k=%d objects: %d (%.2f%%)", k, misses, misses * 100. / mv.getCount()));
         }
       }
     }
@@ -230,6 +295,7 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       MeanVariance mvdist = new MeanVariance(), mvdaerr = new MeanVariance(),
           mvdrerr = new MeanVariance();
       int misses = 0;
+      long time = 0L;
       for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
         int off = sids.binarySearch(iditer);
         assert (off >= 0);
@@ -237,7 +303,9 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
         O o = (O) bundle.data(off, col);
 
         // Query index:
+        long start = System.nanoTime();
         KNNList knns = knnQuery.getKNNForObject(o, k);
+        time += System.nanoTime() - start;
         // Query reference:
         KNNList trueknns = truekNNQuery.getKNNForObject(o, k);
 
@@ -264,18 +332,18 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       }
       LOG.ensureCompleted(prog);
       if(LOG.isStatistics()) {
-        LOG.statistics("Mean number of results: " + mv.getMean() + " +- " + mv.getNaiveStddev());
-        LOG.statistics("Recall of true results: " + mvrec.getMean() + " +- " + mvrec.getNaiveStddev());
+        LOG.statistics(prefix + "Mean number of results: " + mv.getMean() + " +- " + mv.getNaiveStddev());
+        LOG.statistics(prefix + "Recall of true results: " + mvrec.getMean() + " +- " + mvrec.getNaiveStddev());
+        LOG.statistics(prefix + "Mean query time (ms): " + (time * 1e-6 / mv.getCount()));
         if(mvdist.getCount() > 0) {
-          LOG.statistics("Mean absolute k-error: " + mvdaerr.getMean() + " +- " + mvdaerr.getNaiveStddev());
-          LOG.statistics("Mean relative k-error: " + mvdrerr.getMean() + " +- " + mvdrerr.getNaiveStddev());
+          LOG.statistics(prefix + "Mean absolute k-error: " + mvdaerr.getMean() + " +- " + mvdaerr.getNaiveStddev());
+          LOG.statistics(prefix + "Mean relative k-error: " + mvdrerr.getMean() + " +- " + mvdrerr.getNaiveStddev());
         }
         if(misses > 0) {
-          LOG.statistics(String.format("Number of queries that returned less than k=%d objects: %d (%.2f%%)", k, misses, misses * 100. / mv.getCount()));
+          LOG.statistics(prefix + String.format("Number of queries that returned less than k=%d objects: %d (%.2f%%)", k, misses, misses * 100. / mv.getCount()));
         }
       }
     }
-    return null;
   }
 
   @Override
@@ -328,6 +396,16 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
      */
     public static final OptionID PATTERN_ID = new OptionID("validateknn.pattern", "Pattern to select query points.");
 
+    /**
+     * Approximation factors to evaluate.
+     */
+    public static final OptionID EPSILON_ID = new OptionID("validateknn.epsilon", "Approximation factors to evaluate, to obtain a recall/latency trade-off curve.");
+
+    /**
+     * Work budgets to evaluate.
+     */
+    public static final OptionID BUDGET_ID = new OptionID("validateknn.budget", "Work budgets (number of candidates to refine, 0 for unlimited) to evaluate, to obtain a recall/latency trade-off curve.");
+
     /**
      * K parameter
      */
@@ -358,6 +436,16 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
      */
     protected Pattern pattern;
 
+    /**
+     * Approximation factors to evaluate.
+     */
+    protected double[] epsilons;
+
+    /**
+     * Work budgets to evaluate.
+     */
+    protected int[] budgets;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -392,11 +480,23 @@ public class ValidateApproximativeKNNIndex<O> extends AbstractDistanceBasedAlgor
       if(config.grab(randomP)) {
         random = randomP.getValue();
       }
+      DoubleListParameter epsilonP = new DoubleListParameter(EPSILON_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE_LIST) //
+          .setOptional(true);
+      if(config.grab(epsilonP)) {
+        epsilons = epsilonP.getValue().clone();
+      }
+      IntListParameter budgetP = new IntListParameter(BUDGET_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT_LIST) //
+          .setOptional(true);
+      if(config.grab(budgetP)) {
+        budgets = budgetP.getValue().clone();
+      }
     }
 
     @Override
     protected ValidateApproximativeKNNIndex<O> makeInstance() {
-      return new ValidateApproximativeKNNIndex<>(distanceFunction, k, queries, sampling, forcelinear, random, pattern);
+      return new ValidateApproximativeKNNIndex<>(distanceFunction, k, queries, sampling, forcelinear, random, pattern, epsilons, budgets);
     }
   }
 }
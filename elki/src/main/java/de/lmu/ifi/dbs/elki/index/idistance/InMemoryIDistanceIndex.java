@@ -27,7 +27,9 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -38,6 +40,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
@@ -69,6 +72,10 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
  * essentially here, you only need to query every reference point list, not just
  * the best.
  * 
+ * Insertions and deletions maintain the sorted lists directly. Removing a
+ * reference point, or inserting into an empty index, chooses new reference
+ * points and rebuilds the index.
+ * 
  * Reference:
  * <p>
  * C. Yu, B. C. Ooi, K. L. Tan, H. V. Jagadish<br />
@@ -89,7 +96,7 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
  * @param <O> Object type
  */
 @Reference(authors = "C. Yu, B. C. Ooi, K. L. Tan, H. V. Jagadish", title = "Indexing the distance: An efficient method to knn processing", booktitle = "In Proceedings of the 27th International Conference on Very Large Data Bases", url = "http://www.vldb.org/conf/2001/P421.pdf")
-public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -148,6 +155,11 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
 
   @Override
   public void initialize() {
+    if(relation.size() == 0) {
+      referencepoints = DBIDUtil.EMPTYDBIDS;
+      index = new ModifiableDoubleDBIDList[0];
+      return;
+    }
     referencepoints = DBIDUtil.ensureArray(initialization.chooseInitialMedoids(numref, relation.getDBIDs(), distanceQuery));
     final int k = referencepoints.size(); // should be the same k anyway.
     index = new ModifiableDoubleDBIDList[k];
@@ -176,6 +188,96 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     }
   }
 
+  /**
+   * Find the closest reference point of an object.
+   * 
+   * @param id Object
+   * @return Distance and offset of the reference point
+   */
+  private DoubleIntPair closestReference(DBIDRef id) {
+    double bestd = Double.POSITIVE_INFINITY;
+    int besti = -1;
+    for(DBIDArrayIter riter = referencepoints.iter(); riter.valid(); riter.advance()) {
+      double dist = distanceQuery.distance(id, riter);
+      if(dist < bestd) {
+        bestd = dist;
+        besti = riter.getOffset();
+      }
+    }
+    return new DoubleIntPair(bestd, besti);
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(referencepoints.size() == 0) {
+      initialize();
+      return;
+    }
+    DoubleIntPair best = closestReference(id);
+    final ModifiableDoubleDBIDList list = index[best.second];
+    // Insertion sort step, to keep the list sorted.
+    list.add(best.first, id);
+    DoubleDBIDListIter it = list.iter();
+    for(int i = list.size() - 1; i > 0 && it.seek(i - 1).doubleValue() > best.first; i--) {
+      list.swap(i - 1, i);
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    // Rebuilding is cheaper than many insertion steps.
+    if(referencepoints.size() == 0 || ids.size() > (relation.size() >> 1)) {
+      initialize();
+      return;
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insert(iter);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(referencepoints.contains(id)) {
+      initialize(); // Choose new reference points.
+      return true;
+    }
+    DoubleIntPair best = closestReference(id);
+    if(best.second < 0) {
+      return false;
+    }
+    final ModifiableDoubleDBIDList list = index[best.second];
+    DoubleDBIDListIter it = list.iter();
+    binarySearch(list, it, best.first);
+    final int pos = it.getOffset();
+    // Scan all entries with the same distance, in both directions.
+    for(; it.valid() && it.doubleValue() >= best.first; it.retract()) {
+      if(DBIDUtil.equal(it, id)) {
+        list.remove(it.getOffset());
+        return true;
+      }
+    }
+    for(it.seek(pos + 1); it.valid() && it.doubleValue() <= best.first; it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        list.remove(it.getOffset());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      if(referencepoints.contains(iter)) {
+        initialize(); // Choose new reference points.
+        return;
+      }
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
+
   @Override
   public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     // Query on the relation we index
@@ -24,13 +24,17 @@ import de.lmu.ifi.dbs.elki.algorithm.KNNJoin;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.JoinIndex;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
 
 /**
  * Class to materialize the kNN using a spatial join on an R-tree.
  *
+ * If an index supports self-joins (see {@link JoinIndex}), its join is used.
+ *
  * @author Erich Schubert
  * @since 0.5.0
  *
@@ -55,6 +59,13 @@ public class KNNJoinMaterializeKNNPreprocessor<V extends NumberVector> extends A
 
   @Override
   protected void preprocess() {
+    // Prefer a self-join of an index, such as the dual-tree join of R*-trees.
+    for(It<JoinIndex<V>> it = relation.getHierarchy().iterChildrenReverse(relation).filter(JoinIndex.class); it.valid(); it.advance()) {
+      storage = it.get().kNNSelfJoin(distanceQuery, k);
+      if(storage != null) {
+        return;
+      }
+    }
     // Run KNNJoin
     KNNJoin<V, ?, ?> knnjoin = new KNNJoin<V, RStarTreeNode, SpatialEntry>(distanceFunction, k);
     storage = knnjoin.run(relation, relation.getDBIDs());
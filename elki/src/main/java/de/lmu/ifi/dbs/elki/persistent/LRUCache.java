@@ -160,6 +160,11 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
     return file.getPageSize();
   }
 
+  @Override
+  public boolean usesBinaryLayout() {
+    return file.usesBinaryLayout();
+  }
+
   @Override
   public boolean initialize(PageHeader header) {
     boolean created = file.initialize(header);
@@ -195,17 +200,20 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   @Override
   public void close() {
     flush();
+    map.clear();
     file.close();
   }
 
   /**
-   * Flushes this caches by writing any entry to the underlying file.
+   * Flushes this caches by writing any modified entry to the underlying file.
+   * The entries remain in the cache.
    */
+  @Override
   public void flush() {
     for(P object : map.values()) {
       expirePage(object);
     }
-    map.clear();
+    file.flush();
   }
 
   /**
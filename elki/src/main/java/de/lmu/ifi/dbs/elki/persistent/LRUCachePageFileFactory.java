@@ -28,12 +28,15 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
- * Page file factory for memory page files.
+ * Page file factory for cached page files.
+ *
+ * Uses the scan-resistant {@link TwoQueueCache}; the name is kept for
+ * compatibility.
  * 
  * @author Erich Schubert
  * @since 0.6.0
  * 
- * @apiviz.has LRUCache
+ * @apiviz.has TwoQueueCache
  * @apiviz.composedOf PageFileFactory
  * 
  * @param <P> Page type
@@ -49,22 +52,46 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
    */
   private int cacheSize;
 
+  /**
+   * Size of pinned directory pages, in bytes.
+   */
+  private int pinSize;
+
+  /**
+   * Number of pages to prefetch per expanded node.
+   */
+  private int prefetch;
+
   /**
    * Constructor.
    * 
    * @param pageFileFactory Inner page file
    * @param cacheSize Size of cache, in bytes.
+   * @param pinSize Size of pinned directory pages, in bytes.
+   * @param prefetch Number of pages to prefetch per expanded node.
    */
-  public LRUCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize) {
+  public LRUCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize, int pinSize, int prefetch) {
     super();
     this.cacheSize = cacheSize;
+    this.pinSize = pinSize;
+    this.prefetch = prefetch;
     this.pageFileFactory = pageFileFactory;
   }
 
+  /**
+   * Constructor.
+   * 
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   */
+  public LRUCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize) {
+    this(pageFileFactory, cacheSize, 0, 0);
+  }
+
   @Override
   public PageFile<P> newPageFile(Class<P> cls) {
     PageFile<P> inner = pageFileFactory.newPageFile(cls);
-    return new LRUCache<>(cacheSize, inner);
+    return new TwoQueueCache<>(cacheSize, pinSize, prefetch, inner);
   }
 
   @Override
@@ -100,6 +127,30 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
      */
     public static final OptionID PAGEFILE_ID = new OptionID("pagefile.pagefile", "The backing pagefile for the cache.");
 
+    /**
+     * Parameter to specify the memory for pinning the top levels of the tree,
+     * in bytes.
+     * <p>
+     * Default value: 0
+     * </p>
+     * <p>
+     * Key: {@code -pagefile.pinsize}
+     * </p>
+     */
+    public static final OptionID PIN_SIZE_ID = new OptionID("pagefile.pinsize", "The size of directory pages pinned in memory in bytes, in addition to the cache. These will usually be the top levels of the tree.");
+
+    /**
+     * Parameter to specify the number of child pages to prefetch
+     * asynchronously when a node is expanded.
+     * <p>
+     * Default value: 0
+     * </p>
+     * <p>
+     * Key: {@code -pagefile.prefetch}
+     * </p>
+     */
+    public static final OptionID PREFETCH_ID = new OptionID("pagefile.prefetch", "The number of most promising child pages to read asynchronously when a node is expanded in a search.");
+
     /**
      * Inner page file factory.
      */
@@ -110,6 +161,16 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
      */
     protected int cacheSize;
 
+    /**
+     * Size of pinned directory pages, in bytes.
+     */
+    protected int pinSize;
+
+    /**
+     * Number of pages to prefetch.
+     */
+    protected int prefetch;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -123,11 +184,23 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
       if(config.grab(cacheSizeP)) {
         cacheSize = cacheSizeP.getValue();
       }
+
+      IntParameter pinSizeP = new IntParameter(PIN_SIZE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(pinSizeP)) {
+        pinSize = pinSizeP.getValue();
+      }
+
+      IntParameter prefetchP = new IntParameter(PREFETCH_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(prefetchP)) {
+        prefetch = prefetchP.getValue();
+      }
     }
 
     @Override
     protected LRUCachePageFileFactory<Page> makeInstance() {
-      return new LRUCachePageFileFactory<>(pageFileFactory, cacheSize);
+      return new LRUCachePageFileFactory<>(pageFileFactory, cacheSize, pinSize, prefetch);
     }
   }
 }
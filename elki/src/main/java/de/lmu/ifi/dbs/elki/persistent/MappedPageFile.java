@@ -0,0 +1,557 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferInputStream;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferOutputStream;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * A page file that memory-maps the index file, and decodes pages directly from
+ * the mapped buffer.
+ *
+ * Compared to {@link PersistentPageFile}, reading a page does neither need a
+ * system call nor a temporary byte array. Once the operating system cache is
+ * warm, page accesses are mostly decoding cost.
+ *
+ * The file is mapped in segments of a fixed number of pages, and the mapping
+ * grows by one segment at a time as pages are added. Pages that implement
+ * {@link ByteBufferPage} are stored in their binary layout (see
+ * {@link ByteBufferPageSerializer}), all other pages in the same format as
+ * {@link PersistentPageFile}. Files written by {@link PersistentPageFile} can
+ * therefore be opened, and converted to the binary layout with
+ * {@link #migrate()}. The version of the file format is stored directly after
+ * the header, in the unused part of the reserved header pages; files without
+ * this marker were written by {@link PersistentPageFile}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ * @apiviz.uses ByteBufferSerializer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page (in serialized pages).
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page (in serialized pages).
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * First four bytes of a Java serialization stream.
+   */
+  private static final int STREAM_HEADER = (ObjectStreamConstants.STREAM_MAGIC << 16) | ObjectStreamConstants.STREAM_VERSION;
+
+  /**
+   * Serialized form of an empty page, as in {@link PersistentPageFile}.
+   */
+  private static final byte[] EMPTY_BYTES;
+
+  static {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeInt(EMPTY_PAGE);
+    }
+    catch(IOException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+    EMPTY_BYTES = baos.toByteArray();
+  }
+
+  /**
+   * Magic number of the file format marker, without the version.
+   */
+  private static final int FORMAT_MAGIC = 0x454D0000;
+
+  /**
+   * Current version of the file format.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  /**
+   * Default segment size in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Binary page serializer, may be {@code null}.
+   */
+  private final ByteBufferSerializer<P> serializer;
+
+  /**
+   * Number of pages per mapped segment.
+   */
+  private final int segmentPages;
+
+  /**
+   * Mapped segments.
+   */
+  private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private final boolean existed;
+
+  /**
+   * Convert serialized pages to the binary layout when opening.
+   */
+  private final boolean migrate;
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param pageclass Page class
+   * @param serializer Binary page serializer, {@code null} to use the
+   *        {@link java.io.Externalizable} methods only
+   * @param segmentSize Segment size in bytes (rounded down to full pages)
+   * @param migrate Convert existing serialized pages to the binary layout
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass, ByteBufferSerializer<P> serializer, int segmentSize, boolean migrate) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    this.serializer = serializer;
+    this.segmentPages = Math.max(1, segmentSize / pageSize);
+    this.migrate = migrate;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading mapped page file.", e);
+    }
+  }
+
+  /**
+   * Constructor, using Java serialization of the pages.
+   *
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param pageclass Page class
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    this(pageSize, fileName, pageclass, null, DEFAULT_SEGMENT_SIZE, false);
+  }
+
+  /**
+   * Get a buffer for a single page, mapping more of the file as necessary.
+   *
+   * @param pageID Page id
+   * @return Buffer positioned at the page, with the page size as limit
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final int seg = pageID / segmentPages;
+    MappedByteBuffer[] segs = segments;
+    if(seg >= segs.length || segs[seg] == null) {
+      segs = mapSegment(seg);
+    }
+    ByteBuffer buf = segs[seg].duplicate();
+    final int off = (pageID - seg * segmentPages) * pageSize;
+    buf.limit(off + pageSize).position(off);
+    return buf.slice();
+  }
+
+  /**
+   * Map another segment of the file.
+   *
+   * @param seg Segment number
+   * @return Segments
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer[] mapSegment(int seg) throws IOException {
+    MappedByteBuffer[] segs = segments;
+    if(seg >= segs.length) {
+      segs = Arrays.copyOf(segs, Math.max(seg + 1, segs.length << 1));
+    }
+    if(segs[seg] == null) {
+      final long segbytes = segmentPages * (long) pageSize;
+      final long start = header.getReservedPages() * (long) pageSize + seg * segbytes;
+      // Mapping beyond the end of the file will grow the file.
+      segs[seg] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, start, segbytes);
+    }
+    return segments = segs;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      ByteBuffer buf = pageBuffer(pageID);
+      final int head = buf.getInt(0);
+      if(head == STREAM_HEADER) {
+        return readSerialized(buf);
+      }
+      if(head == 0) {
+        return null; // Never written.
+      }
+      if(serializer == null) {
+        throw new IllegalArgumentException("Unknown page format in page " + pageID);
+      }
+      return serializer.fromByteBuffer(buf);
+    }
+    catch(IOException e) {
+      throw new AbortException("IOException occurred during reading of page " + pageID, e);
+    }
+  }
+
+  /**
+   * Read a page using Java serialization.
+   *
+   * @param buf Buffer
+   * @return Page, or {@code null} for empty pages
+   * @throws IOException on read errors
+   */
+  private P readSerialized(ByteBuffer buf) throws IOException {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buf))) {
+      final int type = ois.readInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(ois);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    try {
+      super.deletePage(pageID);
+      countWrite();
+      pageBuffer(pageID).put(EMPTY_BYTES);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing to page file.", e);
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      ByteBuffer buf = pageBuffer(pageID);
+      if(serializer != null && ByteBufferPageSerializer.hasBinaryLayout(page)) {
+        serializer.toByteBuffer(buf, page);
+        page.setDirty(false);
+        return;
+      }
+      try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufferOutputStream(buf))) {
+        oos.writeInt(FILLED_PAGE);
+        page.writeExternal(oos);
+      }
+      page.setDirty(false);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Convert all pages stored with Java serialization to the binary layout.
+   *
+   * @return Number of pages converted
+   */
+  public int migrate() {
+    if(serializer == null) {
+      return 0;
+    }
+    int converted = 0;
+    try {
+      for(int i = 0; i < nextPageID; i++) {
+        if(pageBuffer(i).getInt(0) != STREAM_HEADER) {
+          continue;
+        }
+        P page = readPage(i);
+        if(page != null && ByteBufferPageSerializer.hasBinaryLayout(page)) {
+          writePage(i, page);
+          ++converted;
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error migrating the page file.", e);
+    }
+    return converted;
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      // Do not clear the file, it may be reopened.
+      if(unmapAll()) {
+        // Drop the unused tail of the last segment, and old empty page lists.
+        file.setLength((header.getReservedPages() + (long) nextPageID) * pageSize);
+      }
+      writeHeader();
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("Error closing page file.", e);
+    }
+  }
+
+  @Override
+  public boolean usesBinaryLayout() {
+    return serializer != null;
+  }
+
+  /**
+   * Force the mapped pages to disk, and write the list of empty pages and the
+   * header, so that the file can be reopened. The file remains mapped, and is
+   * therefore not truncated; the list of empty pages is appended.
+   */
+  @Override
+  public synchronized void flush() {
+    try {
+      for(MappedByteBuffer seg : segments) {
+        if(seg != null) {
+          seg.force();
+        }
+      }
+      writeHeader();
+    }
+    catch(IOException e) {
+      throw new AbortException("Error flushing page file.", e);
+    }
+  }
+
+  /**
+   * Force all segments to disk and unmap them. The file must only be truncated
+   * if this succeeded, truncating a mapped region is not portable.
+   *
+   * @return {@code true} if all segments were unmapped
+   */
+  private boolean unmapAll() {
+    boolean unmapped = true;
+    for(MappedByteBuffer seg : segments) {
+      unmapped &= ByteArrayUtil.unmapByteBuffer(seg);
+    }
+    segments = new MappedByteBuffer[0];
+    return unmapped;
+  }
+
+  /**
+   * Write the list of empty pages to the end of the file, and the header.
+   *
+   * @throws IOException on write errors
+   */
+  private void writeHeader() throws IOException {
+    if(header instanceof TreeIndexHeader) {
+      // write the list of empty pages to the end of the file
+      ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+    }
+    header.writeHeader(file);
+    writeFormat();
+  }
+
+  /**
+   * Write the format marker directly after the header, if the reserved header
+   * pages have room for it.
+   *
+   * @throws IOException on write errors
+   */
+  private void writeFormat() throws IOException {
+    // Headers do not always report their size exactly, use the file position.
+    final long pos = file.getFilePointer();
+    if(pos + Integer.BYTES <= header.getReservedPages() * (long) pageSize) {
+      file.writeInt(FORMAT_MAGIC | FORMAT_VERSION);
+    }
+  }
+
+  /**
+   * Check the format marker of an existing file, directly after the header.
+   *
+   * @throws IOException on read errors
+   */
+  private void checkFormat() throws IOException {
+    final long pos = file.getFilePointer();
+    if(pos + Integer.BYTES > Math.min(file.length(), header.getReservedPages() * (long) pageSize)) {
+      return;
+    }
+    final int marker = file.readInt();
+    if(marker == 0) {
+      return; // Written by PersistentPageFile.
+    }
+    if((marker & 0xFFFF0000) != FORMAT_MAGIC) {
+      throw new AbortException("Unknown page file format.");
+    }
+    if((marker & 0xFFFF) > FORMAT_VERSION) {
+      throw new AbortException("Page file format version " + (marker & 0xFFFF) + " is not supported, maximum version: " + FORMAT_VERSION);
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    try {
+      if(!unmapAll()) {
+        throw new AbortException("Cannot clear a page file that is still mapped.");
+      }
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new AbortException("Error clearing page file.", e);
+    }
+  }
+
+  /**
+   * Set the next page id to the given value. Empty pages at or beyond this id
+   * are discarded.
+   *
+   * @param next_page_id the id of the next page to be inserted
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        checkFormat();
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new AbortException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+          // Remove the empty page listing, pages may be appended.
+          file.setLength((header.getReservedPages() + (long) nextPageID) * pageSize);
+        }
+        else { // must scan complete file
+          final long numpages = file.length() / pageSize - header.getReservedPages();
+          for(int i = 0; i < numpages; i++) {
+            if(isEmpty(pageBuffer(i))) {
+              emptyPages.push(i);
+            }
+            else {
+              nextPageID = i + 1;
+            }
+          }
+        }
+        if(migrate) {
+          final int converted = migrate();
+          if(LOG.isVerbose()) {
+            LOG.verbose("Converted " + converted + " pages to the binary page layout.");
+          }
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+        writeFormat();
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("IOException occurred.", e);
+    }
+    return existed;
+  }
+
+  /**
+   * Test whether a stored page is empty.
+   *
+   * @param buf Page buffer
+   * @return {@code true} if empty
+   * @throws IOException on read errors
+   */
+  private static boolean isEmpty(ByteBuffer buf) throws IOException {
+    final int head = buf.getInt(0);
+    if(head == STREAM_HEADER) {
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buf))) {
+        return ois.readInt() == EMPTY_PAGE;
+      }
+    }
+    return head == 0;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
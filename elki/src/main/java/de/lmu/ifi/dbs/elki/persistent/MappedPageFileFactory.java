@@ -0,0 +1,160 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Page file factory for memory-mapped page files.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has MappedPageFile
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFileFactory<P extends ExternalizablePage> extends AbstractPageFileFactory<P> {
+  /**
+   * File name.
+   */
+  private String fileName;
+
+  /**
+   * Segment size in bytes.
+   */
+  private int segmentSize;
+
+  /**
+   * Convert serialized pages to the binary layout.
+   */
+  private boolean migrate;
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param segmentSize Size of the mapped segments in bytes
+   * @param migrate Convert serialized pages of an existing file to the binary
+   *        layout
+   */
+  public MappedPageFileFactory(int pageSize, String fileName, int segmentSize, boolean migrate) {
+    super(pageSize);
+    this.fileName = fileName;
+    this.segmentSize = segmentSize;
+    this.migrate = migrate;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    if(fileName == null) {
+      throw new AbortException("Disk-backed page file may only be instantiated once!");
+    }
+    MappedPageFile<P> pfile = new MappedPageFile<>(pageSize, fileName, cls, makeSerializer(cls), segmentSize, migrate);
+    fileName = null; // To avoid double instantiation.
+    return pfile;
+  }
+
+  /**
+   * Choose the binary serializer for a page class.
+   *
+   * @param cls Page class
+   * @return Serializer, or {@code null} to use Java serialization
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  protected ByteBufferSerializer<P> makeSerializer(Class<P> cls) {
+    if(ByteBufferPage.class.isAssignableFrom(cls)) {
+      return (ByteBufferSerializer<P>) new ByteBufferPageSerializer(cls);
+    }
+    return null;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @apiviz.exclude
+   *
+   * @author Erich Schubert
+   */
+  public static class Parameterizer extends AbstractPageFileFactory.Parameterizer<ExternalizablePage> {
+    /**
+     * Size of the mapped segments.
+     * <p>
+     * Key: {@code -pagefile.segmentsize}
+     * </p>
+     */
+    public static final OptionID SEGMENT_SIZE_ID = new OptionID("pagefile.segmentsize", "The size of each memory-mapped segment of the page file, in bytes.");
+
+    /**
+     * Convert existing files to the binary page layout.
+     * <p>
+     * Key: {@code -pagefile.migrate}
+     * </p>
+     */
+    public static final OptionID MIGRATE_ID = new OptionID("pagefile.migrate", "Convert the pages of an existing file written with Java serialization to the binary page layout.");
+
+    /**
+     * File name.
+     */
+    private String fileName;
+
+    /**
+     * Segment size.
+     */
+    private int segmentSize;
+
+    /**
+     * Migrate existing files.
+     */
+    private boolean migrate;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter fileNameP = new FileParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(fileNameP)) {
+        fileName = fileNameP.getValue().getPath();
+      }
+      IntParameter segmentP = new IntParameter(SEGMENT_SIZE_ID, MappedPageFile.DEFAULT_SEGMENT_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(segmentP)) {
+        segmentSize = segmentP.intValue();
+      }
+      Flag migrateF = new Flag(MIGRATE_ID);
+      if(config.grab(migrateF)) {
+        migrate = migrateF.isTrue();
+      }
+    }
+
+    @Override
+    protected MappedPageFileFactory<ExternalizablePage> makeInstance() {
+      return new MappedPageFileFactory<>(pageSize, fileName, segmentSize, migrate);
+    }
+  }
+}
@@ -175,14 +175,31 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   @Override
   public void close() {
     try {
-      super.close();
-      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
+      // Do not clear the file, it may be reopened.
+      flush();
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Write the list of empty pages and the header, so that the file can be
+   * reopened. Pages are always written directly to the file.
+   */
+  @Override
+  public void flush() {
+    try {
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // Drop a previously written list of empty pages.
+        file.setLength((header.getReservedPages() + (long) nextPageID) * pageSize);
         // write the list of empty pages to the end of the file
-        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
       }
-      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       header.writeHeader(file);
-      file.close();
     }
     catch(IOException e) {
       throw new RuntimeException(e);
@@ -0,0 +1,664 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import de.lmu.ifi.dbs.elki.index.tree.Node;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Scan-resistant page cache, using the 2Q replacement strategy.
+ *
+ * Pages read for the first time enter a small FIFO queue only. They are
+ * promoted to the main LRU queue when they are requested again after they were
+ * dropped from the FIFO queue, which is detected using a queue of recently
+ * dropped page ids. A single large scan will therefore only replace the pages
+ * in the FIFO queue, but not the frequently used pages.
+ *
+ * The cache is split into independently locked segments by page id, so that
+ * concurrent readers of different pages do not block each other. Directory
+ * pages can be pinned in memory up to a separate budget; as trees are always
+ * traversed from the root, this budget is filled with the top levels first.
+ *
+ * If a prefetch depth is set, pages hinted by {@link #prefetch(int)} are loaded
+ * by a background thread into the FIFO queue; at most four times the depth of
+ * such reads may be pending, further hints are ignored.
+ *
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement
+ * Algorithm<br />
+ * Proc. 20th Int. Conf. on Very Large Data Bases (VLDB'94)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ *
+ * @param <P> Page type
+ */
+@Reference(authors = "T. Johnson, D. Shasha", //
+    title = "2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm", //
+    booktitle = "Proc. 20th Int. Conf. on Very Large Data Bases (VLDB'94)", //
+    url = "http://www.vldb.org/conf/1994/P439.PDF")
+public class TwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueueCache.class);
+
+  /**
+   * Maximum number of segments.
+   */
+  private static final int MAX_SEGMENTS = 16;
+
+  /**
+   * Minimum number of pages per segment.
+   */
+  private static final int MIN_SEGMENT_PAGES = 64;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Size of pinned directory pages in bytes.
+   */
+  protected int pinSizeBytes;
+
+  /**
+   * Maximum number of pinned pages.
+   */
+  private int pinSize;
+
+  /**
+   * Pinned pages.
+   */
+  private ConcurrentHashMap<Integer, P> pinned;
+
+  /**
+   * Cache segments.
+   */
+  private Segment[] segments;
+
+  /**
+   * Number of pages to prefetch per expanded node.
+   */
+  protected int prefetchDepth;
+
+  /**
+   * Background thread for prefetching, created on demand.
+   */
+  private ExecutorService prefetcher;
+
+  /**
+   * Pages currently queued for prefetching.
+   */
+  private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The underlying file of this cache. If a page is dropped it is written to
+   * the file. All access to the file is synchronized on the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param pinSizeBytes the maximum number of bytes for pinned directory pages
+   * @param prefetchDepth the number of pages to prefetch per expanded node
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public TwoQueueCache(int cacheSizeBytes, int pinSizeBytes, int prefetchDepth, PageFile<P> file) {
+    super();
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.pinSizeBytes = pinSizeBytes;
+    this.prefetchDepth = prefetchDepth;
+    this.file = file;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param pinSizeBytes the maximum number of bytes for pinned directory pages
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public TwoQueueCache(int cacheSizeBytes, int pinSizeBytes, PageFile<P> file) {
+    this(cacheSizeBytes, pinSizeBytes, 0, file);
+  }
+
+  /**
+   * Get the segment responsible for a page.
+   *
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment segment(int pageID) {
+    // Spread consecutive page ids, which are often read together.
+    final int h = pageID * 0x9E3779B9;
+    return segments[(h >>> 16) & (segments.length - 1)];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    P page = pinned.get(pageID);
+    return page != null ? page : segment(pageID).get(pageID);
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    if(pinned.replace(pageID, page) == null) {
+      segment(pageID).put(pageID, page);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    if(pinned.remove(pageID) == null) {
+      segment(pageID).remove(pageID);
+    }
+    synchronized(file) {
+      file.deletePage(pageID);
+    }
+  }
+
+  @Override
+  public void prefetch(int pageID) {
+    if(prefetchDepth <= 0 || pending.size() >= prefetchDepth << 2 || isCached(pageID) || !pending.add(pageID)) {
+      return;
+    }
+    final Segment seg = segment(pageID);
+    synchronized(this) {
+      if(prefetcher == null) {
+        prefetcher = Executors.newSingleThreadExecutor(r -> {
+          Thread t = new Thread(r, "ELKI page prefetcher");
+          t.setDaemon(true);
+          return t;
+        });
+      }
+    }
+    prefetcher.execute(() -> {
+      try {
+        seg.load(pageID);
+      }
+      finally {
+        pending.remove(pageID);
+      }
+    });
+  }
+
+  /**
+   * Test if a page is currently held in memory.
+   *
+   * @param pageID Page id
+   * @return {@code true} if the page is cached or pinned
+   */
+  boolean isCached(int pageID) {
+    return pinned.containsKey(pageID) || segment(pageID).contains(pageID);
+  }
+
+  @Override
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  @Override
+  public boolean usesBinaryLayout() {
+    return file.usesBinaryLayout();
+  }
+
+  /**
+   * Try to pin a page read from the backing file.
+   *
+   * @param pageID Page id
+   * @param page Page
+   * @return {@code true} if the page was pinned
+   */
+  private boolean pin(int pageID, P page) {
+    if(pinned.size() >= pinSize || !(page instanceof Node) || ((Node<?>) page).isLeaf()) {
+      return false;
+    }
+    synchronized(pinned) {
+      if(pinned.size() >= pinSize) {
+        return false;
+      }
+      pinned.put(pageID, page);
+      return true;
+    }
+  }
+
+  /**
+   * Read a page from the backing file.
+   *
+   * @param pageID Page id
+   * @return Page
+   */
+  private P readBacking(int pageID) {
+    synchronized(file) {
+      return file.readPage(pageID);
+    }
+  }
+
+  /**
+   * Write page through to disk, if modified.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Write to backing: " + page.getPageID());
+      }
+      synchronized(file) {
+        file.writePage(page);
+      }
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    this.pinSize = pinSizeBytes / header.getPageSize();
+    this.pinned = new ConcurrentHashMap<>(Math.min(pinSize, 1024));
+    final int nseg = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, cacheSize / MIN_SEGMENT_PAGES)));
+    this.segments = (Segment[]) new TwoQueueCache<?>.Segment[nseg];
+    for(int i = 0; i < nseg; i++) {
+      // Distribute the remainder over the first segments.
+      segments[i] = new Segment(cacheSize / nseg + (i < cacheSize % nseg ? 1 : 0));
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + nseg + " segments, " + pinSize + " pinned pages.");
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    synchronized(this) {
+      if(prefetcher != null) {
+        prefetcher.shutdown();
+        try {
+          prefetcher.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        prefetcher = null;
+      }
+    }
+    flush();
+    pinned.clear();
+    for(Segment seg : segments) {
+      seg.clear();
+    }
+    file.close();
+  }
+
+  /**
+   * Flushes this cache by writing any modified page to the underlying file.
+   * The pages remain in the cache.
+   */
+  @Override
+  public void flush() {
+    for(P page : pinned.values()) {
+      expirePage(page);
+    }
+    for(Segment seg : segments) {
+      seg.flush();
+    }
+    synchronized(file) {
+      file.flush();
+    }
+  }
+
+  @Override
+  public void clear() {
+    pinned.clear();
+    for(Segment seg : segments) {
+      seg.clear();
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(LOG.isStatistics()) {
+      long hits = 0, misses = 0, evictions = 0, prefetched = 0;
+      for(Segment seg : segments) {
+        synchronized(seg) {
+          hits += seg.hits;
+          misses += seg.misses;
+          evictions += seg.evictions;
+          prefetched += seg.prefetched;
+        }
+      }
+      final String key = this.getClass().getName();
+      LOG.statistics(new LongStatistic(key + ".hits", hits));
+      LOG.statistics(new LongStatistic(key + ".misses", misses));
+      LOG.statistics(new LongStatistic(key + ".evictions", evictions));
+      LOG.statistics(new LongStatistic(key + ".pinned", pinned.size()));
+      if(prefetchDepth > 0) {
+        LOG.statistics(new LongStatistic(key + ".prefetched", prefetched));
+      }
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single, independently locked, 2Q cache segment.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Segment {
+    /**
+     * Pages seen only once recently, in FIFO order.
+     */
+    private final LinkedHashMap<Integer, P> in = new LinkedHashMap<>();
+
+    /**
+     * Ids of pages recently dropped from {@link #in}.
+     */
+    private final LinkedHashSet<Integer> ghost = new LinkedHashSet<>();
+
+    /**
+     * Frequently used pages, in LRU order.
+     */
+    private final LinkedHashMap<Integer, P> main;
+
+    /**
+     * Capacity of this segment.
+     */
+    private final int capacity;
+
+    /**
+     * Maximum size of the FIFO queue (25% of the capacity).
+     */
+    private final int maxIn;
+
+    /**
+     * Maximum number of ghost entries (50% of the capacity).
+     */
+    private final int maxGhost;
+
+    /**
+     * Statistics.
+     */
+    long hits, misses, evictions, prefetched;
+
+    /**
+     * Number of modifications, to detect pages changed while reading them.
+     */
+    private long modifications;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Capacity in pages
+     */
+    Segment(int capacity) {
+      this.capacity = capacity;
+      this.maxIn = Math.max(1, capacity >> 2);
+      this.maxGhost = Math.max(1, capacity >> 1);
+      this.main = new LinkedHashMap<>(16, .75f, true);
+    }
+
+    /**
+     * Get a page, loading it from the backing file if necessary.
+     *
+     * The backing file is read without holding the lock of the segment, so
+     * that cached pages of this segment remain available in the meantime.
+     *
+     * @param pageID Page id
+     * @return Page
+     */
+    P get(int pageID) {
+      while(true) {
+        final long stamp;
+        synchronized(this) {
+          P page = lookup(pageID);
+          if(page != null) {
+            ++hits;
+            return page;
+          }
+          ++misses;
+          stamp = modifications;
+        }
+        P page = readBacking(pageID);
+        synchronized(this) {
+          P cached = lookup(pageID); // Loaded concurrently?
+          if(cached != null) {
+            return cached;
+          }
+          if(stamp == modifications) {
+            if(page != null && !pin(pageID, page)) {
+              insert(pageID, page);
+            }
+            return page;
+          }
+        }
+        // Modified while reading, the copy read may be outdated.
+      }
+    }
+
+    /**
+     * Find a page in this segment, or in the pinned pages.
+     *
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    private P lookup(int pageID) {
+      P page = main.get(pageID); // Refreshes the LRU order
+      if(page == null) {
+        page = in.get(pageID); // FIFO order is not refreshed
+      }
+      return page != null ? page : pinned.get(pageID); // Pinned concurrently?
+    }
+
+    /**
+     * Test if a page is in this segment.
+     *
+     * @param pageID Page id
+     * @return {@code true} if cached
+     */
+    synchronized boolean contains(int pageID) {
+      return main.containsKey(pageID) || in.containsKey(pageID);
+    }
+
+    /**
+     * Load a page into the cache in advance, if not yet cached. As in
+     * {@link #get}, the backing file is read without holding the lock.
+     *
+     * @param pageID Page id
+     */
+    void load(int pageID) {
+      final long stamp;
+      synchronized(this) {
+        if(main.containsKey(pageID) || in.containsKey(pageID) || pinned.containsKey(pageID)) {
+          return;
+        }
+        stamp = modifications;
+      }
+      P page = readBacking(pageID);
+      synchronized(this) {
+        if(page == null || stamp != modifications || lookup(pageID) != null) {
+          return; // Modified or loaded concurrently.
+        }
+        ++prefetched;
+        if(!pin(pageID, page)) {
+          insert(pageID, page);
+        }
+      }
+    }
+
+    /**
+     * Store a page in the cache.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    synchronized void put(int pageID, P page) {
+      ++modifications;
+      if(main.containsKey(pageID)) {
+        main.put(pageID, page);
+      }
+      else if(in.containsKey(pageID)) {
+        in.put(pageID, page);
+      }
+      else {
+        insert(pageID, page);
+      }
+    }
+
+    /**
+     * Insert a page not yet in the cache.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    private void insert(int pageID, P page) {
+      if(in.size() + main.size() >= capacity) {
+        evict();
+      }
+      if(ghost.remove(pageID)) {
+        main.put(pageID, page); // Seen again: frequently used
+      }
+      else {
+        in.put(pageID, page);
+      }
+    }
+
+    /**
+     * Evict a single page.
+     */
+    private void evict() {
+      ++evictions;
+      if(in.size() >= maxIn || main.isEmpty()) {
+        Iterator<Map.Entry<Integer, P>> it = in.entrySet().iterator();
+        Map.Entry<Integer, P> e = it.next();
+        it.remove();
+        expirePage(e.getValue());
+        ghost.add(e.getKey());
+        if(ghost.size() > maxGhost) {
+          Iterator<Integer> git = ghost.iterator();
+          git.next();
+          git.remove();
+        }
+        return;
+      }
+      Iterator<P> it = main.values().iterator();
+      P page = it.next();
+      it.remove();
+      expirePage(page);
+    }
+
+    /**
+     * Remove a page.
+     *
+     * @param pageID Page id
+     */
+    synchronized void remove(int pageID) {
+      ++modifications;
+      if(main.remove(pageID) == null) {
+        in.remove(pageID);
+      }
+      ghost.remove(pageID);
+    }
+
+    /**
+     * Write all modified pages of the segment.
+     */
+    synchronized void flush() {
+      for(P page : in.values()) {
+        expirePage(page);
+      }
+      for(P page : main.values()) {
+        expirePage(page);
+      }
+    }
+
+    /**
+     * Empty the segment.
+     */
+    synchronized void clear() {
+      ++modifications;
+      in.clear();
+      main.clear();
+      ghost.clear();
+    }
+  }
+}
@@ -174,4 +174,26 @@ public class VectorUtilTest {
     assertEquals("Angle not exact.", 0., VectorUtil.cosAngle(o2, v1), 0.);
     assertEquals("Angle not exact.", 1., VectorUtil.cosAngle(v1, v1), 0.);
   }
+
+  @Test
+  public void cachedNormAngle() {
+    NumberVector d1 = new DoubleVector(new double[] { 1.0, 2.0, 3.0, 0.0 });
+    NumberVector d2 = new FloatVector(new float[] { 3.f, 2.f, 1.f, 0.f });
+    SparseNumberVector s3 = new SparseDoubleVector(new double[] { 1.0, 2.0, 3.0, 4.0 });
+    SparseNumberVector s4 = new SparseFloatVector(new float[] { 3.f, 2.f, 1.f, 4.f });
+    assertEquals("Dot product not exact.", 10., VectorUtil.dot(d1, d2), 0.);
+    assertEquals("Dot product not exact.", 26., VectorUtil.dot(s3, s4), 0.);
+    assertEquals("Dot product not exact.", 10., VectorUtil.dot(d1, s4), 0.);
+    assertEquals("Dot product not exact.", 10., VectorUtil.dot(s3, d2), 0.);
+    assertEquals("Length not exact.", 14., VectorUtil.squaredLength(d1), 0.);
+    assertEquals("Length not exact.", 30., VectorUtil.squaredLength(s4), 0.);
+    // Must agree with the direct computation.
+    NumberVector[] vs = { d1, d2, s3, s4 };
+    for(NumberVector v1 : vs) {
+      for(NumberVector v2 : vs) {
+        final double cos = VectorUtil.cosAngle(VectorUtil.dot(v1, v2), VectorUtil.squaredLength(v1), VectorUtil.squaredLength(v2));
+        assertEquals("Angle not exact.", VectorUtil.angleDense(v1, v2), cos, 0.);
+      }
+    }
+  }
 }
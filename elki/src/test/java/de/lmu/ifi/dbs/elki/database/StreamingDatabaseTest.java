@@ -0,0 +1,90 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreEvent;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the sliding window of the streaming database.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class StreamingDatabaseTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testCountWindow() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StreamingDatabase.Parameterizer.BATCHSIZE_ID, 64);
+    params.addParameter(StreamingDatabase.Parameterizer.WINDOWSIZE_ID, 100);
+    StreamingDatabase db = (StreamingDatabase) AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 100, params, StreamingDatabase.class);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertEquals("Window size", 100, db.getWindowDBIDs().size());
+
+    // Collect one event per micro-batch:
+    final List<DataStoreEvent> events = new ArrayList<>();
+    db.addDataStoreListener(e -> events.add(e));
+
+    // Stream the first 50 objects of the window a second time.
+    ArrayDBIDs before = db.getWindowDBIDs();
+    List<NumberVector> data = new ArrayList<>();
+    DBIDIter it = before.iter();
+    for(int i = 0; i < 50; i++, it.advance()) {
+      data.add(rel.get(it));
+    }
+    assertEquals(50, db.ingest(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data).asStream()));
+
+    assertEquals("Window size", 100, rel.size());
+    assertEquals("Events", 2, events.size());
+    DBIDs inserted = events.get(0).getInserts(), removed = events.get(1).getRemovals();
+    assertEquals("Inserted", 50, inserted.size());
+    assertEquals("Removed", 50, removed.size());
+    // The oldest objects must have been expired:
+    it = before.iter();
+    for(int i = 0; i < 50; i++, it.advance()) {
+      assertTrue("Oldest object not expired.", removed.contains(it));
+    }
+    // The new objects are at the end of the window:
+    DBIDArrayIter it2 = db.getWindowDBIDs().iter().seek(50);
+    for(; it2.valid(); it2.advance()) {
+      assertTrue("New object not at the end of the window.", inserted.contains(it2));
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Unit test for the binary page layout of R*-tree and M-tree nodes.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ByteBufferPageSerializerTest {
+  /**
+   * Test R*-tree leaves, with coordinates stored as doubles and as floats.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTreeLeaf() throws IOException {
+    for(double scale : new double[] { .1, .5 }) {
+      RStarTreeNode node = new RStarTreeNode(10, true);
+      node.setPageID(7);
+      for(int i = 0; i < 5; i++) {
+        node.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(1000 + i), new double[] { i * scale, -i * scale, 1e6 }));
+      }
+      RStarTreeNode copy = roundTrip(new ByteBufferPageSerializer<>(RStarTreeNode.class), node);
+      assertTrue("Not a leaf.", copy.isLeaf());
+      assertEquals("Capacity", 10, copy.getCapacity());
+      for(int i = 0; i < 5; i++) {
+        SpatialPointLeafEntry e = (SpatialPointLeafEntry) copy.getEntry(i);
+        assertEquals("Object id", 1000 + i, DBIDUtil.asInteger(e.getDBID()));
+        assertSameBox(node.getEntry(i), e);
+      }
+    }
+  }
+
+  /**
+   * Test R*-tree directory nodes, in full and in reduced precision.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTreeDirectory() throws IOException {
+    for(int bytes : new int[] { 0, 1, 2, 4 }) {
+      RStarTreeNode node = new RStarTreeNode(10, false);
+      node.setPageID(3);
+      for(int i = 0; i < 6; i++) {
+        node.addDirectoryEntry(new SpatialDirectoryEntry(20 + i, new ModifiableHyperBoundingBox(new double[] { i * .3, .7 }, new double[] { i * .3 + .11, 2.9 })));
+      }
+      if(bytes > 0) {
+        node.roundEntries(bytes);
+      }
+      RStarTreeNode copy = roundTrip(new ByteBufferPageSerializer<>(RStarTreeNode.class), node);
+      assertFalse("Not a directory.", copy.isLeaf());
+      for(int i = 0; i < 6; i++) {
+        assertEquals("Page id", 20 + i, ((SpatialDirectoryEntry) copy.getEntry(i)).getPageID());
+        assertSameBox(node.getEntry(i), copy.getEntry(i));
+      }
+    }
+  }
+
+  /**
+   * Test that R*-tree nodes with mixed entries have no binary layout.
+   */
+  @Test
+  public void testRStarTreeUnsupported() {
+    RStarTreeNode node = new RStarTreeNode(10, false);
+    node.addDirectoryEntry(new SpatialDirectoryEntry(1, new ModifiableHyperBoundingBox(2, 0., 1.)));
+    assertTrue("Binary layout not supported.", ByteBufferPageSerializer.hasBinaryLayout(node));
+    node.addDirectoryEntry(new SpatialDirectoryEntry(2, new ModifiableHyperBoundingBox(3, 0., 1.)));
+    assertFalse("Mixed dimensionality is not supported.", ByteBufferPageSerializer.hasBinaryLayout(node));
+  }
+
+  /**
+   * Test M-tree leaves and directory nodes.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testMTree() throws IOException {
+    for(boolean leaf : new boolean[] { true, false }) {
+      MTreeNode<Object> node = new MTreeNode<>(10, leaf);
+      node.setPageID(5);
+      for(int i = 0; i < 4; i++) {
+        if(leaf) {
+          node.addLeafEntry(new MTreeLeafEntry(DBIDUtil.importInteger(50 + i), i * .1));
+        }
+        else {
+          node.addDirectoryEntry(new MTreeDirectoryEntry(DBIDUtil.importInteger(50 + i), i * .1, 60 + i, i * .2 + 1));
+        }
+      }
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      MTreeNode<Object> copy = (MTreeNode<Object>) roundTrip(new ByteBufferPageSerializer<>((Class<MTreeNode>) (Class<?>) MTreeNode.class), node);
+      assertEquals("Leaf", leaf, copy.isLeaf());
+      for(int i = 0; i < 4; i++) {
+        MTreeEntry e = copy.getEntry(i);
+        assertEquals("Object id", 50 + i, DBIDUtil.asInteger(e.getRoutingObjectID()));
+        assertEquals("Parent distance", i * .1, e.getParentDistance(), 0.);
+        if(!leaf) {
+          assertEquals("Page id", 60 + i, ((MTreeDirectoryEntry) e).getPageID());
+          assertEquals("Covering radius", i * .2 + 1, e.getCoveringRadius(), 0.);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write and read a page, checking the header and the size.
+   *
+   * @param ser Serializer
+   * @param page Page
+   * @return Copy of the page
+   * @throws IOException on errors
+   */
+  private static <P extends ByteBufferPage> P roundTrip(ByteBufferPageSerializer<P> ser, P page) throws IOException {
+    assertTrue("Binary layout not supported.", ByteBufferPageSerializer.hasBinaryLayout(page));
+    ByteBuffer buffer = ByteBuffer.allocate(1000);
+    ser.toByteBuffer(buffer, page);
+    assertEquals("Size of the binary layout", ser.getByteSize(page), buffer.position());
+    buffer.flip();
+    assertTrue("Not a binary page.", ByteBufferPageSerializer.isBinaryPage(buffer));
+    P copy = ser.fromByteBuffer(buffer);
+    assertFalse("Not read completely.", buffer.hasRemaining());
+    assertEquals("Page id", page.getPageID(), copy.getPageID());
+    return copy;
+  }
+
+  /**
+   * Compare two bounding boxes exactly.
+   *
+   * @param expected Expected box
+   * @param actual Actual box
+   */
+  private static void assertSameBox(SpatialEntry expected, SpatialEntry actual) {
+    assertEquals("Dimensionality", expected.getDimensionality(), actual.getDimensionality());
+    for(int d = 0; d < expected.getDimensionality(); d++) {
+      assertEquals("Minimum", expected.getMin(d), actual.getMin(d), 0.);
+      assertEquals("Maximum", expected.getMax(d), actual.getMax(d), 0.);
+    }
+  }
+}
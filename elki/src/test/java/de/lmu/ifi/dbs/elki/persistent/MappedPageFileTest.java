@@ -0,0 +1,411 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the memory-mapped page file, using an R*-tree and an M-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Page size used in the tests.
+   */
+  private static final int PAGESIZE = 1000;
+
+  /**
+   * Number of pages written.
+   */
+  private static final int NUMPAGES = 20;
+
+  /**
+   * First four bytes of a Java serialization stream.
+   */
+  private static final int STREAM_HEADER = (ObjectStreamConstants.STREAM_MAGIC << 16) | ObjectStreamConstants.STREAM_VERSION;
+
+  /**
+   * Test {@link MappedPageFile} with small segments, so that the mapping has
+   * to grow several times.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testMappedRStarTree() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      ListParameterization spatparams = new ListParameterization();
+      spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+      spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+      spatparams.addParameter(MappedPageFileFactory.Parameterizer.SEGMENT_SIZE_ID, 4096);
+      spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000);
+      testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test an M-tree in a {@link MappedPageFile}, with page capacities computed
+   * from the binary page layout.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testMappedMTree() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      ListParameterization metparams = new ListParameterization();
+      metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+      metparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+      metparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+      metparams.addParameter(MappedPageFileFactory.Parameterizer.SEGMENT_SIZE_ID, 4096);
+      metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+      testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test that the R*-tree computes its page capacities from the binary page
+   * layout when stored in a {@link MappedPageFile}: the capacities must exceed
+   * those of serialized pages, full pages must fit, and queries must still
+   * give exact results.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testBinaryCapacities() throws IOException {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      TreeIndexHeader serialized = buildRStarTree(rel, PersistentPageFileFactory.class, tmp);
+      tmp.delete();
+      TreeIndexHeader binary = buildRStarTree(rel, MappedPageFileFactory.class, tmp);
+      // Page header, node header, and the id and coordinates of each entry.
+      assertEquals("Leaf capacity", (PAGESIZE - 4 - 18) / (4 + 2 * 8), binary.getLeafCapacity());
+      assertEquals("Directory capacity", (PAGESIZE - 4 - 18) / (4 + 4 * 8), binary.getDirCapacity());
+      assertTrue("Binary layout did not increase the leaf capacity.", binary.getLeafCapacity() > serialized.getLeafCapacity());
+      assertTrue("Binary layout did not increase the directory capacity.", binary.getDirCapacity() > serialized.getDirCapacity());
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test closing and reopening a {@link MappedPageFile}: the file must be
+   * truncated to the used pages, and all pages and the empty page list must
+   * survive.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testCloseReopen() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      MappedPageFile<RStarTreeNode> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, null, 4096, false);
+      writePages(file);
+      file.deletePage(3);
+      file.close();
+      // Segments hold four pages each, the last one is only partially used.
+      final long reserved = makeHeader().getReservedPages();
+      assertTrue("File not truncated: " + tmp.length(), tmp.length() < (reserved + 24L) * PAGESIZE);
+      for(int i = 0; i < NUMPAGES; i++) {
+        assertEquals("Page format", STREAM_HEADER, pageHeader(tmp, i));
+      }
+
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, null, 4096, false);
+      assertTrue("File was not reopened.", file.initialize(new TreeIndexHeader()));
+      assertEquals("Next page id", NUMPAGES, file.getNextPageID());
+      assertNull("Deleted page was restored.", file.readPage(3));
+      assertPages(file, 3);
+      // The empty page is reused.
+      assertEquals("Page id", 3, file.writePage(new RStarTreeNode(10, false)));
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test reopening a file with pages in the binary layout. Pages that have no
+   * binary layout must be serialized instead.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testBinaryReopen() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      MappedPageFile<RStarTreeNode> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, new ByteBufferPageSerializer<>(RStarTreeNode.class), 4096, false);
+      writePages(file);
+      file.close();
+      for(int i = 0; i < NUMPAGES; i++) {
+        final int head = pageHeader(tmp, i);
+        if(i == NUMPAGES - 1) {
+          assertEquals("Mixed page must be serialized.", STREAM_HEADER, head);
+        }
+        else {
+          assertEquals("Not a binary page: " + i, ByteBufferPageSerializer.MAGIC | ByteBufferPageSerializer.VERSION, head);
+        }
+      }
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, new ByteBufferPageSerializer<>(RStarTreeNode.class), 4096, false);
+      assertTrue("File was not reopened.", file.initialize(new TreeIndexHeader()));
+      assertEquals("Next page id", NUMPAGES, file.getNextPageID());
+      assertPages(file, -1);
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test opening a file written by {@link PersistentPageFile}, with and
+   * without converting it to the binary layout.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testMigrate() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      PersistentPageFile<RStarTreeNode> old = new PersistentPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class);
+      writePages(old);
+      old.close();
+
+      // Without migration, the pages are read, but not converted.
+      MappedPageFile<RStarTreeNode> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, new ByteBufferPageSerializer<>(RStarTreeNode.class), 4096, false);
+      assertTrue("File was not reopened.", file.initialize(new TreeIndexHeader()));
+      assertPages(file, -1);
+      file.close();
+      assertEquals("Page was converted.", STREAM_HEADER, pageHeader(tmp, 0));
+
+      // Convert the pages, except the one without binary layout.
+      MappedPageFileFactory<RStarTreeNode> factory = new ELKIBuilder<>(MappedPageFileFactory.class) //
+          .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp) //
+          .with(MappedPageFileFactory.Parameterizer.SEGMENT_SIZE_ID, 4096) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, PAGESIZE) //
+          .with(MappedPageFileFactory.Parameterizer.MIGRATE_ID) //
+          .build();
+      PageFile<RStarTreeNode> pfile = factory.newPageFile(RStarTreeNode.class);
+      assertTrue("File was not reopened.", pfile.initialize(new TreeIndexHeader()));
+      pfile.close();
+      for(int i = 0; i < NUMPAGES - 1; i++) {
+        assertEquals("Page was not converted: " + i, ByteBufferPageSerializer.MAGIC | ByteBufferPageSerializer.VERSION, pageHeader(tmp, i));
+      }
+      assertEquals("Mixed page must be serialized.", STREAM_HEADER, pageHeader(tmp, NUMPAGES - 1));
+
+      // The converted file can still be read.
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, new ByteBufferPageSerializer<>(RStarTreeNode.class), 4096, false);
+      assertTrue("File was not reopened.", file.initialize(new TreeIndexHeader()));
+      assertPages(file, -1);
+      assertEquals("Pages left to convert", 0, file.migrate());
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test that files of a newer format version are rejected.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test(expected = AbortException.class)
+  public void testFormatVersion() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      MappedPageFile<RStarTreeNode> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, null, 4096, false);
+      writePages(file);
+      file.close();
+      try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+        new TreeIndexHeader().readHeader(raf);
+        final long offset = raf.getFilePointer();
+        final int marker = raf.readInt();
+        assertEquals("Format version", MappedPageFile.FORMAT_VERSION, marker & 0xFFFF);
+        raf.seek(offset);
+        raf.writeInt(marker + 1);
+      }
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, null, 4096, false);
+      file.initialize(new TreeIndexHeader());
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Build an R*-tree in a new page file, compare kNN queries to a linear scan,
+   * and read back the header of the file.
+   *
+   * @param rel Relation
+   * @param pagefile Page file factory class
+   * @param tmp File
+   * @return File header
+   * @throws IOException on errors reading the header
+   */
+  private static TreeIndexHeader buildRStarTree(Relation<DoubleVector> rel, Class<?> pagefile, File tmp) throws IOException {
+    RStarTreeIndex<DoubleVector> index = new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, pagefile) //
+        .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, PAGESIZE) //
+        .build().instantiate(rel);
+    index.initialize(); // Fails if a page is too large.
+    DistanceQuery<DoubleVector> dist = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> scan = new LinearScanDistanceKNNQuery<>(dist);
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dist, 10);
+    Random qrnd = new Random(1L);
+    for(int q = 0; q < 100; q++) {
+      DoubleVector v = DoubleVector.wrap(new double[] { qrnd.nextDouble(), qrnd.nextDouble() });
+      PersistentPageFileTest.assertSameDistances(scan.getKNNForObject(v, 10), knnq.getKNNForObject(v, 10));
+    }
+    index.flush();
+    TreeIndexHeader header = new TreeIndexHeader();
+    try (RandomAccessFile raf = new RandomAccessFile(tmp, "r")) {
+      header.readHeader(raf);
+    }
+    return header;
+  }
+
+  /**
+   * Make the header of the test files.
+   *
+   * @return Header
+   */
+  private static TreeIndexHeader makeHeader() {
+    return new TreeIndexHeader(PAGESIZE, 10, 10, 2, 2);
+  }
+
+  /**
+   * Initialize a new page file and write the test pages. The last page
+   * contains entries of different dimensionality, and has no binary layout.
+   *
+   * @param file Page file
+   */
+  private static void writePages(PageFile<RStarTreeNode> file) {
+    assertFalse("New file reported as existing.", file.initialize(makeHeader()));
+    for(int i = 0; i < NUMPAGES; i++) {
+      RStarTreeNode node = new RStarTreeNode(10, false);
+      node.addDirectoryEntry(new SpatialDirectoryEntry(i * 7, new ModifiableHyperBoundingBox(2, i, i + .1)));
+      if(i == NUMPAGES - 1) {
+        node.addDirectoryEntry(new SpatialDirectoryEntry(1, new ModifiableHyperBoundingBox(3, i, i + .1)));
+      }
+      assertEquals("Page id", i, file.writePage(node));
+    }
+  }
+
+  /**
+   * Check the test pages.
+   *
+   * @param file Page file
+   * @param skip Page to skip, or -1
+   */
+  private static void assertPages(PageFile<RStarTreeNode> file, int skip) {
+    for(int i = 0; i < NUMPAGES; i++) {
+      if(i == skip) {
+        continue;
+      }
+      RStarTreeNode node = file.readPage(i);
+      assertEquals("Page id", i, node.getPageID());
+      assertEquals("Entries", i == NUMPAGES - 1 ? 2 : 1, node.getNumEntries());
+      assertEquals("Entry", i * 7, ((SpatialDirectoryEntry) node.getEntry(0)).getPageID());
+      assertEquals("Entry", i + .1, node.getEntry(0).getMax(1), 0.);
+    }
+  }
+
+  /**
+   * Read the first four bytes of a page from the file.
+   *
+   * @param f File
+   * @param page Page number
+   * @return First int of the page
+   * @throws IOException on read errors
+   */
+  private static int pageHeader(File f, int page) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+      raf.seek((makeHeader().getReservedPages() + (long) page) * PAGESIZE);
+      return raf.readInt();
+    }
+  }
+}
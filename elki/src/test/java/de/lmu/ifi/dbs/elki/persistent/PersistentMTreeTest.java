@@ -0,0 +1,320 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.RKNNIndex;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.AbstractMkTreeUnifiedFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkapp.MkAppTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkcop.MkCopTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mkmax.MkMaxTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mktrees.mktab.MkTabTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileTest.CountingPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for reopening M-trees and Mk-trees from a persistent page file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PersistentMTreeTest {
+  /**
+   * Cache size used while building the trees, small enough to evict pages.
+   */
+  private static final int CACHESIZE = 3000;
+
+  /**
+   * Number of (reverse) neighbors to query, and maximum k of the Mk-trees.
+   */
+  private static final int K = 10;
+
+  /**
+   * Test reopening an {@link MTreeFactory M-tree}.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMTree() throws IOException {
+    testPersistent(MTreeFactory.class, new ListParameterization(), false);
+  }
+
+  /**
+   * Test reopening an {@link MkMaxTreeFactory MkMax-tree}.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMkMaxTree() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractMkTreeUnifiedFactory.Parameterizer.K_MAX_ID, K);
+    testPersistent(MkMaxTreeFactory.class, params, true);
+  }
+
+  /**
+   * Test reopening an {@link MkTabTreeFactory MkTab-tree}.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMkTabTree() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractMkTreeUnifiedFactory.Parameterizer.K_MAX_ID, K);
+    testPersistent(MkTabTreeFactory.class, params, true);
+  }
+
+  /**
+   * Test reopening an {@link MkCopTreeFactory MkCoP-tree}.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMkCoPTree() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(MkCopTreeFactory.K_ID, K);
+    testPersistent(MkCopTreeFactory.class, params, true);
+  }
+
+  /**
+   * Test reopening an {@link MkAppTreeFactory MkApp-tree}.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMkAppTree() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(MkAppTreeFactory.K_ID, K);
+    params.addParameter(MkAppTreeFactory.P_ID, 3);
+    testPersistent(MkAppTreeFactory.class, params, true);
+  }
+
+  /**
+   * Test that an M-tree is not reopened for a different distance function,
+   * different distance parameters, or different data.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testMismatch() throws IOException {
+    double[][] data = randomData();
+    Relation<DoubleVector> rel = makeRelation(data);
+    ListParameterization manhattan = new ListParameterization();
+    manhattan.addParameter(AbstractMTreeFactory.Parameterizer.DISTANCE_FUNCTION_ID, ManhattanDistanceFunction.class);
+    assertRejected(rel, new ListParameterization(), rel, manhattan, "Reopened an M-tree built for a different distance function.");
+
+    ListParameterization l3 = new ListParameterization(), l4 = new ListParameterization();
+    l3.addParameter(AbstractMTreeFactory.Parameterizer.DISTANCE_FUNCTION_ID, LPNormDistanceFunction.class);
+    l3.addParameter(LPNormDistanceFunction.Parameterizer.P_ID, 3);
+    l4.addParameter(AbstractMTreeFactory.Parameterizer.DISTANCE_FUNCTION_ID, LPNormDistanceFunction.class);
+    l4.addParameter(LPNormDistanceFunction.Parameterizer.P_ID, 4);
+    assertRejected(rel, l3, rel, l4, "Reopened an M-tree built for different distance parameters.");
+
+    // Same object IDs, one modified value:
+    final int mod = data.length >> 1;
+    data[mod] = new double[] { data[mod][0] + 1e-10, data[mod][1] };
+    assertRejected(rel, new ListParameterization(), makeRelation(data), new ListParameterization(), "Reopened an M-tree built for different data.");
+  }
+
+  /**
+   * Build a tree with a small page cache, and reopen it without. The reopened
+   * tree must not write any page, and must answer queries like the tree that
+   * was built.
+   *
+   * @param cls Factory class
+   * @param params Factory parameters
+   * @param rknn Test reverse kNN queries
+   * @throws IOException on errors with the temporary file
+   */
+  @SuppressWarnings("unchecked")
+  private static void testPersistent(Class<?> cls, ListParameterization params, boolean rknn) throws IOException {
+    Relation<DoubleVector> rel = makeRelation(randomData());
+    DistanceQuery<DoubleVector> dist = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<DoubleVector> scan = new LinearScanDistanceKNNQuery<>(dist);
+    List<DoubleDBIDList> rknns = new ArrayList<>();
+    File tmp = File.createTempFile("elki-mtree", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      for(int i = 0; i < 2; i++) {
+        CountingPageFileFactory<?> pf = new CountingPageFileFactory<>(tmp);
+        Index index = instantiate(cls, params, i == 0 ? new LRUCachePageFileFactory<>(pf, CACHESIZE) : pf, rel);
+        index.initialize();
+        if(i == 0) {
+          assertTrue("No pages were written.", pf.file.writes > 0);
+        }
+        else {
+          assertEquals("Tree was not reopened from the file.", 0, pf.file.writes);
+        }
+        KNNQuery<DoubleVector> knnq = ((KNNIndex<DoubleVector>) index).getKNNQuery(dist, K);
+        Random qrnd = new Random(1L);
+        for(int q = 0; q < 100; q++) {
+          DoubleVector v = DoubleVector.wrap(new double[] { qrnd.nextDouble(), qrnd.nextDouble() });
+          PersistentPageFileTest.assertSameDistances(scan.getKNNForObject(v, K), knnq.getKNNForObject(v, K));
+        }
+        if(rknn) {
+          // The reopened tree must give the same (possibly approximate) results.
+          RKNNQuery<DoubleVector> rknnq = ((RKNNIndex<DoubleVector>) index).getRKNNQuery(dist);
+          int j = 0;
+          for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance(), j++) {
+            DoubleDBIDList result = rknnq.getRKNNForDBID(iter, K);
+            if(i == 0) {
+              rknns.add(result);
+            }
+            else {
+              assertSameResult(rknns.get(j), result);
+            }
+          }
+        }
+        pf.file.close();
+      }
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Build an M-tree, and assert that it is not reopened with different
+   * parameters or data.
+   *
+   * @param rel Relation to build the tree for
+   * @param params Parameters to build the tree with
+   * @param rel2 Relation to reopen the tree for
+   * @param params2 Parameters to reopen the tree with
+   * @param message Failure message
+   * @throws IOException on errors with the temporary file
+   */
+  private static void assertRejected(Relation<DoubleVector> rel, ListParameterization params, Relation<DoubleVector> rel2, ListParameterization params2, String message) throws IOException {
+    File tmp = File.createTempFile("elki-mtree", ".idx");
+    try {
+      tmp.delete(); // Start with a new file.
+      CountingPageFileFactory<?> pf = new CountingPageFileFactory<>(tmp);
+      instantiate(MTreeFactory.class, params, pf, rel).initialize();
+      pf.file.close();
+      pf = new CountingPageFileFactory<>(tmp);
+      try {
+        instantiate(MTreeFactory.class, params2, pf, rel2).initialize();
+        fail(message);
+      }
+      catch(AbortException e) {
+        // Expected
+      }
+      finally {
+        pf.file.close();
+      }
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Instantiate an index with the given page file.
+   *
+   * @param cls Factory class
+   * @param params Factory parameters, not consumed
+   * @param pf Page file factory
+   * @param rel Relation to index
+   * @return Index, not yet initialized
+   */
+  private static Index instantiate(Class<?> cls, ListParameterization params, PageFileFactory<?> pf, Relation<DoubleVector> rel) {
+    ListParameterization config = new ListParameterization(params.getRemainingParameters());
+    config.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, pf);
+    IndexFactory<DoubleVector, ?> factory = ClassGenericsUtil.parameterizeOrAbort(cls, config);
+    return factory.instantiate(rel);
+  }
+
+  /**
+   * Compare two query results by their objects and distances.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameResult(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result size differs.", expect.size(), actual.size());
+    for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertTrue("Result object differs.", DBIDUtil.equal(e, a));
+      assertEquals("Result distance differs.", e.doubleValue(), a.doubleValue(), 0.);
+    }
+  }
+
+  /**
+   * Random two-dimensional data.
+   *
+   * @return Data
+   */
+  private static double[][] randomData() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[500][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    return data;
+  }
+
+  /**
+   * Load data into a database, with fixed object IDs.
+   *
+   * @param data Data
+   * @return Vector relation
+   */
+  private static Relation<DoubleVector> makeRelation(double[][] data) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data, null, 1), null);
+    db.initialize();
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+}
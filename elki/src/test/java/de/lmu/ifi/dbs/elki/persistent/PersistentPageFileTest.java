@@ -0,0 +1,277 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings.DirectoryPrecision;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the persistent page file, using an R*-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PersistentPageFileTest {
+  /**
+   * Page size used in the tests.
+   */
+  private static final int PAGESIZE = 500;
+
+  /**
+   * Cache size used while building the trees, large enough for all pages.
+   */
+  private static final int CACHESIZE = 1 << 24;
+
+  /**
+   * Number of neighbors to query.
+   */
+  private static final int K = 10;
+
+  /**
+   * Test that an R*-tree with reduced directory precision can be written to a
+   * {@link PersistentPageFile} and reopened. Reduced precision must increase
+   * the directory fanout, and reduce the number of pages read by kNN queries
+   * on the reopened tree.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testDirectoryPrecision() throws IOException {
+    Random rnd = new Random(0L);
+    double[][] data = new double[20000][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> scan = new LinearScanDistanceKNNQuery<>(dist);
+
+    final DirectoryPrecision[] precisions = { DirectoryPrecision.DOUBLE, DirectoryPrecision.QUANTIZED8 };
+    int[] fanout = new int[precisions.length];
+    long[] reads = new long[precisions.length];
+    for(int p = 0; p < precisions.length; p++) {
+      File tmp = File.createTempFile("elki-persistent", ".idx");
+      try {
+        tmp.delete(); // Start with a new file.
+        // Build the tree with a page cache, then reopen it without.
+        for(int i = 0; i < 2; i++) {
+          CountingPageFileFactory<?> pf = new CountingPageFileFactory<>(tmp);
+          RStarTreeFactory<DoubleVector> factory = new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+              .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, i == 0 ? new LRUCachePageFileFactory<>(pf, CACHESIZE) : pf) //
+              .with(AbstractRStarTreeFactory.Parameterizer.DIRECTORY_PRECISION_ID, precisions[p]) //
+              .build();
+          RStarTreeIndex<DoubleVector> index = factory.instantiate(rel);
+          index.initialize();
+          if(i == 0) {
+            assertTrue("No pages were written.", pf.file.writes > 0);
+            fanout[p] = ((TreeIndexHeader) pf.file.getHeader()).getDirCapacity();
+            pf.file.close();
+            continue;
+          }
+          assertEquals("Tree was not reopened from the file.", 0, pf.file.writes);
+          assertEquals("Directory capacity was not restored.", fanout[p], ((TreeIndexHeader) pf.file.getHeader()).getDirCapacity());
+          KNNQuery<DoubleVector> knnq = index.getKNNQuery(dist, K);
+          pf.file.reads = 0;
+          Random qrnd = new Random(1L);
+          for(int q = 0; q < 100; q++) {
+            DoubleVector v = DoubleVector.wrap(new double[] { qrnd.nextDouble(), qrnd.nextDouble() });
+            assertSameDistances(scan.getKNNForObject(v, K), knnq.getKNNForObject(v, K));
+          }
+          reads[p] = pf.file.reads;
+          pf.file.close();
+        }
+      }
+      finally {
+        tmp.delete();
+      }
+    }
+    assertTrue("Reduced precision did not increase the fanout: " + fanout[0] + " >= " + fanout[1], fanout[0] < fanout[1]);
+    assertTrue("Reduced precision did not reduce page reads: " + reads[0] + " <= " + reads[1], reads[0] > reads[1]);
+  }
+
+  /**
+   * Test that directory pages filled to the capacity chosen by the R*-tree fit
+   * into the pages of a {@link PersistentPageFile}, for every precision.
+   *
+   * @throws IOException on errors with the temporary file
+   */
+  @Test
+  public void testFullDirectoryPages() throws IOException {
+    Random rnd = new Random(0L);
+    double[][] data = new double[100][2];
+    for(double[] row : data) {
+      row[0] = rnd.nextDouble();
+      row[1] = rnd.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(DirectoryPrecision precision : DirectoryPrecision.values()) {
+      File tmp = File.createTempFile("elki-persistent", ".idx");
+      try {
+        tmp.delete(); // Start with a new file.
+        CountingPageFileFactory<RStarTreeNode> pf = new CountingPageFileFactory<>(tmp);
+        new ELKIBuilder<RStarTreeFactory<DoubleVector>>(RStarTreeFactory.class) //
+            .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, pf) //
+            .with(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+            .with(AbstractRStarTreeFactory.Parameterizer.DIRECTORY_PRECISION_ID, precision) //
+            .build().instantiate(rel).initialize();
+        final int cap = ((TreeIndexHeader) pf.file.getHeader()).getDirCapacity();
+        RStarTreeNode node = new RStarTreeNode(cap, false);
+        for(int i = 0; i < cap; i++) {
+          double x = rnd.nextDouble(), y = rnd.nextDouble();
+          node.addDirectoryEntry(new SpatialDirectoryEntry(i, new ModifiableHyperBoundingBox(new double[] { x, y }, new double[] { x + rnd.nextDouble(), y + rnd.nextDouble() })));
+        }
+        if(precision.bytes < Double.BYTES) {
+          node.roundEntries(precision.bytes);
+        }
+        // Fails if the page is too large.
+        int pageID = pf.file.writePage(node);
+        assertEquals("Full directory page was not read back.", cap, pf.file.readPage(pageID).getNumEntries());
+        pf.file.close();
+      }
+      finally {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Compare two kNN results by their distances.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  static void assertSameDistances(KNNList expect, KNNList actual) {
+    assertEquals("kNN result size differs.", expect.size(), actual.size());
+    for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("kNN distance differs.", e.doubleValue(), a.doubleValue(), 1e-15);
+    }
+  }
+
+  /**
+   * Page file factory producing a {@link CountingPageFile}.
+   *
+   * @author Erich Schubert
+   *
+   * @param <P> Page type
+   */
+  static class CountingPageFileFactory<P extends ExternalizablePage> implements PageFileFactory<P> {
+    /**
+     * File name.
+     */
+    private final String fileName;
+
+    /**
+     * Last page file created.
+     */
+    CountingPageFile<P> file;
+
+    /**
+     * Constructor.
+     *
+     * @param file File
+     */
+    CountingPageFileFactory(File file) {
+      this.fileName = file.getPath();
+    }
+
+    @Override
+    public PageFile<P> newPageFile(Class<P> cls) {
+      return file = new CountingPageFile<>(PAGESIZE, fileName, cls);
+    }
+
+    @Override
+    public int getPageSize() {
+      return PAGESIZE;
+    }
+  }
+
+  /**
+   * Persistent page file counting page reads and writes.
+   *
+   * @author Erich Schubert
+   *
+   * @param <P> Page type
+   */
+  static class CountingPageFile<P extends ExternalizablePage> extends PersistentPageFile<P> {
+    /**
+     * Number of pages read and written.
+     */
+    long reads, writes;
+
+    /**
+     * Constructor.
+     *
+     * @param pageSize Page size
+     * @param fileName File name
+     * @param pageclass Page class
+     */
+    CountingPageFile(int pageSize, String fileName, Class<P> pageclass) {
+      super(pageSize, fileName, pageclass);
+    }
+
+    @Override
+    public P readPage(int pageID) {
+      reads++;
+      return super.readPage(pageID);
+    }
+
+    @Override
+    public void writePage(int pageID, P page) {
+      writes++;
+      super.writePage(pageID, page);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the 2Q page cache, using an R*-tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class TwoQueueCacheTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link TwoQueueCache} with a cache much smaller than the tree, so
+   * that pages are evicted and reloaded, and with pinned directory pages.
+   */
+  @Test
+  public void testCachedRStarTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 10000);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PIN_SIZE_ID, 2000);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test the R*-tree with prefetching of child pages enabled.
+   */
+  @Test
+  public void testPrefetchRStarTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 10000);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PREFETCH_ID, 2);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test that prefetched pages are loaded in the background, and then served
+   * from the cache.
+   *
+   * @throws InterruptedException when interrupted
+   */
+  @Test
+  public void testPrefetch() throws InterruptedException {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueueCache<RStarTreeNode> cache = makeCache(backing, 2);
+    cache.prefetch(2);
+    for(int i = 0; i < 500 && !cache.isCached(2); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue("Page was not prefetched.", cache.isCached(2));
+    assertEquals("Backing reads", 1, backing.reads.get());
+    assertEquals("Page id", 2, cache.readPage(2).getPageID());
+    assertEquals("Prefetched page was read again.", 1, backing.reads.get());
+    cache.close();
+
+    // Without a prefetch depth, hints are ignored.
+    backing = new CountingPageFile();
+    cache = makeCache(backing, 0);
+    cache.prefetch(2);
+    assertFalse("Page was prefetched.", cache.isCached(2));
+    assertEquals("Backing reads", 0, backing.reads.get());
+    cache.close();
+  }
+
+  /**
+   * Test that cached pages can be read while another page of the same
+   * segment is loaded from the backing file.
+   *
+   * @throws Exception on errors
+   */
+  @Test
+  public void testParallelLoad() throws Exception {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueueCache<RStarTreeNode> cache = makeCache(backing, 0);
+    assertEquals("Page id", 0, cache.readPage(0).getPageID());
+    backing.block = 1;
+    ExecutorService exec = Executors.newFixedThreadPool(2);
+    try {
+      Future<RStarTreeNode> slow = exec.submit(() -> cache.readPage(1));
+      assertTrue("Backing file was not read.", backing.entered.await(10, TimeUnit.SECONDS));
+      // Only one segment, the cached page must not wait for the slow read.
+      Future<RStarTreeNode> fast = exec.submit(() -> cache.readPage(0));
+      try {
+        assertEquals("Page id", 0, fast.get(10, TimeUnit.SECONDS).getPageID());
+      }
+      catch(TimeoutException e) {
+        throw new AssertionError("Cached page blocked by a load of the same segment.");
+      }
+      finally {
+        backing.release.countDown();
+      }
+      RStarTreeNode page = slow.get(10, TimeUnit.SECONDS);
+      assertEquals("Page id", 1, page.getPageID());
+      assertSame("Loaded page was not cached.", page, cache.readPage(1));
+      assertEquals("Backing reads", 2, backing.reads.get());
+    }
+    catch(ExecutionException e) {
+      throw (Exception) e.getCause();
+    }
+    finally {
+      backing.release.countDown();
+      exec.shutdown();
+    }
+    cache.close();
+  }
+
+  /**
+   * Build a small cache with a single segment, over a backing file with ten
+   * pages.
+   *
+   * @param backing Backing file
+   * @param prefetch Prefetch depth
+   * @return Cache
+   */
+  private static TwoQueueCache<RStarTreeNode> makeCache(CountingPageFile backing, int prefetch) {
+    TwoQueueCache<RStarTreeNode> cache = new TwoQueueCache<>(20000, 0, prefetch, backing);
+    cache.initialize(new TreeIndexHeader(1000, 10, 10, 2, 2));
+    for(int i = 0; i < 10; i++) {
+      assertEquals("Page id", i, backing.writePage(new RStarTreeNode(10, true)));
+    }
+    backing.reads.set(0);
+    return cache;
+  }
+
+  /**
+   * Memory page file that counts reads, and can block reading a page.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<RStarTreeNode> {
+    /**
+     * Number of page reads.
+     */
+    final AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Page to block, -1 for none.
+     */
+    volatile int block = -1;
+
+    /**
+     * Signals that the blocked page is being read.
+     */
+    final CountDownLatch entered = new CountDownLatch(1);
+
+    /**
+     * Releases the blocked read.
+     */
+    final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Constructor.
+     */
+    CountingPageFile() {
+      super(1000);
+    }
+
+    @Override
+    public RStarTreeNode readPage(int pageID) {
+      reads.incrementAndGet();
+      if(pageID == block) {
+        entered.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return super.readPage(pageID);
+    }
+  }
+}